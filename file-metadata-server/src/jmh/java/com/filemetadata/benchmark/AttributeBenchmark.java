@@ -0,0 +1,61 @@
+package com.filemetadata.benchmark;
+
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.handler.FileMetadataHandler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares collecting the attributes of one directory's entries with one call per attribute against the single
+ * "unix:" attribute read with canonical paths derived from the parent.
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.includes=AttributeBenchmark
+ *
+ * @author Vinod Kandula
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AttributeBenchmark {
+
+    @Param({"1000"})
+    private int filesPerDirectory;
+
+    private Path root;
+    private File[] files;
+    private FileMetadata parent;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = BenchmarkTrees.create(0, 0, filesPerDirectory);
+        files = FileMetadataHandler.listChildren(root.toFile());
+        parent = FileMetadataHandler.fileMetadata(root.toFile());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkTrees.delete(root);
+    }
+
+    @Benchmark
+    public void perAttributeReads(Blackhole blackhole) throws IOException {
+        for (File file : files) {
+            blackhole.consume(FileMetadataHandler.readAttributes(file));
+        }
+    }
+
+    @Benchmark
+    public void bulkAttributeRead(Blackhole blackhole) throws IOException {
+        for (File file : files) {
+            blackhole.consume(FileMetadataHandler.fileMetadata(file, parent));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.filemetadata.benchmark;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Generates synthetic directory trees in a temp dir for the benchmarks
+ *
+ * @author Vinod Kandula
+ */
+public final class BenchmarkTrees {
+
+    private BenchmarkTrees() {
+    }
+
+    /**
+     * Creates a tree where every directory holds {@code filesPerDirectory} small files and {@code fanout}
+     * sub-directories, down to {@code depth} levels.
+     */
+    public static Path create(int fanout, int depth, int filesPerDirectory) throws IOException {
+        return create(fanout, depth, filesPerDirectory, 512);
+    }
+
+    /**
+     * Creates a tree like {@link #create(int, int, int)} with files of 0 to {@code maxFileSize - 1} bytes
+     */
+    public static Path create(int fanout, int depth, int filesPerDirectory, int maxFileSize) throws IOException {
+        Path root = Files.createTempDirectory("filemetadata-benchmark");
+        populate(root, fanout, depth, filesPerDirectory, maxFileSize);
+        return root;
+    }
+
+    /**
+     * Creates a tree of the given shape
+     */
+    public static Path create(TreeShape shape) throws IOException {
+        return create(shape.getFanout(), shape.getDepth(), shape.getFilesPerDirectory(), shape.getMaxFileSize());
+    }
+
+    private static void populate(Path directory, int fanout, int depth, int filesPerDirectory, int maxFileSize) throws IOException {
+        for (int i = 0; i < filesPerDirectory; i++) {
+            Files.write(directory.resolve("file-" + i + ".dat"), new byte[i % maxFileSize]);
+        }
+        if (depth == 0) {
+            return;
+        }
+        for (int i = 0; i < fanout; i++) {
+            populate(Files.createDirectory(directory.resolve("dir-" + i)), fanout, depth - 1, filesPerDirectory, maxFileSize);
+        }
+    }
+
+    public static void delete(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
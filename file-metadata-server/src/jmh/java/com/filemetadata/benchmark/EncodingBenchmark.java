@@ -0,0 +1,89 @@
+package com.filemetadata.benchmark;
+
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.encoding.MetadataEncoder;
+import com.filemetadata.file.encoding.ResponseEncoding;
+import com.filemetadata.file.handler.FileMetadataHandler;
+import com.filemetadata.file.projection.Projection;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the encode time of every response encoding on the same synthetic tree, with all fields and with a
+ * narrow projection. The tree is scanned once, so only the encoding is measured.
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.includes=EncodingBenchmark
+ *
+ * The payload sizes of the encodings are printed by
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dexec.executable=java \
+ *     -Dexec.args="-classpath %classpath com.filemetadata.benchmark.EncodingBenchmark"
+ * </pre>
+ *
+ * @author Vinod Kandula
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EncodingBenchmark {
+
+    private static final String[] FIELDS = {"", "name,path,size,directory"};
+
+    @Param({"JSON", "SMILE", "CBOR", "PROTOBUF", "XML"})
+    private ResponseEncoding encoding;
+
+    @Param({"", "name,path,size,directory"})
+    private String fields;
+
+    @Param({"false"})
+    private boolean pretty;
+
+    private FileMetadata tree;
+    private MetadataEncoder encoder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tree = syntheticTree();
+        encoder = new MetadataEncoder(encoding, Projection.of(fields), pretty);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return encoder.encode(tree);
+    }
+
+    public static void main(String[] args) throws IOException {
+        FileMetadata tree = syntheticTree();
+        System.out.printf("%-10s %-26s %12s %12s%n", "encoding", "fields", "bytes", "bytes/entry");
+        long entries = count(tree);
+        for (String fields : FIELDS) {
+            for (ResponseEncoding encoding : ResponseEncoding.values()) {
+                int bytes = new MetadataEncoder(encoding, Projection.of(fields), false).encode(tree).length;
+                System.out.printf("%-10s %-26s %,12d %12d%n", encoding, fields.isEmpty() ? "all" : fields, bytes, bytes / entries);
+            }
+        }
+    }
+
+    private static FileMetadata syntheticTree() throws IOException {
+        Path root = BenchmarkTrees.create(4, 4, 50);
+        try {
+            return FileMetadataHandler.directoryTree(root.toFile());
+        } finally {
+            BenchmarkTrees.delete(root);
+        }
+    }
+
+    private static long count(FileMetadata fileMetadata) {
+        long count = 1;
+        for (FileMetadata child : fileMetadata.getChildren()) {
+            count += count(child);
+        }
+        return count;
+    }
+}
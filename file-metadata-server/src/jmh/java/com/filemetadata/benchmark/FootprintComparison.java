@@ -0,0 +1,160 @@
+package com.filemetadata.benchmark;
+
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.compact.CompactEntries;
+import com.filemetadata.file.compact.NameTable;
+
+import java.io.File;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the retained heap of a synthetic tree held as {@link FileMetadata} objects with the same tree held as
+ * {@link CompactEntries} plus the parent / child range arrays of the directory index. Heap usage is sampled after
+ * forcing collections, so run it with a fixed heap, e.g.
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dexec.executable=java \
+ *     -Dexec.args="-Xms4g -Xmx4g -classpath %classpath com.filemetadata.benchmark.FootprintComparison 1000000"
+ * </pre>
+ *
+ * @author Vinod Kandula
+ */
+public final class FootprintComparison {
+
+    private static final int FILES_PER_DIRECTORY = 20;
+    private static final int FANOUT = 5;
+
+    // keeps the measured tree reachable between the heap samples
+    private static Object retained;
+
+    private FootprintComparison() {
+    }
+
+    public static void main(String[] args) {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        long baseline = usedHeap();
+        retained = objectTree(entries);
+        long objects = usedHeap() - baseline;
+        int count = count((FileMetadata) retained);
+
+        // the object tree stays reachable, so the difference is the compact tree alone
+        baseline = usedHeap();
+        CompactTree compact = compactTree((FileMetadata) retained, count);
+        long compactBytes = usedHeap() - baseline;
+        retained = compact;
+
+        System.out.printf("entries              %,d%n", count);
+        System.out.printf("FileMetadata objects %,d bytes (%d bytes/entry)%n", objects, objects / count);
+        System.out.printf("compact arrays       %,d bytes (%d bytes/entry), %,d distinct names%n",
+                compactBytes, compactBytes / count, compact.entries.getNames().size());
+    }
+
+    /**
+     * Builds the tree a traversal of /data/project would return, directories breadth first until the count is reached
+     */
+    private static FileMetadata objectTree(int entries) {
+        long now = System.currentTimeMillis() * 1_000_000L;
+        FileMetadata root = metadata(new File("/data/project"), true, now);
+        Deque<FileMetadata> directories = new ArrayDeque<>();
+        directories.add(root);
+        int count = 1;
+        while (count < entries && !directories.isEmpty()) {
+            FileMetadata directory = directories.poll();
+            File folder = new File(directory.getPath());
+            for (int i = 0; i < FILES_PER_DIRECTORY && count < entries; i++, count++) {
+                directory.addChild(metadata(new File(folder, "file-" + i + ".dat"), false, now - count * 1_000_003L));
+            }
+            for (int i = 0; i < FANOUT && count < entries; i++, count++) {
+                FileMetadata child = metadata(new File(folder, "dir-" + i), true, now - count * 1_000_003L);
+                directory.addChild(child);
+                directories.add(child);
+            }
+        }
+        return root;
+    }
+
+    private static FileMetadata metadata(File file, boolean directory, long nanos) {
+        String time = FileTime.from(nanos, TimeUnit.NANOSECONDS).toString();
+        FileMetadata fileMetadata = new FileMetadata();
+        fileMetadata.setName(file.getName());
+        fileMetadata.setPath(file.getPath());
+        fileMetadata.setParent(file.getParent());
+        fileMetadata.setAbsolutePath(file.getAbsolutePath());
+        fileMetadata.setCanonicalPath(file.getPath());
+        fileMetadata.setCreationTime(time);
+        fileMetadata.setLastAccessTime(FileTime.from(nanos + 1, TimeUnit.NANOSECONDS).toString());
+        fileMetadata.setLastModifiedTime(FileTime.from(nanos + 2, TimeUnit.NANOSECONDS).toString());
+        fileMetadata.setSize(directory ? 4096 : nanos % 100_000);
+        fileMetadata.setDirectory(directory);
+        fileMetadata.setFile(!directory);
+        fileMetadata.setRegularFile(!directory);
+        fileMetadata.setAbsolute(true);
+        fileMetadata.setCanRead(true);
+        fileMetadata.setCanWrite(true);
+        fileMetadata.setCanExecute(directory);
+        return fileMetadata;
+    }
+
+    /**
+     * Same breadth first layout as the directory index
+     */
+    private static CompactTree compactTree(FileMetadata root, int count) {
+        CompactTree compact = new CompactTree(count);
+        Deque<FileMetadata> directories = new ArrayDeque<>();
+        Deque<Integer> indexes = new ArrayDeque<>();
+        compact.parents[compact.entries.add(root)] = -1;
+        directories.add(root);
+        indexes.add(0);
+        while (!directories.isEmpty()) {
+            FileMetadata directory = directories.poll();
+            int index = indexes.poll();
+            compact.childStarts[index] = compact.entries.size();
+            compact.childCounts[index] = directory.getChildren().size();
+            for (FileMetadata child : directory.getChildren()) {
+                int childIndex = compact.entries.add(child);
+                compact.parents[childIndex] = index;
+                if (child.isDirectory()) {
+                    directories.add(child);
+                    indexes.add(childIndex);
+                }
+            }
+        }
+        compact.entries.trim();
+        compact.entries.getNames().freeze();
+        return compact;
+    }
+
+    private static int count(FileMetadata fileMetadata) {
+        int count = 1;
+        for (FileMetadata child : fileMetadata.getChildren()) {
+            count += count(child);
+        }
+        return count;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static class CompactTree {
+
+        private final CompactEntries entries;
+        private final int[] parents;
+        private final int[] childStarts;
+        private final int[] childCounts;
+
+        CompactTree(int count) {
+            this.entries = new CompactEntries(count, new NameTable());
+            this.parents = new int[count];
+            this.childStarts = new int[count];
+            this.childCounts = new int[count];
+        }
+    }
+}
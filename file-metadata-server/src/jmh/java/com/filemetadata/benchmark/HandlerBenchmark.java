@@ -0,0 +1,97 @@
+package com.filemetadata.benchmark;
+
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.handler.FileMetadataHandler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Measures the steps of a directory request of {@link FileMetadataHandler} separately, on trees of every
+ * {@link TreeShape}: the whole serial traversal (traverseFolderRecursively), the Files.walk based listFiles, listing
+ * the directories only, reading the attributes of every entry with fileMetadata(File), and the Jackson serialization
+ * of the traversed tree. Throughput is reported in operations, i.e. whole trees, per second; run with the gc
+ * profiler (the default of the benchmark profile) for the allocation rate per operation.
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.includes=HandlerBenchmark
+ *
+ * @author Vinod Kandula
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HandlerBenchmark {
+
+    @Param({"BALANCED", "WIDE", "DEEP", "TINY_FILES"})
+    private TreeShape shape;
+
+    private Path root;
+    private File[] directories;
+    private File[] entries;
+    private FileMetadata tree;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = BenchmarkTrees.create(shape);
+        List<File> directoryList = new ArrayList<>();
+        List<File> entryList = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.collect(Collectors.toList())) {
+                entryList.add(path.toFile());
+                if (Files.isDirectory(path)) {
+                    directoryList.add(path.toFile());
+                }
+            }
+        }
+        directories = directoryList.toArray(new File[0]);
+        entries = entryList.toArray(new File[0]);
+        tree = FileMetadataHandler.directoryTree(root.toFile());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkTrees.delete(root);
+    }
+
+    @Benchmark
+    public FileMetadata traverseFolderRecursively() throws IOException {
+        return FileMetadataHandler.directoryTree(root.toFile());
+    }
+
+    @Benchmark
+    public Set<FileMetadata> listFiles() throws IOException {
+        return FileMetadataHandler.listFiles(root.toString(), Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public void listChildren(Blackhole blackhole) {
+        for (File directory : directories) {
+            blackhole.consume(FileMetadataHandler.listChildren(directory));
+        }
+    }
+
+    @Benchmark
+    public void fileMetadata(Blackhole blackhole) throws IOException {
+        for (File entry : entries) {
+            blackhole.consume(FileMetadataHandler.fileMetadata(entry));
+        }
+    }
+
+    @Benchmark
+    public String serialize() throws IOException {
+        return FileMetadataHandler.writeValueAsString(tree);
+    }
+}
@@ -0,0 +1,84 @@
+package com.filemetadata.benchmark;
+
+import com.filemetadata.config.FileMetadataProperties;
+import com.filemetadata.dto.HashReport;
+import com.filemetadata.file.hash.FileHasher;
+import com.filemetadata.file.hash.HashAlgorithm;
+import com.filemetadata.file.traversal.ParallelTreeTraversal;
+import com.filemetadata.file.traversal.TraversalFilter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the hashing throughput of every checksum algorithm on files read through memory mapped regions and
+ * through the direct buffer, with the checksum cache disabled. The files are written once and are in the page
+ * cache, so the algorithms rather than the disk are measured.
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.includes=HashBenchmark
+ *
+ * @author Vinod Kandula
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HashBenchmark {
+
+    @Param({"SHA256", "CRC32C", "XXHASH64"})
+    private HashAlgorithm algorithm;
+
+    @Param({"true", "false"})
+    private boolean mmap;
+
+    @Param({"8"})
+    private int files;
+
+    @Param({"67108864"})
+    private int fileSize;
+
+    @Param({"4"})
+    private int parallelism;
+
+    private Path root;
+    private ParallelTreeTraversal parallelTreeTraversal;
+    private FileHasher fileHasher;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("hash-benchmark");
+        byte[] chunk = new byte[1 << 20];
+        new Random(42).nextBytes(chunk);
+        for (int i = 0; i < files; i++) {
+            try (OutputStream out = Files.newOutputStream(root.resolve("file-" + i))) {
+                for (int written = 0; written < fileSize; written += chunk.length) {
+                    out.write(chunk, 0, Math.min(chunk.length, fileSize - written));
+                }
+            }
+        }
+
+        FileMetadataProperties properties = new FileMetadataProperties();
+        properties.getHash().setMmapThreshold(mmap ? 0 : Long.MAX_VALUE);
+        properties.getHash().setCacheMaxEntries(0);
+        parallelTreeTraversal = new ParallelTreeTraversal(parallelism);
+        fileHasher = new FileHasher(properties, parallelTreeTraversal);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        parallelTreeTraversal.shutdown();
+        BenchmarkTrees.delete(root);
+    }
+
+    @Benchmark
+    public HashReport hash() throws IOException {
+        return fileHasher.hash(root.toFile(), TraversalFilter.NONE, algorithm);
+    }
+}
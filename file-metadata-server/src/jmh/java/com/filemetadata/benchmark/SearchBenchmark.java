@@ -0,0 +1,79 @@
+package com.filemetadata.benchmark;
+
+import com.filemetadata.dto.DirectoryPage;
+import com.filemetadata.file.index.IndexScanner;
+import com.filemetadata.file.index.IndexedTree;
+import com.filemetadata.file.index.NameIndex;
+import com.filemetadata.file.index.NameQuery;
+import com.filemetadata.file.projection.Projection;
+import com.filemetadata.file.store.StorePolicy;
+import com.filemetadata.file.traversal.FollowLinks;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the name searches of the {@link NameIndex} on an indexed synthetic tree, per kind of query, and the time to
+ * build the search index of the tree. The tree is scanned once, so no filesystem access is measured.
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.includes=SearchBenchmark
+ *
+ * @author Vinod Kandula
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param({"prefix:file-42", "contains:-42", "glob:file-*7.dat", "glob:dir-?"})
+    private String query;
+
+    @Param({"false", "true"})
+    private boolean ignoreCase;
+
+    @Param({"1000"})
+    private int limit;
+
+    private File root;
+    private IndexedTree tree;
+    private NameIndex nameIndex;
+    private NameQuery nameQuery;
+    private Projection projection;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path directory = BenchmarkTrees.create(4, 5, 100);
+        try {
+            root = directory.toFile();
+            tree = IndexScanner.scan(root, null, StorePolicy.DEFAULT, FollowLinks.ALWAYS);
+        } finally {
+            BenchmarkTrees.delete(directory);
+        }
+        nameIndex = new NameIndex();
+        nameIndex.update(tree);
+
+        String[] parts = query.split(":", 2);
+        nameQuery = NameQuery.of(parts[0].equals("prefix") ? parts[1] : null, parts[0].equals("contains") ? parts[1] : null,
+                parts[0].equals("glob") ? parts[1] : null, ignoreCase);
+        projection = Projection.of("name,path,size,directory");
+    }
+
+    @Benchmark
+    public DirectoryPage search() {
+        return nameIndex.search(tree, root, nameQuery, projection, null, limit);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public NameIndex build() {
+        NameIndex index = new NameIndex();
+        index.update(tree);
+        return index;
+    }
+}
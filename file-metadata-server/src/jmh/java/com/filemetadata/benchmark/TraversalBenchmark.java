@@ -0,0 +1,63 @@
+package com.filemetadata.benchmark;
+
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.handler.FileMetadataHandler;
+import com.filemetadata.file.traversal.ParallelTreeTraversal;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the serial recursive traversal with the fork/join traversal on the same synthetic tree.
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.includes=TraversalBenchmark
+ *
+ * @author Vinod Kandula
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TraversalBenchmark {
+
+    @Param({"4"})
+    private int fanout;
+
+    @Param({"4"})
+    private int depth;
+
+    @Param({"50"})
+    private int filesPerDirectory;
+
+    @Param({"2", "4", "8"})
+    private int parallelism;
+
+    private Path root;
+    private ParallelTreeTraversal parallelTreeTraversal;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = BenchmarkTrees.create(fanout, depth, filesPerDirectory);
+        parallelTreeTraversal = new ParallelTreeTraversal(parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        parallelTreeTraversal.shutdown();
+        BenchmarkTrees.delete(root);
+    }
+
+    @Benchmark
+    public FileMetadata serialTraversal() throws IOException {
+        return FileMetadataHandler.directoryTree(root.toFile());
+    }
+
+    @Benchmark
+    public FileMetadata parallelTraversal() throws IOException {
+        return parallelTreeTraversal.directoryTree(root.toFile());
+    }
+}
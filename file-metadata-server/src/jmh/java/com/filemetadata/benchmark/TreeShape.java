@@ -0,0 +1,47 @@
+package com.filemetadata.benchmark;
+
+/**
+ * Shapes of the synthetic trees of {@link BenchmarkTrees}, each about 10,000 to 20,000 entries.
+ *
+ * BALANCED   - 4 sub-directories and 50 files per directory, 4 levels deep.
+ * WIDE       - one level of 200 sub-directories with 60 files each.
+ * DEEP       - a chain of 400 nested directories with 30 files each.
+ * TINY_FILES - 2 levels of 2 sub-directories with 2,000 files of at most 16 bytes each.
+ *
+ * @author Vinod Kandula
+ */
+public enum TreeShape {
+
+    BALANCED(4, 4, 50, 512),
+    WIDE(200, 1, 60, 512),
+    DEEP(1, 400, 30, 512),
+    TINY_FILES(2, 2, 2000, 16);
+
+    private final int fanout;
+    private final int depth;
+    private final int filesPerDirectory;
+    private final int maxFileSize;
+
+    TreeShape(int fanout, int depth, int filesPerDirectory, int maxFileSize) {
+        this.fanout = fanout;
+        this.depth = depth;
+        this.filesPerDirectory = filesPerDirectory;
+        this.maxFileSize = maxFileSize;
+    }
+
+    public int getFanout() {
+        return fanout;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getFilesPerDirectory() {
+        return filesPerDirectory;
+    }
+
+    public int getMaxFileSize() {
+        return maxFileSize;
+    }
+}
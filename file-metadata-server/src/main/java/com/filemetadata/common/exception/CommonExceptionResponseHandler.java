@@ -12,6 +12,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.lang.Nullable;
 import org.springframework.validation.BindException;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
 import org.springframework.web.HttpMediaTypeNotSupportedException;
 import org.springframework.web.HttpRequestMethodNotSupportedException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -170,6 +171,20 @@ public class CommonExceptionResponseHandler {
         return handleExceptionInternal(ex, errorResponse, new HttpHeaders(), HttpStatus.METHOD_NOT_ALLOWED);
     }
 
+    // 406
+    @ExceptionHandler({ HttpMediaTypeNotAcceptableException.class })
+    protected ResponseEntity<Object> handleHttpMediaTypeNotAcceptable(final HttpMediaTypeNotAcceptableException ex,
+                                                                      final WebRequest request) {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("None of the accepted media types is supported. Supported media types are ");
+        ex.getSupportedMediaTypes().forEach(t -> builder.append(t + ", "));
+
+        CommonErrorResponse errorResponse = new CommonErrorResponse(exConfig.getAppName(),
+                HttpStatus.NOT_ACCEPTABLE, builder.substring(0, builder.length() - 2), ex.getLocalizedMessage(),
+                request.getDescription(false));
+        return handleExceptionInternal(ex, errorResponse, new HttpHeaders(), HttpStatus.NOT_ACCEPTABLE);
+    }
+
     // 415
     @ExceptionHandler({ HttpMediaTypeNotSupportedException.class })
     protected ResponseEntity<Object> handleHttpMediaTypeNotSupported(final HttpMediaTypeNotSupportedException ex,
@@ -220,6 +235,7 @@ public class CommonExceptionResponseHandler {
     public final ResponseEntity<Object> handleNoSuchFileException(NoSuchFileException ex, WebRequest request) {
         CommonErrorResponse errorResponse = new CommonErrorResponse(exConfig.getAppName(), HttpStatus.NOT_FOUND, ex.toString(), request.getDescription(false));
         log.error("NoSuchFileException with exceptionId: "+errorResponse.getExceptionId(), ex);
+        intercept(errorResponse, ex);
         return handleExceptionInternal(ex, errorResponse, new HttpHeaders(), HttpStatus.NOT_FOUND);
     }
 
@@ -263,6 +279,7 @@ public class CommonExceptionResponseHandler {
                 exConfig.getFusionExceptionProperty().getValue("INTERNAL_SERVER_ERROR"), request.getDescription(false));
 
         errorResponse.addParams(mapParamsFromRequest(request.getParameterMap()));
+        intercept(errorResponse, ex);
         return new ResponseEntity<>(errorResponse, HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
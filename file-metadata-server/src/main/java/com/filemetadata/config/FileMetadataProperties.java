@@ -0,0 +1,368 @@
+package com.filemetadata.config;
+
+import com.filemetadata.file.traversal.FollowLinks;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * File Metadata service properties reader, bound from the filemetadata.* keys of application.properties
+ *
+ * @author Vinod Kandula
+ */
+@Setter
+@Getter
+@ConfigurationProperties(prefix = "filemetadata")
+@Component
+public class FileMetadataProperties {
+
+    private Traversal traversal = new Traversal();
+
+    private Stores stores = new Stores();
+
+    private Cache cache = new Cache();
+
+    private Index index = new Index();
+
+    private Page page = new Page();
+
+    private Compression compression = new Compression();
+
+    private Hash hash = new Hash();
+
+    private Batch batch = new Batch();
+
+    private Feed feed = new Feed();
+
+    private Flight flight = new Flight();
+
+    private Reactive reactive = new Reactive();
+
+    private Jobs jobs = new Jobs();
+
+    private Admission admission = new Admission();
+
+    @Setter
+    @Getter
+    public static class Traversal {
+
+        /**
+         * Number of worker threads scanning sibling directories concurrently.
+         * 0 uses the number of available processors, 1 keeps the serial traversal.
+         */
+        private int parallelism = 0;
+
+        /**
+         * Whether symbolic links to directories are listed (always) or only reported (never). Either way every
+         * directory is listed at most once per traversal, so links looping back up the tree end the descent.
+         */
+        private FollowLinks followLinks = FollowLinks.ALWAYS;
+    }
+
+    @Setter
+    @Getter
+    public static class Stores {
+
+        /**
+         * Limits of the file stores without limits of their own
+         */
+        private Store defaults = new Store();
+
+        /**
+         * Limits by file store type, as reported by FileStore.type(), e.g. nfs, nfs4, cifs, ext4, xfs, apfs
+         */
+        private Map<String, Store> types = new HashMap<>();
+
+        /**
+         * Limits by file store name, the device or remote export, e.g. filemetadata.stores.names[/dev/sdb1]
+         */
+        private Map<String, Store> names = new HashMap<>();
+    }
+
+    @Setter
+    @Getter
+    public static class Store {
+
+        /**
+         * Worker threads scanning the store at the same time, 0 for filemetadata.traversal.parallelism
+         */
+        private int parallelism = 0;
+
+        /**
+         * Directory listings and stats per second on the store over all scans, 0 for no limit
+         */
+        private int maxOperationsPerSecond = 0;
+    }
+
+    @Setter
+    @Getter
+    public static class Cache {
+
+        private boolean enabled = true;
+
+        /**
+         * Invalidate cached directories through a WatchService. When false, entries are only expired by the ttl,
+         * for filesystems where change notifications are not delivered (e.g. NFS, SMB).
+         */
+        private boolean watch = true;
+
+        /**
+         * Maximum age of a cached entry, also a safety net when watching.
+         */
+        private Duration ttl = Duration.ofMinutes(10);
+
+        /**
+         * Maximum number of cached directory listings and files.
+         */
+        private int maxEntries = 100_000;
+
+        /**
+         * Maximum number of cached file metadata, counting every entry of a directory listing.
+         */
+        private long maxWeight = 5_000_000;
+    }
+
+    @Setter
+    @Getter
+    public static class Index {
+
+        /**
+         * Directory holding one binary index file per indexed root, loaded again on startup.
+         */
+        private String directory = System.getProperty("java.io.tmpdir") + "/filemetadata-index";
+
+        /**
+         * Age after which a request answered from the index first rescans the directories whose mtime changed.
+         */
+        private Duration maxAge = Duration.ofMinutes(5);
+    }
+
+    @Setter
+    @Getter
+    public static class Page {
+
+        /**
+         * Entries per page when the request has no limit
+         */
+        private int defaultLimit = 1000;
+
+        /**
+         * Largest limit accepted by a paginated listing
+         */
+        private int maxLimit = 10000;
+    }
+
+    @Setter
+    @Getter
+    public static class Compression {
+
+        /**
+         * Compress responses with gzip or deflate when the client accepts it
+         */
+        private boolean enabled = true;
+
+        /**
+         * Smallest serialized response that is compressed, streamed responses are always compressed
+         */
+        private int minSize = 2048;
+    }
+
+    @Setter
+    @Getter
+    public static class Hash {
+
+        /**
+         * Files at least this large are hashed through memory mapped regions, smaller ones through a direct buffer
+         */
+        private long mmapThreshold = 16 * 1024 * 1024;
+
+        /**
+         * Size of the direct read buffer of every hashing thread
+         */
+        private int bufferSize = 1024 * 1024;
+
+        /**
+         * Maximum number of checksums cached by file key, size and modification time, 0 disables the cache
+         */
+        private int cacheMaxEntries = 100_000;
+    }
+
+    @Setter
+    @Getter
+    public static class Batch {
+
+        /**
+         * Most paths accepted by one POST /filemetadata/files request
+         */
+        private int maxPaths = 10000;
+    }
+
+    @Setter
+    @Getter
+    public static class Feed {
+
+        /**
+         * Changes are collected for this long and sent as one batch, repeated changes of an entry coalesced
+         */
+        private Duration batchWindow = Duration.ofMillis(250);
+
+        /**
+         * Most events sent in one server-sent event, larger batches are split
+         */
+        private int maxBatchSize = 1000;
+
+        /**
+         * Interval of the keep-alive comments, which also detect the subscribers that went away
+         */
+        private Duration heartbeat = Duration.ofSeconds(15);
+
+        /**
+         * Time after which a subscription is closed, clients reconnect
+         */
+        private Duration timeout = Duration.ofMinutes(30);
+
+        /**
+         * Events queued for one subscriber before it is closed as too slow, clients reconnect
+         */
+        private int maxQueuedEvents = 64;
+
+        /**
+         * Most directories watched below one root, the directories beyond it report no changes
+         */
+        private int maxDirectories = 100_000;
+    }
+
+    @Setter
+    @Getter
+    public static class Flight {
+
+        /**
+         * Let identical directory requests running at the same time share one scan
+         */
+        private boolean enabled = true;
+
+        /**
+         * Bytes of a shared stream kept for the requests that join it late. A longer stream takes no more joiners,
+         * and only keeps the bytes its readers have not written yet, failing the readers that fall further behind.
+         */
+        private long maxStreamBuffer = 64 * 1024 * 1024;
+    }
+
+    @Setter
+    @Getter
+    public static class Reactive {
+
+        /**
+         * Threads the reactive directory traversals run on, 0 for ten per processor
+         */
+        private int maxThreads = 0;
+
+        /**
+         * Traversal steps waiting for a thread before new reactive directory requests are rejected
+         */
+        private int maxQueued = 100_000;
+    }
+
+    @Setter
+    @Getter
+    public static class Jobs {
+
+        /**
+         * Directory of the job records, checkpoints and result spools of the scan jobs, resumed from after a restart
+         */
+        private String directory = System.getProperty("java.io.tmpdir") + "/filemetadata-jobs";
+
+        /**
+         * Scan jobs running at the same time, the others wait by priority
+         */
+        private int maxRunning = 2;
+
+        /**
+         * Scan jobs waiting to run before new ones are rejected
+         */
+        private int maxQueued = 100;
+
+        /**
+         * How often a running job records where to resume
+         */
+        private Duration checkpointInterval = Duration.ofSeconds(10);
+
+        /**
+         * How long finished jobs and their results are kept
+         */
+        private Duration retention = Duration.ofHours(24);
+    }
+
+    @Setter
+    @Getter
+    public static class Admission {
+
+        /**
+         * Admit lookups and directory scans through separate bulkheads, so a burst of scans cannot take the request
+         * threads lookups need
+         */
+        private boolean enabled = true;
+
+        /**
+         * Bulkhead of the file lookups (/file, /files)
+         */
+        private Bulkhead lookup = new Bulkhead(64, 256, Duration.ofSeconds(2));
+
+        /**
+         * Bulkhead of the directory scans (/directory and its streams and pages, /directory/usage, /hash,
+         * /duplicates, /search)
+         */
+        private Bulkhead scan = new Bulkhead(8, 32, Duration.ofSeconds(10));
+
+        /**
+         * Entries of a directory taking one more permit of the scan bulkhead, when its entry count is known from the
+         * directory index or an earlier scan job
+         */
+        private long entriesPerPermit = 100_000;
+
+        /**
+         * Request header naming the client, e.g. X-Client-Id, empty to always use the remote address. Clients can send
+         * any name, so only set it when a trusted proxy in front of the service sets or overwrites the header.
+         */
+        private String clientHeader = "";
+
+        /**
+         * Requests of one client admitted at the same time over both bulkheads, 0 for no limit
+         */
+        private int maxPerClient = 16;
+    }
+
+    @Setter
+    @Getter
+    public static class Bulkhead {
+
+        /**
+         * Permits of requests running at the same time, a scan takes more than one by its estimated size
+         */
+        private int maxConcurrent;
+
+        /**
+         * Requests waiting for permits before new ones are rejected with 503
+         */
+        private int maxQueued;
+
+        /**
+         * How long a request waits for permits before it is rejected with 503
+         */
+        private Duration maxWait;
+
+        public Bulkhead() {
+        }
+
+        public Bulkhead(int maxConcurrent, int maxQueued, Duration maxWait) {
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueued = maxQueued;
+            this.maxWait = maxWait;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.filemetadata.config;
+
+import com.filemetadata.file.admission.AdmissionControl;
+import com.filemetadata.file.admission.AdmissionInterceptor;
+import com.filemetadata.file.admission.Lane;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Registers the admission of every {@link Lane} on its API paths, when filemetadata.admission.enabled
+ *
+ * @author Vinod Kandula
+ */
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    @Autowired
+    private FileMetadataProperties properties;
+
+    @Autowired
+    private AdmissionControl admissionControl;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        FileMetadataProperties.Admission admission = properties.getAdmission();
+        if (!admission.isEnabled()) {
+            return;
+        }
+        for (Lane lane : Lane.values()) {
+            registry.addInterceptor(new AdmissionInterceptor(admissionControl, lane, admission.getClientHeader()))
+                    .addPathPatterns(lane.getPaths());
+        }
+    }
+}
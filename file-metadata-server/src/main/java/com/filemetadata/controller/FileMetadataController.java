@@ -1,14 +1,60 @@
 package com.filemetadata.controller;
 
+import com.filemetadata.dto.CacheStats;
+import com.filemetadata.dto.DirectoryFilter;
+import com.filemetadata.config.FileMetadataProperties;
+import com.filemetadata.dto.DirectoryPage;
+import com.filemetadata.dto.DirectoryUsage;
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.dto.FileBatchRequest;
+import com.filemetadata.dto.HashReport;
+import com.filemetadata.dto.ScanJobStatus;
+import com.filemetadata.file.encoding.ContentCoding;
+import com.filemetadata.file.encoding.EntityTag;
+import com.filemetadata.file.encoding.MetadataEncoder;
+import com.filemetadata.file.encoding.ResponseEncoding;
+import com.filemetadata.file.handler.DirectorySnapshot;
 import com.filemetadata.file.handler.FileMetadataHandler;
+import com.filemetadata.file.hash.HashAlgorithm;
+import com.filemetadata.file.handler.FileMetadataService;
+import com.filemetadata.file.index.Consistency;
+import com.filemetadata.file.index.NameQuery;
+import com.filemetadata.file.projection.Projection;
+import com.filemetadata.file.stream.MetadataStreamWriter;
+import com.filemetadata.file.stream.StreamFormat;
+import com.filemetadata.file.traversal.TraversalFilter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MissingServletRequestParameterException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.constraints.NotNull;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
- * API to fetch Directory & Files metadata recursively for the given path
+ * API to fetch Directory & Files metadata recursively for the given path. Responses are encoded as JSON, Smile, CBOR,
+ * Protobuf or XML as negotiated from the Accept header, and indented only with pretty=true. Responses carry a strong
+ * ETag answering If-None-Match with 304, and are compressed as negotiated from the Accept-Encoding header.
  *
  * @author Vinod Kandula
  */
@@ -17,36 +63,536 @@ import javax.validation.constraints.NotNull;
 @RequestMapping(path = "/filemetadata")
 @Slf4j
 public class FileMetadataController {
+
+    private static final String VARY = HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING;
+
+    private static final MediaType FLUX_MEDIA_TYPE = MediaType.parseMediaType(StreamFormat.NDJSON.getMediaType());
+
+    @Autowired
+    private FileMetadataService fileMetadataService;
+
+    @Autowired
+    private FileMetadataProperties properties;
+
     /**
      * API to fetch File metadata for the given file path
      *
      * @param path
+     * @param fields comma separated attributes to return, all of them when not given
+     * @param pretty
+     * @param headers Accept, Accept-Encoding and If-None-Match
      * @return
      * @throws Exception
      */
     @CrossOrigin
     @GetMapping(path = "/file")
-    public String fileInfo(@NotNull @RequestParam(value = "path") String path) throws Exception {
+    public ResponseEntity<byte[]> fileInfo(@NotNull @RequestParam(value = "path") String path,
+                                           @RequestParam(value = "fields", required = false) String fields,
+                                           @RequestParam(value = "pretty", defaultValue = "false") boolean pretty,
+                                           @RequestHeader HttpHeaders headers) throws Exception {
         if(path.isEmpty())
             throw new MissingServletRequestParameterException("path", "String.class");
 
-        return FileMetadataHandler.fileMetadata(path);
+        MetadataEncoder encoder = new MetadataEncoder(ResponseEncoding.negotiate(headers.getFirst(HttpHeaders.ACCEPT)), Projection.of(fields), pretty);
+        return response(headers, encoder, null, () -> fileMetadataService.fileMetadata(path, encoder));
+    }
+
+    /**
+     * API to fetch File metadata for many file paths in one request. Paths are read in parallel, and a path that is
+     * missing or not a file gets the error code and description of the file API inline in its result.
+     *
+     * @param request paths, at most filemetadata.batch.max-paths of them
+     * @param fields  comma separated attributes to return for every file, all of them when not given
+     * @param pretty
+     * @param headers Accept and Accept-Encoding
+     * @return a result per path, in the order of the paths
+     * @throws Exception
+     */
+    @CrossOrigin
+    @PostMapping(path = "/files")
+    public ResponseEntity<byte[]> filesInfo(@RequestBody FileBatchRequest request,
+                                            @RequestParam(value = "fields", required = false) String fields,
+                                            @RequestParam(value = "pretty", defaultValue = "false") boolean pretty,
+                                            @RequestHeader HttpHeaders headers) throws Exception {
+        MetadataEncoder encoder = new MetadataEncoder(ResponseEncoding.negotiate(headers.getFirst(HttpHeaders.ACCEPT)), Projection.of(fields), pretty);
+        return encoded(headers, encoder, null, fileMetadataService.filesMetadata(request.getPaths(), encoder));
     }
 
     /**
-     * API to fetch Directory & Files metadata recursively for the given directory path
+     * API to fetch Directory & Files metadata recursively for the given directory path, scanned at request time
+     * (consistency=fresh) or answered from the persistent directory index (consistency=index)
      *
      * @param path
+     * @param consistency
+     * @param fields      comma separated attributes to return for every entry, all of them when not given
+     * @param pretty
+     * @param headers Accept, Accept-Encoding and If-None-Match
+     * @param filter      maxDepth, include, exclude, minSize, maxSize, modifiedAfter, modifiedBefore, type, hidden
      * @return
      * @throws Exception
      */
     @CrossOrigin
     @GetMapping(path = "/directory")
-    public String directoriesAndFilesInfo(@NotNull @RequestParam(value = "path") String path) throws Exception {
+    public ResponseEntity<byte[]> directoriesAndFilesInfo(@NotNull @RequestParam(value = "path") String path,
+                                                          @RequestParam(value = "consistency", defaultValue = "fresh") String consistency,
+                                                          @RequestParam(value = "fields", required = false) String fields,
+                                                          @RequestParam(value = "pretty", defaultValue = "false") boolean pretty,
+                                                          @RequestHeader HttpHeaders headers,
+                                                          DirectoryFilter filter) throws Exception {
+        if(path.isEmpty())
+            throw new MissingServletRequestParameterException("path", "String.class");
+
+        MetadataEncoder encoder = new MetadataEncoder(ResponseEncoding.negotiate(headers.getFirst(HttpHeaders.ACCEPT)), Projection.of(fields), pretty);
+        Consistency directoryConsistency = Consistency.of(consistency);
+        DirectorySnapshot snapshot = fileMetadataService.directorySnapshot(path, directoryConsistency, filter);
+        Long fingerprint = snapshot.getFingerprint();
+        String tag = fingerprint != null
+                ? EntityTag.of(fingerprint, variant(path, directoryConsistency, fields, pretty, encoder.getEncoding(), filter)) : null;
+        return response(headers, encoder, tag,
+                () -> fileMetadataService.listDirectoriesAndFilesMetadata(snapshot, encoder));
+    }
+
+    /**
+     * API to stream Directory & Files metadata recursively for the given directory path.
+     * Entries are written to the response while the directory is being scanned, as nested JSON (format=json)
+     * or as one entry per line (format=ndjson). Protobuf is always streamed as a flat list of length-delimited messages.
+     *
+     * @param path
+     * @param format
+     * @param consistency
+     * @param fields
+     * @param pretty
+     * @param headers Accept, Accept-Encoding and If-None-Match
+     * @param filter
+     * @return
+     * @throws Exception
+     */
+    @CrossOrigin
+    @GetMapping(path = "/directory", params = "format")
+    public ResponseEntity<StreamingResponseBody> directoriesAndFilesStream(@NotNull @RequestParam(value = "path") String path,
+                                                                           @RequestParam(value = "format") String format,
+                                                                           @RequestParam(value = "consistency", defaultValue = "fresh") String consistency,
+                                                                           @RequestParam(value = "fields", required = false) String fields,
+                                                                           @RequestParam(value = "pretty", defaultValue = "false") boolean pretty,
+                                                                           @RequestHeader HttpHeaders headers,
+                                                                           DirectoryFilter filter) throws Exception {
+        if(path.isEmpty())
+            throw new MissingServletRequestParameterException("path", "String.class");
+
+        StreamFormat streamFormat = StreamFormat.of(format);
+        Consistency streamConsistency = Consistency.of(consistency);
+        MetadataEncoder encoder = new MetadataEncoder(ResponseEncoding.negotiate(headers.getFirst(HttpHeaders.ACCEPT), streamFormat), Projection.of(fields), pretty);
+        DirectorySnapshot snapshot = fileMetadataService.directorySnapshot(path, streamConsistency, filter);
+        Long fingerprint = snapshot.getFingerprint();
+        String tag = fingerprint != null
+                ? EntityTag.of(fingerprint, variant(path, streamFormat, streamConsistency, fields, pretty, encoder.getEncoding(), filter)) : null;
+        // the size of a stream is not known up front, so it is compressed whenever the client accepts it
+        ContentCoding coding = contentCoding(headers);
+        if (EntityTag.matches(headers.getFirst(HttpHeaders.IF_NONE_MATCH), tag))
+            return notModified(tag, coding);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(encoder.getMediaType(streamFormat))
+                .header(HttpHeaders.VARY, VARY);
+        if (tag != null)
+            response.eTag(EntityTag.header(tag, coding));
+        if (coding != ContentCoding.IDENTITY)
+            response.header(HttpHeaders.CONTENT_ENCODING, coding.getName());
+
+        return response.body(out -> {
+            try (OutputStream encoded = coding.wrap(out)) {
+                fileMetadataService.streamDirectoriesAndFilesMetadata(snapshot, streamFormat, encoder, encoded);
+            }
+        });
+    }
+
+    /**
+     * API to stream Directory & Files metadata recursively for the given directory path as JSON lines, from a publisher
+     * traversing the directory on its own threads only as fast as the client reads. The request thread is released
+     * while the directory is scanned. Always scanned at request time, and neither compressed nor tagged.
+     *
+     * @param path
+     * @param fields comma separated attributes to return for every entry, all of them when not given
+     * @param filter maxDepth, include, exclude, minSize, maxSize, modifiedAfter, modifiedBefore, type, hidden
+     * @return
+     * @throws Exception
+     */
+    @CrossOrigin
+    @GetMapping(path = "/directory/flux")
+    public Flux<String> directoriesAndFilesFlux(@NotNull @RequestParam(value = "path") String path,
+                                               @RequestParam(value = "fields", required = false) String fields,
+                                               HttpServletRequest request,
+                                               DirectoryFilter filter) throws Exception {
+        if(path.isEmpty())
+            throw new MissingServletRequestParameterException("path", "String.class");
+
+        MetadataEncoder encoder = new MetadataEncoder(ResponseEncoding.JSON, Projection.of(fields), false);
+        File folder = FileMetadataHandler.directory(path);
+        // the content type of the lines, set only once the request is valid as produces= would also apply to its errors
+        request.setAttribute(HandlerMapping.PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE, Collections.singleton(FLUX_MEDIA_TYPE));
+        return fileMetadataService.directoryFlux(folder, TraversalFilter.of(folder, filter), encoder.getProjection())
+                .map(entry -> line(encoder, entry));
+    }
+
+    /**
+     * API to page through Directory & Files metadata recursively for the given directory path. Entries are returned
+     * depth first in a stable order, the nextCursor of a page fetches the page after it.
+     *
+     * @param path
+     * @param limit
+     * @param cursor
+     * @param fields
+     * @param pretty
+     * @param headers Accept, Accept-Encoding and If-None-Match
+     * @param filter
+     * @return the {@link DirectoryPage} with the requested fields of its entries
+     * @throws Exception
+     */
+    @CrossOrigin
+    @GetMapping(path = "/directory/page")
+    public ResponseEntity<byte[]> directoriesAndFilesPage(@NotNull @RequestParam(value = "path") String path,
+                                                          @RequestParam(value = "limit", required = false) Integer limit,
+                                                          @RequestParam(value = "cursor", required = false) String cursor,
+                                                          @RequestParam(value = "fields", required = false) String fields,
+                                                          @RequestParam(value = "pretty", defaultValue = "false") boolean pretty,
+                                                          @RequestHeader HttpHeaders headers,
+                                                          DirectoryFilter filter) throws Exception {
+        if(path.isEmpty())
+            throw new MissingServletRequestParameterException("path", "String.class");
+
+        MetadataEncoder encoder = new MetadataEncoder(ResponseEncoding.negotiate(headers.getFirst(HttpHeaders.ACCEPT)), Projection.of(fields), pretty);
+        return response(headers, encoder, null, () -> {
+            DirectoryPage page = fileMetadataService.directoryPage(path, cursor, limit, filter, encoder.getProjection());
+            return encoder.encode(page);
+        });
+    }
+
+    /**
+     * API to search the names of the entries below the given directory path, from the index of the directory. The
+     * matching entries are returned page by page in breadth first order, shallow entries first.
+     *
+     * @param path
+     * @param prefix     names starting with it
+     * @param contains   names containing it
+     * @param glob       names matching it: *, ?, [abc], [!abc], [a-z] and {a,b}, only one of prefix, contains and glob
+     * @param ignoreCase
+     * @param limit      entries per page, filemetadata.page.default-limit when not given
+     * @param cursor     nextCursor of the previous page, not given for the first page
+     * @param fields     comma separated attributes to return, all of them when not given
+     * @param pretty
+     * @param headers    Accept, Accept-Encoding and If-None-Match
+     * @return the {@link DirectoryPage} of the matching entries
+     * @throws Exception
+     */
+    @CrossOrigin
+    @GetMapping(path = "/search")
+    public ResponseEntity<byte[]> search(@NotNull @RequestParam(value = "path") String path,
+                                         @RequestParam(value = "prefix", required = false) String prefix,
+                                         @RequestParam(value = "contains", required = false) String contains,
+                                         @RequestParam(value = "glob", required = false) String glob,
+                                         @RequestParam(value = "ignoreCase", defaultValue = "false") boolean ignoreCase,
+                                         @RequestParam(value = "limit", required = false) Integer limit,
+                                         @RequestParam(value = "cursor", required = false) String cursor,
+                                         @RequestParam(value = "fields", required = false) String fields,
+                                         @RequestParam(value = "pretty", defaultValue = "false") boolean pretty,
+                                         @RequestHeader HttpHeaders headers) throws Exception {
+        if(path.isEmpty())
+            throw new MissingServletRequestParameterException("path", "String.class");
+
+        NameQuery query = NameQuery.of(prefix, contains, glob, ignoreCase);
+        MetadataEncoder encoder = new MetadataEncoder(ResponseEncoding.negotiate(headers.getFirst(HttpHeaders.ACCEPT)), Projection.of(fields), pretty);
+        return response(headers, encoder, null, () -> {
+            DirectoryPage page = fileMetadataService.search(path, query, cursor, limit, encoder.getProjection());
+            return encoder.encode(page);
+        });
+    }
+
+    /**
+     * API to sum the size, file and directory counts and newest modification time of the given directory path and of
+     * its sub-directories down to the given depth (du)
+     *
+     * @param path
+     * @param depth levels of sub-directories reported with their own usage, 0 for the totals of the directory only
+     * @return
+     * @throws Exception
+     */
+    @CrossOrigin
+    @GetMapping(path = "/directory/usage")
+    public DirectoryUsage directoryUsage(@NotNull @RequestParam(value = "path") String path,
+                                         @RequestParam(value = "depth", defaultValue = "1") int depth) throws Exception {
         if(path.isEmpty())
             throw new MissingServletRequestParameterException("path", "String.class");
 
-        return FileMetadataHandler.listDirectoriesAndFilesMetadata(path);
+        return fileMetadataService.directoryUsage(path, depth);
     }
 
+    /**
+     * API to fetch the SHA-256, CRC32C or xxHash64 checksum of the given file, or of every regular file below the given
+     * directory, with the throughput of the bytes read
+     *
+     * @param path
+     * @param algorithm sha256, crc32c or xxhash64
+     * @param filter    maxDepth, include, exclude, minSize, maxSize, modifiedAfter, modifiedBefore, hidden of a directory
+     * @return
+     * @throws Exception
+     */
+    @CrossOrigin
+    @GetMapping(path = "/hash")
+    public HashReport hash(@NotNull @RequestParam(value = "path") String path,
+                           @RequestParam(value = "algorithm", defaultValue = "sha256") String algorithm,
+                           DirectoryFilter filter) throws Exception {
+        if(path.isEmpty())
+            throw new MissingServletRequestParameterException("path", "String.class");
+
+        return fileMetadataService.hash(path, HashAlgorithm.of(algorithm), filter);
+    }
+
+    /**
+     * API to stream the groups of duplicate files below the given directory, one JSON object per line (ndjson) as soon
+     * as a group is confirmed. Files are compared by size, then by a hash of their first and last 64 KB, and only the
+     * remaining candidates are hashed in full.
+     *
+     * @param path
+     * @param algorithm of the full hash: sha256, crc32c or xxhash64
+     * @param headers   Accept-Encoding
+     * @param filter    maxDepth, include, exclude, minSize, maxSize, modifiedAfter, modifiedBefore, hidden
+     * @return
+     * @throws Exception
+     */
+    @CrossOrigin
+    @GetMapping(path = "/duplicates")
+    public ResponseEntity<StreamingResponseBody> duplicates(@NotNull @RequestParam(value = "path") String path,
+                                                            @RequestParam(value = "algorithm", defaultValue = "sha256") String algorithm,
+                                                            @RequestHeader HttpHeaders headers,
+                                                            DirectoryFilter filter) throws Exception {
+        if(path.isEmpty())
+            throw new MissingServletRequestParameterException("path", "String.class");
+
+        File folder = FileMetadataHandler.directory(path);
+        TraversalFilter traversalFilter = TraversalFilter.of(folder, filter);
+        HashAlgorithm hashAlgorithm = HashAlgorithm.of(algorithm);
+
+        ContentCoding coding = contentCoding(headers);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(StreamFormat.NDJSON.getMediaType()))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (coding != ContentCoding.IDENTITY)
+            response.header(HttpHeaders.CONTENT_ENCODING, coding.getName());
+
+        return response.body(out -> {
+            try (OutputStream encoded = coding.wrap(out)) {
+                fileMetadataService.streamDuplicates(folder, traversalFilter, hashAlgorithm, encoded);
+            }
+        });
+    }
+
+    /**
+     * API to subscribe to the changes below the given directory path as server-sent events. Every "changes" event
+     * holds a batch of create, modify, delete and rescan events with the fresh metadata of the changed entries.
+     *
+     * @param path
+     * @param fields comma separated attributes of the sent metadata, all of them when not given
+     * @return
+     * @throws Exception
+     */
+    @CrossOrigin
+    @GetMapping(path = "/directory/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter directoryChanges(@NotNull @RequestParam(value = "path") String path,
+                                       @RequestParam(value = "fields", required = false) String fields) throws Exception {
+        if(path.isEmpty())
+            throw new MissingServletRequestParameterException("path", "String.class");
+
+        return fileMetadataService.subscribeChanges(path, fields);
+    }
+
+    /**
+     * API to scan the given directory path in the background. The job is queued by priority and its entries are
+     * written to a result file as ndjson, downloaded from the result link of its status once it completed.
+     *
+     * @param path
+     * @param fields   comma separated attributes written for every entry, all of them when not given
+     * @param priority jobs of a higher priority start first
+     * @param filter   maxDepth, include, exclude, minSize, maxSize, modifiedAfter, modifiedBefore, hidden
+     * @return 202 with the status of the queued job, located at /filemetadata/scans/{id}
+     * @throws Exception
+     */
+    @CrossOrigin
+    @PostMapping(path = "/scans")
+    public ResponseEntity<ScanJobStatus> submitScan(@NotNull @RequestParam(value = "path") String path,
+                                                    @RequestParam(value = "fields", required = false) String fields,
+                                                    @RequestParam(value = "priority", defaultValue = "0") int priority,
+                                                    DirectoryFilter filter) throws Exception {
+        if(path.isEmpty())
+            throw new MissingServletRequestParameterException("path", "String.class");
+
+        ScanJobStatus status = fileMetadataService.submitScan(path, fields, filter, priority);
+        return ResponseEntity.accepted()
+                .location(URI.create("/filemetadata/scans/" + status.getId()))
+                .body(status);
+    }
+
+    /**
+     * API to list the scan jobs kept, in the order they were submitted
+     *
+     * @return
+     */
+    @CrossOrigin
+    @GetMapping(path = "/scans")
+    public List<ScanJobStatus> scans() {
+        return fileMetadataService.scans();
+    }
+
+    /**
+     * API to fetch the state and progress of a scan job: entries and bytes so far, their rates and the estimated time
+     * left when an earlier scan of the same directory is known
+     *
+     * @param id
+     * @return
+     */
+    @CrossOrigin
+    @GetMapping(path = "/scans/{id}")
+    public ScanJobStatus scan(@PathVariable("id") String id) {
+        return fileMetadataService.scan(id);
+    }
+
+    /**
+     * API to cancel a queued or running scan job, the job and its result are deleted
+     *
+     * @param id
+     * @return the last status of the job
+     */
+    @CrossOrigin
+    @DeleteMapping(path = "/scans/{id}")
+    public ScanJobStatus cancelScan(@PathVariable("id") String id) {
+        return fileMetadataService.cancelScan(id);
+    }
+
+    /**
+     * API to download the ndjson result of a completed scan job, Range requests resume an interrupted download
+     *
+     * @param id
+     * @return
+     */
+    @CrossOrigin
+    @GetMapping(path = "/scans/{id}/result")
+    public ResponseEntity<Resource> scanResult(@PathVariable("id") String id) {
+        File result = fileMetadataService.scanResult(id);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(StreamFormat.NDJSON.getMediaType()))
+                .body(new FileSystemResource(result));
+    }
+
+    /**
+     * API to fetch the hit, miss and eviction counters of the metadata cache
+     *
+     * @return
+     */
+    @CrossOrigin
+    @GetMapping(path = "/cache")
+    public CacheStats cacheStats() {
+        return fileMetadataService.cacheStats();
+    }
+
+    /**
+     * Answers If-None-Match with 304 before the body is built when the tag is known up front, and otherwise tags the
+     * built body with its MD5
+     *
+     * @param headers
+     * @param encoder
+     * @param tag     from the fingerprint of the entries, null when not known before the body is built
+     * @param body
+     * @return
+     * @throws IOException
+     */
+    private ResponseEntity<byte[]> response(HttpHeaders headers, MetadataEncoder encoder, String tag, Body body) throws IOException {
+        String ifNoneMatch = headers.getFirst(HttpHeaders.IF_NONE_MATCH);
+        if (EntityTag.matches(ifNoneMatch, tag)) {
+            // the body is not built, but it is the one the client holds: held compressed, it is large enough to be
+            // compressed again
+            ContentCoding held = EntityTag.heldCoding(ifNoneMatch, tag);
+            return notModified(tag, held == ContentCoding.IDENTITY ? ContentCoding.IDENTITY : contentCoding(headers));
+        }
+
+        byte[] bytes = body.build();
+        if (tag == null) {
+            tag = EntityTag.of(bytes);
+            if (EntityTag.matches(ifNoneMatch, tag))
+                return notModified(tag, contentCoding(headers, bytes));
+        }
+
+        return encoded(headers, encoder, tag, bytes);
+    }
+
+    /**
+     * Compresses a body of at least filemetadata.compression.min-size bytes as accepted by the client
+     *
+     * @param headers
+     * @param encoder
+     * @param tag     null for a response without ETag
+     * @param bytes
+     * @return
+     * @throws IOException
+     */
+    private ResponseEntity<byte[]> encoded(HttpHeaders headers, MetadataEncoder encoder, String tag, byte[] bytes) throws IOException {
+        ContentCoding coding = contentCoding(headers, bytes);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(encoder.getMediaType())
+                .header(HttpHeaders.VARY, VARY);
+        if (tag != null)
+            response.eTag(EntityTag.header(tag, coding));
+        if (coding != ContentCoding.IDENTITY)
+            response.header(HttpHeaders.CONTENT_ENCODING, coding.getName());
+
+        return response.body(coding.encode(bytes));
+    }
+
+    /**
+     * @param tag
+     * @param coding the 200 would have been sent in, its ETag is repeated
+     * @return
+     */
+    private <T> ResponseEntity<T> notModified(String tag, ContentCoding coding) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(EntityTag.header(tag, coding))
+                .header(HttpHeaders.VARY, VARY)
+                .build();
+    }
+
+    private ContentCoding contentCoding(HttpHeaders headers) {
+        if (!properties.getCompression().isEnabled())
+            return ContentCoding.IDENTITY;
+
+        return ContentCoding.negotiate(headers.getFirst(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    /**
+     * @return the coding of a body built up front, only compressed from filemetadata.compression.min-size bytes
+     */
+    private ContentCoding contentCoding(HttpHeaders headers, byte[] bytes) {
+        return bytes.length >= properties.getCompression().getMinSize() ? contentCoding(headers) : ContentCoding.IDENTITY;
+    }
+
+    /**
+     * @return the entry as the line the ndjson stream writes for it
+     */
+    private static String line(MetadataEncoder encoder, FileMetadata entry) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MetadataStreamWriter writer = encoder.writer(out, StreamFormat.NDJSON, true)) {
+            writer.visitFile(entry);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the request parameters shaping a response, part of its ETag
+     */
+    private static String variant(Object... parameters) {
+        return Arrays.toString(parameters);
+    }
+
+    private interface Body {
+        byte[] build() throws IOException;
+    }
 }
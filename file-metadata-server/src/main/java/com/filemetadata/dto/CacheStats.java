@@ -0,0 +1,21 @@
+package com.filemetadata.dto;
+
+import lombok.Data;
+
+/**
+ * @author Vinod Kandula
+ */
+@Data
+public class CacheStats {
+
+    private boolean enabled;
+    private String mode;
+    private long entries;
+    private long weight;
+    private long watchedDirectories;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+    private long expirations;
+}
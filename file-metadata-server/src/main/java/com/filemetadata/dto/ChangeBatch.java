@@ -0,0 +1,20 @@
+package com.filemetadata.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The changes below a watched directory coalesced over one batch window
+ *
+ * @author Vinod Kandula
+ */
+@Data
+public class ChangeBatch {
+
+    private String root;
+    // increasing per root, the id of the server-sent event
+    private long sequence;
+    private List<ChangeEvent> events = new ArrayList<>();
+}
@@ -0,0 +1,20 @@
+package com.filemetadata.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+/**
+ * A change of one entry below a watched directory, with the metadata of the entry after the change
+ *
+ * @author Vinod Kandula
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ChangeEvent {
+
+    // create, modify, delete or rescan
+    private String kind;
+    private String path;
+    // null for delete, the whole subtree for rescan
+    private FileMetadata metadata;
+}
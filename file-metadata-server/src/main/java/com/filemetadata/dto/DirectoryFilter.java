@@ -0,0 +1,25 @@
+package com.filemetadata.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Filter query parameters of the directory APIs, bound from the request and compiled into a
+ * {@link com.filemetadata.file.traversal.TraversalFilter}
+ *
+ * @author Vinod Kandula
+ */
+@Data
+public class DirectoryFilter {
+
+    private Integer maxDepth;
+    private List<String> include;
+    private List<String> exclude;
+    private Long minSize;
+    private Long maxSize;
+    private String modifiedAfter;
+    private String modifiedBefore;
+    private String type;
+    private Boolean hidden;
+}
@@ -0,0 +1,21 @@
+package com.filemetadata.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One page of the entries below a directory, in the order of a depth first traversal with sorted children
+ *
+ * @author Vinod Kandula
+ */
+@Data
+public class DirectoryPage {
+
+    private String path;
+    private int limit;
+    private List<FileMetadata> entries = new ArrayList<>();
+    // null on the last page
+    private String nextCursor;
+}
@@ -0,0 +1,27 @@
+package com.filemetadata.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Disk usage of a directory and everything below it, with the usage of its sub-directories down to the requested
+ * depth
+ *
+ * @author Vinod Kandula
+ */
+@Data
+public class DirectoryUsage {
+
+    private String name;
+    private String path;
+    // bytes of the directory and of every entry below it, hard linked files counted once
+    private long size;
+    private long fileCount;
+    private long directoryCount;
+    // newest modification time of the directory and of every entry below it
+    private String lastModifiedTime;
+
+    private List<DirectoryUsage> children = new ArrayList<>();
+}
@@ -0,0 +1,23 @@
+package com.filemetadata.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Files of the same size and checksum, paths of one file through several hard links counted once
+ *
+ * @author Vinod Kandula
+ */
+@Data
+public class DuplicateGroup {
+
+    private long size;
+    private String algorithm;
+    private String hash;
+    private int count;
+    // bytes taken by all copies but one
+    private long wastedBytes;
+    private List<String> paths = new ArrayList<>();
+}
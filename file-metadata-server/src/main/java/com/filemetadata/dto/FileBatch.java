@@ -0,0 +1,17 @@
+package com.filemetadata.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Results of a batch, in the order of the requested paths
+ *
+ * @author Vinod Kandula
+ */
+@Data
+public class FileBatch {
+
+    private List<FileResult> results = new ArrayList<>();
+}
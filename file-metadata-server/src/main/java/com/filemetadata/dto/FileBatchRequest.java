@@ -0,0 +1,17 @@
+package com.filemetadata.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Paths of the files whose metadata is fetched in one request
+ *
+ * @author Vinod Kandula
+ */
+@Data
+public class FileBatchRequest {
+
+    private List<String> paths = new ArrayList<>();
+}
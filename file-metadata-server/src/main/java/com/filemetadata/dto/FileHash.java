@@ -0,0 +1,20 @@
+package com.filemetadata.dto;
+
+import lombok.Data;
+
+/**
+ * Checksum of the content of one file
+ *
+ * @author Vinod Kandula
+ */
+@Data
+public class FileHash {
+
+    private String path;
+    private long size;
+    // lower case hex, null when the file could not be read
+    private String hash;
+    // answered from the checksum cache without reading the file
+    private boolean cached;
+    private String error;
+}
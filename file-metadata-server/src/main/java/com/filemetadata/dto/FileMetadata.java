@@ -1,6 +1,9 @@
 package com.filemetadata.dto;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -9,8 +12,14 @@ import java.util.List;
  * @author Vinod Kandula
  */
 @Data
+@JsonFilter(FileMetadata.FIELDS_FILTER)
 public class FileMetadata {
 
+    /**
+     * Jackson filter selecting the properties requested with fields=
+     */
+    public static final String FIELDS_FILTER = "fields";
+
     private String name;
     private String path;
     private long size;
@@ -32,12 +41,59 @@ public class FileMetadata {
 
     List<FileMetadata> children;
 
+    /**
+     * Device and inode of the entry, or of the target of a symbolic link, 0 when not read. Not part of the API: a
+     * traversal tells directories it has already visited apart by them.
+     */
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    private long device;
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    private long inode;
+
     public FileMetadata() {
         this.children = new ArrayList<>();
     }
 
+    /**
+     * Copies the attributes of the given entry, without its children
+     *
+     * @param other
+     */
+    public FileMetadata(FileMetadata other) {
+        this();
+        this.name = other.name;
+        this.path = other.path;
+        this.size = other.size;
+        this.parent = other.parent;
+        this.absolutePath = other.absolutePath;
+        this.isAbsolute = other.isAbsolute;
+        this.canonicalPath = other.canonicalPath;
+        this.creationTime = other.creationTime;
+        this.lastAccessTime = other.lastAccessTime;
+        this.lastModifiedTime = other.lastModifiedTime;
+        this.isDirectory = other.isDirectory;
+        this.isFile = other.isFile;
+        this.isHidden = other.isHidden;
+        this.isRegularFile = other.isRegularFile;
+        this.isSymbolicLink = other.isSymbolicLink;
+        this.canRead = other.canRead;
+        this.canWrite = other.canWrite;
+        this.canExecute = other.canExecute;
+        this.device = other.device;
+        this.inode = other.inode;
+    }
+
     public void addChild(FileMetadata fileAttributes) {
         this.children.add(fileAttributes);
     }
 
+    /**
+     * @return true when the device and inode were read
+     */
+    public boolean hasFileKey() {
+        return inode != 0;
+    }
+
 }
@@ -0,0 +1,20 @@
+package com.filemetadata.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+/**
+ * Metadata of one path of a batch, or the error code and description it would have failed with on its own
+ *
+ * @author Vinod Kandula
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class FileResult {
+
+    // as requested
+    private String path;
+    private FileMetadata metadata;
+    private String errorCode;
+    private String errorDescription;
+}
@@ -0,0 +1,28 @@
+package com.filemetadata.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checksums of a file or of every regular file below a directory, with the read throughput of the request
+ *
+ * @author Vinod Kandula
+ */
+@Data
+public class HashReport {
+
+    private String path;
+    private String algorithm;
+    private long fileCount;
+    private long cachedCount;
+    // bytes of all hashed files, cached ones included
+    private long size;
+    // bytes actually read, the cached files left out
+    private long bytesRead;
+    private long elapsedMillis;
+    // bytesRead per second of the request, in GB (10^9 bytes)
+    private double throughput;
+    private List<FileHash> files = new ArrayList<>();
+}
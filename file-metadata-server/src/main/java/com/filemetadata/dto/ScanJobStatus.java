@@ -0,0 +1,37 @@
+package com.filemetadata.dto;
+
+import lombok.Data;
+
+/**
+ * Progress of an asynchronous scan job
+ *
+ * @author Vinod Kandula
+ */
+@Data
+public class ScanJobStatus {
+
+    private String id;
+    private String path;
+    private String fields;
+    private int priority;
+    // queued, running, completed, failed or cancelled
+    private String state;
+    // entries written to the result so far, and the bytes of the regular files among them
+    private long entries;
+    private long bytes;
+    // per second of scanning, the time waiting in the queue left out
+    private double entriesPerSecond;
+    private double bytesPerSecond;
+    // entries of the last completed job of the same path, null when there is none
+    private Long estimatedEntries;
+    // remaining seconds at the current rate, null without an estimate
+    private Long etaSeconds;
+    // times the job was resumed from its checkpoint after a restart
+    private int resumed;
+    private String submittedAt;
+    private String startedAt;
+    private String finishedAt;
+    private String error;
+    // where to download the ndjson result once the job is completed
+    private String result;
+}
@@ -0,0 +1,167 @@
+package com.filemetadata.file.admission;
+
+import com.filemetadata.config.FileMetadataProperties;
+import com.filemetadata.file.handler.FileErrorCodes;
+import com.filemetadata.file.index.TreeIndexService;
+import com.filemetadata.file.job.ScanJobs;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Admits requests through the {@link Bulkhead} of their {@link Lane}, so a burst of directory scans holds at most the
+ * scan permits and the request threads left over keep answering file lookups.
+ *
+ * A scan takes one permit per entries-per-permit entries of its directory when its size is known, from the directory
+ * index of the path or the last completed scan job of it, so a few scans of huge trees do not run alongside as many
+ * as small ones would. Scans of directories of unknown size take one permit.
+ *
+ * Every client is also limited to max-per-client requests at a time over both lanes, so one client cannot take all
+ * permits of a lane.
+ *
+ * @author Vinod Kandula
+ */
+@Component
+@Slf4j
+public class AdmissionControl {
+
+    private final Map<Lane, Bulkhead> bulkheads = new EnumMap<>(Lane.class);
+    private final long entriesPerPermit;
+    private final int maxPerClient;
+    private final TreeIndexService treeIndexService;
+    private final ScanJobs scanJobs;
+    // requests admitted per client, clients without any are removed
+    private final Map<String, Integer> clients = new ConcurrentHashMap<>();
+
+    @Autowired
+    public AdmissionControl(FileMetadataProperties properties, TreeIndexService treeIndexService, ScanJobs scanJobs) {
+        this(bulkhead(Lane.LOOKUP, properties.getAdmission().getLookup()),
+                bulkhead(Lane.SCAN, properties.getAdmission().getScan()),
+                properties.getAdmission().getEntriesPerPermit(), properties.getAdmission().getMaxPerClient(),
+                treeIndexService, scanJobs);
+    }
+
+    /**
+     * @param lookup
+     * @param scan
+     * @param entriesPerPermit entries of a directory taking one more scan permit
+     * @param maxPerClient     requests of one client at a time, 0 for no limit
+     * @param treeIndexService
+     * @param scanJobs
+     */
+    public AdmissionControl(Bulkhead lookup, Bulkhead scan, long entriesPerPermit, int maxPerClient,
+                            TreeIndexService treeIndexService, ScanJobs scanJobs) {
+        this.bulkheads.put(Lane.LOOKUP, lookup);
+        this.bulkheads.put(Lane.SCAN, scan);
+        this.entriesPerPermit = Math.max(1, entriesPerPermit);
+        this.maxPerClient = maxPerClient;
+        this.treeIndexService = treeIndexService;
+        this.scanJobs = scanJobs;
+        log.info("Admission permits: {} lookups, {} scans", lookup.getMaxConcurrent(), scan.getMaxConcurrent());
+    }
+
+    /**
+     * Waits for the permits of a request
+     *
+     * @param lane
+     * @param client name of the client, null when not known
+     * @param path   the path parameter of the request, null when it has none
+     * @return the admission to close once the request is answered
+     * @throws TooManyClientRequestsException when the client has max-per-client requests running
+     * @throws ServerBusyException            when the bulkhead of the lane is full
+     */
+    public Admission admit(Lane lane, String client, String path) {
+        Bulkhead bulkhead = bulkheads.get(lane);
+        int weight = lane == Lane.SCAN ? weight(path) : 1;
+        enter(client);
+        try {
+            return new Admission(bulkhead, bulkhead.acquire(weight), client);
+        } catch (RuntimeException e) {
+            leave(client);
+            throw e;
+        }
+    }
+
+    public Bulkhead getBulkhead(Lane lane) {
+        return bulkheads.get(lane);
+    }
+
+    /**
+     * @return scan permits of the directory at the path, from its known entry count
+     */
+    int weight(String path) {
+        long entries = entries(path);
+        if (entries < 0) {
+            return 1;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, 1 + entries / entriesPerPermit);
+    }
+
+    private long entries(String path) {
+        if (path == null || path.isEmpty()) {
+            return -1;
+        }
+        int indexed = treeIndexService.indexedEntries(new File(path));
+        if (indexed >= 0) {
+            return indexed;
+        }
+        Long scanned = scanJobs.completedEntries(path);
+        return scanned != null ? scanned : -1;
+    }
+
+    private void enter(String client) {
+        if (maxPerClient <= 0 || client == null) {
+            return;
+        }
+        if (clients.merge(client, 1, Integer::sum) > maxPerClient) {
+            leave(client);
+            throw new TooManyClientRequestsException(FileErrorCodes.TOO_MANY_CLIENT_REQUESTS, " " + maxPerClient + " requests are running");
+        }
+    }
+
+    private void leave(String client) {
+        if (maxPerClient <= 0 || client == null) {
+            return;
+        }
+        clients.computeIfPresent(client, (key, running) -> running > 1 ? running - 1 : null);
+    }
+
+    private static Bulkhead bulkhead(Lane lane, FileMetadataProperties.Bulkhead settings) {
+        return new Bulkhead(lane, settings.getMaxConcurrent(), settings.getMaxQueued(), settings.getMaxWait());
+    }
+
+    /**
+     * The permits of an admitted request, released once when closed
+     */
+    public final class Admission implements AutoCloseable {
+
+        private final Bulkhead bulkhead;
+        private final int permits;
+        private final String client;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Admission(Bulkhead bulkhead, int permits, String client) {
+            this.bulkhead = bulkhead;
+            this.permits = permits;
+            this.client = client;
+        }
+
+        public int getPermits() {
+            return permits;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                bulkhead.release(permits);
+                leave(client);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.filemetadata.file.admission;
+
+import com.filemetadata.common.exception.CommonBaseException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Admits the requests of one {@link Lane} through the {@link AdmissionControl} before they reach the controller, and
+ * releases their permits once they are answered. Streams and publishers are answered after the handler returned, so
+ * their permits are held until the asynchronous dispatch completes. A rejected request is answered by the exception
+ * handler, with a Retry-After header.
+ *
+ * @author Vinod Kandula
+ */
+public class AdmissionInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String ADMISSION = AdmissionInterceptor.class.getName() + ".admission";
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private final AdmissionControl admissionControl;
+    private final Lane lane;
+    private final String clientHeader;
+
+    /**
+     * @param admissionControl
+     * @param lane
+     * @param clientHeader     request header naming the client, the remote address is used without it. Only trusted
+     *                         when set or overwritten by a proxy in front of the service, as clients can send any name
+     */
+    public AdmissionInterceptor(AdmissionControl admissionControl, Lane lane, String clientHeader) {
+        this.admissionControl = admissionControl;
+        this.lane = lane;
+        this.clientHeader = clientHeader;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // the asynchronous dispatch of a request admitted already
+        if (request.getAttribute(ADMISSION) != null) {
+            return true;
+        }
+        try {
+            request.setAttribute(ADMISSION, admissionControl.admit(lane, client(request), request.getParameter("path")));
+        } catch (CommonBaseException e) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+            throw e;
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object admission = request.getAttribute(ADMISSION);
+        if (admission != null) {
+            request.removeAttribute(ADMISSION);
+            ((AdmissionControl.Admission) admission).close();
+        }
+    }
+
+    private String client(HttpServletRequest request) {
+        String client = clientHeader != null && !clientHeader.isEmpty() ? request.getHeader(clientHeader) : null;
+        return client != null && !client.isEmpty() ? client : request.getRemoteAddr();
+    }
+}
@@ -0,0 +1,98 @@
+package com.filemetadata.file.admission;
+
+import com.filemetadata.file.handler.FileErrorCodes;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounds the requests of one {@link Lane} running at the same time by a fair semaphore of permits. A request takes
+ * one permit or, for a scan of a large directory, several. Requests that find no free permits wait up to the max
+ * wait, in the order they arrived, while no more than the max queued others are waiting; beyond that they are
+ * rejected at once with {@link ServerBusyException}.
+ *
+ * @author Vinod Kandula
+ */
+public class Bulkhead {
+
+    private final Lane lane;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long maxWaitNanos;
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+
+    public Bulkhead(Lane lane, int maxConcurrent, int maxQueued, Duration maxWait) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent " + maxConcurrent);
+        }
+        this.lane = lane;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    /**
+     * Waits for the given number of permits, at most all of them
+     *
+     * @param weight permits wanted
+     * @return the permits taken, to {@link #release(int)} when done
+     * @throws ServerBusyException when the permits are not free within the max wait, or too many requests wait
+     */
+    public int acquire(int weight) {
+        int taken = Math.max(1, Math.min(weight, maxConcurrent));
+        try {
+            // unlike tryAcquire(int) this does not barge ahead of the waiting requests
+            if (permits.tryAcquire(taken, 0, TimeUnit.NANOSECONDS)) {
+                return taken;
+            }
+            if (queued.incrementAndGet() > maxQueued) {
+                queued.decrementAndGet();
+                throw busy(" " + maxQueued + " " + lane.getName() + " requests are waiting");
+            }
+            try {
+                if (permits.tryAcquire(taken, maxWaitNanos, TimeUnit.NANOSECONDS)) {
+                    return taken;
+                }
+            } finally {
+                queued.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        throw busy(" No " + lane.getName() + " permits were free in time");
+    }
+
+    public void release(int taken) {
+        permits.release(taken);
+    }
+
+    public Lane getLane() {
+        return lane;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * @return permits free right now
+     */
+    public int getAvailable() {
+        return permits.availablePermits();
+    }
+
+    /**
+     * @return requests waiting for permits right now
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    private static ServerBusyException busy(String reason) {
+        return new ServerBusyException(FileErrorCodes.SERVER_BUSY, reason);
+    }
+}
@@ -0,0 +1,37 @@
+package com.filemetadata.file.admission;
+
+/**
+ * The kinds of requests admitted through bulkheads of their own, with the API paths of each
+ *
+ * @author Vinod Kandula
+ */
+public enum Lane {
+
+    /**
+     * Metadata of single files, cheap and expected to answer quickly
+     */
+    LOOKUP("lookup", "/filemetadata/file", "/filemetadata/files"),
+
+    /**
+     * Recursive directory scans, whose cost grows with the tree. The change feed is left out as its subscriptions
+     * last as long as the client stays, and the scan jobs as they queue on their own scheduler.
+     */
+    SCAN("scan", "/filemetadata/directory", "/filemetadata/directory/flux", "/filemetadata/directory/page",
+            "/filemetadata/directory/usage", "/filemetadata/hash", "/filemetadata/duplicates", "/filemetadata/search");
+
+    private final String name;
+    private final String[] paths;
+
+    Lane(String name, String... paths) {
+        this.name = name;
+        this.paths = paths;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String[] getPaths() {
+        return paths.clone();
+    }
+}
@@ -0,0 +1,17 @@
+package com.filemetadata.file.admission;
+
+import com.filemetadata.common.exception.CommonBaseException;
+import com.filemetadata.common.exception.CommonErrorCodes;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * @author Vinod Kandula
+ */
+@ResponseStatus(code = HttpStatus.TOO_MANY_REQUESTS)
+public class TooManyClientRequestsException extends CommonBaseException {
+
+    public TooManyClientRequestsException(CommonErrorCodes errorCodes, Object... arguments) {
+        super(errorCodes, arguments);
+    }
+}
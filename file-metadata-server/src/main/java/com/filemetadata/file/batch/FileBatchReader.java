@@ -0,0 +1,121 @@
+package com.filemetadata.file.batch;
+
+import com.filemetadata.common.exception.CommonErrorCodes;
+import com.filemetadata.dto.FileBatch;
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.dto.FileResult;
+import com.filemetadata.file.handler.FileErrorCodes;
+import com.filemetadata.file.handler.FileMetadataHandler;
+import com.filemetadata.file.projection.Projection;
+import com.filemetadata.file.traversal.ParallelTreeTraversal;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Reads the metadata of many files for one request, stat-ing them in parallel on the pool of the
+ * {@link ParallelTreeTraversal}. A path that is missing or not a file gets the error code and description the file
+ * API would answer it with, inline in its result, without throwing an exception per path.
+ *
+ * Batches come from indexers sweeping many distinct files, so they are read directly instead of through the
+ * metadata cache, which would load and watch the directory of every path.
+ *
+ * @author Vinod Kandula
+ */
+@Component
+public class FileBatchReader {
+
+    // paths stat-ed by one task before the range is split further, smaller batches are read on the calling thread
+    private static final int STAT_CHUNK_SIZE = 64;
+
+    @Autowired
+    private ParallelTreeTraversal parallelTreeTraversal;
+
+    /**
+     * @param paths
+     * @param projection
+     * @return a result per path, in the same order
+     * @throws IOException
+     */
+    public FileBatch read(List<String> paths, Projection projection) throws IOException {
+        FileResult[] results = new FileResult[paths.size()];
+        ReadTask task = new ReadTask(paths, projection, results, 0, results.length);
+        if (results.length > STAT_CHUNK_SIZE)
+            parallelTreeTraversal.invoke(task);
+        else
+            task.read();
+
+        FileBatch batch = new FileBatch();
+        batch.setResults(Arrays.asList(results));
+        return batch;
+    }
+
+    private static FileResult read(String path, Projection projection) {
+        FileResult result = new FileResult();
+        result.setPath(path);
+        if (path == null || path.isEmpty()) {
+            return error(result, FileErrorCodes.INVALID_FILE_PATH, path);
+        }
+        try {
+            FileMetadata fileMetadata = FileMetadataHandler.fileMetadata(new File(path), null, projection);
+            // file is only read when projected on the non-unix path, regularFile always is
+            if (!fileMetadata.isRegularFile()) {
+                return error(result, FileErrorCodes.INVALID_FILE_PATH, path);
+            }
+            result.setMetadata(fileMetadata);
+        } catch (NoSuchFileException e) {
+            return error(result, FileErrorCodes.INVALID_FILE_PATH, path);
+        } catch (IOException e) {
+            return error(result, FileErrorCodes.INTERNAL_SERVER_ERROR, e.getMessage() != null ? " " + e.getMessage() : "");
+        }
+        return result;
+    }
+
+    private static FileResult error(FileResult result, CommonErrorCodes errorCode, Object argument) {
+        result.setErrorCode(errorCode.getCode());
+        result.setErrorDescription(errorCode.getErrorDescription(errorCode.getCode(), argument));
+        return result;
+    }
+
+    /**
+     * Reads a range of the paths into their slots of the results array, splitting large ranges
+     */
+    private static class ReadTask extends RecursiveAction {
+
+        private final List<String> paths;
+        private final Projection projection;
+        private final FileResult[] results;
+        private final int from, to;
+
+        ReadTask(List<String> paths, Projection projection, FileResult[] results, int from, int to) {
+            this.paths = paths;
+            this.projection = projection;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > STAT_CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ReadTask(paths, projection, results, from, middle),
+                        new ReadTask(paths, projection, results, middle, to));
+                return;
+            }
+            read();
+        }
+
+        void read() {
+            for (int i = from; i < to; i++) {
+                results[i] = FileBatchReader.read(paths.get(i), projection);
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.filemetadata.file.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches directories through a single {@link WatchService} and reports every change to a {@link Listener}.
+ * Directories are reference counted, so several users can register the same directory and the watch is only
+ * cancelled with the last of them.
+ *
+ * @author Vinod Kandula
+ */
+@Slf4j
+public class DirectoryWatcher implements Closeable {
+
+    /**
+     * Receives the changes of a watched directory
+     */
+    public interface Listener {
+
+        /**
+         * @param directory the watched directory
+         * @param child     the changed entry, null on OVERFLOW when any entry may have changed
+         * @param kind
+         */
+        void changed(Path directory, Path child, WatchEvent.Kind<?> kind);
+
+        /**
+         * The watched directory is gone (deleted, unmounted) and no longer reports changes
+         *
+         * @param directory
+         */
+        void invalidated(Path directory);
+    }
+
+    private final WatchService watchService;
+    private final Listener listener;
+    private final Map<Path, WatchKey> keys = new HashMap<>();
+    private final Map<Path, Integer> references = new HashMap<>();
+    private final Thread thread;
+
+    public DirectoryWatcher(String name, Listener listener) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.listener = listener;
+        this.thread = new Thread(this::processEvents, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Starts watching the given directory, or adds a reference to an existing watch
+     *
+     * @param directory
+     * @return false when the directory could not be watched, e.g. when the inotify watch limit is reached
+     */
+    public synchronized boolean register(Path directory) {
+        Integer count = references.get(directory);
+        if (count != null) {
+            references.put(directory, count + 1);
+            return true;
+        }
+        try {
+            WatchKey key = directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            keys.put(directory, key);
+            references.put(directory, 1);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("Unable to watch directory {}: {}", directory, e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * Removes a reference added by {@link #register(Path)}, cancelling the watch with the last one
+     *
+     * @param directory
+     */
+    public synchronized void unregister(Path directory) {
+        Integer count = references.get(directory);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            references.put(directory, count - 1);
+            return;
+        }
+        references.remove(directory);
+        keys.remove(directory).cancel();
+    }
+
+    public synchronized int getWatchedDirectories() {
+        return keys.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private void processEvents() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                // events queued before the key was cancelled are still delivered
+                Path directory = (Path) key.watchable();
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    Path child = event.kind() == OVERFLOW ? null : directory.resolve((Path) event.context());
+                    try {
+                        listener.changed(directory, child, event.kind());
+                    } catch (RuntimeException e) {
+                        log.warn("Failed to process change of {}", child != null ? child : directory, e);
+                    }
+                }
+
+                if (!key.reset()) {
+                    boolean gone;
+                    synchronized (this) {
+                        // not cancelled through unregister, so the directory itself went away
+                        gone = keys.get(directory) == key;
+                        if (gone) {
+                            keys.remove(directory);
+                            references.remove(directory);
+                        }
+                    }
+                    if (gone) {
+                        listener.invalidated(directory);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // shutting down
+        }
+    }
+}
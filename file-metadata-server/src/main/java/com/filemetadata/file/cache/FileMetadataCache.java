@@ -0,0 +1,692 @@
+package com.filemetadata.file.cache;
+
+import com.filemetadata.config.FileMetadataProperties;
+import com.filemetadata.dto.CacheStats;
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.compact.CompactEntries;
+import com.filemetadata.file.compact.FileKeySet;
+import com.filemetadata.file.compact.Fingerprints;
+import com.filemetadata.file.compact.NameTable;
+import com.filemetadata.file.handler.FileMetadataHandler;
+import com.filemetadata.file.projection.MetadataField;
+import com.filemetadata.file.projection.Projection;
+import com.filemetadata.file.traversal.FileMetadataVisitor;
+import com.filemetadata.file.traversal.FollowLinks;
+import com.filemetadata.file.traversal.TraversalFilter;
+import com.filemetadata.file.traversal.TreeBuilder;
+import com.filemetadata.file.traversal.VisitedDirectories;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Bounded LRU cache of directory listings and single file metadata, placed in front of {@link FileMetadataHandler}.
+ *
+ * Every directory is cached separately as its own metadata plus the metadata of its immediate children, so a change
+ * only invalidates the listings of the changed directory and of its parent (which holds the directory's own
+ * attributes), and trees are re-assembled from the listings that are still valid. The children are held as
+ * {@link CompactEntries} and only turned back into {@link FileMetadata} while a tree is assembled or serialized. Cached directories are watched
+ * with a {@link DirectoryWatcher}, or only expired by the ttl when watching is disabled.
+ *
+ * The cache is bounded by the number of entries and by their weight, the number of file metadata they hold.
+ *
+ * @author Vinod Kandula
+ */
+@Component
+@Slf4j
+public class FileMetadataCache implements DirectoryWatcher.Listener {
+
+    private final FileMetadataProperties.Cache properties;
+    private final FollowLinks followLinks;
+    private final long ttlMillis;
+    private final DirectoryWatcher watcher;
+    private final List<DirectoryWatcher.Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // access ordered, so iteration starts with the least recently used entry
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private long weight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    @Autowired
+    public FileMetadataCache(FileMetadataProperties properties) throws IOException {
+        this.properties = properties.getCache();
+        this.followLinks = properties.getTraversal().getFollowLinks();
+        this.ttlMillis = this.properties.getTtl().toMillis();
+        this.watcher = this.properties.isEnabled() && this.properties.isWatch()
+                ? new DirectoryWatcher("filemetadata-cache-watcher", this) : null;
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Fetches the metadata of the given file, from the cached file entry or the cached listing of its directory
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public FileMetadata file(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        CacheEntry entry = get(key);
+        if (entry != null && entry.children == null) {
+            hits.increment();
+            return entry.metadata;
+        }
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        CacheEntry listing = parent != null ? get(parent.getPath()) : null;
+        int child = listing != null && listing.children != null ? listing.child(file.getName()) : -1;
+        if (child >= 0) {
+            hits.increment();
+            return listing.child(child, file);
+        }
+
+        misses.increment();
+        entry = load(parent != null ? parent.toPath() : null, () -> FileMetadataHandler.fileMetadata(file), null);
+        put(key, entry);
+        return entry.metadata;
+    }
+
+    /**
+     * Checks if the listing of the given directory is cached
+     *
+     * @param folder
+     * @return
+     */
+    public boolean containsDirectory(File folder) {
+        synchronized (this) {
+            CacheEntry entry = entries.get(folder.getAbsolutePath());
+            return entry != null && entry.children != null && !isExpired(entry);
+        }
+    }
+
+    /**
+     * Builds the Directory & Files metadata tree of the given directory from the cached listings, loading the
+     * missing ones
+     *
+     * @param folder
+     * @return
+     * @throws IOException
+     */
+    public FileMetadata directoryTree(File folder) throws IOException {
+        return directoryTree(folder, TraversalFilter.NONE);
+    }
+
+    /**
+     * Builds the Directory & Files metadata tree left in by the filter from the cached listings, loading the missing
+     * ones. Subtrees skipped by the filter are neither read from the cache nor loaded.
+     *
+     * @param folder
+     * @param filter
+     * @return
+     * @throws IOException
+     */
+    public FileMetadata directoryTree(File folder, TraversalFilter filter) throws IOException {
+        return directoryTree(folder, filter, Projection.ALL);
+    }
+
+    /**
+     * Builds the Directory & Files metadata tree left in by the filter from the cached listings, with the files
+     * holding only the attributes of the projection
+     *
+     * @param folder
+     * @param filter
+     * @param projection
+     * @return
+     * @throws IOException
+     */
+    public FileMetadata directoryTree(File folder, TraversalFilter filter, Projection projection) throws IOException {
+        TreeBuilder treeBuilder = new TreeBuilder();
+        walk(folder, filter, projection, treeBuilder);
+        return treeBuilder.getRoot();
+    }
+
+    /**
+     * Builds the Directory & Files metadata tree from the listings taken by {@link #listings(File, TraversalFilter)}
+     *
+     * @param listings
+     * @param projection
+     * @return
+     * @throws IOException
+     */
+    public FileMetadata directoryTree(Listings listings, Projection projection) throws IOException {
+        TreeBuilder treeBuilder = new TreeBuilder();
+        walk(listings, projection, treeBuilder);
+        return treeBuilder.getRoot();
+    }
+
+    /**
+     * Visits the tree of the given directory from the cached listings, loading and caching the missing ones
+     *
+     * @param folder
+     * @param visitor
+     * @throws IOException
+     */
+    public void walk(File folder, FileMetadataVisitor visitor) throws IOException {
+        walk(folder, TraversalFilter.NONE, visitor);
+    }
+
+    /**
+     * Visits the tree left in by the filter from the cached listings, loading and caching the missing ones
+     *
+     * @param folder
+     * @param filter
+     * @param visitor
+     * @throws IOException
+     */
+    public void walk(File folder, TraversalFilter filter, FileMetadataVisitor visitor) throws IOException {
+        walk(folder, filter, Projection.ALL, visitor);
+    }
+
+    /**
+     * Visits the tree left in by the filter from the cached listings like {@link #walk(File, TraversalFilter, FileMetadataVisitor)}.
+     * Listings are always loaded with all attributes, only the files are built with just the projection, as the
+     * metadata of a directory is kept with its listing when that is loaded.
+     *
+     * @param folder
+     * @param filter
+     * @param projection
+     * @param visitor
+     * @throws IOException
+     */
+    public void walk(File folder, TraversalFilter filter, Projection projection, FileMetadataVisitor visitor) throws IOException {
+        Directory root = filter.descend(folder)
+                ? new Directory(folder, null, listing(folder, null))
+                : new Directory(folder, FileMetadataHandler.fileMetadata(folder), null);
+        walk(root, filter, projection, visitor, this::listing);
+    }
+
+    /**
+     * Visits the tree from the listings taken by {@link #listings(File, TraversalFilter)} like
+     * {@link #walk(File, TraversalFilter, Projection, FileMetadataVisitor)}, without reading the cache again
+     *
+     * @param listings
+     * @param projection
+     * @param visitor
+     * @throws IOException
+     */
+    public void walk(Listings listings, Projection projection, FileMetadataVisitor visitor) throws IOException {
+        CacheEntry rootListing = listings.listing(listings.folder, null);
+        Directory root = listings.filter.descend(listings.folder)
+                ? new Directory(listings.folder, null, rootListing)
+                : new Directory(listings.folder, rootListing.metadata, null);
+        walk(root, listings.filter, projection, visitor, listings::listing);
+    }
+
+    private void walk(Directory root, TraversalFilter filter, Projection projection, FileMetadataVisitor visitor,
+                      ListingSource source) throws IOException {
+        Projection collected = projection.including(filter.getFields());
+        VisitedDirectories visited = new VisitedDirectories(followLinks);
+        Deque<Directory> directories = new ArrayDeque<>();
+        visited.enterRoot(root.folder, root.metadata);
+        visitor.preVisitDirectory(root.metadata);
+        directories.push(root);
+        while (!directories.isEmpty()) {
+            Directory directory = directories.peek();
+            if (directory.listing == null || directory.next == directory.listing.children.size()) {
+                directories.pop();
+                visitor.postVisitDirectory(directory.metadata);
+                continue;
+            }
+            int index = directory.next++;
+            File file = new File(directory.folder, directory.listing.children.name(index));
+            if (!filter.visit(file)) {
+                continue;
+            }
+            if (directory.listing.children.isDirectory(index)) {
+                FileMetadata child = directory.listing.child(index, file, Projection.ALL);
+                visitor.preVisitDirectory(child);
+                // visited without children when skipped by the filter, a link not followed or listed before
+                boolean listed = filter.descend(file) && visited.enter(file, child);
+                directories.push(new Directory(file, child, listed ? source.listing(file, child) : null));
+                continue;
+            }
+            FileMetadata child = directory.listing.child(index, file, collected);
+            if (filter.report(file, child)) {
+                visitor.visitFile(child);
+            }
+        }
+    }
+
+    /**
+     * Takes the cached listings of the given directory and of the directories below it, the ones
+     * {@link #walk(File, TraversalFilter, FileMetadataVisitor)} reads in the same order, with their fingerprint, see
+     * {@link Fingerprints}. Subtrees skipped by the filter are left out, missing listings are loaded.
+     *
+     * @param folder
+     * @param filter
+     * @return
+     * @throws IOException
+     */
+    public Listings listings(File folder, TraversalFilter filter) throws IOException {
+        Listings listings = new Listings(folder, filter);
+        VisitedDirectories visited = new VisitedDirectories(followLinks);
+        Deque<Directory> directories = new ArrayDeque<>();
+        Directory root = new Directory(folder, null, listing(folder, null));
+        visited.enterRoot(folder, root.metadata);
+        listings.add(folder, root.listing);
+        directories.push(root);
+        while (!directories.isEmpty()) {
+            Directory directory = directories.peek();
+            if (directory.next == directory.listing.children.size()) {
+                directories.pop();
+                continue;
+            }
+            int index = directory.next++;
+            if (!directory.listing.children.isDirectory(index)) {
+                continue;
+            }
+            File file = new File(directory.folder, directory.listing.children.name(index));
+            if (!filter.visit(file) || !filter.descend(file)) {
+                continue;
+            }
+            FileMetadata child = directory.listing.child(index, file);
+            if (visited.enter(file, child)) {
+                Directory subdirectory = new Directory(file, child, listing(file, child));
+                listings.add(file, subdirectory.listing);
+                directories.push(subdirectory);
+            }
+        }
+        return listings;
+    }
+
+    /**
+     * Starts watching the directories of a traversal whose tree is handed to
+     * {@link #putTree(File, FileMetadata, TreeWatches)}, each one before it is listed, so changes made while the tree
+     * is read are not missed. Pass {@link TreeWatches#visited()} to the traversal and close the watches once the tree
+     * is cached or the traversal failed.
+     *
+     * @return
+     */
+    public TreeWatches watchTree() {
+        return new TreeWatches();
+    }
+
+    /**
+     * Caches the listings of a tree built by a traversal. The tree is detached into listings, so it must not be
+     * used (serialized) afterwards.
+     *
+     * A directory the traversal did not list, as it was listed under another path already or is a link not
+     * followed, is left out instead of being cached as an empty listing.
+     *
+     * @param folder
+     * @param tree
+     * @param watches the directories the traversal watched before listing them, a listing not watched by it is only
+     *                expired by the ttl
+     */
+    public void putTree(File folder, FileMetadata tree, TreeWatches watches) {
+        FileKeySet listed = new FileKeySet();
+        Deque<FileMetadata> nodes = new ArrayDeque<>();
+        nodes.push(tree);
+        while (!nodes.isEmpty()) {
+            FileMetadata node = nodes.pop();
+            if (!node.getChildren().isEmpty() && node.hasFileKey()) {
+                listed.add(node.getDevice(), node.getInode());
+            }
+            for (FileMetadata child : node.getChildren()) {
+                if (child.isDirectory()) {
+                    nodes.push(child);
+                }
+            }
+        }
+
+        Deque<Path> paths = new ArrayDeque<>();
+        paths.push(folder.getAbsoluteFile().toPath());
+        nodes.push(tree);
+        while (!nodes.isEmpty()) {
+            Path directory = paths.pop();
+            FileMetadata node = nodes.pop();
+            List<FileMetadata> children = node.getChildren();
+            node.setChildren(new ArrayList<>());
+            CompactEntries entries = new CompactEntries(children.size(), new NameTable(children.size()));
+            for (FileMetadata child : children) {
+                entries.add(child);
+                if (child.isDirectory() && isListed(child, listed)) {
+                    paths.push(directory.resolve(child.getName()));
+                    nodes.push(child);
+                }
+            }
+            entries.getNames().freeze();
+            CacheEntry entry = new CacheEntry(directory, node, entries);
+            entry.watched = watches.take(directory);
+            put(directory.toString(), entry);
+        }
+    }
+
+    private boolean isListed(FileMetadata directory, FileKeySet listed) {
+        if (!directory.getChildren().isEmpty()) {
+            return true;
+        }
+        if (!followLinks.follows(directory)) {
+            return false;
+        }
+        // empty, or listed with its children under another path
+        return !listed.contains(directory.getDevice(), directory.getInode());
+    }
+
+    public CacheStats getStats() {
+        CacheStats stats = new CacheStats();
+        stats.setEnabled(properties.isEnabled());
+        stats.setMode(watcher != null ? "watch" : "ttl");
+        synchronized (this) {
+            stats.setEntries(entries.size());
+            stats.setWeight(weight);
+        }
+        stats.setWatchedDirectories(watcher != null ? watcher.getWatchedDirectories() : 0);
+        stats.setHits(hits.sum());
+        stats.setMisses(misses.sum());
+        stats.setEvictions(evictions.sum());
+        stats.setInvalidations(invalidations.sum());
+        stats.setExpirations(expirations.sum());
+        return stats;
+    }
+
+    /**
+     * Passes the changes reported by the watcher of the cached directories on, after the listings are invalidated
+     *
+     * @param listener
+     */
+    public void addListener(DirectoryWatcher.Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void changed(Path directory, Path child, WatchEvent.Kind<?> kind) {
+        // the listing holding the changed entry
+        invalidate(directory.toString());
+        if (child != null) {
+            // the changed file itself, or the listing of the changed directory
+            invalidate(child.toString());
+        }
+        if (kind != ENTRY_MODIFY && directory.getParent() != null) {
+            // entries were added or removed, so the directory's own attributes in its parent's listing are stale
+            invalidate(directory.getParent().toString());
+        }
+        for (DirectoryWatcher.Listener listener : listeners) {
+            listener.changed(directory, child, kind);
+        }
+    }
+
+    @Override
+    public void invalidated(Path directory) {
+        changed(directory, null, null);
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+
+    private CacheEntry listing(File folder, FileMetadata folderMetadata) throws IOException {
+        String key = folder.getAbsolutePath();
+        CacheEntry entry = get(key);
+        if (entry != null && entry.children != null) {
+            hits.increment();
+            return entry;
+        }
+
+        misses.increment();
+        FileMetadata metadata = folderMetadata != null ? folderMetadata : FileMetadataHandler.fileMetadata(folder);
+        entry = load(folder.getAbsoluteFile().toPath(), () -> metadata, () -> {
+            File[] fileList = FileMetadataHandler.listChildren(folder);
+            CompactEntries children = new CompactEntries(fileList.length, new NameTable(fileList.length));
+            for (File file : fileList) {
+                children.add(FileMetadataHandler.fileMetadata(file, metadata));
+            }
+            children.getNames().freeze();
+            return children;
+        });
+        put(key, entry);
+        return entry;
+    }
+
+    /**
+     * Starts watching the directory before reading it, so changes made while it is being read are not missed
+     */
+    private CacheEntry load(Path directory, Loader<FileMetadata> metadata, Loader<CompactEntries> children) throws IOException {
+        boolean watched = watcher != null && directory != null && watcher.register(directory);
+        try {
+            CacheEntry entry = new CacheEntry(directory, metadata.load(), children != null ? children.load() : null);
+            entry.watched = watched;
+            return entry;
+        } catch (IOException | RuntimeException e) {
+            if (watched) {
+                watcher.unregister(directory);
+            }
+            throw e;
+        }
+    }
+
+    private synchronized CacheEntry get(String key) {
+        CacheEntry entry = entries.get(key);
+        if (entry != null && isExpired(entry)) {
+            remove(key);
+            expirations.increment();
+            return null;
+        }
+        return entry;
+    }
+
+    private void put(String key, CacheEntry entry) {
+        synchronized (this) {
+            CacheEntry previous = entries.put(key, entry);
+            weight += entry.weight();
+            if (previous != null) {
+                release(previous);
+            }
+
+            Iterator<Map.Entry<String, CacheEntry>> eldest = entries.entrySet().iterator();
+            while ((entries.size() > properties.getMaxEntries() || weight > properties.getMaxWeight()) && eldest.hasNext()) {
+                CacheEntry evicted = eldest.next().getValue();
+                eldest.remove();
+                release(evicted);
+                evictions.increment();
+            }
+        }
+    }
+
+    private synchronized void invalidate(String key) {
+        if (remove(key) != null) {
+            invalidations.increment();
+        }
+    }
+
+    private CacheEntry remove(String key) {
+        CacheEntry entry = entries.remove(key);
+        if (entry != null) {
+            release(entry);
+        }
+        return entry;
+    }
+
+    private void release(CacheEntry entry) {
+        weight -= entry.weight();
+        if (entry.watched) {
+            watcher.unregister(entry.directory);
+        }
+    }
+
+    private boolean isExpired(CacheEntry entry) {
+        return ttlMillis > 0 && System.currentTimeMillis() - entry.loadedAt > ttlMillis;
+    }
+
+    /**
+     * The cached listings of a tree taken at one point, so a response and its fingerprint are built from the same
+     * listings while the cache keeps changing
+     */
+    public static final class Listings {
+
+        private final File folder;
+        private final TraversalFilter filter;
+        private final Map<String, CacheEntry> listings = new HashMap<>();
+        private long fingerprint;
+
+        private Listings(File folder, TraversalFilter filter) {
+            this.folder = folder;
+            this.filter = filter;
+        }
+
+        /**
+         * @return the fingerprint of the listings, in the order they are walked
+         */
+        public long getFingerprint() {
+            return fingerprint;
+        }
+
+        private void add(File directory, CacheEntry listing) {
+            fingerprint = listings.isEmpty() ? listing.fingerprint : Fingerprints.combine(fingerprint, listing.fingerprint);
+            listings.put(directory.getPath(), listing);
+        }
+
+        private CacheEntry listing(File directory, FileMetadata metadata) {
+            return listings.get(directory.getPath());
+        }
+    }
+
+    /**
+     * A cached directory listing, or a single file when children is null
+     */
+    private static class CacheEntry {
+
+        // a listing is watched through its own directory, a file through its parent directory
+        private final Path directory;
+        private final FileMetadata metadata;
+        private final CompactEntries children;
+        // of the directory itself and all of its children, for listings
+        private final long fingerprint;
+        private final long loadedAt = System.currentTimeMillis();
+        private boolean watched;
+
+        CacheEntry(Path directory, FileMetadata metadata, CompactEntries children) {
+            this.directory = directory;
+            this.metadata = metadata;
+            this.children = children;
+            this.fingerprint = children != null ? fingerprint(metadata, children) : 0;
+        }
+
+        private static long fingerprint(FileMetadata metadata, CompactEntries children) {
+            long hash = Fingerprints.combine(Fingerprints.SEED, metadata.getSize());
+            hash = Fingerprints.combine(hash, Objects.hashCode(metadata.getLastModifiedTime()));
+            for (int index = 0; index < children.size(); index++) {
+                hash = Fingerprints.combine(hash, children.fingerprint(index));
+            }
+            return hash;
+        }
+
+        long weight() {
+            return children == null ? 1 : 1 + children.size();
+        }
+
+        int child(String name) {
+            return children.find(name, 0, children.size());
+        }
+
+        FileMetadata child(int index, File file) {
+            return child(index, file, Projection.ALL);
+        }
+
+        FileMetadata child(int index, File file, Projection projection) {
+            String canonicalPath = projection.includes(MetadataField.CANONICAL_PATH)
+                    ? children.canonicalPath(index, metadata.getCanonicalPath()) : null;
+            return children.metadata(index, file, canonicalPath, projection);
+        }
+    }
+
+    /**
+     * A directory on the path of a traversal of the cached listings, with the position of the next child to visit
+     */
+    private static class Directory {
+
+        private final File folder;
+        private final FileMetadata metadata;
+        // null when the directory is not listed
+        private final CacheEntry listing;
+        private int next;
+
+        Directory(File folder, FileMetadata metadata, CacheEntry listing) {
+            this.folder = folder;
+            // below the root the directory metadata comes from the parent listing, with the paths as requested
+            this.metadata = metadata != null ? metadata : listing.metadata;
+            this.listing = listing;
+        }
+    }
+
+    /**
+     * The directories one traversal watched before listing them, each taken over by the listing cached for it. The
+     * watches no listing took are cancelled on close.
+     */
+    public final class TreeWatches implements AutoCloseable {
+
+        private final Set<Path> watched = ConcurrentHashMap.newKeySet();
+
+        private TreeWatches() {
+        }
+
+        /**
+         * @return the visited directories of the traversal, watching every directory it lists
+         */
+        public VisitedDirectories visited() {
+            return new VisitedDirectories(followLinks, this::watch);
+        }
+
+        private void watch(File directory) {
+            Path path = directory.getAbsoluteFile().toPath();
+            if (watcher != null && watched.add(path) && !watcher.register(path)) {
+                watched.remove(path);
+            }
+        }
+
+        private boolean take(Path directory) {
+            return watched.remove(directory);
+        }
+
+        @Override
+        public void close() {
+            for (Path directory : watched) {
+                watcher.unregister(directory);
+            }
+            watched.clear();
+        }
+    }
+
+    private interface Loader<T> {
+        T load() throws IOException;
+    }
+
+    /**
+     * Where a traversal takes the listing of a directory it enters from
+     */
+    private interface ListingSource {
+        CacheEntry listing(File directory, FileMetadata metadata) throws IOException;
+    }
+}
@@ -0,0 +1,370 @@
+package com.filemetadata.file.compact;
+
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.projection.MetadataField;
+import com.filemetadata.file.projection.Projection;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Attributes of many entries as parallel primitive arrays (struct of arrays) instead of one {@link FileMetadata}
+ * object per entry: a name id into a {@link NameTable}, the size, the three times as epoch nanoseconds and all
+ * boolean attributes packed into one byte, about 40 bytes per entry.
+ *
+ * Paths are not stored. They are derived from the directory an entry is read through, and the canonical path is
+ * the canonical path of the parent plus the name except for symbolic links, whose resolved path is kept aside.
+ * {@link FileMetadata} is only built again by {@link #metadata(int, File, String)} when an entry is serialized.
+ *
+ * @author Vinod Kandula
+ */
+public class CompactEntries {
+
+    public static final int DIRECTORY = 1;
+    public static final int REGULAR_FILE = 1 << 1;
+    public static final int SYMBOLIC_LINK = 1 << 2;
+    public static final int FILE = 1 << 3;
+    public static final int HIDDEN = 1 << 4;
+    public static final int CAN_READ = 1 << 5;
+    public static final int CAN_WRITE = 1 << 6;
+    public static final int CAN_EXECUTE = 1 << 7;
+
+    private final NameTable names;
+    private int size;
+    private int[] nameIds;
+    private byte[] flags;
+    private long[] sizes;
+    private long[] creationTimes;
+    private long[] lastAccessTimes;
+    private long[] lastModifiedTimes;
+    private final Map<Integer, String> linkCanonicalPaths = new HashMap<>();
+
+    /**
+     * @param capacity
+     * @param names    table the names are interned into, shared by all entries of a tree
+     */
+    public CompactEntries(int capacity, NameTable names) {
+        this.names = names;
+        this.nameIds = new int[capacity];
+        this.flags = new byte[capacity];
+        this.sizes = new long[capacity];
+        this.creationTimes = new long[capacity];
+        this.lastAccessTimes = new long[capacity];
+        this.lastModifiedTimes = new long[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public NameTable getNames() {
+        return names;
+    }
+
+    public String name(int entry) {
+        return names.name(nameIds[entry]);
+    }
+
+    /**
+     * @param entry
+     * @return id of the name of the entry in the {@link NameTable} of these entries
+     */
+    public int nameId(int entry) {
+        return nameIds[entry];
+    }
+
+    public boolean isDirectory(int entry) {
+        return (flags[entry] & DIRECTORY) != 0;
+    }
+
+    public long lastModifiedTime(int entry) {
+        return lastModifiedTimes[entry];
+    }
+
+    /**
+     * @param entry
+     * @return hash of the name, size, modification time and flags of the entry, see {@link Fingerprints}
+     */
+    public long fingerprint(int entry) {
+        long hash = Fingerprints.combine(Fingerprints.SEED, name(entry).hashCode());
+        hash = Fingerprints.combine(hash, sizes[entry]);
+        hash = Fingerprints.combine(hash, lastModifiedTimes[entry]);
+        return Fingerprints.combine(hash, flags[entry]);
+    }
+
+    /**
+     * @param entry
+     * @param parentCanonicalPath
+     * @return the canonical path of the entry inside a directory with the given canonical path
+     */
+    public String canonicalPath(int entry, String parentCanonicalPath) {
+        if ((flags[entry] & SYMBOLIC_LINK) != 0) {
+            return linkCanonicalPaths.get(entry);
+        }
+        return parentCanonicalPath.endsWith(File.separator)
+                ? parentCanonicalPath + name(entry)
+                : parentCanonicalPath + File.separator + name(entry);
+    }
+
+    /**
+     * Finds an entry by name in a range sorted like FileMetadataHandler.listChildren
+     *
+     * @param name
+     * @param from first entry of the range
+     * @param to   end of the range, exclusive
+     * @return the entry, or -1 when there is none of that name
+     */
+    public int find(String name, int from, int to) {
+        File key = new File(name);
+        int low = from, high = to - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int compare = new File(name(middle)).compareTo(key);
+            if (compare < 0) {
+                low = middle + 1;
+            } else if (compare > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Builds the metadata of an entry for serialization
+     *
+     * @param entry
+     * @param file          the entry, as reached from the requested directory
+     * @param canonicalPath from {@link #canonicalPath(int, String)}
+     * @return
+     */
+    public FileMetadata metadata(int entry, File file, String canonicalPath) {
+        return metadata(entry, file, canonicalPath, Projection.ALL);
+    }
+
+    /**
+     * Builds the metadata of an entry for serialization, formatting only the times of the projection
+     *
+     * @param entry
+     * @param file
+     * @param canonicalPath
+     * @param projection
+     * @return
+     */
+    public FileMetadata metadata(int entry, File file, String canonicalPath, Projection projection) {
+        int flag = flags[entry];
+
+        FileMetadata fileMetadata = new FileMetadata();
+        if (projection.includes(MetadataField.CREATION_TIME))
+            fileMetadata.setCreationTime(toString(creationTimes[entry]));
+        if (projection.includes(MetadataField.LAST_ACCESS_TIME))
+            fileMetadata.setLastAccessTime(toString(lastAccessTimes[entry]));
+        if (projection.includes(MetadataField.LAST_MODIFIED_TIME))
+            fileMetadata.setLastModifiedTime(toString(lastModifiedTimes[entry]));
+
+        fileMetadata.setDirectory((flag & DIRECTORY) != 0);
+        fileMetadata.setRegularFile((flag & REGULAR_FILE) != 0);
+        fileMetadata.setSymbolicLink((flag & SYMBOLIC_LINK) != 0);
+        fileMetadata.setSize(sizes[entry]);
+
+        fileMetadata.setCanRead((flag & CAN_READ) != 0);
+        fileMetadata.setCanWrite((flag & CAN_WRITE) != 0);
+        fileMetadata.setCanExecute((flag & CAN_EXECUTE) != 0);
+        fileMetadata.setAbsolute(file.isAbsolute());
+        fileMetadata.setFile((flag & FILE) != 0);
+        fileMetadata.setHidden((flag & HIDDEN) != 0);
+        fileMetadata.setPath(file.getPath());
+        fileMetadata.setName(file.getName());
+        if (projection.includes(MetadataField.PARENT))
+            fileMetadata.setParent(file.getParent());
+        fileMetadata.setCanonicalPath(canonicalPath);
+        if (projection.includes(MetadataField.ABSOLUTE_PATH))
+            fileMetadata.setAbsolutePath(file.getAbsolutePath());
+
+        return fileMetadata;
+    }
+
+    /**
+     * Appends the attributes of a freshly read entry
+     *
+     * @return the new entry
+     */
+    public int add(FileMetadata fileMetadata) {
+        int entry = append(names.id(fileMetadata.getName()));
+        int flag = 0;
+        flag |= fileMetadata.isDirectory() ? DIRECTORY : 0;
+        flag |= fileMetadata.isRegularFile() ? REGULAR_FILE : 0;
+        flag |= fileMetadata.isSymbolicLink() ? SYMBOLIC_LINK : 0;
+        flag |= fileMetadata.isFile() ? FILE : 0;
+        flag |= fileMetadata.isHidden() ? HIDDEN : 0;
+        flag |= fileMetadata.isCanRead() ? CAN_READ : 0;
+        flag |= fileMetadata.isCanWrite() ? CAN_WRITE : 0;
+        flag |= fileMetadata.isCanExecute() ? CAN_EXECUTE : 0;
+        flags[entry] = (byte) flag;
+        sizes[entry] = fileMetadata.getSize();
+        creationTimes[entry] = toNanos(fileMetadata.getCreationTime());
+        lastAccessTimes[entry] = toNanos(fileMetadata.getLastAccessTime());
+        lastModifiedTimes[entry] = toNanos(fileMetadata.getLastModifiedTime());
+        if (fileMetadata.isSymbolicLink()) {
+            linkCanonicalPaths.put(entry, fileMetadata.getCanonicalPath());
+        }
+        return entry;
+    }
+
+    /**
+     * Appends an entry of other entries unchanged
+     *
+     * @return the new entry
+     */
+    public int copy(CompactEntries other, int otherEntry) {
+        int entry = append(other.names == names ? other.nameIds[otherEntry] : names.id(other.name(otherEntry)));
+        flags[entry] = other.flags[otherEntry];
+        sizes[entry] = other.sizes[otherEntry];
+        creationTimes[entry] = other.creationTimes[otherEntry];
+        lastAccessTimes[entry] = other.lastAccessTimes[otherEntry];
+        lastModifiedTimes[entry] = other.lastModifiedTimes[otherEntry];
+        if ((flags[entry] & SYMBOLIC_LINK) != 0) {
+            linkCanonicalPaths.put(entry, other.linkCanonicalPaths.get(otherEntry));
+        }
+        return entry;
+    }
+
+    private int append(int nameId) {
+        if (size == nameIds.length) {
+            grow(Math.max(16, size + (size >> 1)));
+        }
+        nameIds[size] = nameId;
+        return size++;
+    }
+
+    /**
+     * Drops the unused capacity once all entries are added
+     */
+    public void trim() {
+        if (size < nameIds.length) {
+            grow(size);
+        }
+    }
+
+    private void grow(int capacity) {
+        nameIds = Arrays.copyOf(nameIds, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        creationTimes = Arrays.copyOf(creationTimes, capacity);
+        lastAccessTimes = Arrays.copyOf(lastAccessTimes, capacity);
+        lastModifiedTimes = Arrays.copyOf(lastModifiedTimes, capacity);
+    }
+
+    /**
+     * Writes the entries, their names as ids of the name table that is written separately
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int entry = 0; entry < size; entry++) {
+            out.writeInt(nameIds[entry]);
+            out.writeByte(flags[entry]);
+            out.writeLong(sizes[entry]);
+            out.writeLong(creationTimes[entry]);
+            out.writeLong(lastAccessTimes[entry]);
+            out.writeLong(lastModifiedTimes[entry]);
+        }
+        out.writeInt(linkCanonicalPaths.size());
+        for (Map.Entry<Integer, String> link : linkCanonicalPaths.entrySet()) {
+            out.writeInt(link.getKey());
+            out.writeUTF(link.getValue());
+        }
+    }
+
+    /**
+     * Reads entries written by {@link #write(DataOutputStream)}
+     *
+     * @param in
+     * @param names the name table written with the entries
+     * @return
+     * @throws IOException
+     */
+    public static CompactEntries read(DataInputStream in, NameTable names) throws IOException {
+        int size = in.readInt();
+        CompactEntries entries = new CompactEntries(size, names);
+        for (int entry = 0; entry < size; entry++) {
+            int nameId = in.readInt();
+            if (nameId < 0 || nameId >= names.size()) {
+                throw new IOException("Invalid name id " + nameId);
+            }
+            entries.nameIds[entry] = nameId;
+            entries.flags[entry] = in.readByte();
+            entries.sizes[entry] = in.readLong();
+            entries.creationTimes[entry] = in.readLong();
+            entries.lastAccessTimes[entry] = in.readLong();
+            entries.lastModifiedTimes[entry] = in.readLong();
+        }
+        entries.size = size;
+        int links = in.readInt();
+        for (int i = 0; i < links; i++) {
+            entries.linkCanonicalPaths.put(in.readInt(), in.readUTF());
+        }
+        return entries;
+    }
+
+    /**
+     * Parses the times written by FileTime.toString, e.g. 2020-06-28T17:40:31.123456789Z, without the general
+     * ISO parser for the common case
+     */
+    static long toNanos(String time) {
+        int length = time.length();
+        if (length >= 20 && time.charAt(4) == '-' && time.charAt(10) == 'T' && time.charAt(length - 1) == 'Z'
+                && (length == 20 || time.charAt(19) == '.')) {
+            long seconds = daysSinceEpoch(digits(time, 0, 4), digits(time, 5, 7), digits(time, 8, 10)) * 86400L
+                    + digits(time, 11, 13) * 3600L + digits(time, 14, 16) * 60L + digits(time, 17, 19);
+            long nanos = 0;
+            int fraction = 0;
+            for (int i = 20; i < length - 1; i++, fraction++) {
+                nanos = nanos * 10 + digit(time, i);
+            }
+            for (; fraction < 9; fraction++) {
+                nanos *= 10;
+            }
+            return seconds * 1_000_000_000L + nanos;
+        }
+        return FileTime.from(Instant.parse(time)).to(TimeUnit.NANOSECONDS);
+    }
+
+    private static String toString(long nanos) {
+        return FileTime.from(nanos, TimeUnit.NANOSECONDS).toString();
+    }
+
+    private static int digits(String time, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 10 + digit(time, i);
+        }
+        return value;
+    }
+
+    private static int digit(String time, int index) {
+        int digit = time.charAt(index) - '0';
+        if (digit < 0 || digit > 9) {
+            throw new IllegalArgumentException("Invalid time " + time);
+        }
+        return digit;
+    }
+
+    // days from civil, proleptic Gregorian calendar
+    private static long daysSinceEpoch(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,105 @@
+package com.filemetadata.file.compact;
+
+/**
+ * Set of file keys, the (device, inode) pairs of files, stored as two longs per slot of an open addressing table
+ * with linear probing instead of a boxed key object per entry. Inode 0 marks a free slot, filesystems do not hand it
+ * out to files.
+ *
+ * @author Vinod Kandula
+ */
+public class FileKeySet {
+
+    private static final int MIN_CAPACITY = 16;
+
+    // device and inode of slot i at 2i and 2i + 1, the number of slots is a power of two
+    private long[] keys;
+    private int size;
+
+    public FileKeySet() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expected number of keys added without growing the table
+     */
+    public FileKeySet(int expected) {
+        int slots = MIN_CAPACITY;
+        while (slots < expected * 2) {
+            slots <<= 1;
+        }
+        this.keys = new long[slots * 2];
+    }
+
+    /**
+     * @param device
+     * @param inode  not 0
+     * @return true when the key was not in the set yet
+     * @throws IllegalArgumentException for inode 0
+     */
+    public boolean add(long device, long inode) {
+        if (inode == 0) {
+            throw new IllegalArgumentException("inode 0");
+        }
+        int mask = keys.length / 2 - 1;
+        for (int slot = hash(device, inode) & mask; ; slot = (slot + 1) & mask) {
+            long slotInode = keys[2 * slot + 1];
+            if (slotInode == 0) {
+                keys[2 * slot] = device;
+                keys[2 * slot + 1] = inode;
+                if (++size * 2 > keys.length / 2) {
+                    grow();
+                }
+                return true;
+            }
+            if (slotInode == inode && keys[2 * slot] == device) {
+                return false;
+            }
+        }
+    }
+
+    public boolean contains(long device, long inode) {
+        if (inode == 0) {
+            return false;
+        }
+        int mask = keys.length / 2 - 1;
+        for (int slot = hash(device, inode) & mask; ; slot = (slot + 1) & mask) {
+            long slotInode = keys[2 * slot + 1];
+            if (slotInode == 0) {
+                return false;
+            }
+            if (slotInode == inode && keys[2 * slot] == device) {
+                return true;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Doubles the table once it is half full
+     */
+    private void grow() {
+        long[] previous = keys;
+        keys = new long[previous.length * 2];
+        int mask = keys.length / 2 - 1;
+        for (int i = 0; i < previous.length; i += 2) {
+            if (previous[i + 1] == 0) {
+                continue;
+            }
+            int slot = hash(previous[i], previous[i + 1]) & mask;
+            while (keys[2 * slot + 1] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[2 * slot] = previous[i];
+            keys[2 * slot + 1] = previous[i + 1];
+        }
+    }
+
+    // inodes of one device are mostly sequential, so both are mixed into all bits before masking
+    private static int hash(long device, long inode) {
+        long hash = Fingerprints.combine(Fingerprints.combine(Fingerprints.SEED, device), inode);
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
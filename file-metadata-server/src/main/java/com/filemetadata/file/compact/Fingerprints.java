@@ -0,0 +1,31 @@
+package com.filemetadata.file.compact;
+
+/**
+ * Order dependent 64 bit rolling hash of the entries of a tree, so a change of any listed name, size, modification
+ * time or flag changes the fingerprint of every directory above it. Used as ETag, not as a content checksum.
+ *
+ * @author Vinod Kandula
+ */
+public final class Fingerprints {
+
+    public static final long SEED = 0xCBF29CE484222325L;
+
+    private static final long PRIME = 0x100000001B3L;
+
+    private Fingerprints() {
+    }
+
+    public static long combine(long hash, long value) {
+        return (hash ^ mix(value)) * PRIME;
+    }
+
+    // finalizer of MurmurHash3, spreads the small values (flags, sizes) over all bits
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
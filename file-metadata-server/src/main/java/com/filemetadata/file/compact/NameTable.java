@@ -0,0 +1,95 @@
+package com.filemetadata.file.compact;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interned name segments addressed by id. Every distinct name is stored once, however many directories contain an
+ * entry of that name (index.js, package.json, src, ...), and entries refer to it with an int.
+ *
+ * The lookup map is only needed while names are added and is dropped by {@link #freeze()}.
+ *
+ * @author Vinod Kandula
+ */
+public class NameTable {
+
+    private String[] names;
+    private int size;
+    private Map<String, Integer> ids;
+
+    public NameTable() {
+        this(16);
+    }
+
+    public NameTable(int capacity) {
+        this.names = new String[Math.max(capacity, 1)];
+        this.ids = new HashMap<>(Math.max(capacity, 16));
+    }
+
+    /**
+     * @param name
+     * @return the id of the name, added when it is new
+     * @throws IllegalStateException when the table is frozen
+     */
+    public int id(String name) {
+        if (ids == null) {
+            throw new IllegalStateException("Name table is frozen");
+        }
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = append(name);
+            ids.put(name, id);
+        }
+        return id;
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Drops the lookup map and the unused capacity once all names are added
+     */
+    public void freeze() {
+        ids = null;
+        if (size < names.length) {
+            names = Arrays.copyOf(names, size);
+        }
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int id = 0; id < size; id++) {
+            out.writeUTF(names[id]);
+        }
+    }
+
+    /**
+     * Reads a frozen table written by {@link #write(DataOutputStream)}
+     */
+    public static NameTable read(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        NameTable table = new NameTable(size);
+        for (int id = 0; id < size; id++) {
+            table.append(in.readUTF());
+        }
+        table.freeze();
+        return table;
+    }
+
+    private int append(String name) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size + (size >> 1) + 1);
+        }
+        names[size] = name;
+        return size++;
+    }
+}
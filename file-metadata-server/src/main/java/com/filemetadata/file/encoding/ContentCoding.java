@@ -0,0 +1,134 @@
+package com.filemetadata.file.encoding;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content codings of the metadata responses, negotiated from the Accept-Encoding header.
+ *
+ * IDENTITY - not compressed.
+ * GZIP     - gzip, preferred when both are accepted equally.
+ * DEFLATE  - zlib format deflate.
+ *
+ * @author Vinod Kandula
+ */
+public enum ContentCoding {
+
+    IDENTITY("identity"),
+    GZIP("gzip"),
+    DEFLATE("deflate");
+
+    private String name;
+
+    ContentCoding(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return appended to the ETag of a compressed response, as the compressed bytes are a different representation
+     */
+    public String getETagSuffix() {
+        return this == IDENTITY ? "" : "-" + name;
+    }
+
+    /**
+     * Picks gzip or deflate by the quality values of the Accept-Encoding header
+     *
+     * @param acceptEncoding Accept-Encoding header, may be null
+     * @return the accepted compression of the highest quality, identity when none is accepted
+     */
+    public static ContentCoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.trim().isEmpty()) {
+            return IDENTITY;
+        }
+        double gzip = -1, deflate = -1, any = -1;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase();
+            double quality = quality(parts);
+            if (name.equals("gzip") || name.equals("x-gzip")) {
+                gzip = Math.max(gzip, quality);
+            } else if (name.equals("deflate")) {
+                deflate = Math.max(deflate, quality);
+            } else if (name.equals("*")) {
+                any = quality;
+            }
+        }
+        // codings that are not listed get the quality of *
+        gzip = gzip < 0 ? any : gzip;
+        deflate = deflate < 0 ? any : deflate;
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+        return deflate > 0 ? DEFLATE : IDENTITY;
+    }
+
+    /**
+     * Compresses everything written to the returned stream into the given one. The compressor is flushed with every
+     * flush, so streamed entries still reach the client right away, and closing the returned stream finishes the
+     * compressed data without closing the given stream.
+     *
+     * @param out
+     * @return
+     * @throws IOException
+     */
+    public OutputStream wrap(OutputStream out) throws IOException {
+        OutputStream target = new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+        switch (this) {
+            case GZIP:
+                return new GZIPOutputStream(target, 1 << 13, true);
+            case DEFLATE:
+                return new DeflaterOutputStream(target, true);
+            default:
+                return target;
+        }
+    }
+
+    /**
+     * @param body
+     * @return the compressed body
+     * @throws IOException
+     */
+    public byte[] encode(byte[] body) throws IOException {
+        if (this == IDENTITY) {
+            return body;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(body.length >> 3, 64));
+        try (OutputStream compressed = wrap(out)) {
+            compressed.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
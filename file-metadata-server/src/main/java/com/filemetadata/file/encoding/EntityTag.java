@@ -0,0 +1,86 @@
+package com.filemetadata.file.encoding;
+
+import org.springframework.util.DigestUtils;
+
+/**
+ * Strong entity tags of the metadata responses. A tag is taken either from the fingerprint of the cached or
+ * indexed entries plus the request parameters that shape the response, so a poll is answered before anything is
+ * built or serialized, or else from the MD5 of the serialized body. The content coding is appended to the tag, and
+ * ignored when matching If-None-Match, so a client holding the response in any coding gets a 304. The 304 carries
+ * the tag in the coding the 200 would have been sent in.
+ *
+ * @author Vinod Kandula
+ */
+public final class EntityTag {
+
+    private EntityTag() {
+    }
+
+    /**
+     * @param fingerprint of the entries the response is built from
+     * @param variant     everything else the response depends on: path, parameters, encoding
+     * @return
+     */
+    public static String of(long fingerprint, String variant) {
+        return String.format("%016x%08x", fingerprint, variant.hashCode());
+    }
+
+    /**
+     * @param body serialized response
+     * @return
+     */
+    public static String of(byte[] body) {
+        return DigestUtils.md5DigestAsHex(body);
+    }
+
+    /**
+     * @param tag
+     * @param coding content coding of the response
+     * @return the quoted ETag header value
+     */
+    public static String header(String tag, ContentCoding coding) {
+        return "\"" + tag + coding.getETagSuffix() + "\"";
+    }
+
+    /**
+     * Weak comparison of If-None-Match with the tag, in any content coding
+     *
+     * @param ifNoneMatch If-None-Match header, may be null
+     * @param tag
+     * @return true when the client already holds the response
+     */
+    public static boolean matches(String ifNoneMatch, String tag) {
+        if (ifNoneMatch == null || tag == null) {
+            return false;
+        }
+        return ifNoneMatch.trim().equals("*") || heldCoding(ifNoneMatch, tag) != null;
+    }
+
+    /**
+     * @param ifNoneMatch If-None-Match header, may be null
+     * @param tag
+     * @return the content coding of the first tag of If-None-Match holding the given one, null when none does
+     */
+    public static ContentCoding heldCoding(String ifNoneMatch, String tag) {
+        if (ifNoneMatch == null || tag == null) {
+            return null;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.length() < 2 || !candidate.startsWith("\"") || !candidate.endsWith("\"")) {
+                continue;
+            }
+            candidate = candidate.substring(1, candidate.length() - 1);
+            for (ContentCoding coding : ContentCoding.values()) {
+                String suffix = coding.getETagSuffix();
+                if (candidate.length() == tag.length() + suffix.length() && candidate.startsWith(tag) && candidate.endsWith(suffix)) {
+                    return coding;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,187 @@
+package com.filemetadata.file.encoding;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.filemetadata.dto.ChangeBatch;
+import com.filemetadata.dto.DirectoryPage;
+import com.filemetadata.dto.FileBatch;
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.projection.Projection;
+import com.filemetadata.file.stream.FileMetadataStreamWriter;
+import com.filemetadata.file.stream.MetadataStreamWriter;
+import com.filemetadata.file.stream.StreamFormat;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes the metadata of one request in its negotiated {@link ResponseEncoding}, with the fields of its
+ * {@link Projection}, indented only when pretty printing was asked for.
+ *
+ * @author Vinod Kandula
+ */
+public class MetadataEncoder {
+
+    private static final ObjectMapper JSON_MAPPER = mapper(new ObjectMapper());
+    private static final ObjectMapper SMILE_MAPPER = mapper(new ObjectMapper(new SmileFactory()));
+    private static final ObjectMapper CBOR_MAPPER = mapper(new ObjectMapper(new CBORFactory()));
+
+    private final ResponseEncoding encoding;
+    private final Projection projection;
+    private final boolean pretty;
+
+    /**
+     * @param encoding
+     * @param projection the fields written for every entry
+     * @param pretty     true to indent JSON and XML, ignored by the binary encodings
+     */
+    public MetadataEncoder(ResponseEncoding encoding, Projection projection, boolean pretty) {
+        this.encoding = encoding;
+        this.projection = projection;
+        this.pretty = pretty;
+    }
+
+    public ResponseEncoding getEncoding() {
+        return encoding;
+    }
+
+    public Projection getProjection() {
+        return projection;
+    }
+
+    public boolean isPretty() {
+        return pretty;
+    }
+
+    public MediaType getMediaType() {
+        return MediaType.parseMediaType(encoding.getMediaType());
+    }
+
+    /**
+     * @param format
+     * @return the media type of a stream in the given format, ndjson for JSON lines
+     */
+    public MediaType getMediaType(StreamFormat format) {
+        if (encoding == ResponseEncoding.JSON) {
+            return MediaType.parseMediaType(format.getMediaType());
+        }
+        return getMediaType();
+    }
+
+    /**
+     * Encodes a metadata tree, or a single entry
+     *
+     * @param fileMetadata
+     * @return
+     * @throws IOException
+     */
+    public byte[] encode(FileMetadata fileMetadata) throws IOException {
+        switch (encoding) {
+            case PROTOBUF:
+                return ProtobufMessages.tree(fileMetadata, projection);
+            case XML:
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (MetadataStreamWriter writer = writer(out, StreamFormat.JSON, true)) {
+                    writer.visitTree(fileMetadata);
+                }
+                return out.toByteArray();
+            default:
+                return objectWriter().writeValueAsBytes(fileMetadata);
+        }
+    }
+
+    /**
+     * Encodes a page of entries
+     *
+     * @param page
+     * @return
+     * @throws IOException
+     */
+    public byte[] encode(DirectoryPage page) throws IOException {
+        switch (encoding) {
+            case PROTOBUF:
+                return ProtobufMessages.page(page, projection);
+            case XML:
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                XmlMetadataStreamWriter.writePage(out, page, projection, pretty);
+                return out.toByteArray();
+            default:
+                return objectWriter().writeValueAsBytes(page);
+        }
+    }
+
+    /**
+     * Encodes the results of a batch
+     *
+     * @param batch
+     * @return
+     * @throws IOException
+     */
+    public byte[] encode(FileBatch batch) throws IOException {
+        switch (encoding) {
+            case PROTOBUF:
+                return ProtobufMessages.batch(batch, projection);
+            case XML:
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                XmlMetadataStreamWriter.writeBatch(out, batch, projection, pretty);
+                return out.toByteArray();
+            default:
+                return objectWriter().writeValueAsBytes(batch);
+        }
+    }
+
+    /**
+     * Encodes a batch of the change feed, sent as the data of a server-sent event
+     *
+     * @param batch
+     * @return
+     * @throws IOException
+     */
+    public byte[] encode(ChangeBatch batch) throws IOException {
+        return objectWriter().writeValueAsBytes(batch);
+    }
+
+    /**
+     * Creates the writer streaming visited entries to the given output stream. Protobuf messages need their length
+     * up front, so they are always streamed as a flat list of length-delimited messages.
+     *
+     * @param out
+     * @param format
+     * @param writeDirectories false to leave the directories out of a flat list
+     * @return
+     * @throws IOException
+     */
+    public MetadataStreamWriter writer(OutputStream out, StreamFormat format, boolean writeDirectories) throws IOException {
+        switch (encoding) {
+            case SMILE:
+                return new FileMetadataStreamWriter(out, SMILE_MAPPER.getFactory(), format, writeDirectories, projection, false);
+            case CBOR:
+                return new FileMetadataStreamWriter(out, CBOR_MAPPER.getFactory(), format, writeDirectories, projection, false);
+            case PROTOBUF:
+                return new ProtobufMetadataStreamWriter(out, writeDirectories || format == StreamFormat.JSON, projection);
+            case XML:
+                return new XmlMetadataStreamWriter(out, format, writeDirectories, projection, pretty);
+            default:
+                return new FileMetadataStreamWriter(out, JSON_MAPPER.getFactory(), format, writeDirectories, projection, pretty);
+        }
+    }
+
+    private ObjectWriter objectWriter() {
+        ObjectMapper mapper = encoding == ResponseEncoding.SMILE ? SMILE_MAPPER
+                : encoding == ResponseEncoding.CBOR ? CBOR_MAPPER : JSON_MAPPER;
+        ObjectWriter writer = projection.isAll() ? mapper.writer() : mapper.writer(projection.getFilters());
+        return pretty && encoding == ResponseEncoding.JSON ? writer.with(SerializationFeature.INDENT_OUTPUT) : writer;
+    }
+
+    private static ObjectMapper mapper(ObjectMapper mapper) {
+        mapper.setFilterProvider(new SimpleFilterProvider().setDefaultFilter(SimpleBeanPropertyFilter.serializeAll()));
+        return mapper;
+    }
+}
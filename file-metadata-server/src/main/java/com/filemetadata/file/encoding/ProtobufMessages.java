@@ -0,0 +1,192 @@
+package com.filemetadata.file.encoding;
+
+import com.filemetadata.dto.DirectoryPage;
+import com.filemetadata.dto.FileBatch;
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.dto.FileResult;
+import com.filemetadata.file.projection.MetadataField;
+import com.filemetadata.file.projection.Projection;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes the messages of src/main/resources/proto/file_metadata.proto
+ *
+ * @author Vinod Kandula
+ */
+final class ProtobufMessages {
+
+    private static final int CHILDREN = 19;
+
+    private static final int PAGE_PATH = 1;
+    private static final int PAGE_LIMIT = 2;
+    private static final int PAGE_ENTRIES = 3;
+    private static final int PAGE_NEXT_CURSOR = 4;
+
+    private static final int BATCH_RESULTS = 1;
+
+    private static final int RESULT_PATH = 1;
+    private static final int RESULT_METADATA = 2;
+    private static final int RESULT_ERROR_CODE = 3;
+    private static final int RESULT_ERROR_DESCRIPTION = 4;
+
+    private ProtobufMessages() {
+    }
+
+    /**
+     * Writes the attributes of the projection as the fields of a FileMetadata message, without children
+     */
+    static void writeFields(ProtobufOutput out, FileMetadata fileMetadata, Projection projection) {
+        if (projection.includes(MetadataField.NAME))
+            out.writeString(1, fileMetadata.getName());
+        if (projection.includes(MetadataField.PATH))
+            out.writeString(2, fileMetadata.getPath());
+        if (projection.includes(MetadataField.SIZE))
+            out.writeInt64(3, fileMetadata.getSize());
+        if (projection.includes(MetadataField.PARENT))
+            out.writeString(4, fileMetadata.getParent());
+        if (projection.includes(MetadataField.ABSOLUTE_PATH))
+            out.writeString(5, fileMetadata.getAbsolutePath());
+        if (projection.includes(MetadataField.ABSOLUTE))
+            out.writeBool(6, fileMetadata.isAbsolute());
+        if (projection.includes(MetadataField.CANONICAL_PATH))
+            out.writeString(7, fileMetadata.getCanonicalPath());
+        if (projection.includes(MetadataField.CREATION_TIME))
+            out.writeString(8, fileMetadata.getCreationTime());
+        if (projection.includes(MetadataField.LAST_ACCESS_TIME))
+            out.writeString(9, fileMetadata.getLastAccessTime());
+        if (projection.includes(MetadataField.LAST_MODIFIED_TIME))
+            out.writeString(10, fileMetadata.getLastModifiedTime());
+        if (projection.includes(MetadataField.DIRECTORY))
+            out.writeBool(11, fileMetadata.isDirectory());
+        if (projection.includes(MetadataField.FILE))
+            out.writeBool(12, fileMetadata.isFile());
+        if (projection.includes(MetadataField.HIDDEN))
+            out.writeBool(13, fileMetadata.isHidden());
+        if (projection.includes(MetadataField.REGULAR_FILE))
+            out.writeBool(14, fileMetadata.isRegularFile());
+        if (projection.includes(MetadataField.SYMBOLIC_LINK))
+            out.writeBool(15, fileMetadata.isSymbolicLink());
+        if (projection.includes(MetadataField.CAN_READ))
+            out.writeBool(16, fileMetadata.isCanRead());
+        if (projection.includes(MetadataField.CAN_WRITE))
+            out.writeBool(17, fileMetadata.isCanWrite());
+        if (projection.includes(MetadataField.CAN_EXECUTE))
+            out.writeBool(18, fileMetadata.isCanExecute());
+    }
+
+    /**
+     * Encodes a tree as one FileMetadata message with nested children. The lengths of all messages are counted in a
+     * first pass, in the same pre-order they are written in the second one.
+     */
+    static byte[] tree(FileMetadata root, Projection projection) {
+        Lengths lengths = new Lengths();
+        int length = count(root, projection, ProtobufOutput.counting(), lengths);
+        ProtobufOutput out = ProtobufOutput.buffer(length);
+        lengths.next = 1;
+        write(root, projection, out, lengths);
+        return out.toByteArray();
+    }
+
+    static byte[] page(DirectoryPage page, Projection projection) {
+        ProtobufOutput counter = ProtobufOutput.counting();
+        int[] lengths = new int[page.getEntries().size()];
+        for (int i = 0; i < lengths.length; i++) {
+            counter.reset();
+            writeFields(counter, page.getEntries().get(i), projection);
+            lengths[i] = counter.position();
+        }
+
+        ProtobufOutput out = ProtobufOutput.buffer(64 + Arrays.stream(lengths).sum() + 4 * lengths.length);
+        out.writeString(PAGE_PATH, page.getPath());
+        out.writeInt64(PAGE_LIMIT, page.getLimit());
+        for (int i = 0; i < lengths.length; i++) {
+            out.writeMessageStart(PAGE_ENTRIES, lengths[i]);
+            writeFields(out, page.getEntries().get(i), projection);
+        }
+        out.writeString(PAGE_NEXT_CURSOR, page.getNextCursor());
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes the results of a batch as one FileBatch message
+     */
+    static byte[] batch(FileBatch batch, Projection projection) {
+        List<FileResult> results = batch.getResults();
+        ProtobufOutput counter = ProtobufOutput.counting();
+        int[] metadataLengths = new int[results.size()];
+        int[] lengths = new int[results.size()];
+        int length = 0;
+        for (int i = 0; i < lengths.length; i++) {
+            if (results.get(i).getMetadata() != null) {
+                counter.reset();
+                writeFields(counter, results.get(i).getMetadata(), projection);
+                metadataLengths[i] = counter.position();
+            }
+            counter.reset();
+            writeResult(counter, results.get(i), projection, metadataLengths[i]);
+            lengths[i] = counter.position();
+            counter.reset();
+            counter.writeMessageStart(BATCH_RESULTS, lengths[i]);
+            length += counter.position() + lengths[i];
+        }
+
+        ProtobufOutput out = ProtobufOutput.buffer(length);
+        for (int i = 0; i < lengths.length; i++) {
+            out.writeMessageStart(BATCH_RESULTS, lengths[i]);
+            writeResult(out, results.get(i), projection, metadataLengths[i]);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeResult(ProtobufOutput out, FileResult result, Projection projection, int metadataLength) {
+        out.writeString(RESULT_PATH, result.getPath());
+        if (result.getMetadata() != null) {
+            out.writeMessageStart(RESULT_METADATA, metadataLength);
+            writeFields(out, result.getMetadata(), projection);
+        }
+        out.writeString(RESULT_ERROR_CODE, result.getErrorCode());
+        out.writeString(RESULT_ERROR_DESCRIPTION, result.getErrorDescription());
+    }
+
+    private static int count(FileMetadata fileMetadata, Projection projection, ProtobufOutput counter, Lengths lengths) {
+        int slot = lengths.add();
+        counter.reset();
+        writeFields(counter, fileMetadata, projection);
+        int length = counter.position();
+        for (FileMetadata child : fileMetadata.getChildren()) {
+            int childLength = count(child, projection, counter, lengths);
+            counter.reset();
+            counter.writeMessageStart(CHILDREN, childLength);
+            length += counter.position() + childLength;
+        }
+        lengths.values[slot] = length;
+        return length;
+    }
+
+    private static void write(FileMetadata fileMetadata, Projection projection, ProtobufOutput out, Lengths lengths) {
+        writeFields(out, fileMetadata, projection);
+        for (FileMetadata child : fileMetadata.getChildren()) {
+            out.writeMessageStart(CHILDREN, lengths.values[lengths.next++]);
+            write(child, projection, out, lengths);
+        }
+    }
+
+    /**
+     * Message lengths in pre-order
+     */
+    private static class Lengths {
+
+        private int[] values = new int[64];
+        private int size;
+        private int next;
+
+        int add() {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size << 1);
+            }
+            return size++;
+        }
+    }
+}
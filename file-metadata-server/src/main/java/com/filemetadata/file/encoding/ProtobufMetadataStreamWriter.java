@@ -0,0 +1,75 @@
+package com.filemetadata.file.encoding;
+
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.projection.Projection;
+import com.filemetadata.file.stream.MetadataStreamWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streams every visited entry as a length-delimited FileMetadata message without children (the framing of
+ * writeDelimitedTo / parseDelimitedFrom). Nested messages need their length before their content, so a tree can not
+ * be streamed nested; the parent field places an entry in the tree.
+ *
+ * @author Vinod Kandula
+ */
+public class ProtobufMetadataStreamWriter implements MetadataStreamWriter {
+
+    // push buffered entries to the client regularly, so a long scan keeps the connection busy
+    private static final int FLUSH_INTERVAL = 1024;
+
+    private final OutputStream out;
+    private final boolean writeDirectories;
+    private final Projection projection;
+    private final ProtobufOutput message = ProtobufOutput.buffer(512);
+    private final ProtobufOutput length = ProtobufOutput.buffer(8);
+    private long entries;
+
+    /**
+     * @param out
+     * @param writeDirectories false to leave the directories out
+     * @param projection       the fields written for every entry
+     */
+    public ProtobufMetadataStreamWriter(OutputStream out, boolean writeDirectories, Projection projection) {
+        this.out = new BufferedOutputStream(out, 1 << 13);
+        this.writeDirectories = writeDirectories;
+        this.projection = projection;
+    }
+
+    @Override
+    public void preVisitDirectory(FileMetadata directory) throws IOException {
+        if (writeDirectories) {
+            write(directory);
+        }
+    }
+
+    @Override
+    public void visitFile(FileMetadata file) throws IOException {
+        write(file);
+    }
+
+    @Override
+    public void postVisitDirectory(FileMetadata directory) {
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.flush();
+    }
+
+    private void write(FileMetadata fileMetadata) throws IOException {
+        message.reset();
+        ProtobufMessages.writeFields(message, fileMetadata, projection);
+        length.reset();
+        length.writeVarint(message.position());
+        length.writeTo(out);
+        message.writeTo(out);
+
+        // the first flush gets the root entry to the client right away
+        if (entries++ % FLUSH_INTERVAL == 0) {
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.filemetadata.file.encoding;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Minimal Protocol Buffers wire format writer for the few field types of file_metadata.proto, so the responses need
+ * neither protoc nor generated message classes. Fields holding the proto3 default (empty, false, 0) are skipped.
+ *
+ * A counting output only adds up the encoded length, which is how the length prefixes of nested messages are
+ * computed before the messages are written.
+ *
+ * @author Vinod Kandula
+ */
+final class ProtobufOutput {
+
+    static final int VARINT = 0;
+    static final int LENGTH_DELIMITED = 2;
+
+    private final boolean counting;
+    private byte[] buffer;
+    private int position;
+
+    private ProtobufOutput(boolean counting, int capacity) {
+        this.counting = counting;
+        this.buffer = counting ? null : new byte[Math.max(capacity, 16)];
+    }
+
+    static ProtobufOutput counting() {
+        return new ProtobufOutput(true, 0);
+    }
+
+    static ProtobufOutput buffer(int capacity) {
+        return new ProtobufOutput(false, capacity);
+    }
+
+    /**
+     * @return the bytes written, or counted, so far
+     */
+    int position() {
+        return position;
+    }
+
+    void reset() {
+        position = 0;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, position);
+    }
+
+    void writeString(int field, String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        writeTag(field, LENGTH_DELIMITED);
+        writeVarint(utf8Length(value));
+        writeUtf8(value);
+    }
+
+    void writeBool(int field, boolean value) {
+        if (value) {
+            writeTag(field, VARINT);
+            writeByte(1);
+        }
+    }
+
+    void writeInt64(int field, long value) {
+        if (value != 0) {
+            writeTag(field, VARINT);
+            writeVarint(value);
+        }
+    }
+
+    /**
+     * Starts a nested message field, its length has to be known up front
+     */
+    void writeMessageStart(int field, int length) {
+        writeTag(field, LENGTH_DELIMITED);
+        writeVarint(length);
+    }
+
+    void writeTag(int field, int wireType) {
+        writeVarint((field << 3) | wireType);
+    }
+
+    void writeVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        writeByte((int) value);
+    }
+
+    private void writeUtf8(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                writeByte(c);
+            } else if (c < 0x800) {
+                writeByte(0xC0 | (c >> 6));
+                writeByte(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                writeByte(0xF0 | (codePoint >> 18));
+                writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                writeByte(0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogates are replaced like String.getBytes does
+                writeByte('?');
+            } else {
+                writeByte(0xE0 | (c >> 12));
+                writeByte(0x80 | ((c >> 6) & 0x3F));
+                writeByte(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private void writeByte(int value) {
+        if (!counting) {
+            if (position == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length << 1);
+            }
+            buffer[position] = (byte) value;
+        }
+        position++;
+    }
+}
@@ -0,0 +1,91 @@
+package com.filemetadata.file.encoding;
+
+import com.filemetadata.file.stream.StreamFormat;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodings of the metadata responses, negotiated from the Accept header.
+ *
+ * JSON     - text, the default.
+ * SMILE    - binary JSON of the same document.
+ * CBOR     - binary JSON of the same document.
+ * PROTOBUF - messages of src/main/resources/proto/file_metadata.proto.
+ * XML      - the same document as elements, written with StAX.
+ *
+ * @author Vinod Kandula
+ */
+public enum ResponseEncoding {
+
+    JSON("application/json"),
+    SMILE("application/x-jackson-smile"),
+    CBOR("application/cbor"),
+    PROTOBUF("application/x-protobuf"),
+    XML("application/xml");
+
+    private String mediaType;
+
+    ResponseEncoding(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Picks the encoding for the given Accept header, by quality and then in the order of the encodings
+     *
+     * @param accept Accept header, null or empty for JSON
+     * @return
+     * @throws HttpMediaTypeNotAcceptableException when none of the accepted media types is supported
+     */
+    public static ResponseEncoding negotiate(String accept) throws HttpMediaTypeNotAcceptableException {
+        return negotiate(accept, StreamFormat.JSON);
+    }
+
+    /**
+     * Picks the encoding for the given Accept header of a streamed response, the media type of the stream format
+     * (application/x-ndjson) is accepted as JSON
+     *
+     * @param accept Accept header, null or empty for JSON
+     * @param format
+     * @return
+     * @throws HttpMediaTypeNotAcceptableException when none of the accepted media types is supported
+     */
+    public static ResponseEncoding negotiate(String accept, StreamFormat format) throws HttpMediaTypeNotAcceptableException {
+        if (accept == null || accept.trim().isEmpty()) {
+            return JSON;
+        }
+        List<MediaType> acceptedTypes;
+        try {
+            acceptedTypes = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            throw new HttpMediaTypeNotAcceptableException("Could not parse 'Accept' header [" + accept + "]: " + e.getMessage());
+        }
+        MediaType formatType = MediaType.parseMediaType(format.getMediaType());
+        MediaType.sortBySpecificityAndQuality(acceptedTypes);
+        for (MediaType acceptedType : acceptedTypes) {
+            if (acceptedType.includes(formatType)) {
+                return JSON;
+            }
+            for (ResponseEncoding encoding : values()) {
+                if (acceptedType.includes(MediaType.parseMediaType(encoding.mediaType))) {
+                    return encoding;
+                }
+            }
+        }
+        List<MediaType> supportedTypes = new ArrayList<>();
+        if (format != StreamFormat.JSON) {
+            supportedTypes.add(formatType);
+        }
+        for (ResponseEncoding encoding : values()) {
+            supportedTypes.add(MediaType.parseMediaType(encoding.mediaType));
+        }
+        throw new HttpMediaTypeNotAcceptableException(supportedTypes);
+    }
+}
@@ -0,0 +1,318 @@
+package com.filemetadata.file.encoding;
+
+import com.filemetadata.dto.DirectoryPage;
+import com.filemetadata.dto.FileBatch;
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.dto.FileResult;
+import com.filemetadata.file.projection.MetadataField;
+import com.filemetadata.file.projection.Projection;
+import com.filemetadata.file.stream.MetadataStreamWriter;
+import com.filemetadata.file.stream.StreamFormat;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes every visited entry straight to the output stream through a StAX {@link XMLStreamWriter}. Entries are
+ * fileMetadata elements with one element per attribute, nested in the children element of their directory, or for
+ * the flat format listed one after the other in an entries element.
+ *
+ * @author Vinod Kandula
+ */
+public class XmlMetadataStreamWriter implements MetadataStreamWriter {
+
+    private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    private static final String ENTRY = "fileMetadata";
+    private static final String CHILDREN = "children";
+    private static final String ENTRIES = "entries";
+
+    // push buffered entries to the client regularly, so a long scan keeps the connection busy
+    private static final int FLUSH_INTERVAL = 1024;
+
+    private final XMLStreamWriter writer;
+    private final StreamFormat format;
+    private final boolean writeDirectories;
+    private final Projection projection;
+    private final boolean pretty;
+    private int depth;
+    private boolean hasElements;
+    private long entries;
+
+    /**
+     * @param out
+     * @param format           json for nested entries, ndjson for a flat list
+     * @param writeDirectories false to leave the directories out of the flat list
+     * @param projection       the fields written for every entry
+     * @param pretty           true to indent the elements
+     * @throws IOException
+     */
+    public XmlMetadataStreamWriter(OutputStream out, StreamFormat format, boolean writeDirectories, Projection projection,
+                                   boolean pretty) throws IOException {
+        this.format = format;
+        this.writeDirectories = writeDirectories;
+        this.projection = projection;
+        this.pretty = pretty;
+        try {
+            this.writer = XML_OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            if (format == StreamFormat.NDJSON) {
+                startElement(ENTRIES);
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Writes a whole page as a directoryPage element
+     *
+     * @param out
+     * @param page
+     * @param projection
+     * @param pretty
+     * @throws IOException
+     */
+    public static void writePage(OutputStream out, DirectoryPage page, Projection projection, boolean pretty) throws IOException {
+        XmlMetadataStreamWriter xml = new XmlMetadataStreamWriter(out, StreamFormat.JSON, true, projection, pretty);
+        try {
+            xml.startElement("directoryPage");
+            xml.field("path", page.getPath());
+            xml.field("limit", String.valueOf(page.getLimit()));
+            xml.startElement(ENTRIES);
+            for (FileMetadata fileMetadata : page.getEntries()) {
+                xml.startElement(ENTRY);
+                xml.writeFields(fileMetadata);
+                xml.endElement();
+            }
+            xml.endElement();
+            xml.field("nextCursor", page.getNextCursor());
+            xml.endElement();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        xml.close();
+    }
+
+    /**
+     * Writes the results of a batch as a fileBatch element
+     *
+     * @param out
+     * @param batch
+     * @param projection
+     * @param pretty
+     * @throws IOException
+     */
+    public static void writeBatch(OutputStream out, FileBatch batch, Projection projection, boolean pretty) throws IOException {
+        XmlMetadataStreamWriter xml = new XmlMetadataStreamWriter(out, StreamFormat.JSON, true, projection, pretty);
+        try {
+            xml.startElement("fileBatch");
+            xml.startElement("results");
+            for (FileResult result : batch.getResults()) {
+                xml.startElement("fileResult");
+                xml.field("path", result.getPath());
+                if (result.getMetadata() != null) {
+                    xml.writeEntry(result.getMetadata());
+                }
+                xml.field("errorCode", result.getErrorCode());
+                xml.field("errorDescription", result.getErrorDescription());
+                xml.endElement();
+            }
+            xml.endElement();
+            xml.endElement();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        xml.close();
+    }
+
+    @Override
+    public void preVisitDirectory(FileMetadata directory) throws IOException {
+        try {
+            if (format == StreamFormat.NDJSON) {
+                if (!writeDirectories) {
+                    return;
+                }
+                writeEntry(directory);
+            } else {
+                startElement(ENTRY);
+                writeFields(directory);
+                startElement(CHILDREN);
+            }
+            entryWritten();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void visitFile(FileMetadata file) throws IOException {
+        try {
+            if (format == StreamFormat.NDJSON) {
+                writeEntry(file);
+            } else {
+                startElement(ENTRY);
+                writeFields(file);
+                startElement(CHILDREN);
+                endElement();
+                endElement();
+            }
+            entryWritten();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void postVisitDirectory(FileMetadata directory) throws IOException {
+        if (format == StreamFormat.JSON) {
+            try {
+                endElement();
+                endElement();
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            while (depth > 0) {
+                endElement();
+            }
+            writer.writeEndDocument();
+            writer.flush();
+            // leaves the output stream open
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void writeEntry(FileMetadata fileMetadata) throws XMLStreamException {
+        startElement(ENTRY);
+        writeFields(fileMetadata);
+        endElement();
+    }
+
+    private void writeFields(FileMetadata fileMetadata) throws XMLStreamException {
+        if (projection.includes(MetadataField.NAME))
+            field("name", fileMetadata.getName());
+        if (projection.includes(MetadataField.PATH))
+            field("path", fileMetadata.getPath());
+        if (projection.includes(MetadataField.SIZE))
+            field("size", String.valueOf(fileMetadata.getSize()));
+        if (projection.includes(MetadataField.PARENT))
+            field("parent", fileMetadata.getParent());
+        if (projection.includes(MetadataField.ABSOLUTE_PATH))
+            field("absolutePath", fileMetadata.getAbsolutePath());
+        if (projection.includes(MetadataField.CANONICAL_PATH))
+            field("canonicalPath", fileMetadata.getCanonicalPath());
+        if (projection.includes(MetadataField.CREATION_TIME))
+            field("creationTime", fileMetadata.getCreationTime());
+        if (projection.includes(MetadataField.LAST_ACCESS_TIME))
+            field("lastAccessTime", fileMetadata.getLastAccessTime());
+        if (projection.includes(MetadataField.LAST_MODIFIED_TIME))
+            field("lastModifiedTime", fileMetadata.getLastModifiedTime());
+        if (projection.includes(MetadataField.CAN_READ))
+            field("canRead", String.valueOf(fileMetadata.isCanRead()));
+        if (projection.includes(MetadataField.CAN_WRITE))
+            field("canWrite", String.valueOf(fileMetadata.isCanWrite()));
+        if (projection.includes(MetadataField.CAN_EXECUTE))
+            field("canExecute", String.valueOf(fileMetadata.isCanExecute()));
+        if (projection.includes(MetadataField.ABSOLUTE))
+            field("absolute", String.valueOf(fileMetadata.isAbsolute()));
+        if (projection.includes(MetadataField.DIRECTORY))
+            field("directory", String.valueOf(fileMetadata.isDirectory()));
+        if (projection.includes(MetadataField.FILE))
+            field("file", String.valueOf(fileMetadata.isFile()));
+        if (projection.includes(MetadataField.HIDDEN))
+            field("hidden", String.valueOf(fileMetadata.isHidden()));
+        if (projection.includes(MetadataField.REGULAR_FILE))
+            field("regularFile", String.valueOf(fileMetadata.isRegularFile()));
+        if (projection.includes(MetadataField.SYMBOLIC_LINK))
+            field("symbolicLink", String.valueOf(fileMetadata.isSymbolicLink()));
+    }
+
+    private void startElement(String name) throws XMLStreamException {
+        indent();
+        writer.writeStartElement(name);
+        depth++;
+        hasElements = false;
+    }
+
+    private void endElement() throws XMLStreamException {
+        depth--;
+        // empty elements stay on one line
+        if (hasElements) {
+            indent();
+        }
+        writer.writeEndElement();
+        hasElements = true;
+    }
+
+    private void field(String name, String value) throws XMLStreamException {
+        if (value == null) {
+            return;
+        }
+        indent();
+        writer.writeStartElement(name);
+        writer.writeCharacters(legal(value));
+        writer.writeEndElement();
+        hasElements = true;
+    }
+
+    /**
+     * File names may hold control characters and unpaired surrogates, which XML 1.0 cannot carry even escaped
+     *
+     * @param value
+     * @return the value with every character XML 1.0 does not allow replaced by U+FFFD
+     */
+    static String legal(String value) {
+        StringBuilder legal = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            boolean allowed;
+            if (Character.isHighSurrogate(c)) {
+                allowed = i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1));
+                if (allowed) {
+                    // the pair is a code point from U+10000
+                    if (legal != null) {
+                        legal.append(c).append(value.charAt(i + 1));
+                    }
+                    i++;
+                    continue;
+                }
+            } else {
+                allowed = c == '\t' || c == '\n' || c == '\r' || c >= 0x20 && c <= 0xD7FF || c >= 0xE000 && c <= 0xFFFD;
+            }
+            if (!allowed && legal == null) {
+                legal = new StringBuilder(value.length()).append(value, 0, i);
+            }
+            if (legal != null) {
+                legal.append(allowed ? c : '\uFFFD');
+            }
+        }
+        return legal == null ? value : legal.toString();
+    }
+
+    private void indent() throws XMLStreamException {
+        if (pretty) {
+            writer.writeCharacters("\n");
+            for (int i = 0; i < depth; i++) {
+                writer.writeCharacters("  ");
+            }
+        }
+    }
+
+    private void entryWritten() throws XMLStreamException {
+        // the first flush gets the root entry to the client right away
+        if (entries++ % FLUSH_INTERVAL == 0) {
+            writer.flush();
+        }
+    }
+}
@@ -0,0 +1,505 @@
+package com.filemetadata.file.feed;
+
+import com.filemetadata.config.FileMetadataProperties;
+import com.filemetadata.dto.ChangeBatch;
+import com.filemetadata.dto.ChangeEvent;
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.cache.DirectoryWatcher;
+import com.filemetadata.file.encoding.MetadataEncoder;
+import com.filemetadata.file.encoding.ResponseEncoding;
+import com.filemetadata.file.handler.FileMetadataHandler;
+import com.filemetadata.file.projection.Projection;
+import com.filemetadata.file.traversal.FollowLinks;
+import com.filemetadata.file.traversal.TraversalFilter;
+import com.filemetadata.file.traversal.VisitedDirectories;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Pushes the changes below a directory to its subscribers as server-sent events.
+ *
+ * The first subscriber of a directory registers it and every directory below it with one {@link DirectoryWatcher},
+ * and the watches are cancelled with the last subscriber, so any number of subscribers of a directory share the same
+ * registrations. Directories created later are registered as they show up, and the entries created in them before
+ * that are reported as created too.
+ *
+ * Changes are collected per directory for filemetadata.feed.batch-window and repeated changes of an entry coalesced
+ * into one, see {@link ChangeKind#coalesce(ChangeKind, ChangeKind)}. Each batch is read once, the fresh metadata of
+ * every changed entry, and serialized once per requested projection for all subscribers. When the watcher lost the
+ * changes of a directory (OVERFLOW) only that directory's subtree is scanned again and sent as a rescan event.
+ *
+ * The scheduler thread only hands out work: the batches of a root are read on a worker, one batch of the root at a
+ * time, and every subscriber is written by a worker of its own from a queue of filemetadata.feed.max-queued-events
+ * events. A subscriber whose queue is full is closed, so a stalled client holds up neither the other subscribers nor
+ * the other roots, and keeps no more than its queue in memory.
+ *
+ * @author Vinod Kandula
+ */
+@Component
+@Slf4j
+public class ChangeFeed implements DirectoryWatcher.Listener {
+
+    private static final String CHANGES = "changes";
+
+    private final FileMetadataProperties.Feed properties;
+    private final FollowLinks followLinks;
+    private final DirectoryWatcher watcher;
+    private final ScheduledExecutorService scheduler;
+    // reads the batches of the roots and writes to the subscribers, at most one thread per root and per subscriber
+    private final ExecutorService workers;
+    private final Map<Path, WatchedRoot> roots = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ChangeFeed(FileMetadataProperties properties) throws IOException {
+        this.properties = properties.getFeed();
+        this.followLinks = properties.getTraversal().getFollowLinks();
+        this.watcher = new DirectoryWatcher("filemetadata-change-feed", this);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "filemetadata-change-feed-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threads = new AtomicInteger();
+        this.workers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "filemetadata-change-feed-worker-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long window = this.properties.getBatchWindow().toMillis();
+        long heartbeat = this.properties.getHeartbeat().toMillis();
+        scheduler.scheduleWithFixedDelay(this::flush, window, window, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::heartbeat, heartbeat, heartbeat, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Subscribes to the changes below the given directory
+     *
+     * @param folder     directory already validated with {@link FileMetadataHandler#directory(String)}
+     * @param fields     attributes of the sent metadata, as requested
+     * @return the emitter of the subscription, completed when the client goes away or the subscription times out
+     * @throws IOException
+     */
+    public SseEmitter subscribe(File folder, String fields) throws IOException {
+        Path directory = folder.getAbsoluteFile().toPath();
+        WatchedRoot root;
+        Subscriber subscriber;
+        synchronized (roots) {
+            root = roots.computeIfAbsent(directory, WatchedRoot::new);
+            subscriber = new Subscriber(root, new SseEmitter(properties.getTimeout().toMillis()), fields);
+            root.subscribers.add(subscriber);
+        }
+        try {
+            // outside of the lock of all roots, the subscribers of the same root wait for the first one's walk
+            root.registerOnce();
+        } catch (IOException | RuntimeException e) {
+            subscriber.close();
+            throw e;
+        }
+
+        subscriber.emitter.onCompletion(subscriber::close);
+        subscriber.emitter.onTimeout(subscriber::close);
+        subscriber.emitter.onError(e -> subscriber.close());
+        // tells the client the directory is watched, changes from here on are sent
+        subscriber.offer(SseEmitter.event().name("subscribed").data(directory.toString()));
+        return subscriber.emitter;
+    }
+
+    /**
+     * @return number of directories watched for all subscribers
+     */
+    public int getWatchedDirectories() {
+        return watcher.getWatchedDirectories();
+    }
+
+    @Override
+    public void changed(Path directory, Path child, WatchEvent.Kind<?> kind) {
+        ChangeKind change = kind == OVERFLOW ? ChangeKind.RESCAN
+                : kind == ENTRY_CREATE ? ChangeKind.CREATE : kind == ENTRY_DELETE ? ChangeKind.DELETE : ChangeKind.MODIFY;
+        Path changed = child != null ? child : directory;
+        // every subscribed root the directory is in, they may be nested
+        for (Path parent = directory; parent != null; parent = parent.getParent()) {
+            WatchedRoot root = roots.get(parent);
+            if (root != null) {
+                root.enqueue(changed, change);
+            }
+        }
+    }
+
+    @Override
+    public void invalidated(Path directory) {
+        changed(directory, null, ENTRY_DELETE);
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        scheduler.shutdownNow();
+        workers.shutdownNow();
+        watcher.close();
+    }
+
+    private void unsubscribe(WatchedRoot root, Subscriber subscriber) {
+        synchronized (roots) {
+            if (root.subscribers.remove(subscriber) && root.subscribers.isEmpty()) {
+                roots.remove(root.directory);
+                root.close();
+            }
+        }
+    }
+
+    /**
+     * Hands the pending changes of every root to a worker, unless the root's previous batch is still being read
+     */
+    private void flush() {
+        for (WatchedRoot root : roots.values()) {
+            if (root.hasPending() && root.flushing.compareAndSet(false, true)) {
+                try {
+                    workers.execute(() -> flush(root));
+                } catch (RuntimeException e) {
+                    root.flushing.set(false);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void flush(WatchedRoot root) {
+        try {
+            List<ChangeEvent> events = root.read(root.drain());
+            for (int from = 0; from < events.size(); from += properties.getMaxBatchSize()) {
+                ChangeBatch batch = new ChangeBatch();
+                batch.setRoot(root.directory.toString());
+                batch.setSequence(++root.sequence);
+                batch.setEvents(events.subList(from, Math.min(events.size(), from + properties.getMaxBatchSize())));
+                send(root, batch);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to send the changes of {}", root.directory, e);
+        } finally {
+            root.flushing.set(false);
+        }
+    }
+
+    /**
+     * Serializes the batch once per distinct projection of the subscribers and queues it for all of them
+     */
+    private void send(WatchedRoot root, ChangeBatch batch) {
+        Map<String, String> encoded = new HashMap<>();
+        for (Subscriber subscriber : root.subscribers) {
+            String data = encoded.computeIfAbsent(subscriber.fields, fields -> encode(batch, fields));
+            subscriber.offer(SseEmitter.event().id(String.valueOf(batch.getSequence())).name(CHANGES)
+                    .data(data, MediaType.APPLICATION_JSON));
+        }
+    }
+
+    private void heartbeat() {
+        for (WatchedRoot root : roots.values()) {
+            for (Subscriber subscriber : root.subscribers) {
+                subscriber.offer(SseEmitter.event().comment("heartbeat"));
+            }
+        }
+    }
+
+    private static String encode(ChangeBatch batch, String fields) {
+        try {
+            byte[] json = new MetadataEncoder(ResponseEncoding.JSON, Projection.of(fields), false).encode(batch);
+            return new String(json, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A subscribed directory: its watched directories, the changes not sent yet and its subscribers
+     */
+    private class WatchedRoot {
+
+        private final Path directory;
+        private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+        // guarded by this
+        private final NavigableSet<Path> watched = new TreeSet<>();
+        private LinkedHashMap<Path, ChangeKind> pending = new LinkedHashMap<>();
+        private boolean closed;
+        // set while a worker reads and sends a batch of the root
+        private final AtomicBoolean flushing = new AtomicBoolean();
+        // only used by the worker holding flushing
+        private long sequence;
+        // guarded by registration, apart from the lock of the changes so the watcher is not held up by the walk
+        private final Object registration = new Object();
+        private boolean registered;
+
+        WatchedRoot(Path directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * Watches the directory and every directory below it, once for all subscribers
+         */
+        void registerOnce() throws IOException {
+            synchronized (registration) {
+                if (!registered) {
+                    register(directory, null);
+                    registered = true;
+                }
+            }
+        }
+
+        synchronized boolean hasPending() {
+            return !pending.isEmpty();
+        }
+
+        synchronized void enqueue(Path path, ChangeKind change) {
+            ChangeKind coalesced = ChangeKind.coalesce(pending.remove(path), change);
+            if (coalesced != null) {
+                pending.put(path, coalesced);
+            }
+        }
+
+        synchronized Map<Path, ChangeKind> drain() {
+            Map<Path, ChangeKind> changes = pending;
+            pending = new LinkedHashMap<>();
+            return changes;
+        }
+
+        /**
+         * Reads the metadata of the changed entries, and watches the created directories
+         */
+        List<ChangeEvent> read(Map<Path, ChangeKind> changes) {
+            List<ChangeEvent> events = new ArrayList<>();
+            for (Map.Entry<Path, ChangeKind> change : changes.entrySet()) {
+                Path path = change.getKey();
+                ChangeKind kind = change.getValue();
+                try {
+                    switch (kind) {
+                        case DELETE:
+                            forget(path);
+                            events.add(event(kind, path, null));
+                            break;
+                        case RESCAN:
+                            register(path, null);
+                            events.add(event(kind, path, FileMetadataHandler.directoryTree(path.toFile(), TraversalFilter.NONE,
+                                    Projection.ALL, new VisitedDirectories(followLinks))));
+                            break;
+                        default:
+                            FileMetadata fileMetadata = FileMetadataHandler.fileMetadata(path.toFile());
+                            events.add(event(kind, path, fileMetadata));
+                            if (kind == ChangeKind.CREATE && fileMetadata.isDirectory()) {
+                                register(path, events);
+                            }
+                    }
+                } catch (NoSuchFileException e) {
+                    // gone again, its delete is in the next batch
+                } catch (IOException e) {
+                    log.debug("Unable to read the changed entry {}: {}", path, e.toString());
+                }
+            }
+            return events;
+        }
+
+        /**
+         * Watches the given directory and every directory below it
+         *
+         * @param start
+         * @param created collects the entries found below the directory as created, null when they are not reported
+         */
+        void register(Path start, List<ChangeEvent> created) throws IOException {
+            Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                    if (!watch(dir)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    if (created != null && !dir.equals(start)) {
+                        created.add(event(ChangeKind.CREATE, dir, FileMetadataHandler.fileMetadata(dir.toFile())));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                    if (created != null) {
+                        created.add(event(ChangeKind.CREATE, file, FileMetadataHandler.fileMetadata(file.toFile())));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    // unreadable or removed meanwhile
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        private synchronized boolean watch(Path dir) {
+            if (closed) {
+                return false;
+            }
+            if (watched.contains(dir)) {
+                return true;
+            }
+            if (watched.size() >= properties.getMaxDirectories()) {
+                log.warn("Not watching {}, {} directories are watched below {}", dir, watched.size(), directory);
+                return false;
+            }
+            if (!watcher.register(dir)) {
+                return false;
+            }
+            watched.add(dir);
+            return true;
+        }
+
+        /**
+         * Stops watching a removed directory and the directories below it
+         */
+        private synchronized void forget(Path path) {
+            if (!watched.contains(path)) {
+                return;
+            }
+            // names starting with the name of the directory are next to each other, its subtree among them
+            String prefix = path.toString();
+            for (Iterator<Path> below = watched.tailSet(path, true).iterator(); below.hasNext(); ) {
+                Path dir = below.next();
+                if (!dir.toString().startsWith(prefix)) {
+                    break;
+                }
+                if (dir.startsWith(path)) {
+                    watcher.unregister(dir);
+                    below.remove();
+                }
+            }
+        }
+
+        synchronized void close() {
+            closed = true;
+            for (Path dir : watched) {
+                watcher.unregister(dir);
+            }
+            watched.clear();
+        }
+    }
+
+    private static ChangeEvent event(ChangeKind kind, Path path, FileMetadata fileMetadata) {
+        ChangeEvent event = new ChangeEvent();
+        event.setKind(kind.getName());
+        event.setPath(path.toString());
+        event.setMetadata(fileMetadata);
+        return event;
+    }
+
+    /**
+     * A client of a root, written by one worker at a time from its bounded queue of events
+     */
+    private class Subscriber {
+
+        private final WatchedRoot root;
+        private final SseEmitter emitter;
+        private final String fields;
+        private final BlockingQueue<SseEmitter.SseEventBuilder> queue;
+        // set while a worker writes the queued events
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile boolean closed;
+        // closed for falling behind rather than by the container, the writing worker completes the emitter
+        private volatile boolean overflowed;
+
+        Subscriber(WatchedRoot root, SseEmitter emitter, String fields) {
+            this.root = root;
+            this.emitter = emitter;
+            this.fields = fields != null ? fields : "";
+            this.queue = new ArrayBlockingQueue<>(properties.getMaxQueuedEvents());
+        }
+
+        /**
+         * Queues the event without waiting for the client
+         */
+        void offer(SseEmitter.SseEventBuilder event) {
+            if (closed) {
+                return;
+            }
+            if (!queue.offer(event)) {
+                log.info("Closing a subscriber of {}, {} events are not written yet", root.directory, queue.size());
+                overflowed = true;
+                close();
+            }
+            startSending();
+        }
+
+        void close() {
+            closed = true;
+            queue.clear();
+            unsubscribe(root, this);
+        }
+
+        private void startSending() {
+            if (sending.compareAndSet(false, true)) {
+                try {
+                    workers.execute(this::drain);
+                } catch (RuntimeException e) {
+                    // shutting down
+                    sending.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            while (!closed) {
+                SseEmitter.SseEventBuilder event = queue.poll();
+                if (event == null) {
+                    sending.set(false);
+                    // an event queued or a close after the poll may have seen the flag still set
+                    if (queue.isEmpty() && !closed || !sending.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+                try {
+                    emitter.send(event);
+                } catch (IOException | IllegalStateException e) {
+                    // the client went away, the container completes the emitter
+                    close();
+                    return;
+                }
+            }
+            if (overflowed) {
+                // the client reconnects and starts over from the current state
+                emitter.complete();
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.filemetadata.file.feed;
+
+/**
+ * Kinds of the events of the change feed.
+ *
+ * CREATE - the entry was added.
+ * MODIFY - the entry was changed, or replaced by an entry of the same name.
+ * DELETE - the entry was removed.
+ * RESCAN - changes of the directory were lost (OVERFLOW), its whole subtree is sent again.
+ *
+ * @author Vinod Kandula
+ */
+public enum ChangeKind {
+
+    CREATE("create"),
+    MODIFY("modify"),
+    DELETE("delete"),
+    RESCAN("rescan");
+
+    private String name;
+
+    ChangeKind(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Coalesces a change with the pending change of the same entry
+     *
+     * @param pending change of the entry not sent yet, null when there is none
+     * @param next
+     * @return the change to send instead of both, null when the entry came and went within the batch
+     */
+    static ChangeKind coalesce(ChangeKind pending, ChangeKind next) {
+        if (pending == null || pending == RESCAN || next == RESCAN) {
+            return pending == RESCAN ? RESCAN : next;
+        }
+        if (pending == CREATE) {
+            return next == DELETE ? null : CREATE;
+        }
+        if (pending == DELETE && next == CREATE) {
+            return MODIFY;
+        }
+        return next;
+    }
+}
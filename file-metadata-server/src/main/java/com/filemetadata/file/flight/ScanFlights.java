@@ -0,0 +1,146 @@
+package com.filemetadata.file.flight;
+
+import com.filemetadata.config.FileMetadataProperties;
+import com.filemetadata.file.metrics.FileMetadataMetrics;
+import com.filemetadata.file.metrics.ScanOperation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Lets identical directory requests share one scan (single-flight). The first request for a key runs the scan, the
+ * requests for the same key arriving while it runs wait for it instead of scanning again: a buffered request gets the
+ * same serialized body, a streamed one replays the {@link SharedStream} from its start and follows it to the end.
+ * Once the scan is done the key is released, the next request scans again.
+ *
+ * Keys have to hold everything the response depends on, e.g. the path as requested, the filters, the fields and the
+ * encoding. A failed scan fails all requests that shared it.
+ *
+ * @author Vinod Kandula
+ */
+@Component
+public class ScanFlights {
+
+    private final boolean enabled;
+    private final long maxStreamBuffer;
+
+    private final ConcurrentMap<Object, CompletableFuture<byte[]>> bodies = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Object, SharedStream> streams = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ScanFlights(FileMetadataProperties properties) {
+        this(properties.getFlight().isEnabled(), properties.getFlight().getMaxStreamBuffer());
+    }
+
+    public ScanFlights(boolean enabled, long maxStreamBuffer) {
+        this.enabled = enabled;
+        this.maxStreamBuffer = maxStreamBuffer;
+    }
+
+    /**
+     * Builds a response body, or waits for the body of the same key that is already being built
+     *
+     * @param key
+     * @param body
+     * @return
+     * @throws IOException
+     */
+    public byte[] body(Object key, Body body) throws IOException {
+        if (!enabled) {
+            return body.build();
+        }
+
+        CompletableFuture<byte[]> flight = new CompletableFuture<>();
+        CompletableFuture<byte[]> running = bodies.putIfAbsent(key, flight);
+        if (running != null) {
+            FileMetadataMetrics.coalesced(ScanOperation.DIRECTORY);
+            return await(running);
+        }
+
+        try {
+            byte[] built = body.build();
+            flight.complete(built);
+            return built;
+        } catch (Throwable e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            bodies.remove(key, flight);
+        }
+    }
+
+    /**
+     * Writes a streamed response, or replays the stream of the same key that is already being written
+     *
+     * @param key
+     * @param out
+     * @param stream
+     * @throws IOException
+     */
+    public void stream(Object key, OutputStream out, Stream stream) throws IOException {
+        if (!enabled) {
+            stream.write(out);
+            return;
+        }
+
+        SharedStream flight = new SharedStream(maxStreamBuffer, closed -> streams.remove(key, closed));
+        SharedStream running = streams.putIfAbsent(key, flight);
+        if (running != null) {
+            SharedStream.Reader reader = running.join();
+            if (reader == null) {
+                // too far along to be replayed
+                stream.write(out);
+                return;
+            }
+            FileMetadataMetrics.coalesced(ScanOperation.STREAM);
+            reader.copyTo(out);
+            return;
+        }
+
+        SharedStream.Writer writer = flight.writer(out);
+        try {
+            stream.write(writer);
+        } catch (Throwable e) {
+            flight.finish(e);
+            throw e;
+        }
+        flight.finish(null);
+        writer.checkClosed();
+    }
+
+    private static byte[] await(CompletableFuture<byte[]> running) throws IOException {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for the shared scan");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("shared scan failed", cause);
+        }
+    }
+
+    public interface Body {
+        byte[] build() throws IOException;
+    }
+
+    public interface Stream {
+        void write(OutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,281 @@
+package com.filemetadata.file.flight;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The bytes of one streamed response, written once by the request running the scan and replayed to the requests that
+ * joined it. Chunks are kept from the start so a late reader still gets the whole stream, until more than the buffer
+ * limit is written: from then on no reader joins anymore and every chunk is dropped once all readers have written it.
+ * The writer never waits for the readers, so a reader falling more than the buffer limit behind is failed instead,
+ * and the stream never keeps more than the limit for its readers.
+ *
+ * The request running the scan writes its own response directly. When its client goes away the scan goes on for the
+ * readers, and only fails once none is left.
+ *
+ * @author Vinod Kandula
+ */
+final class SharedStream {
+
+    private final long maxBuffer;
+    private final Consumer<SharedStream> closed;
+
+    // written chunks by index, null once dropped
+    private final List<byte[]> chunks = new ArrayList<>();
+    private final List<Reader> readers = new ArrayList<>();
+    private long buffered;
+    private boolean joinable = true;
+    private boolean finished;
+    private Throwable failure;
+
+    /**
+     * @param maxBuffer bytes kept for late readers
+     * @param closed    run once the stream takes no more readers
+     */
+    SharedStream(long maxBuffer, Consumer<SharedStream> closed) {
+        this.maxBuffer = maxBuffer;
+        this.closed = closed;
+    }
+
+    /**
+     * Joins the stream
+     *
+     * @return the reader replaying the stream from its start, null when the stream takes no more readers
+     */
+    synchronized Reader join() {
+        if (!joinable) {
+            return null;
+        }
+        Reader reader = new Reader();
+        readers.add(reader);
+        return reader;
+    }
+
+    /**
+     * @param out response of the request running the scan
+     * @return the stream the scan writes to, which writes to the response and to the readers
+     */
+    Writer writer(OutputStream out) {
+        return new Writer(out);
+    }
+
+    /**
+     * Ends the stream for the readers
+     *
+     * @param failure of the scan, null when it succeeded
+     */
+    synchronized void finish(Throwable failure) {
+        this.failure = failure;
+        this.finished = true;
+        close();
+        notifyAll();
+    }
+
+    private synchronized void append(byte[] b, int off, int len) {
+        if (!joinable && readers.isEmpty()) {
+            // nobody will read it
+            return;
+        }
+        chunks.add(Arrays.copyOfRange(b, off, off + len));
+        buffered += len;
+        if (buffered > maxBuffer) {
+            close();
+            drop();
+            evict();
+        }
+        notifyAll();
+    }
+
+    private synchronized boolean hasReaders() {
+        return !readers.isEmpty();
+    }
+
+    private void close() {
+        if (joinable) {
+            joinable = false;
+            closed.accept(this);
+        }
+    }
+
+    /**
+     * Drops the chunks every reader has written, once no reader can join anymore
+     */
+    private void drop() {
+        if (joinable) {
+            return;
+        }
+        int next = chunks.size();
+        for (Reader reader : readers) {
+            next = Math.min(next, reader.next);
+        }
+        for (int index = next - 1; index >= 0 && chunks.get(index) != null; index--) {
+            buffered -= chunks.get(index).length;
+            chunks.set(index, null);
+        }
+    }
+
+    /**
+     * Fails the readers furthest behind until the chunks they hold back fit the buffer again
+     */
+    private void evict() {
+        readers.sort(Comparator.comparingInt(reader -> reader.next));
+        while (buffered > maxBuffer && !readers.isEmpty()) {
+            readers.remove(0).evicted = true;
+            drop();
+        }
+    }
+
+    private synchronized void leave(Reader reader) {
+        readers.remove(reader);
+        drop();
+    }
+
+    /**
+     * A request replaying the stream
+     */
+    final class Reader {
+
+        private int next;
+        // fell more than the buffer behind the scan, its chunks were dropped
+        private boolean evicted;
+
+        /**
+         * Writes the stream to the response, following it until the scan is done
+         *
+         * @param out
+         * @throws IOException when writing the response fails, or the failure of the scan
+         */
+        void copyTo(OutputStream out) throws IOException {
+            try {
+                for (byte[] chunk = nextChunk(out); chunk != null; chunk = nextChunk(out)) {
+                    out.write(chunk);
+                }
+            } finally {
+                leave(this);
+            }
+        }
+
+        private byte[] nextChunk(OutputStream out) throws IOException {
+            if (!hasNext()) {
+                // send what was written so far before waiting for the scan
+                out.flush();
+            }
+            synchronized (SharedStream.this) {
+                while (next == chunks.size() && !finished && !evicted) {
+                    try {
+                        SharedStream.this.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("interrupted waiting for the shared scan");
+                    }
+                }
+                if (evicted) {
+                    throw new IOException("fell more than " + maxBuffer + " bytes behind the shared scan");
+                }
+                if (next < chunks.size()) {
+                    byte[] chunk = chunks.get(next++);
+                    drop();
+                    return chunk;
+                }
+            }
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure != null) {
+                throw new IOException("shared scan failed", failure);
+            }
+            return null;
+        }
+
+        private boolean hasNext() {
+            synchronized (SharedStream.this) {
+                return next < chunks.size() || finished;
+            }
+        }
+    }
+
+    /**
+     * Writes the scanned stream to the response of the request running the scan and to the readers
+     */
+    final class Writer extends OutputStream {
+
+        private final OutputStream out;
+        private IOException outFailure;
+        private boolean aborted;
+
+        Writer(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            append(b, off, len);
+            if (outFailure == null) {
+                try {
+                    out.write(b, off, len);
+                } catch (IOException e) {
+                    outFailure = e;
+                }
+            }
+            checkOut();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (outFailure == null) {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    outFailure = e;
+                }
+            }
+            checkOut();
+        }
+
+        /**
+         * Closes the response, a failure to do so is thrown by {@link #checkClosed()} once the readers were ended
+         */
+        @Override
+        public void close() throws IOException {
+            if (outFailure == null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    outFailure = e;
+                }
+            }
+            checkOut();
+        }
+
+        void checkClosed() throws IOException {
+            if (outFailure != null) {
+                throw outFailure;
+            }
+        }
+
+        /**
+         * Fails the scan once the client of the request running it went away and no reader is left, only once as the
+         * writers of the scan still close the stream
+         */
+        private void checkOut() throws IOException {
+            if (outFailure != null && !aborted && !hasReaders()) {
+                aborted = true;
+                throw outFailure;
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.filemetadata.file.handler;
+
+import com.filemetadata.file.cache.FileMetadataCache;
+import com.filemetadata.file.index.Consistency;
+import com.filemetadata.file.index.IndexedTree;
+import com.filemetadata.file.traversal.TraversalFilter;
+
+import java.io.File;
+
+/**
+ * What one directory request is answered from, resolved once before the If-None-Match check: the current index
+ * holding the directory, the cached listings of its tree, or neither when the directory is scanned by the request.
+ * The fingerprint and the body are both taken from the same index or listings, so a response is never tagged with
+ * entries it was not built from.
+ *
+ * @author Vinod Kandula
+ */
+public final class DirectorySnapshot {
+
+    private final File folder;
+    private final TraversalFilter filter;
+    private final Consistency consistency;
+    // null unless consistency=index found an index that is current
+    private final IndexedTree index;
+    private final int entry;
+    // null unless the tree was cached
+    private final FileMetadataCache.Listings listings;
+    private final Long fingerprint;
+
+    DirectorySnapshot(File folder, TraversalFilter filter, Consistency consistency, IndexedTree index,
+                      FileMetadataCache.Listings listings) {
+        this.folder = folder;
+        this.filter = filter;
+        this.consistency = consistency;
+        this.index = index;
+        this.entry = index != null ? index.find(folder) : -1;
+        this.listings = listings;
+        this.fingerprint = index != null ? Long.valueOf(index.fingerprint(entry))
+                : listings != null ? Long.valueOf(listings.getFingerprint()) : null;
+    }
+
+    public File getFolder() {
+        return folder;
+    }
+
+    public TraversalFilter getFilter() {
+        return filter;
+    }
+
+    public Consistency getConsistency() {
+        return consistency;
+    }
+
+    /**
+     * @return the fingerprint of the entries the response is built from, null when they are only known once scanned
+     */
+    public Long getFingerprint() {
+        return fingerprint;
+    }
+
+    IndexedTree getIndex() {
+        return index;
+    }
+
+    int getEntry() {
+        return entry;
+    }
+
+    FileMetadataCache.Listings getListings() {
+        return listings;
+    }
+}
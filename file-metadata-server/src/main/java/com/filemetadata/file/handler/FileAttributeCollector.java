@@ -0,0 +1,240 @@
+package com.filemetadata.file.handler;
+
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.projection.MetadataField;
+import com.filemetadata.file.projection.Projection;
+import com.sun.security.auth.module.UnixSystem;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects all attributes of an entry from a single "unix:" attribute read (one lstat) instead of one syscall per
+ * attribute. Permissions are derived from the mode bits against the uid/gids of the server process, the
+ * hidden/file flags from the name and mode, and the canonical path is appended to the already canonical path of
+ * the parent. Only symbolic links are resolved again, so links keep reporting their target like before. The same read
+ * returns the device and inode, which traversals tell visited directories apart by.
+ *
+ * With a {@link Projection} only the attributes needed for the requested fields are read, and the canonical path,
+ * the permissions and the times are only computed when requested.
+ *
+ * Filesystems without the "unix" attribute view keep using the per-attribute {@link java.io.File} calls.
+ * ACLs are not consulted, and read-only mounts are detected per device, so a read-only bind mount of a writable
+ * device still reports canWrite.
+ *
+ * @author Vinod Kandula
+ */
+@Slf4j
+public final class FileAttributeCollector {
+
+    // attribute lists by the bits of attributeList(Projection), all of them at the last index
+    private static final String[] ATTRIBUTES = new String[32];
+    private static final int OWNER = 1, SIZE = 1 << 1, CREATION_TIME = 1 << 2, LAST_ACCESS_TIME = 1 << 3,
+            LAST_MODIFIED_TIME = 1 << 4;
+
+    private static final int S_IFMT = 0170000;
+    private static final int S_IFDIR = 0040000;
+    private static final int S_IFREG = 0100000;
+    private static final int S_IFLNK = 0120000;
+
+    private static final int S_IRUSR = 0400;
+    private static final int S_IWUSR = 0200;
+    private static final int S_IXUSR = 0100;
+    private static final int S_IXANY = 0111;
+
+    private static final boolean SUPPORTED;
+    private static final long UID;
+    private static final long GID;
+    private static final long[] GROUPS;
+
+    // read-only mounts deny writes regardless of the mode bits, resolved once per device
+    private static final Map<Long, Boolean> READ_ONLY_DEVICES = new ConcurrentHashMap<>();
+
+    static {
+        for (int bits = 0; bits < ATTRIBUTES.length; bits++) {
+            // the file key (dev, ino) always, traversals detect directories they have visited already by it
+            StringBuilder attributes = new StringBuilder("unix:mode,dev,ino");
+            attributes.append((bits & OWNER) != 0 ? ",uid,gid" : "");
+            attributes.append((bits & SIZE) != 0 ? ",size" : "");
+            attributes.append((bits & CREATION_TIME) != 0 ? ",creationTime" : "");
+            attributes.append((bits & LAST_ACCESS_TIME) != 0 ? ",lastAccessTime" : "");
+            attributes.append((bits & LAST_MODIFIED_TIME) != 0 ? ",lastModifiedTime" : "");
+            ATTRIBUTES[bits] = attributes.toString();
+        }
+    }
+
+    static {
+        boolean supported = false;
+        long uid = -1, gid = -1;
+        long[] groups = new long[0];
+        try {
+            if (FileSystems.getDefault().supportedFileAttributeViews().contains("unix")) {
+                UnixSystem unixSystem = new UnixSystem();
+                uid = unixSystem.getUid();
+                gid = unixSystem.getGid();
+                groups = unixSystem.getGroups() != null ? unixSystem.getGroups() : groups;
+                supported = true;
+            }
+        } catch (Throwable e) {
+            log.warn("unix file attributes are not available, falling back to per-attribute reads", e);
+        }
+        SUPPORTED = supported;
+        UID = uid;
+        GID = gid;
+        GROUPS = groups;
+    }
+
+    private FileAttributeCollector() {
+    }
+
+    public static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    /**
+     * Collects the metadata of the given entry
+     *
+     * @param file
+     * @param parentCanonicalPath canonical path of the parent directory, null to resolve the canonical path
+     * @return
+     * @throws IOException
+     */
+    public static FileMetadata collect(File file, String parentCanonicalPath) throws IOException {
+        return collect(file, parentCanonicalPath, Projection.ALL);
+    }
+
+    /**
+     * Collects the attributes of the given entry needed for the projection, the others are left unset
+     *
+     * @param file
+     * @param parentCanonicalPath canonical path of the parent directory, null to resolve the canonical path
+     * @param projection
+     * @return
+     * @throws IOException
+     */
+    public static FileMetadata collect(File file, String parentCanonicalPath, Projection projection) throws IOException {
+        Path path = file.toPath();
+        String attributeList = ATTRIBUTES[attributeList(projection)];
+        Map<String, Object> attributes = Files.readAttributes(path, attributeList, LinkOption.NOFOLLOW_LINKS);
+
+        boolean symbolicLink = (mode(attributes) & S_IFMT) == S_IFLNK;
+        boolean dangling = false;
+        if (symbolicLink) {
+            try {
+                attributes = Files.readAttributes(path, attributeList);
+            } catch (NoSuchFileException e) {
+                // dangling link, report the link itself without any access to its missing target
+                dangling = true;
+            }
+        }
+
+        int mode = mode(attributes);
+        int type = mode & S_IFMT;
+
+        FileMetadata fileMetadata = new FileMetadata();
+        if (projection.includes(MetadataField.CREATION_TIME))
+            fileMetadata.setCreationTime(attributes.get("creationTime").toString());
+        if (projection.includes(MetadataField.LAST_ACCESS_TIME))
+            fileMetadata.setLastAccessTime(attributes.get("lastAccessTime").toString());
+        if (projection.includes(MetadataField.LAST_MODIFIED_TIME))
+            fileMetadata.setLastModifiedTime(attributes.get("lastModifiedTime").toString());
+
+        fileMetadata.setDirectory(type == S_IFDIR);
+        fileMetadata.setRegularFile(type == S_IFREG);
+        fileMetadata.setSymbolicLink(symbolicLink);
+        fileMetadata.setDevice((Long) attributes.get("dev"));
+        fileMetadata.setInode((Long) attributes.get("ino"));
+        if (projection.includes(MetadataField.SIZE))
+            fileMetadata.setSize((Long) attributes.get("size"));
+
+        if (projection.includes(MetadataField.CAN_READ) || projection.includes(MetadataField.CAN_WRITE)
+                || projection.includes(MetadataField.CAN_EXECUTE)) {
+            long uid = ((Number) attributes.get("uid")).longValue();
+            long gid = ((Number) attributes.get("gid")).longValue();
+            fileMetadata.setCanRead(!dangling && permitted(mode, uid, gid, S_IRUSR));
+            fileMetadata.setCanWrite(!dangling && projection.includes(MetadataField.CAN_WRITE)
+                    && permitted(mode, uid, gid, S_IWUSR) && !isReadOnly(path, (Long) attributes.get("dev")));
+            fileMetadata.setCanExecute(!dangling && (UID == 0 ? (mode & S_IXANY) != 0 || type == S_IFDIR : permitted(mode, uid, gid, S_IXUSR)));
+        }
+        fileMetadata.setAbsolute(file.isAbsolute());
+        fileMetadata.setFile(type == S_IFREG);
+        fileMetadata.setHidden(file.getName().startsWith("."));
+        if (projection.includes(MetadataField.PATH))
+            fileMetadata.setPath(file.getPath());
+        fileMetadata.setName(file.getName());
+        if (projection.includes(MetadataField.PARENT))
+            fileMetadata.setParent(file.getParent());
+        if (projection.includes(MetadataField.CANONICAL_PATH))
+            fileMetadata.setCanonicalPath(canonicalPath(file, parentCanonicalPath, symbolicLink));
+        if (projection.includes(MetadataField.ABSOLUTE_PATH))
+            fileMetadata.setAbsolutePath(file.getAbsolutePath());
+
+        return fileMetadata;
+    }
+
+    private static int attributeList(Projection projection) {
+        int bits = 0;
+        bits |= projection.includes(MetadataField.CAN_READ) || projection.includes(MetadataField.CAN_WRITE)
+                || projection.includes(MetadataField.CAN_EXECUTE) ? OWNER : 0;
+        bits |= projection.includes(MetadataField.SIZE) ? SIZE : 0;
+        bits |= projection.includes(MetadataField.CREATION_TIME) ? CREATION_TIME : 0;
+        bits |= projection.includes(MetadataField.LAST_ACCESS_TIME) ? LAST_ACCESS_TIME : 0;
+        bits |= projection.includes(MetadataField.LAST_MODIFIED_TIME) ? LAST_MODIFIED_TIME : 0;
+        return bits;
+    }
+
+    private static String canonicalPath(File file, String parentCanonicalPath, boolean symbolicLink) throws IOException {
+        if (symbolicLink || parentCanonicalPath == null) {
+            return FileMetadataHandler.canonicalPath(file);
+        }
+        return parentCanonicalPath.endsWith(File.separator)
+                ? parentCanonicalPath + file.getName()
+                : parentCanonicalPath + File.separator + file.getName();
+    }
+
+    private static int mode(Map<String, Object> attributes) {
+        return (Integer) attributes.get("mode");
+    }
+
+    private static boolean permitted(int mode, long uid, long gid, int ownerBit) {
+        if (UID == 0) {
+            return true;
+        }
+        if (uid == UID) {
+            return (mode & ownerBit) != 0;
+        }
+        if (inGroup(gid)) {
+            return (mode & (ownerBit >> 3)) != 0;
+        }
+        return (mode & (ownerBit >> 6)) != 0;
+    }
+
+    private static boolean inGroup(long gid) {
+        if (gid == GID) {
+            return true;
+        }
+        for (long group : GROUPS) {
+            if (group == gid) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isReadOnly(Path path, Long device) throws IOException {
+        Boolean readOnly = READ_ONLY_DEVICES.get(device);
+        if (readOnly == null) {
+            readOnly = Files.getFileStore(path).isReadOnly();
+            READ_ONLY_DEVICES.put(device, readOnly);
+        }
+        return readOnly;
+    }
+}
@@ -9,8 +9,13 @@ public enum FileErrorCodes implements CommonErrorCodes {
 
     INVALID_DIRECTORY_PATH("INVALID_DIRECTORY_PATH"),
     INVALID_FILE_PATH("INVALID_FILE_PATH"),
+    INVALID_PARAMETER_VALUE("INVALID_PARAMETER_VALUE"),
     INTERNAL_SERVER_ERROR("INTERNAL_SERVER_ERROR"),
-    RESOURCE_NOT_FOUND("RESOURCE_NOT_FOUND");
+    RESOURCE_NOT_FOUND("RESOURCE_NOT_FOUND"),
+    SCAN_JOB_NOT_COMPLETED("SCAN_JOB_NOT_COMPLETED"),
+    TOO_MANY_SCAN_JOBS("TOO_MANY_SCAN_JOBS"),
+    TOO_MANY_CLIENT_REQUESTS("TOO_MANY_CLIENT_REQUESTS"),
+    SERVER_BUSY("SERVER_BUSY");
 
     private String errorCode;
 
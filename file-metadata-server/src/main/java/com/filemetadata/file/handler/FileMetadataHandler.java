@@ -1,28 +1,54 @@
 package com.filemetadata.file.handler;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.metrics.FileMetadataMetrics;
+import com.filemetadata.file.metrics.Scan;
+import com.filemetadata.file.metrics.ScanOperation;
+import com.filemetadata.file.projection.MetadataField;
+import com.filemetadata.file.projection.Projection;
+import com.filemetadata.file.store.FileStores;
+import com.filemetadata.file.stream.FileMetadataStreamWriter;
+import com.filemetadata.file.stream.StreamFormat;
+import com.filemetadata.file.traversal.FileMetadataVisitor;
+import com.filemetadata.file.traversal.TraversalFilter;
+import com.filemetadata.file.traversal.VisitedDirectories;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
+ * Listing, stat and canonicalize times of the scans are recorded in the {@link Scan} running on the calling thread,
+ * see {@link FileMetadataMetrics}.
+ *
  * @author Vinod Kandula
  */
 public class FileMetadataHandler {
 
+    private static final File[] NO_FILES = new File[0];
+
     private static ObjectMapper objectMapper = new ObjectMapper();
 
     static {
-        objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
+        objectMapper.setFilterProvider(new SimpleFilterProvider().setDefaultFilter(SimpleBeanPropertyFilter.serializeAll()));
     }
 
     /**
@@ -33,29 +59,319 @@ public class FileMetadataHandler {
      * @throws Exception
      */
     public static String listDirectoriesAndFilesMetadata(String path) throws Exception{
-        File folder = new File(path);
-        if(!folder.isDirectory()) {
-            throw new InvalidDirectoryPathException(FileErrorCodes.INVALID_DIRECTORY_PATH, path);
-        }
+        File folder = directory(path);
 
-        FileMetadata fileMetadata = fileMetadata(folder);
+        return writeValueAsString(directoryTree(folder));
+    }
 
-        if (folder.isDirectory())
-            traverseFolderRecursively(folder, fileMetadata);
+    /**
+     * Builds the Directory & Files metadata tree for the given directory on the calling thread
+     *
+     * @param folder
+     * @return
+     * @throws IOException
+     */
+    public static FileMetadata directoryTree(File folder) throws IOException {
+        return directoryTree(folder, TraversalFilter.NONE);
+    }
 
+    /**
+     * Builds the Directory & Files metadata tree for the given directory on the calling thread, skipping the
+     * entries and subtrees left out by the filter
+     *
+     * @param folder
+     * @param filter
+     * @return
+     * @throws IOException
+     */
+    public static FileMetadata directoryTree(File folder, TraversalFilter filter) throws IOException {
+        return directoryTree(folder, filter, Projection.ALL);
+    }
+
+    /**
+     * Builds the Directory & Files metadata tree for the given directory on the calling thread, collecting only the
+     * attributes of the projection and the ones the filter reads
+     *
+     * @param folder
+     * @param filter
+     * @param projection
+     * @return
+     * @throws IOException
+     */
+    public static FileMetadata directoryTree(File folder, TraversalFilter filter, Projection projection) throws IOException {
+        return directoryTree(folder, filter, projection, new VisitedDirectories());
+    }
+
+    /**
+     * Builds the Directory & Files metadata tree for the given directory on the calling thread, entering the
+     * directories it lists in the given visited directories
+     *
+     * @param folder
+     * @param filter
+     * @param projection
+     * @param visited    of this traversal only, e.g. with a listener told of every directory before it is listed
+     * @return
+     * @throws IOException
+     */
+    public static FileMetadata directoryTree(File folder, TraversalFilter filter, Projection projection,
+                                             VisitedDirectories visited) throws IOException {
+        try (Scan scan = FileMetadataMetrics.start(ScanOperation.TREE)) {
+            Projection collected = projection.including(filter.getFields());
+            FileMetadata fileMetadata = fileMetadata(folder, null, collected);
+
+            if (folder.isDirectory())
+                traverseFolder(folder, fileMetadata, filter, collected, visited);
+
+            scan.complete();
+            return fileMetadata;
+        }
+    }
+
+    public static String writeValueAsString(FileMetadata fileMetadata) throws IOException {
         return objectMapper.writeValueAsString(fileMetadata);
     }
 
-    private static void traverseFolderRecursively(File folder, FileMetadata fileMetadata) throws Exception {
+    /**
+     * Writes the given metadata with only the properties of the projection
+     *
+     * @param fileMetadata
+     * @param projection
+     * @return
+     * @throws IOException
+     */
+    public static String writeValueAsString(FileMetadata fileMetadata, Projection projection) throws IOException {
+        if (projection.isAll())
+            return writeValueAsString(fileMetadata);
+
+        ObjectWriter writer = objectMapper.writer(projection.getFilters());
+        return writer.writeValueAsString(fileMetadata);
+    }
+
+    /**
+     * Lists the entries of the given directory sorted by name, so every traversal emits children in the same order
+     *
+     * @param folder
+     * @return
+     */
+    public static File[] listChildren(File folder) {
+        FileStores.throttle();
+        Scan scan = FileMetadataMetrics.current();
+        long start = scan != null ? System.nanoTime() : 0L;
         File[] fileList = folder.listFiles();
-        // Iterate through and call this function for any sub-directories.
+        if (fileList == null) {
+            fileList = new File[0];
+        } else {
+            Arrays.sort(fileList);
+        }
+        if (scan != null) {
+            scan.listed(System.nanoTime() - start);
+        }
+        return fileList;
+    }
+
+    /**
+     * Lists the entries of the given directory sorted by name, without the entries the filter does not visit
+     *
+     * @param folder
+     * @param filter
+     * @return
+     */
+    public static File[] listChildren(File folder, TraversalFilter filter) {
+        if (filter.isEmpty())
+            return listChildren(folder);
+        if (!filter.descend(folder))
+            return new File[0];
+
+        File[] fileList = listChildren(folder);
+        List<File> visited = new ArrayList<>(fileList.length);
         for (File file : fileList) {
-            FileMetadata child = fileMetadata(file);
-            fileMetadata.addChild(child);
-            if (file.isDirectory()) {
-                traverseFolderRecursively(file, child);
+            if (filter.visit(file)) {
+                visited.add(file);
             }
         }
+        return visited.toArray(new File[0]);
+    }
+
+    /**
+     * Streams Directory & Files metadata recursively for the given directory, writing every entry to the
+     * output stream as soon as it is visited instead of building the whole tree first.
+     *
+     * @param folder directory already validated with {@link #directory(String)}
+     * @param format
+     * @param out
+     * @throws IOException
+     */
+    public static void streamDirectoriesAndFilesMetadata(File folder, StreamFormat format, OutputStream out) throws IOException {
+        streamDirectoriesAndFilesMetadata(folder, TraversalFilter.NONE, format, out);
+    }
+
+    /**
+     * Streams the Directory & Files metadata left in by the filter, see {@link #streamDirectoriesAndFilesMetadata(File, StreamFormat, OutputStream)}
+     *
+     * @param folder
+     * @param filter
+     * @param format
+     * @param out
+     * @throws IOException
+     */
+    public static void streamDirectoriesAndFilesMetadata(File folder, TraversalFilter filter, StreamFormat format, OutputStream out) throws IOException {
+        streamDirectoriesAndFilesMetadata(folder, filter, Projection.ALL, format, out);
+    }
+
+    /**
+     * Streams the attributes of the projection of the Directory & Files metadata left in by the filter
+     *
+     * @param folder
+     * @param filter
+     * @param projection
+     * @param format
+     * @param out
+     * @throws IOException
+     */
+    public static void streamDirectoriesAndFilesMetadata(File folder, TraversalFilter filter, Projection projection,
+                                                         StreamFormat format, OutputStream out) throws IOException {
+        try (FileMetadataStreamWriter writer = new FileMetadataStreamWriter(out, format, filter.reportsDirectories(), projection)) {
+            walk(folder, filter, projection, writer);
+        }
+    }
+
+    /**
+     * Visits Directory & Files metadata recursively for the given directory, without building the tree
+     *
+     * @param folder
+     * @param visitor
+     * @throws IOException
+     */
+    public static void walk(File folder, FileMetadataVisitor visitor) throws IOException {
+        walk(folder, TraversalFilter.NONE, visitor);
+    }
+
+    /**
+     * Visits Directory & Files metadata recursively for the given directory, skipping the entries and subtrees
+     * left out by the filter
+     *
+     * @param folder
+     * @param filter
+     * @param visitor
+     * @throws IOException
+     */
+    public static void walk(File folder, TraversalFilter filter, FileMetadataVisitor visitor) throws IOException {
+        walk(folder, filter, Projection.ALL, visitor);
+    }
+
+    /**
+     * Visits Directory & Files metadata recursively for the given directory like {@link #walk(File, TraversalFilter, FileMetadataVisitor)},
+     * collecting only the attributes of the projection and the ones the filter reads
+     *
+     * @param folder
+     * @param filter
+     * @param projection
+     * @param visitor
+     * @throws IOException
+     */
+    public static void walk(File folder, TraversalFilter filter, Projection projection, FileMetadataVisitor visitor) throws IOException {
+        walk(folder, filter, projection, visitor, new VisitedDirectories());
+    }
+
+    /**
+     * Visits Directory & Files metadata recursively for the given directory like
+     * {@link #walk(File, TraversalFilter, Projection, FileMetadataVisitor)}, entering the directories it lists in the
+     * given visited directories
+     *
+     * @param folder
+     * @param filter
+     * @param projection
+     * @param visitor
+     * @param visited    decides which links are followed
+     * @throws IOException
+     */
+    public static void walk(File folder, TraversalFilter filter, Projection projection, FileMetadataVisitor visitor,
+                            VisitedDirectories visited) throws IOException {
+        try (Scan scan = FileMetadataMetrics.start(ScanOperation.WALK)) {
+            Projection collected = projection.including(filter.getFields());
+            walkFolder(folder, fileMetadata(folder, null, collected), filter, collected, visitor, visited);
+            scan.complete();
+        }
+    }
+
+    /**
+     * Resolves the given path to a directory
+     *
+     * @param path
+     * @return
+     */
+    public static File directory(String path) {
+        File folder = new File(path);
+        if(!folder.isDirectory()) {
+            throw new InvalidDirectoryPathException(FileErrorCodes.INVALID_DIRECTORY_PATH, path);
+        }
+        return folder;
+    }
+
+    private static void walkFolder(File folder, FileMetadata folderMetadata, TraversalFilter filter,
+                                   Projection projection, FileMetadataVisitor visitor,
+                                   VisitedDirectories visited) throws IOException {
+        visited.enterRoot(folder, folderMetadata);
+        Deque<Directory> directories = new ArrayDeque<>();
+        visitor.preVisitDirectory(folderMetadata);
+        directories.push(new Directory(folderMetadata, listChildren(folder, filter)));
+        while (!directories.isEmpty()) {
+            Directory directory = directories.peek();
+            if (directory.next == directory.children.length) {
+                directories.pop();
+                visitor.postVisitDirectory(directory.metadata);
+                continue;
+            }
+            File file = directory.children[directory.next++];
+            FileMetadata child = fileMetadata(file, directory.metadata, projection);
+            if (child.isDirectory()) {
+                visitor.preVisitDirectory(child);
+                // a directory listed before, or a link not followed, is visited without children
+                File[] children = visited.enter(file, child) ? listChildren(file, filter) : NO_FILES;
+                directories.push(new Directory(child, children));
+            } else if (filter.report(file, child)) {
+                visitor.visitFile(child);
+            }
+        }
+    }
+
+    private static void traverseFolder(File folder, FileMetadata fileMetadata, TraversalFilter filter,
+                                       Projection projection, VisitedDirectories visited) throws IOException {
+        visited.enterRoot(folder, fileMetadata);
+        Deque<Directory> directories = new ArrayDeque<>();
+        directories.push(new Directory(fileMetadata, listChildren(folder, filter)));
+        while (!directories.isEmpty()) {
+            Directory directory = directories.peek();
+            if (directory.next == directory.children.length) {
+                directories.pop();
+                continue;
+            }
+            File file = directory.children[directory.next++];
+            FileMetadata child = fileMetadata(file, directory.metadata, projection);
+            if (!filter.report(file, child)) {
+                continue;
+            }
+            directory.metadata.addChild(child);
+            if (child.isDirectory() && visited.enter(file, child)) {
+                directories.push(new Directory(child, listChildren(file, filter)));
+            }
+        }
+    }
+
+    /**
+     * A directory on the path of a depth first traversal, with the position of the next child to visit. Traversals keep
+     * these on a stack of their own instead of recursing, so the depth of a tree is not bounded by the thread stack.
+     */
+    private static final class Directory {
+
+        private final FileMetadata metadata;
+        private final File[] children;
+        private int next;
+
+        Directory(FileMetadata metadata, File[] children) {
+            this.metadata = metadata;
+            this.children = children;
+        }
     }
 
     /**
@@ -66,41 +382,146 @@ public class FileMetadataHandler {
      * @throws Exception
      */
     public static String fileMetadata(String path) throws Exception {
+        return objectMapper.writeValueAsString(fileMetadata(file(path)));
+    }
+
+    /**
+     * Resolves the given path to a file
+     *
+     * @param path
+     * @return
+     */
+    public static File file(String path) {
         File file = new File(path);
         if(!file.isFile()) {
             throw new InvalidFilePathException(FileErrorCodes.INVALID_FILE_PATH, path);
         }
-        return objectMapper.writeValueAsString(fileMetadata(new File(path)));
+        return file;
+    }
+
+    public static FileMetadata fileMetadata(File file) throws IOException {
+        return fileMetadata(file, null);
+    }
+
+    /**
+     * Fetches the metadata of an entry visited while traversing its parent directory. The canonical path is derived
+     * from the canonical path of the parent rather than resolved again.
+     *
+     * @param file
+     * @param parent metadata of the parent directory, null when the entry is not reached through a traversal
+     * @return
+     * @throws IOException
+     */
+    public static FileMetadata fileMetadata(File file, FileMetadata parent) throws IOException {
+        return fileMetadata(file, parent, Projection.ALL);
+    }
+
+    /**
+     * Fetches the attributes of the projection of an entry, see {@link #fileMetadata(File, FileMetadata)}
+     *
+     * @param file
+     * @param parent     metadata of the parent directory, null when the entry is not reached through a traversal
+     * @param projection
+     * @return
+     * @throws IOException
+     */
+    public static FileMetadata fileMetadata(File file, FileMetadata parent, Projection projection) throws IOException {
+        FileStores.throttle();
+        Scan scan = FileMetadataMetrics.current();
+        long start = scan != null ? System.nanoTime() : 0L;
+        FileMetadata fileMetadata = FileAttributeCollector.isSupported()
+                ? FileAttributeCollector.collect(file, parent == null ? null : parent.getCanonicalPath(), projection)
+                : readAttributes(file, projection);
+
+        if (scan != null)
+            scan.stated(System.nanoTime() - start);
+
+        return fileMetadata;
+    }
+
+    /**
+     * Fetches the metadata of an entry with one call per attribute, for filesystems without the "unix" attribute view
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static FileMetadata readAttributes(File file) throws IOException {
+        return readAttributes(file, Projection.ALL);
     }
 
-    private static FileMetadata fileMetadata(File file) throws Exception {
-        BasicFileAttributes attr = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+    /**
+     * Fetches the attributes of the projection of an entry with one call per attribute
+     *
+     * @param file
+     * @param projection
+     * @return
+     * @throws IOException
+     */
+    public static FileMetadata readAttributes(File file, Projection projection) throws IOException {
+        // read without following first, so links are reported as by the FileAttributeCollector
+        BasicFileAttributes attr = Files.readAttributes(file.toPath(), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        boolean symbolicLink = attr.isSymbolicLink();
+        if (symbolicLink) {
+            try {
+                attr = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                // dangling link, report the link itself
+            }
+        }
 
         FileMetadata fileMetadata = new FileMetadata();
-        fileMetadata.setCreationTime(attr.creationTime().toString());
-        fileMetadata.setLastAccessTime(attr.lastAccessTime().toString());
-        fileMetadata.setLastModifiedTime(attr.lastModifiedTime().toString());
+        if (projection.includes(MetadataField.CREATION_TIME))
+            fileMetadata.setCreationTime(attr.creationTime().toString());
+        if (projection.includes(MetadataField.LAST_ACCESS_TIME))
+            fileMetadata.setLastAccessTime(attr.lastAccessTime().toString());
+        if (projection.includes(MetadataField.LAST_MODIFIED_TIME))
+            fileMetadata.setLastModifiedTime(attr.lastModifiedTime().toString());
 
         fileMetadata.setDirectory(attr.isDirectory());
         fileMetadata.setRegularFile(attr.isRegularFile());
-        fileMetadata.setSymbolicLink(attr.isSymbolicLink());
+        fileMetadata.setSymbolicLink(symbolicLink);
         fileMetadata.setSize(attr.size());
 
-        fileMetadata.setCanWrite(file.canWrite());
-        fileMetadata.setCanRead(file.canRead());
-        fileMetadata.setCanExecute(file.canExecute());
+        if (projection.includes(MetadataField.CAN_WRITE))
+            fileMetadata.setCanWrite(file.canWrite());
+        if (projection.includes(MetadataField.CAN_READ))
+            fileMetadata.setCanRead(file.canRead());
+        if (projection.includes(MetadataField.CAN_EXECUTE))
+            fileMetadata.setCanExecute(file.canExecute());
         fileMetadata.setAbsolute(file.isAbsolute());
-        fileMetadata.setFile(file.isFile());
-        fileMetadata.setHidden(file.isHidden());
+        if (projection.includes(MetadataField.FILE))
+            fileMetadata.setFile(file.isFile());
+        if (projection.includes(MetadataField.HIDDEN))
+            fileMetadata.setHidden(file.isHidden());
         fileMetadata.setPath(file.getPath());
         fileMetadata.setName(file.getName());
         fileMetadata.setParent(file.getParent());
-        fileMetadata.setCanonicalPath(file.getCanonicalPath());
+        if (projection.includes(MetadataField.CANONICAL_PATH))
+            fileMetadata.setCanonicalPath(canonicalPath(file));
         fileMetadata.setAbsolutePath(file.getAbsolutePath());
 
         return fileMetadata;
     }
 
+    /**
+     * Resolves the canonical path of the given entry, timed in the running scan
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    static String canonicalPath(File file) throws IOException {
+        Scan scan = FileMetadataMetrics.current();
+        if (scan == null)
+            return file.getCanonicalPath();
+
+        long start = System.nanoTime();
+        String canonicalPath = file.getCanonicalPath();
+        scan.canonicalized(System.nanoTime() - start);
+        return canonicalPath;
+    }
+
     public static Set<String> listFilesUsingFileWalk(String dir, int depth) throws IOException {
         try (Stream<Path> stream = Files.walk(Paths.get(dir), depth)) {
             return stream
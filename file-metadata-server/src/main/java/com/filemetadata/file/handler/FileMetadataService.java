@@ -0,0 +1,456 @@
+package com.filemetadata.file.handler;
+
+import com.filemetadata.common.exception.InvalidInputException;
+import com.filemetadata.config.FileMetadataProperties;
+import com.filemetadata.dto.CacheStats;
+import com.filemetadata.dto.DirectoryFilter;
+import com.filemetadata.dto.DirectoryPage;
+import com.filemetadata.dto.DirectoryUsage;
+import com.filemetadata.dto.FileBatch;
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.dto.HashReport;
+import com.filemetadata.dto.ScanJobStatus;
+import com.filemetadata.file.batch.FileBatchReader;
+import com.filemetadata.file.cache.FileMetadataCache;
+import com.filemetadata.file.encoding.MetadataEncoder;
+import com.filemetadata.file.feed.ChangeFeed;
+import com.filemetadata.file.flight.ScanFlights;
+import com.filemetadata.file.hash.DuplicateFinder;
+import com.filemetadata.file.hash.FileHasher;
+import com.filemetadata.file.hash.HashAlgorithm;
+import com.filemetadata.file.index.Consistency;
+import com.filemetadata.file.index.IndexedTree;
+import com.filemetadata.file.index.NameQuery;
+import com.filemetadata.file.index.TreeIndexService;
+import com.filemetadata.file.job.ScanJobs;
+import com.filemetadata.file.metrics.CountingOutputStream;
+import com.filemetadata.file.metrics.FileMetadataMetrics;
+import com.filemetadata.file.metrics.Scan;
+import com.filemetadata.file.metrics.ScanOperation;
+import com.filemetadata.file.page.DirectoryPager;
+import com.filemetadata.file.projection.Projection;
+import com.filemetadata.file.reactive.TraversalPublisher;
+import com.filemetadata.file.store.FileStores;
+import com.filemetadata.file.stream.MetadataStreamWriter;
+import com.filemetadata.file.stream.StreamFormat;
+import com.filemetadata.file.traversal.FileMetadataVisitor;
+import com.filemetadata.file.traversal.FollowLinks;
+import com.filemetadata.file.traversal.ParallelTreeTraversal;
+import com.filemetadata.file.traversal.TraversalFilter;
+import com.filemetadata.file.traversal.TreeBuilder;
+import com.filemetadata.file.traversal.VisitedDirectories;
+import com.filemetadata.file.usage.DiskUsageCalculator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Answers the File Metadata API from the {@link FileMetadataCache} when it is enabled, and otherwise from the
+ * parallel or serial traversal of {@link FileMetadataHandler}. Directory requests with consistency=index are
+ * answered from the persistent {@link TreeIndexService} instead.
+ *
+ * A {@link Projection} narrower than all fields is collected by the traversal itself and therefore never cached,
+ * trees that are already cached are still answered from the cache. Responses are written in the encoding negotiated
+ * by the {@link MetadataEncoder}. Directory requests are measured as one {@link Scan} each, see {@link FileMetadataMetrics},
+ * and identical directory requests running at the same time share one scan through the {@link ScanFlights}.
+ *
+ * @author Vinod Kandula
+ */
+@Service
+public class FileMetadataService {
+
+    @Autowired
+    private FileMetadataProperties properties;
+
+    @Autowired
+    private ParallelTreeTraversal parallelTreeTraversal;
+
+    @Autowired
+    private FileStores fileStores;
+
+    @Autowired
+    private FileMetadataCache cache;
+
+    @Autowired
+    private TreeIndexService treeIndexService;
+
+    @Autowired
+    private DiskUsageCalculator diskUsageCalculator;
+
+    @Autowired
+    private FileBatchReader fileBatchReader;
+
+    @Autowired
+    private FileHasher fileHasher;
+
+    @Autowired
+    private DuplicateFinder duplicateFinder;
+
+    @Autowired
+    private ChangeFeed changeFeed;
+
+    @Autowired
+    private ScanFlights scanFlights;
+
+    @Autowired
+    private TraversalPublisher traversalPublisher;
+
+    @Autowired
+    private ScanJobs scanJobs;
+
+    /**
+     * Fetches file metadata for the given file path
+     *
+     * @param path
+     * @param encoder
+     * @return
+     * @throws IOException
+     */
+    public byte[] fileMetadata(String path, MetadataEncoder encoder) throws IOException {
+        File file = FileMetadataHandler.file(path);
+        Projection projection = encoder.getProjection();
+
+        if (cache.isEnabled() && projection.isAll())
+            return encoder.encode(cache.file(file));
+
+        return encoder.encode(FileMetadataHandler.fileMetadata(file, null, projection));
+    }
+
+    /**
+     * Fetches file metadata for every given file path, with the errors of the paths that are missing or not a file
+     * reported inline
+     *
+     * @param paths
+     * @param encoder
+     * @return
+     * @throws IOException
+     */
+    public byte[] filesMetadata(List<String> paths, MetadataEncoder encoder) throws IOException {
+        if (paths == null || paths.size() > properties.getBatch().getMaxPaths()) {
+            throw new InvalidInputException(FileErrorCodes.INVALID_PARAMETER_VALUE, "paths", paths == null ? null : paths.size());
+        }
+        return encoder.encode(fileBatchReader.read(paths, encoder.getProjection()));
+    }
+
+    /**
+     * Resolves what a directory request is answered from: the index holding the directory when it is current, or the
+     * cached listings of its tree. Neither the index nor the tree is scanned, so the fingerprint of the snapshot
+     * answers If-None-Match without building or serializing the tree.
+     *
+     * @param path
+     * @param consistency
+     * @param directoryFilter
+     * @return
+     * @throws IOException
+     */
+    public DirectorySnapshot directorySnapshot(String path, Consistency consistency, DirectoryFilter directoryFilter) throws IOException {
+        File folder = FileMetadataHandler.directory(path);
+        TraversalFilter filter = TraversalFilter.of(folder, directoryFilter);
+
+        if (consistency == Consistency.INDEX)
+            return new DirectorySnapshot(folder, filter, consistency, treeIndexService.current(folder), null);
+
+        // an uncached directory is scanned by the request anyway, a streamed one while it is written
+        if (cache.isEnabled() && cache.containsDirectory(folder))
+            return new DirectorySnapshot(folder, filter, consistency, null, cache.listings(folder, filter));
+
+        return new DirectorySnapshot(folder, filter, consistency, null, null);
+    }
+
+    /**
+     * Fetches Directory & Files metadata recursively for the given directory path
+     *
+     * @param snapshot from {@link #directorySnapshot(String, Consistency, DirectoryFilter)}
+     * @param encoder
+     * @return
+     * @throws IOException
+     */
+    public byte[] listDirectoriesAndFilesMetadata(DirectorySnapshot snapshot, MetadataEncoder encoder) throws IOException {
+        return scanFlights.body(flightKey(snapshot, null, encoder), () -> {
+            try (Scan scan = FileMetadataMetrics.start(ScanOperation.DIRECTORY)) {
+                byte[] body = encode(directoryTree(snapshot, encoder.getProjection()), encoder, scan);
+                scan.complete();
+                return body;
+            }
+        });
+    }
+
+    /**
+     * Streams Directory & Files metadata recursively for the given directory
+     *
+     * @param snapshot from {@link #directorySnapshot(String, Consistency, DirectoryFilter)}
+     * @param format
+     * @param encoder
+     * @param out
+     * @throws IOException
+     */
+    public void streamDirectoriesAndFilesMetadata(DirectorySnapshot snapshot, StreamFormat format, MetadataEncoder encoder,
+                                                  OutputStream out) throws IOException {
+        scanFlights.stream(flightKey(snapshot, format, encoder), out,
+                shared -> writeDirectoryStream(snapshot, format, encoder, shared));
+    }
+
+    /**
+     * Publishes Directory & Files metadata recursively for the given directory, traversed as the subscriber asks for
+     * entries. Always a fresh scan, neither the cache nor the index hold the entries one at a time.
+     *
+     * @param folder     directory already validated with {@link FileMetadataHandler#directory(String)}
+     * @param filter     compiled with {@link TraversalFilter#of(File, DirectoryFilter)} for the folder
+     * @param projection
+     * @return
+     */
+    public Flux<FileMetadata> directoryFlux(File folder, TraversalFilter filter, Projection projection) {
+        return traversalPublisher.directory(folder, filter, projection);
+    }
+
+    private void writeDirectoryStream(DirectorySnapshot snapshot, StreamFormat format, MetadataEncoder encoder,
+                                      OutputStream out) throws IOException {
+        File folder = snapshot.getFolder();
+        TraversalFilter filter = snapshot.getFilter();
+        Projection projection = encoder.getProjection();
+        try (Scan scan = FileMetadataMetrics.start(ScanOperation.STREAM)) {
+            fileStores.bind(folder);
+            CountingOutputStream counted = new CountingOutputStream(out);
+            try (MetadataStreamWriter writer = encoder.writer(counted, format, filter.reportsDirectories())) {
+                if (snapshot.getConsistency() == Consistency.INDEX)
+                    walkIndex(snapshot, projection, writer);
+                else if (snapshot.getListings() != null)
+                    cache.walk(snapshot.getListings(), projection, writer);
+                else if (!cache.isEnabled() || !projection.isAll() && !cache.containsDirectory(folder))
+                    FileMetadataHandler.walk(folder, filter, projection, writer, new VisitedDirectories(followLinks()));
+                else
+                    cache.walk(folder, filter, projection, writer);
+            }
+            scan.serialized(encoder.getEncoding(), counted.getCount(), 0L);
+            scan.complete();
+        }
+    }
+
+    /**
+     * Fetches one page of the Directory & Files metadata below the given directory path
+     *
+     * @param path
+     * @param cursor          next cursor of the previous page, null for the first page
+     * @param limit           entries per page, null for the default
+     * @param directoryFilter
+     * @param projection
+     * @return
+     * @throws IOException
+     */
+    public DirectoryPage directoryPage(String path, String cursor, Integer limit, DirectoryFilter directoryFilter,
+                                       Projection projection) throws IOException {
+        int pageLimit = limit(limit);
+        File folder = FileMetadataHandler.directory(path);
+        return DirectoryPager.page(folder, TraversalFilter.of(folder, directoryFilter), projection, followLinks(), cursor,
+                pageLimit);
+    }
+
+    /**
+     * Searches the names of the entries below the given directory path in its index
+     *
+     * @param path
+     * @param query
+     * @param cursor     next cursor of the previous page, null for the first page
+     * @param limit      entries per page, null for the default
+     * @param projection
+     * @return the matching entries in breadth first order
+     * @throws IOException
+     */
+    public DirectoryPage search(String path, NameQuery query, String cursor, Integer limit, Projection projection) throws IOException {
+        int pageLimit = limit(limit);
+        File folder = FileMetadataHandler.directory(path);
+        return treeIndexService.search(folder, query, projection, cursor, pageLimit);
+    }
+
+    /**
+     * Sums the disk usage of the given directory path
+     *
+     * @param path
+     * @param depth levels of sub-directories reported with their own usage
+     * @return
+     * @throws IOException
+     */
+    public DirectoryUsage directoryUsage(String path, int depth) throws IOException {
+        if (depth < 0) {
+            throw new InvalidInputException(FileErrorCodes.INVALID_PARAMETER_VALUE, "depth", String.valueOf(depth));
+        }
+        return diskUsageCalculator.usage(FileMetadataHandler.directory(path), depth);
+    }
+
+    /**
+     * Hashes the content of the given file, or of every regular file below the given directory
+     *
+     * @param path
+     * @param algorithm
+     * @param directoryFilter applied when the path is a directory
+     * @return
+     * @throws IOException
+     */
+    public HashReport hash(String path, HashAlgorithm algorithm, DirectoryFilter directoryFilter) throws IOException {
+        File target = new File(path);
+        if (target.isDirectory())
+            return fileHasher.hash(target, TraversalFilter.of(target, directoryFilter), algorithm);
+
+        return fileHasher.hash(FileMetadataHandler.file(path), TraversalFilter.NONE, algorithm);
+    }
+
+    /**
+     * Streams the groups of duplicate files below the given directory as ndjson
+     *
+     * @param folder    directory already validated with {@link FileMetadataHandler#directory(String)}
+     * @param filter    compiled with {@link TraversalFilter#of(File, DirectoryFilter)} for the folder
+     * @param algorithm of the full hash confirming the duplicates
+     * @param out
+     * @throws IOException
+     */
+    public void streamDuplicates(File folder, TraversalFilter filter, HashAlgorithm algorithm, OutputStream out) throws IOException {
+        duplicateFinder.stream(folder, filter, algorithm, out);
+    }
+
+    /**
+     * Subscribes to the changes below the given directory path
+     *
+     * @param path
+     * @param fields attributes of the metadata of the changed entries, all of them when null
+     * @return the emitter sending the batches of changes
+     * @throws IOException
+     */
+    public SseEmitter subscribeChanges(String path, String fields) throws IOException {
+        // rejects unknown fields before subscribing
+        Projection.of(fields);
+        return changeFeed.subscribe(FileMetadataHandler.directory(path), fields);
+    }
+
+    /**
+     * Queues a background scan of the given directory path
+     *
+     * @param path
+     * @param fields          attributes written for every entry of the result, all of them when null
+     * @param directoryFilter
+     * @param priority        jobs of a higher priority start first
+     * @return the status of the queued job
+     * @throws IOException
+     */
+    public ScanJobStatus submitScan(String path, String fields, DirectoryFilter directoryFilter, int priority) throws IOException {
+        return scanJobs.submit(FileMetadataHandler.directory(path), fields, directoryFilter, priority);
+    }
+
+    public List<ScanJobStatus> scans() {
+        return scanJobs.statuses();
+    }
+
+    public ScanJobStatus scan(String id) {
+        return scanJobs.status(id);
+    }
+
+    public ScanJobStatus cancelScan(String id) {
+        return scanJobs.cancel(id);
+    }
+
+    /**
+     * @param id
+     * @return the ndjson result of the completed scan job
+     */
+    public File scanResult(String id) {
+        return scanJobs.result(id);
+    }
+
+    public CacheStats cacheStats() {
+        return cache.getStats();
+    }
+
+    private FollowLinks followLinks() {
+        return properties.getTraversal().getFollowLinks();
+    }
+
+    private int limit(Integer limit) {
+        FileMetadataProperties.Page page = properties.getPage();
+        int pageLimit = limit != null ? limit : page.getDefaultLimit();
+        if (pageLimit < 1 || pageLimit > page.getMaxLimit()) {
+            throw new InvalidInputException(FileErrorCodes.INVALID_PARAMETER_VALUE, "limit", String.valueOf(limit));
+        }
+        return pageLimit;
+    }
+
+    /**
+     * Walks the index of the snapshot, or the index found or scanned now when the snapshot holds none
+     */
+    private void walkIndex(DirectorySnapshot snapshot, Projection projection, FileMetadataVisitor visitor) throws IOException {
+        File folder = snapshot.getFolder();
+        if (snapshot.getIndex() != null) {
+            snapshot.getIndex().walk(snapshot.getEntry(), folder, snapshot.getFilter(), projection, visitor);
+            return;
+        }
+        IndexedTree tree = treeIndexService.index(folder);
+        tree.walk(tree.find(folder), folder, snapshot.getFilter(), projection, visitor);
+    }
+
+    private FileMetadata directoryTree(DirectorySnapshot snapshot, Projection projection) throws IOException {
+        File folder = snapshot.getFolder();
+        TraversalFilter filter = snapshot.getFilter();
+        if (snapshot.getConsistency() == Consistency.INDEX) {
+            TreeBuilder treeBuilder = new TreeBuilder();
+            walkIndex(snapshot, projection, treeBuilder);
+            return treeBuilder.getRoot();
+        }
+
+        if (snapshot.getListings() != null)
+            return cache.directoryTree(snapshot.getListings(), projection);
+
+        if (cache.isEnabled() && (!filter.isEmpty() && projection.isAll() || cache.containsDirectory(folder)))
+            return cache.directoryTree(folder, filter, projection);
+
+        if (!filter.isEmpty() || !projection.isAll())
+            return directoryTree(folder, filter, projection);
+
+        if (!cache.isEnabled())
+            return directoryTree(folder, filter, projection);
+
+        // a complete tree, so it can be cached, its directories watched before they are listed
+        try (FileMetadataCache.TreeWatches watches = cache.watchTree()) {
+            FileMetadata tree = directoryTree(folder, filter, projection, watches.visited());
+            cache.putTree(folder, tree, watches);
+            return tree;
+        }
+    }
+
+    /**
+     * Key of the scans identical requests share. Responses hold the paths as requested, so requests for another path
+     * of the same directory (e.g. through a symbolic link) do not share a scan. Requests only share a response built
+     * from a snapshot of the same fingerprint, so its tag holds for each of them.
+     */
+    private static List<Object> flightKey(DirectorySnapshot snapshot, StreamFormat format, MetadataEncoder encoder) {
+        return Arrays.asList(snapshot.getFolder().getPath(), format, snapshot.getConsistency(),
+                snapshot.getFilter().getDirectoryFilter(), snapshot.getFingerprint(), encoder.getEncoding(),
+                encoder.getProjection(), encoder.isPretty());
+    }
+
+    private byte[] encode(FileMetadata tree, MetadataEncoder encoder, Scan scan) throws IOException {
+        long start = System.nanoTime();
+        byte[] body = encoder.encode(tree);
+        scan.serialized(encoder.getEncoding(), body.length, System.nanoTime() - start);
+        return body;
+    }
+
+    private FileMetadata directoryTree(File folder, TraversalFilter filter, Projection projection) throws IOException {
+        return directoryTree(folder, filter, projection, new VisitedDirectories(followLinks()));
+    }
+
+    private FileMetadata directoryTree(File folder, TraversalFilter filter, Projection projection,
+                                       VisitedDirectories visited) throws IOException {
+        // the store of the folder is resolved once, for the parallelism and the throttling of the scan
+        ForkJoinPool pool = parallelTreeTraversal.pool(fileStores.bind(folder));
+        if (pool.getParallelism() > 1)
+            return parallelTreeTraversal.directoryTree(pool, folder, filter, projection, visited);
+
+        return FileMetadataHandler.directoryTree(folder, filter, projection, visited);
+    }
+}
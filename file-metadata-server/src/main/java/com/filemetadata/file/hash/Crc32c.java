@@ -0,0 +1,64 @@
+package com.filemetadata.file.hash;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * CRC-32C (Castagnoli, reflected polynomial 0x82F63B78), computed slicing-by-8: eight table lookups per 8 bytes
+ * read as one little endian long, so mapped and direct buffers are never copied to the heap.
+ * java.util.zip.CRC32C only exists from Java 9.
+ *
+ * @author Vinod Kandula
+ */
+public final class Crc32c implements Hasher {
+
+    private static final int POLYNOMIAL = 0x82F63B78;
+
+    // TABLE[k * 256 + b] is the CRC of byte b followed by k zero bytes
+    private static final int[] TABLE = new int[8 * 256];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            int crc = b;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            TABLE[b] = crc;
+        }
+        for (int k = 1; k < 8; k++) {
+            for (int b = 0; b < 256; b++) {
+                int previous = TABLE[(k - 1) * 256 + b];
+                TABLE[k * 256 + b] = (previous >>> 8) ^ TABLE[previous & 0xFF];
+            }
+        }
+    }
+
+    private int crc = 0xFFFFFFFF;
+
+    @Override
+    public void update(ByteBuffer buffer) {
+        ByteBuffer bytes = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int position = bytes.position();
+        int limit = bytes.limit();
+        int crc = this.crc;
+        for (; position + 8 <= limit; position += 8) {
+            long value = bytes.getLong(position);
+            int low = (int) value ^ crc;
+            int high = (int) (value >>> 32);
+            crc = TABLE[7 * 256 + (low & 0xFF)] ^ TABLE[6 * 256 + ((low >>> 8) & 0xFF)]
+                    ^ TABLE[5 * 256 + ((low >>> 16) & 0xFF)] ^ TABLE[4 * 256 + (low >>> 24)]
+                    ^ TABLE[3 * 256 + (high & 0xFF)] ^ TABLE[2 * 256 + ((high >>> 8) & 0xFF)]
+                    ^ TABLE[256 + ((high >>> 16) & 0xFF)] ^ TABLE[high >>> 24];
+        }
+        for (; position < limit; position++) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ bytes.get(position)) & 0xFF];
+        }
+        this.crc = crc;
+        buffer.position(limit);
+    }
+
+    @Override
+    public String digest() {
+        return String.format("%08x", ~crc);
+    }
+}
@@ -0,0 +1,414 @@
+package com.filemetadata.file.hash;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.filemetadata.config.FileMetadataProperties;
+import com.filemetadata.dto.DuplicateGroup;
+import com.filemetadata.dto.FileHash;
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.traversal.ParallelTreeTraversal;
+import com.filemetadata.file.traversal.TraversalFilter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds the duplicate files below a directory in stages that each read as little as possible:
+ *
+ * 1. the regular files are grouped by size and files of a unique size dropped, without reading any content,
+ * 2. paths of one file through several hard links are reduced to one by file key, as they waste no space,
+ * 3. files larger than 128 KB are grouped by the xxHash64 of their first and last 64 KB,
+ * 4. only files that still collide are hashed in full with the {@link FileHasher}, so its checksum cache applies.
+ *
+ * Size buckets, largest first, and the files within a stage are processed in parallel on the pool of the
+ * {@link ParallelTreeTraversal}, and every group is reported as soon as its bucket is hashed. Streamed groups are
+ * handed to the request thread through a bounded queue, so the workers of the pool never write to a client.
+ *
+ * @author Vinod Kandula
+ */
+@Component
+public class DuplicateFinder {
+
+    // bytes hashed at the start and at the end of a candidate by the partial stage
+    private static final int PARTIAL_SIZE = 64 * 1024;
+
+    // candidates of one stage hashed by one task before the range is split further
+    private static final int FILES_PER_TASK = 4;
+
+    private static final ThreadLocal<ByteBuffer> PARTIAL_BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(PARTIAL_SIZE));
+
+    // groups found but not written yet, before the search waits for the client
+    private static final int QUEUED_GROUPS = 64;
+
+    private static final ObjectWriter WRITER = new ObjectMapper().writerFor(DuplicateGroup.class);
+
+    @Autowired
+    private FileMetadataProperties properties;
+
+    @Autowired
+    private ParallelTreeTraversal parallelTreeTraversal;
+
+    @Autowired
+    private FileHasher fileHasher;
+
+    /**
+     * Receives the groups of duplicates, one at a time
+     */
+    public interface Listener {
+        void found(DuplicateGroup group) throws IOException;
+    }
+
+    /**
+     * Writes every group of duplicates as one line of JSON (ndjson) as soon as it is found
+     *
+     * @param folder
+     * @param filter    compiled for the folder
+     * @param algorithm of the full hash
+     * @param out
+     * @throws IOException
+     */
+    public void stream(File folder, TraversalFilter filter, HashAlgorithm algorithm, OutputStream out) throws IOException {
+        List<Map.Entry<Long, List<File>>> buckets = buckets(folder, filter);
+        GroupQueue queue = new GroupQueue();
+        Search search = new Search(algorithm, queue);
+        ForkJoinTask<Void> searching = parallelTreeTraversal.submit(folder, search.task(buckets));
+        try {
+            // every group is queued before the search completes
+            while (!searching.isDone() || !queue.isEmpty()) {
+                DuplicateGroup group = queue.poll();
+                if (group != null) {
+                    out.write(WRITER.writeValueAsBytes(group));
+                    out.write('\n');
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            search.stop();
+            queue.close();
+            throw e;
+        } catch (InterruptedException e) {
+            search.stop();
+            queue.close();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        try {
+            searching.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * @param folder
+     * @param filter    compiled for the folder
+     * @param algorithm of the full hash
+     * @param listener  called from the pool threads, but never concurrently
+     * @throws IOException thrown by the listener, which stops the search
+     */
+    public void find(File folder, TraversalFilter filter, HashAlgorithm algorithm, Listener listener) throws IOException {
+        List<Map.Entry<Long, List<File>>> buckets = buckets(folder, filter);
+        Search search = new Search(algorithm, group -> {
+            synchronized (listener) {
+                listener.found(group);
+            }
+        });
+        parallelTreeTraversal.invoke(folder, search.task(buckets));
+    }
+
+    /**
+     * @return the files sharing their size with others, by size, largest first
+     */
+    private List<Map.Entry<Long, List<File>>> buckets(File folder, TraversalFilter filter) throws IOException {
+        Map<Long, List<File>> bySize = new HashMap<>();
+        for (FileMetadata file : RegularFiles.list(folder, filter, properties.getTraversal().getFollowLinks())) {
+            // empty files waste no space
+            if (file.getSize() > 0) {
+                bySize.computeIfAbsent(file.getSize(), size -> new ArrayList<>()).add(new File(file.getPath()));
+            }
+        }
+
+        List<Map.Entry<Long, List<File>>> buckets = new ArrayList<>();
+        for (Map.Entry<Long, List<File>> bucket : bySize.entrySet()) {
+            if (bucket.getValue().size() > 1) {
+                buckets.add(bucket);
+            }
+        }
+        buckets.sort(Collections.reverseOrder(Comparator.comparing(Map.Entry::getKey)));
+        return buckets;
+    }
+
+    /**
+     * State of one search
+     */
+    private class Search {
+
+        private final HashAlgorithm algorithm;
+        // may be called concurrently
+        private final Listener listener;
+        // set once the listener failed, the remaining buckets are skipped
+        private volatile boolean stopped;
+
+        Search(HashAlgorithm algorithm, Listener listener) {
+            this.algorithm = algorithm;
+            this.listener = listener;
+        }
+
+        /**
+         * Skips the buckets not searched yet
+         */
+        void stop() {
+            stopped = true;
+        }
+
+        /**
+         * @return the task searching the buckets in parallel
+         */
+        ForEachTask task(List<Map.Entry<Long, List<File>>> buckets) {
+            return new ForEachTask(0, buckets.size(), 1, i -> bucket(buckets.get(i).getKey(), buckets.get(i).getValue()));
+        }
+
+        void bucket(long size, List<File> files) throws IOException {
+            if (stopped) {
+                return;
+            }
+
+            List<File> distinct = new ArrayList<>(files.size());
+            Set<Object> fileKeys = new HashSet<>();
+            for (File file : files) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                } catch (IOException e) {
+                    // removed or no longer readable since it was listed
+                    continue;
+                }
+                Object fileKey = attributes.fileKey() != null ? attributes.fileKey() : file.getAbsolutePath();
+                if (attributes.size() == size && fileKeys.add(fileKey)) {
+                    distinct.add(file);
+                }
+            }
+            if (distinct.size() < 2) {
+                return;
+            }
+
+            // the partial hash would read all of a small file anyway
+            List<List<File>> candidates = size > 2 * PARTIAL_SIZE
+                    ? new ArrayList<>(groupByHash(distinct, file -> partialHash(file, size)).values())
+                    : Collections.singletonList(distinct);
+
+            for (List<File> candidate : candidates) {
+                for (Map.Entry<String, List<File>> duplicates : groupByHash(candidate, this::fullHash).entrySet()) {
+                    report(size, duplicates.getKey(), duplicates.getValue());
+                }
+            }
+        }
+
+        /**
+         * Hashes the files in parallel
+         *
+         * @return the files by hash, without unique hashes and files that could not be read
+         */
+        private Map<String, List<File>> groupByHash(List<File> files, FileHashFunction hashFunction) {
+            String[] hashes = new String[files.size()];
+            new ForEachTask(0, files.size(), FILES_PER_TASK, i -> hashes[i] = hashFunction.hash(files.get(i))).invoke();
+
+            Map<String, List<File>> byHash = new LinkedHashMap<>();
+            for (int i = 0; i < hashes.length; i++) {
+                if (hashes[i] != null) {
+                    byHash.computeIfAbsent(hashes[i], hash -> new ArrayList<>()).add(files.get(i));
+                }
+            }
+            byHash.values().removeIf(group -> group.size() < 2);
+            return byHash;
+        }
+
+        private String fullHash(File file) {
+            FileHash fileHash = fileHasher.hash(file, algorithm);
+            return fileHash != null ? fileHash.getHash() : null;
+        }
+
+        private void report(long size, String hash, List<File> files) throws IOException {
+            DuplicateGroup group = new DuplicateGroup();
+            group.setSize(size);
+            group.setAlgorithm(algorithm.getName());
+            group.setHash(hash);
+            group.setCount(files.size());
+            group.setWastedBytes(size * (files.size() - 1));
+            for (File file : files) {
+                group.getPaths().add(file.getPath());
+            }
+            Collections.sort(group.getPaths());
+
+            if (stopped) {
+                return;
+            }
+            try {
+                listener.found(group);
+            } catch (IOException e) {
+                stopped = true;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Hands the groups found on the pool threads to the request thread writing them. A worker finding the queue full
+     * waits as a {@link ForkJoinPool.ManagedBlocker}, so the pool makes up for it, and a slow client holds up the
+     * search of its own request only.
+     */
+    private static final class GroupQueue implements Listener {
+
+        private final BlockingQueue<DuplicateGroup> groups = new ArrayBlockingQueue<>(QUEUED_GROUPS);
+        // set once the request thread stopped writing
+        private volatile boolean closed;
+
+        @Override
+        public void found(DuplicateGroup group) throws IOException {
+            if (!closed && !groups.offer(group)) {
+                try {
+                    ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+
+                        private boolean queued;
+
+                        @Override
+                        public boolean block() throws InterruptedException {
+                            while (!isReleasable()) {
+                                queued = groups.offer(group, 100, TimeUnit.MILLISECONDS);
+                            }
+                            return true;
+                        }
+
+                        @Override
+                        public boolean isReleasable() {
+                            return queued || closed || (queued = groups.offer(group));
+                        }
+                    });
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            if (closed) {
+                throw new IOException("The duplicates are no longer written");
+            }
+        }
+
+        /**
+         * @return the next group, null when none was found within a tenth of a second
+         */
+        DuplicateGroup poll() throws InterruptedException {
+            return groups.poll(100, TimeUnit.MILLISECONDS);
+        }
+
+        boolean isEmpty() {
+            return groups.isEmpty();
+        }
+
+        void close() {
+            closed = true;
+            groups.clear();
+        }
+    }
+
+    /**
+     * xxHash64 of the first and last 64 KB of a file
+     *
+     * @return null when the file could not be read
+     */
+    private static String partialHash(File file, long size) {
+        Hasher hasher = HashAlgorithm.XXHASH64.newHasher();
+        ByteBuffer buffer = PARTIAL_BUFFERS.get();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            read(channel, buffer, 0, hasher);
+            read(channel, buffer, size - PARTIAL_SIZE, hasher);
+        } catch (IOException e) {
+            return null;
+        }
+        return hasher.digest();
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long position, Hasher hasher) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        hasher.update(buffer);
+    }
+
+    private interface FileHashFunction {
+        String hash(File file);
+    }
+
+    private interface IndexAction {
+        void apply(int index) throws IOException;
+    }
+
+    /**
+     * Applies an action to a range of indexes, splitting ranges larger than the chunk
+     */
+    private static class ForEachTask extends RecursiveAction {
+
+        private final int from, to;
+        private final int chunk;
+        private final IndexAction action;
+
+        ForEachTask(int from, int to, int chunk, IndexAction action) {
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > chunk) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ForEachTask(from, middle, chunk, action), new ForEachTask(middle, to, chunk, action));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                try {
+                    action.apply(i);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+}
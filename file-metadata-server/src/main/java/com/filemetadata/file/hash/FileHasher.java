@@ -0,0 +1,205 @@
+package com.filemetadata.file.hash;
+
+import com.filemetadata.config.FileMetadataProperties;
+import com.filemetadata.dto.FileHash;
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.dto.HashReport;
+import com.filemetadata.file.traversal.FollowLinks;
+import com.filemetadata.file.traversal.ParallelTreeTraversal;
+import com.filemetadata.file.traversal.TraversalFilter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Hashes the content of a file, or of every regular file below a directory, on the pool of the
+ * {@link ParallelTreeTraversal}, several files at a time.
+ *
+ * Files from filemetadata.hash.mmap-threshold bytes on are hashed straight from memory mapped regions, smaller ones
+ * through a direct buffer per pool thread, so no file content is copied to the heap (except by SHA-256). Checksums
+ * are kept in a {@link HashCache} and only cached when the size and modification time of the file did not change
+ * while it was read.
+ *
+ * @author Vinod Kandula
+ */
+@Component
+public class FileHasher {
+
+    // files hashed by one task before the range is split further, unless they hold more than BYTES_PER_TASK
+    private static final int FILES_PER_TASK = 16;
+    private static final long BYTES_PER_TASK = 64L * 1024 * 1024;
+
+    // largest region mapped at once, Java 8 only unmaps a region once it is garbage collected
+    private static final long MAP_REGION = 256L * 1024 * 1024;
+
+    private final long mmapThreshold;
+    private final ThreadLocal<ByteBuffer> buffers;
+    private final HashCache cache;
+    private final ParallelTreeTraversal parallelTreeTraversal;
+    private final FollowLinks followLinks;
+
+    @Autowired
+    public FileHasher(FileMetadataProperties properties, ParallelTreeTraversal parallelTreeTraversal) {
+        FileMetadataProperties.Hash hash = properties.getHash();
+        this.mmapThreshold = hash.getMmapThreshold();
+        this.buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(hash.getBufferSize()));
+        this.cache = new HashCache(hash.getCacheMaxEntries());
+        this.parallelTreeTraversal = parallelTreeTraversal;
+        this.followLinks = properties.getTraversal().getFollowLinks();
+    }
+
+    /**
+     * @param target    file, or directory whose regular files are hashed
+     * @param filter    compiled for the target when it is a directory
+     * @param algorithm
+     * @return the checksums in the order of the traversal, with the bytes read per second
+     * @throws IOException
+     */
+    public HashReport hash(File target, TraversalFilter filter, HashAlgorithm algorithm) throws IOException {
+        long start = System.nanoTime();
+
+        List<File> files = new ArrayList<>();
+        long[] offsets;
+        if (target.isDirectory()) {
+            List<FileMetadata> listed = RegularFiles.list(target, filter, followLinks);
+            offsets = new long[listed.size() + 1];
+            for (int i = 0; i < listed.size(); i++) {
+                files.add(new File(listed.get(i).getPath()));
+                offsets[i + 1] = offsets[i] + listed.get(i).getSize();
+            }
+        } else {
+            files.add(target);
+            offsets = new long[]{0, target.length()};
+        }
+
+        FileHash[] hashes = new FileHash[files.size()];
+        parallelTreeTraversal.invoke(target, new HashTask(files, offsets, hashes, algorithm, 0, files.size()));
+
+        HashReport report = new HashReport();
+        report.setPath(target.getPath());
+        report.setAlgorithm(algorithm.getName());
+        for (FileHash hash : hashes) {
+            // null when removed since it was listed
+            if (hash == null) {
+                continue;
+            }
+            report.getFiles().add(hash);
+            report.setSize(report.getSize() + hash.getSize());
+            if (hash.isCached())
+                report.setCachedCount(report.getCachedCount() + 1);
+            else if (hash.getHash() != null)
+                report.setBytesRead(report.getBytesRead() + hash.getSize());
+        }
+        long elapsed = System.nanoTime() - start;
+        report.setFileCount(report.getFiles().size());
+        report.setElapsedMillis(elapsed / 1_000_000);
+        // bytes per nanosecond are GB per second
+        report.setThroughput(Math.round(report.getBytesRead() * 1000.0 / Math.max(elapsed, 1)) / 1000.0);
+        return report;
+    }
+
+    /**
+     * Hashes one file, or answers from the cache when its size and modification time did not change. Called on the
+     * pool threads, which own the read buffers.
+     *
+     * @param file
+     * @param algorithm
+     * @return null when the file no longer exists
+     */
+    FileHash hash(File file, HashAlgorithm algorithm) {
+        Path path = file.toPath();
+        FileHash fileHash = new FileHash();
+        fileHash.setPath(file.getPath());
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            Object fileKey = attributes.fileKey() != null ? attributes.fileKey() : path.toAbsolutePath().toString();
+            fileHash.setSize(attributes.size());
+
+            String digest = cache.get(fileKey, algorithm, attributes);
+            if (digest != null) {
+                fileHash.setHash(digest);
+                fileHash.setCached(true);
+                return fileHash;
+            }
+
+            digest = read(path, attributes.size(), algorithm);
+            fileHash.setHash(digest);
+
+            BasicFileAttributes after = Files.readAttributes(path, BasicFileAttributes.class);
+            if (after.size() == attributes.size() && after.lastModifiedTime().equals(attributes.lastModifiedTime()))
+                cache.put(fileKey, algorithm, attributes, digest);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            fileHash.setError(e.toString());
+        }
+        return fileHash;
+    }
+
+    private String read(Path path, long size, HashAlgorithm algorithm) throws IOException {
+        Hasher hasher = algorithm.newHasher();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (size >= mmapThreshold) {
+                for (long position = 0; position < size; position += MAP_REGION) {
+                    hasher.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_REGION, size - position)));
+                }
+            } else {
+                ByteBuffer buffer = buffers.get();
+                buffer.clear();
+                while (channel.read(buffer) >= 0) {
+                    buffer.flip();
+                    hasher.update(buffer);
+                    buffer.clear();
+                }
+            }
+        }
+        return hasher.digest();
+    }
+
+    /**
+     * Hashes a range of the listed files into their slots of the hashes array, splitting ranges of many files or
+     * many bytes so large files are hashed in parallel with the rest
+     */
+    private class HashTask extends RecursiveAction {
+
+        private final List<File> files;
+        private final long[] offsets;
+        private final FileHash[] hashes;
+        private final HashAlgorithm algorithm;
+        private final int from, to;
+
+        HashTask(List<File> files, long[] offsets, FileHash[] hashes, HashAlgorithm algorithm, int from, int to) {
+            this.files = files;
+            this.offsets = offsets;
+            this.hashes = hashes;
+            this.algorithm = algorithm;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1 && (to - from > FILES_PER_TASK || offsets[to] - offsets[from] > BYTES_PER_TASK)) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new HashTask(files, offsets, hashes, algorithm, from, middle),
+                        new HashTask(files, offsets, hashes, algorithm, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                hashes[i] = hash(files.get(i), algorithm);
+            }
+        }
+    }
+}
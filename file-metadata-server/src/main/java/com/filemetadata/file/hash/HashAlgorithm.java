@@ -0,0 +1,89 @@
+package com.filemetadata.file.hash;
+
+import com.filemetadata.common.exception.InvalidInputException;
+import com.filemetadata.file.handler.FileErrorCodes;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Checksums of the file content.
+ *
+ * SHA256   - cryptographic, for integrity audits against tampering.
+ * CRC32C   - Castagnoli CRC as used by iSCSI, ext4 and cloud object stores, to detect corruption.
+ * XXHASH64 - 64 bit xxHash (XXH64, seed 0), the fastest of them, to detect changes.
+ *
+ * @author Vinod Kandula
+ */
+public enum HashAlgorithm {
+
+    SHA256("sha256"),
+    CRC32C("crc32c"),
+    XXHASH64("xxhash64");
+
+    private String name;
+
+    HashAlgorithm(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param algorithm name, case and dashes ignored: sha256, sha-256, crc32c, xxhash64, xxh64
+     * @return
+     */
+    public static HashAlgorithm of(String algorithm) {
+        String name = algorithm == null ? "" : algorithm.replace("-", "");
+        if (name.equalsIgnoreCase("xxh64") || name.equalsIgnoreCase("xxhash"))
+            return XXHASH64;
+        for (HashAlgorithm value : values()) {
+            if (value.name.equalsIgnoreCase(name)) {
+                return value;
+            }
+        }
+        throw new InvalidInputException(FileErrorCodes.INVALID_PARAMETER_VALUE, "algorithm", algorithm);
+    }
+
+    public Hasher newHasher() {
+        switch (this) {
+            case CRC32C:
+                return new Crc32c();
+            case XXHASH64:
+                return new XxHash64();
+            default:
+                return new Sha256();
+        }
+    }
+
+    private static class Sha256 implements Hasher {
+
+        private final MessageDigest digest;
+
+        Sha256() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                // every Java platform is required to support SHA-256
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void update(ByteBuffer buffer) {
+            digest.update(buffer);
+        }
+
+        @Override
+        public String digest() {
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        }
+    }
+}
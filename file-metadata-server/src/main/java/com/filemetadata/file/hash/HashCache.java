@@ -0,0 +1,94 @@
+package com.filemetadata.file.hash;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Bounded LRU cache of file checksums by file key (device and inode) and algorithm. A checksum is only returned
+ * while the size and modification time of the file are still the ones it was computed for, so an unchanged file is
+ * never read twice, also when it is reached through another path or hard link.
+ *
+ * @author Vinod Kandula
+ */
+final class HashCache {
+
+    private final int maxEntries;
+
+    // access ordered, so the least recently used entry is evicted first
+    private final LinkedHashMap<Key, Checksum> entries;
+
+    HashCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<Key, Checksum>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Checksum> eldest) {
+                return size() > HashCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param fileKey    of the attributes, or the absolute path where the filesystem has no file keys
+     * @param algorithm
+     * @param attributes read before the file would be hashed
+     * @return the cached checksum, null when missing or computed for another size or modification time
+     */
+    synchronized String get(Object fileKey, HashAlgorithm algorithm, BasicFileAttributes attributes) {
+        if (maxEntries <= 0) {
+            return null;
+        }
+        Checksum entry = entries.get(new Key(fileKey, algorithm));
+        if (entry == null || entry.size != attributes.size() || !entry.lastModifiedTime.equals(attributes.lastModifiedTime())) {
+            return null;
+        }
+        return entry.digest;
+    }
+
+    synchronized void put(Object fileKey, HashAlgorithm algorithm, BasicFileAttributes attributes, String digest) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        entries.put(new Key(fileKey, algorithm), new Checksum(attributes.size(), attributes.lastModifiedTime(), digest));
+    }
+
+    private static class Key {
+
+        private final Object fileKey;
+        private final HashAlgorithm algorithm;
+
+        Key(Object fileKey, HashAlgorithm algorithm) {
+            this.fileKey = fileKey;
+            this.algorithm = algorithm;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return algorithm == other.algorithm && fileKey.equals(other.fileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fileKey, algorithm);
+        }
+    }
+
+    private static class Checksum {
+
+        private final long size;
+        private final FileTime lastModifiedTime;
+        private final String digest;
+
+        Checksum(long size, FileTime lastModifiedTime, String digest) {
+            this.size = size;
+            this.lastModifiedTime = lastModifiedTime;
+            this.digest = digest;
+        }
+    }
+}
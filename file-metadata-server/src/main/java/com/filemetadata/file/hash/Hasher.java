@@ -0,0 +1,23 @@
+package com.filemetadata.file.hash;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Running checksum of one file, fed with the buffers the file is read into
+ *
+ * @author Vinod Kandula
+ */
+public interface Hasher {
+
+    /**
+     * Hashes the remaining bytes of the buffer, leaving its position at its limit
+     *
+     * @param buffer heap, direct or mapped
+     */
+    void update(ByteBuffer buffer);
+
+    /**
+     * @return the checksum of all bytes hashed so far as lower case hex
+     */
+    String digest();
+}
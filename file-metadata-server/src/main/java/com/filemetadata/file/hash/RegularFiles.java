@@ -0,0 +1,55 @@
+package com.filemetadata.file.hash;
+
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.handler.FileMetadataHandler;
+import com.filemetadata.file.projection.Projection;
+import com.filemetadata.file.traversal.FileMetadataVisitor;
+import com.filemetadata.file.traversal.FollowLinks;
+import com.filemetadata.file.traversal.TraversalFilter;
+import com.filemetadata.file.traversal.VisitedDirectories;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lists the regular files below a directory with only their path and size collected
+ *
+ * @author Vinod Kandula
+ */
+final class RegularFiles {
+
+    private static final Projection LISTED = Projection.of("path,size,regularFile");
+
+    private RegularFiles() {
+    }
+
+    /**
+     * @param folder
+     * @param filter compiled for the folder
+     * @param followLinks
+     * @return the regular files left in by the filter, in traversal order
+     * @throws IOException
+     */
+    static List<FileMetadata> list(File folder, TraversalFilter filter, FollowLinks followLinks) throws IOException {
+        List<FileMetadata> files = new ArrayList<>();
+        FileMetadataHandler.walk(folder, filter, LISTED, new FileMetadataVisitor() {
+            @Override
+            public void preVisitDirectory(FileMetadata directory) {
+            }
+
+            @Override
+            public void visitFile(FileMetadata file) {
+                if (file.isRegularFile()) {
+                    files.add(file);
+                }
+            }
+
+            @Override
+            public void postVisitDirectory(FileMetadata directory) {
+            }
+        }, new VisitedDirectories(followLinks));
+        return files;
+    }
+}
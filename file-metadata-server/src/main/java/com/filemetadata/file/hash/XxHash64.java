@@ -0,0 +1,114 @@
+package com.filemetadata.file.hash;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Streaming XXH64 with seed 0. Stripes of 32 bytes are read from the buffer as little endian longs, only the bytes
+ * of a stripe split between two buffers are copied.
+ *
+ * @author Vinod Kandula
+ */
+public final class XxHash64 implements Hasher {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private static final int STRIPE = 32;
+
+    private long v1 = PRIME1 + PRIME2;
+    private long v2 = PRIME2;
+    private long v3 = 0;
+    private long v4 = -PRIME1;
+    private long length;
+
+    // start of a stripe not complete yet
+    private final ByteBuffer pending = ByteBuffer.allocate(STRIPE).order(ByteOrder.LITTLE_ENDIAN);
+
+    @Override
+    public void update(ByteBuffer buffer) {
+        ByteBuffer bytes = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        length += bytes.remaining();
+
+        if (pending.position() > 0) {
+            while (pending.hasRemaining() && bytes.hasRemaining()) {
+                pending.put(bytes.get());
+            }
+            if (pending.hasRemaining()) {
+                buffer.position(buffer.limit());
+                return;
+            }
+            stripe(pending, 0);
+            pending.clear();
+        }
+
+        int position = bytes.position();
+        int limit = bytes.limit();
+        for (; position + STRIPE <= limit; position += STRIPE) {
+            stripe(bytes, position);
+        }
+        for (; position < limit; position++) {
+            pending.put(bytes.get(position));
+        }
+        buffer.position(limit);
+    }
+
+    @Override
+    public String digest() {
+        long hash;
+        if (length >= STRIPE) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = merge(hash, v1);
+            hash = merge(hash, v2);
+            hash = merge(hash, v3);
+            hash = merge(hash, v4);
+        } else {
+            hash = PRIME5;
+        }
+        hash += length;
+
+        int position = 0;
+        int limit = pending.position();
+        for (; position + 8 <= limit; position += 8) {
+            hash ^= round(0, pending.getLong(position));
+            hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+        }
+        if (position + 4 <= limit) {
+            hash ^= (pending.getInt(position) & 0xFFFFFFFFL) * PRIME1;
+            hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+            position += 4;
+        }
+        for (; position < limit; position++) {
+            hash ^= (pending.get(position) & 0xFF) * PRIME5;
+            hash = Long.rotateLeft(hash, 11) * PRIME1;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+        return String.format("%016x", hash);
+    }
+
+    private void stripe(ByteBuffer bytes, int position) {
+        v1 = round(v1, bytes.getLong(position));
+        v2 = round(v2, bytes.getLong(position + 8));
+        v3 = round(v3, bytes.getLong(position + 16));
+        v4 = round(v4, bytes.getLong(position + 24));
+    }
+
+    private static long round(long accumulator, long input) {
+        accumulator += input * PRIME2;
+        accumulator = Long.rotateLeft(accumulator, 31);
+        return accumulator * PRIME1;
+    }
+
+    private static long merge(long hash, long accumulator) {
+        hash ^= round(0, accumulator);
+        return hash * PRIME1 + PRIME4;
+    }
+}
@@ -0,0 +1,34 @@
+package com.filemetadata.file.index;
+
+import com.filemetadata.common.exception.InvalidInputException;
+import com.filemetadata.file.handler.FileErrorCodes;
+
+/**
+ * Where a directory request is answered from.
+ *
+ * FRESH - scans the directory (or the watched cache) at request time.
+ * INDEX - answers from the persisted tree index, rescanning only the directories whose mtime changed once the
+ *         index is older than filemetadata.index.max-age.
+ *
+ * @author Vinod Kandula
+ */
+public enum Consistency {
+
+    FRESH("fresh"),
+    INDEX("index");
+
+    private String consistency;
+
+    Consistency(String consistency) {
+        this.consistency = consistency;
+    }
+
+    public static Consistency of(String consistency) {
+        for (Consistency value : values()) {
+            if (value.consistency.equalsIgnoreCase(consistency)) {
+                return value;
+            }
+        }
+        throw new InvalidInputException(FileErrorCodes.INVALID_PARAMETER_VALUE, "consistency", consistency);
+    }
+}
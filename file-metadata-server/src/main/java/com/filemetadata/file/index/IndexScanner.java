@@ -0,0 +1,167 @@
+package com.filemetadata.file.index;
+
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.handler.FileMetadataHandler;
+import com.filemetadata.file.metrics.FileMetadataMetrics;
+import com.filemetadata.file.metrics.Scan;
+import com.filemetadata.file.metrics.ScanOperation;
+import com.filemetadata.file.store.StorePolicy;
+import com.filemetadata.file.traversal.FollowLinks;
+import com.filemetadata.file.traversal.VisitedDirectories;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scans a directory into an {@link IndexedTree}, breadth first.
+ *
+ * Given the previous index of the same directory the scan is incremental: a directory whose mtime did not change
+ * has not had entries added, removed or renamed, so its stored children are copied instead of listing and stat-ing
+ * the directory again. Only its sub-directories are stat-ed, to find the changed directories further down. Changes
+ * to the contents of a file do not touch the mtime of its directory, so they are only picked up once the directory
+ * changes or by a request with consistency=fresh.
+ *
+ * An mtime is only as fine as the filesystem keeps it, e.g. 2 seconds on FAT, so an entry added in the same tick the
+ * directory was listed in leaves the mtime as stored. A directory is therefore only reused once its stored mtime is
+ * older than the previous scan by more than {@link #MTIME_GRANULARITY_NANOS}, and listed again until then.
+ *
+ * A directory reached again through a link is indexed without children, see {@link VisitedDirectories}.
+ *
+ * @author Vinod Kandula
+ */
+@Slf4j
+public final class IndexScanner {
+
+    // coarsest mtime resolution of the filesystems indexed
+    static final long MTIME_GRANULARITY_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private IndexScanner() {
+    }
+
+    /**
+     * Scans the given directory
+     *
+     * @param folder
+     * @param previous index of the same directory to reuse unchanged directories from, may be null
+     * @param store    policy of the store of the directory, throttling the scan
+     * @param followLinks
+     * @return
+     * @throws IOException
+     */
+    public static IndexedTree scan(File folder, IndexedTree previous, StorePolicy store, FollowLinks followLinks)
+            throws IOException {
+        try (Scan scan = FileMetadataMetrics.start(ScanOperation.INDEX)) {
+            scan.bindStore(store);
+            File root = folder.getAbsoluteFile();
+            FileMetadata rootMetadata = FileMetadataHandler.fileMetadata(root);
+            IndexedTree tree = new IndexedTree(root.getPath(), rootMetadata.getCanonicalPath(),
+                    previous != null ? previous.size() : 1024);
+            tree.setScannedAt(System.currentTimeMillis());
+
+            int entry = tree.add(rootMetadata, -1);
+            VisitedDirectories visited = new VisitedDirectories(followLinks);
+            visited.enterRoot(root, rootMetadata);
+            Deque<Pending> pending = new ArrayDeque<>();
+            pending.add(new Pending(entry, previous != null ? 0 : -1, root, rootMetadata));
+
+            int relisted = 0;
+            while (!pending.isEmpty()) {
+                Pending directory = pending.poll();
+                tree.startChildren(directory.entry);
+                if (directory.previousEntry >= 0 && isUnchanged(tree, previous, directory)) {
+                    reuse(tree, previous, directory, visited, pending);
+                } else {
+                    relist(tree, previous, directory, visited, pending);
+                    relisted++;
+                }
+            }
+
+            tree.trim();
+            log.debug("Indexed {} entries of {}, {} directories listed", tree.size(), root, relisted);
+            scan.complete();
+            return tree;
+        }
+    }
+
+    /**
+     * @return true when the directory has the mtime it was listed with, and was listed after that mtime had passed
+     */
+    private static boolean isUnchanged(IndexedTree tree, IndexedTree previous, Pending directory) {
+        long lastModifiedTime = previous.lastModifiedTime(directory.previousEntry);
+        return tree.lastModifiedTime(directory.entry) == lastModifiedTime
+                && lastModifiedTime < TimeUnit.MILLISECONDS.toNanos(previous.getScannedAt()) - MTIME_GRANULARITY_NANOS;
+    }
+
+    private static void reuse(IndexedTree tree, IndexedTree previous, Pending directory, VisitedDirectories visited,
+                              Deque<Pending> pending) throws IOException {
+        int end = previous.childStart(directory.previousEntry) + previous.childCount(directory.previousEntry);
+        for (int previousChild = previous.childStart(directory.previousEntry); previousChild < end; previousChild++) {
+            if (!previous.isDirectory(previousChild)) {
+                tree.copy(previous, previousChild, directory.entry);
+                continue;
+            }
+            // sub-directories are stat-ed to compare their mtime
+            File file = new File(directory.folder, previous.name(previousChild));
+            FileMetadata child = stat(file, directory.metadata);
+            if (child == null) {
+                continue;
+            }
+            int entry = tree.add(child, directory.entry);
+            if (child.isDirectory() && visited.enter(file, child)) {
+                pending.add(new Pending(entry, previousChild, file, child));
+            }
+        }
+    }
+
+    private static void relist(IndexedTree tree, IndexedTree previous, Pending directory, VisitedDirectories visited,
+                               Deque<Pending> pending) throws IOException {
+        for (File file : FileMetadataHandler.listChildren(directory.folder)) {
+            FileMetadata child = stat(file, directory.metadata);
+            if (child == null) {
+                continue;
+            }
+            int entry = tree.add(child, directory.entry);
+            if (child.isDirectory() && visited.enter(file, child)) {
+                int previousChild = directory.previousEntry >= 0 ? previous.child(directory.previousEntry, file.getName()) : -1;
+                if (previousChild >= 0 && !previous.isDirectory(previousChild)) {
+                    previousChild = -1;
+                }
+                pending.add(new Pending(entry, previousChild, file, child));
+            }
+        }
+    }
+
+    /**
+     * @return the metadata of the entry, null when it was removed since its directory was listed
+     */
+    private static FileMetadata stat(File file, FileMetadata parent) throws IOException {
+        try {
+            return FileMetadataHandler.fileMetadata(file, parent);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A directory whose children are still to be added, with its entry in the previous index or -1
+     */
+    private static class Pending {
+
+        private final int entry;
+        private final int previousEntry;
+        private final File folder;
+        private final FileMetadata metadata;
+
+        Pending(int entry, int previousEntry, File folder, FileMetadata metadata) {
+            this.entry = entry;
+            this.previousEntry = previousEntry;
+            this.folder = folder;
+            this.metadata = metadata;
+        }
+    }
+}
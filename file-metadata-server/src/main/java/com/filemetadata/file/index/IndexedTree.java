@@ -0,0 +1,395 @@
+package com.filemetadata.file.index;
+
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.compact.CompactEntries;
+import com.filemetadata.file.compact.Fingerprints;
+import com.filemetadata.file.compact.NameTable;
+import com.filemetadata.file.projection.MetadataField;
+import com.filemetadata.file.projection.Projection;
+import com.filemetadata.file.traversal.FileMetadataVisitor;
+import com.filemetadata.file.traversal.TraversalFilter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Directory & Files metadata tree of one indexed root, kept as {@link CompactEntries} instead of
+ * {@link FileMetadata} objects.
+ *
+ * Entries are laid out breadth first, so the children of every directory are stored next to each other in sorted
+ * order at [childStart, childStart + childCount), and every entry knows the index of its parent. Names are interned
+ * into one {@link NameTable} per tree.
+ *
+ * The same layout is written to disk, the name table once followed by the fixed fields of every entry, so an index
+ * is read back with a single sequential pass and without resolving any path.
+ *
+ * @author Vinod Kandula
+ */
+public class IndexedTree {
+
+    private static final int MAGIC = 0x464D4958; // FMIX
+    private static final int VERSION = 2;
+
+    private final String root;
+    private final String rootCanonicalPath;
+    private long scannedAt;
+
+    private final CompactEntries entries;
+    private int[] parents;
+    private int[] childStarts;
+    private int[] childCounts;
+    // fingerprint of the subtree of every entry, computed on first use as the tree is not changed after its scan
+    private volatile long[] fingerprints;
+    // a watched directory of the tree changed since its scan
+    private volatile boolean stale;
+
+    IndexedTree(String root, String rootCanonicalPath, int capacity) {
+        this(root, rootCanonicalPath, new CompactEntries(capacity, new NameTable(capacity / 4)));
+    }
+
+    private IndexedTree(String root, String rootCanonicalPath, CompactEntries entries) {
+        this.root = root;
+        this.rootCanonicalPath = rootCanonicalPath;
+        this.entries = entries;
+        int capacity = Math.max(entries.size(), 16);
+        this.parents = new int[capacity];
+        this.childStarts = new int[capacity];
+        this.childCounts = new int[capacity];
+    }
+
+    /**
+     * @return absolute path of the indexed directory
+     */
+    public String getRoot() {
+        return root;
+    }
+
+    public long getScannedAt() {
+        return scannedAt;
+    }
+
+    void setScannedAt(long scannedAt) {
+        this.scannedAt = scannedAt;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    boolean isStale() {
+        return stale;
+    }
+
+    void markStale() {
+        stale = true;
+    }
+
+    /**
+     * Finds the entry of the given directory, which must be the indexed root or below it
+     *
+     * @param folder
+     * @return the entry, or -1 when the directory is not in the index
+     */
+    public int find(File folder) {
+        String path = folder.getAbsolutePath();
+        if (path.equals(root)) {
+            return 0;
+        }
+        String prefix = root.endsWith(File.separator) ? root : root + File.separator;
+        if (!path.startsWith(prefix)) {
+            return -1;
+        }
+        int entry = 0;
+        for (String name : path.substring(prefix.length()).split(File.separator.equals("\\") ? "\\\\" : File.separator)) {
+            if (name.isEmpty()) {
+                continue;
+            }
+            entry = child(entry, name);
+            if (entry < 0 || !isDirectory(entry)) {
+                return -1;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Fingerprint of every entry below the given entry and of the entry itself, see {@link Fingerprints}
+     *
+     * @param entry
+     * @return
+     */
+    public long fingerprint(int entry) {
+        long[] subtrees = fingerprints;
+        if (subtrees == null) {
+            subtrees = new long[size()];
+            // breadth first, so the children of an entry are always behind it
+            for (int parent = size() - 1; parent >= 0; parent--) {
+                long hash = entries.fingerprint(parent);
+                for (int child = childStarts[parent]; child < childStarts[parent] + childCounts[parent]; child++) {
+                    hash = Fingerprints.combine(hash, subtrees[child]);
+                }
+                subtrees[parent] = hash;
+            }
+            fingerprints = subtrees;
+        }
+        return subtrees[entry];
+    }
+
+    /**
+     * Visits the tree below the given entry, deriving the paths from the given directory
+     *
+     * @param entry   entry of the directory, from {@link #find(File)}
+     * @param folder  directory the entry was found for, as requested
+     * @param filter
+     * @param visitor
+     * @throws IOException
+     */
+    public void walk(int entry, File folder, TraversalFilter filter, FileMetadataVisitor visitor) throws IOException {
+        walk(entry, folder, filter, Projection.ALL, visitor);
+    }
+
+    /**
+     * Visits the tree below the given entry like {@link #walk(int, File, TraversalFilter, FileMetadataVisitor)},
+     * building only the attributes of the projection
+     *
+     * @param entry
+     * @param folder
+     * @param filter
+     * @param projection
+     * @param visitor
+     * @throws IOException
+     */
+    public void walk(int entry, File folder, TraversalFilter filter, Projection projection, FileMetadataVisitor visitor) throws IOException {
+        Projection built = projection.including(filter.getFields());
+        // canonical paths are only derived when requested
+        String canonicalPath = built.includes(MetadataField.CANONICAL_PATH) ? canonicalPath(entry) : null;
+        walk(entry, folder, canonicalPath, filter, built, visitor);
+    }
+
+    private void walk(int entry, File folder, String canonicalPath, TraversalFilter filter, Projection projection,
+                      FileMetadataVisitor visitor) throws IOException {
+        Deque<Directory> directories = new ArrayDeque<>();
+        directories.push(directory(entry, folder, canonicalPath, filter, projection, visitor));
+        while (!directories.isEmpty()) {
+            Directory directory = directories.peek();
+            if (directory.next == directory.end) {
+                directories.pop();
+                visitor.postVisitDirectory(directory.metadata);
+                continue;
+            }
+            int child = directory.next++;
+            File file = new File(directory.folder, entries.name(child));
+            if (!filter.visit(file)) {
+                continue;
+            }
+            String childCanonicalPath = directory.canonicalPath != null
+                    ? entries.canonicalPath(child, directory.canonicalPath) : null;
+            if (isDirectory(child)) {
+                directories.push(directory(child, file, childCanonicalPath, filter, projection, visitor));
+            } else {
+                FileMetadata fileMetadata = entries.metadata(child, file, childCanonicalPath, projection);
+                if (filter.report(file, fileMetadata)) {
+                    visitor.visitFile(fileMetadata);
+                }
+            }
+        }
+    }
+
+    private Directory directory(int entry, File folder, String canonicalPath, TraversalFilter filter, Projection projection,
+                                FileMetadataVisitor visitor) throws IOException {
+        FileMetadata metadata = entries.metadata(entry, folder, canonicalPath, projection);
+        visitor.preVisitDirectory(metadata);
+        int end = filter.descend(folder) ? childStarts[entry] + childCounts[entry] : childStarts[entry];
+        return new Directory(folder, canonicalPath, metadata, childStarts[entry], end);
+    }
+
+    /**
+     * Finds a child of the given directory by name
+     */
+    int child(int entry, String name) {
+        return entries.find(name, childStarts[entry], childStarts[entry] + childCounts[entry]);
+    }
+
+    boolean isDirectory(int entry) {
+        return entries.isDirectory(entry);
+    }
+
+    String name(int entry) {
+        return entries.name(entry);
+    }
+
+    int nameId(int entry) {
+        return entries.nameId(entry);
+    }
+
+    NameTable names() {
+        return entries.getNames();
+    }
+
+    int parent(int entry) {
+        return parents[entry];
+    }
+
+    /**
+     * Builds the attributes of the projection of a single entry
+     */
+    FileMetadata metadata(int entry, File file, Projection projection) {
+        String canonicalPath = projection.includes(MetadataField.CANONICAL_PATH) ? canonicalPath(entry) : null;
+        return entries.metadata(entry, file, canonicalPath, projection);
+    }
+
+    long lastModifiedTime(int entry) {
+        return entries.lastModifiedTime(entry);
+    }
+
+    int childStart(int entry) {
+        return childStarts[entry];
+    }
+
+    int childCount(int entry) {
+        return childCounts[entry];
+    }
+
+    String canonicalPath(int entry) {
+        if (entry == 0) {
+            return rootCanonicalPath;
+        }
+        return entries.canonicalPath(entry, canonicalPath(parents[entry]));
+    }
+
+    /**
+     * Appends a freshly read entry as the last child of the given directory
+     *
+     * @return the new entry
+     */
+    int add(FileMetadata fileMetadata, int parent) {
+        return linked(entries.add(fileMetadata), parent);
+    }
+
+    /**
+     * Appends an unchanged entry of a previous index as the last child of the given directory
+     *
+     * @return the new entry
+     */
+    int copy(IndexedTree previous, int previousEntry, int parent) {
+        return linked(entries.copy(previous.entries, previousEntry), parent);
+    }
+
+    /**
+     * Marks the start of the children of the given directory, which must be listed in breadth first order
+     */
+    void startChildren(int entry) {
+        childStarts[entry] = entries.size();
+    }
+
+    private int linked(int entry, int parent) {
+        if (entry >= parents.length) {
+            grow(Math.max(16, entry + (entry >> 1)));
+        }
+        parents[entry] = parent;
+        if (parent >= 0) {
+            childCounts[parent]++;
+        }
+        return entry;
+    }
+
+    void trim() {
+        entries.trim();
+        entries.getNames().freeze();
+        grow(entries.size());
+    }
+
+    private void grow(int capacity) {
+        parents = Arrays.copyOf(parents, capacity);
+        childStarts = Arrays.copyOf(childStarts, capacity);
+        childCounts = Arrays.copyOf(childCounts, capacity);
+    }
+
+    /**
+     * Writes the index, the children of every directory follow from the child counts of the breadth first layout
+     *
+     * @param out
+     * @throws IOException
+     */
+    void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeUTF(root);
+        data.writeUTF(rootCanonicalPath);
+        data.writeLong(scannedAt);
+        entries.getNames().write(data);
+        entries.write(data);
+        for (int entry = 0; entry < entries.size(); entry++) {
+            data.writeInt(childCounts[entry]);
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads an index written by {@link #write(OutputStream)}
+     *
+     * @param in
+     * @return
+     * @throws IOException when the stream is not an index of this version
+     */
+    static IndexedTree read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+        if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+            throw new IOException("Not a file metadata index of version " + VERSION);
+        }
+        String root = data.readUTF();
+        String rootCanonicalPath = data.readUTF();
+        long scannedAt = data.readLong();
+        NameTable names = NameTable.read(data);
+        IndexedTree tree = new IndexedTree(root, rootCanonicalPath, CompactEntries.read(data, names));
+        tree.scannedAt = scannedAt;
+
+        // breadth first, so the children of the entries are assigned to consecutive ranges in entry order
+        int size = tree.size();
+        int nextChild = 1;
+        tree.parents[0] = -1;
+        for (int entry = 0; entry < size; entry++) {
+            int childCount = data.readInt();
+            if (childCount < 0 || nextChild + childCount > size) {
+                throw new IOException("Corrupt file metadata index of " + root);
+            }
+            tree.childStarts[entry] = nextChild;
+            tree.childCounts[entry] = childCount;
+            for (int child = nextChild; child < nextChild + childCount; child++) {
+                tree.parents[child] = entry;
+            }
+            nextChild += childCount;
+        }
+        return tree;
+    }
+
+    /**
+     * A directory on the path of a walk, with the range of its children still to visit
+     */
+    private static class Directory {
+
+        private final File folder;
+        private final String canonicalPath;
+        private final FileMetadata metadata;
+        private final int end;
+        private int next;
+
+        Directory(File folder, String canonicalPath, FileMetadata metadata, int next, int end) {
+            this.folder = folder;
+            this.canonicalPath = canonicalPath;
+            this.metadata = metadata;
+            this.next = next;
+            this.end = end;
+        }
+    }
+}
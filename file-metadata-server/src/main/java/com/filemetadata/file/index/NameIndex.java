@@ -0,0 +1,501 @@
+package com.filemetadata.file.index;
+
+import com.filemetadata.common.exception.InvalidInputException;
+import com.filemetadata.dto.DirectoryPage;
+import com.filemetadata.file.compact.NameTable;
+import com.filemetadata.file.handler.FileErrorCodes;
+import com.filemetadata.file.projection.Projection;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Search index over the names of one indexed root, answering {@link NameQuery} prefix, substring and glob queries
+ * without visiting the entries whose names do not match.
+ *
+ * Only the distinct names are indexed, into a dictionary of ids that stays stable across rescans of the root: the
+ * ids sorted by name, case insensitive, for prefix queries, and a posting list of ids per trigram (three consecutive
+ * case folded characters) for substring queries and the literal parts of globs. The candidates taken from the
+ * smaller of the two are verified against the query, and the entries of the matching names are looked up in a
+ * table from name id to the entries of the current {@link IndexedTree}.
+ *
+ * A rescan adds its new names to the dictionary, sorted and merged into the sorted ids, and only the table from name
+ * id to entries is rebuilt, in one pass over the entries. Names that no longer occur are kept until they are the
+ * majority of the dictionary, then it is rebuilt from the names of the tree.
+ *
+ * @author Vinod Kandula
+ */
+public class NameIndex {
+
+    private static final Comparator<String> ORDER = String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+    private static final String CURSOR_VERSION = "s1:";
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private NameTable dictionary;
+    private Trigrams trigrams;
+    private int[] sorted;
+
+    private IndexedTree tree;
+    // entries of the name with id n are at [nameStarts[n], nameStarts[n + 1]) of nameEntries, in entry order
+    private int[] nameStarts;
+    private int[] nameEntries;
+
+    public NameIndex() {
+        clear();
+    }
+
+    /**
+     * Maps the names of a rescanned tree, adding the names that are new to the dictionary
+     *
+     * @param tree
+     */
+    public void update(IndexedTree tree) {
+        lock.writeLock().lock();
+        try {
+            if (this.tree == null || tree.getScannedAt() >= this.tree.getScannedAt()) {
+                map(tree);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the entries below the given directory whose names match the query, in breadth first order
+     *
+     * @param tree       index of the root, mapped first when it is newer than the mapped one
+     * @param folder     directory in the tree to search below
+     * @param query
+     * @param projection attributes of the returned entries
+     * @param cursor     next cursor of the previous page, null for the first page
+     * @param limit      maximum number of entries
+     * @return
+     * @throws InvalidInputException when the cursor is malformed or the tree was rescanned since the previous page
+     */
+    public DirectoryPage search(IndexedTree tree, File folder, NameQuery query, Projection projection, String cursor, int limit) {
+        lock.readLock().lock();
+        try {
+            if (this.tree != null && tree.getScannedAt() <= this.tree.getScannedAt()) {
+                return find(folder, query, projection, cursor, limit);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (this.tree == null || tree.getScannedAt() > this.tree.getScannedAt()) {
+                map(tree);
+            }
+            // downgraded, so the mapping stays until the page is built
+            lock.readLock().lock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            return find(folder, query, projection, cursor, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private DirectoryPage find(File folder, NameQuery query, Projection projection, String cursor, int limit) {
+        int after = cursor != null ? decode(cursor, tree.getScannedAt()) : 0;
+        DirectoryPage page = new DirectoryPage();
+        page.setPath(folder.getPath());
+        page.setLimit(limit);
+        int folderEntry = tree.find(folder);
+        if (folderEntry < 0) {
+            return page;
+        }
+
+        IntList matches = new IntList(64);
+        IntList candidates = candidates(query);
+        for (int i = 0; i < candidates.size; i++) {
+            int id = candidates.values[i];
+            if (nameStarts[id] == nameStarts[id + 1] || !query.matches(dictionary.name(id))) {
+                continue;
+            }
+            for (int j = nameStarts[id]; j < nameStarts[id + 1]; j++) {
+                int entry = nameEntries[j];
+                if (entry > after && isBelow(entry, folderEntry)) {
+                    matches.add(entry);
+                }
+            }
+        }
+
+        Arrays.sort(matches.values, 0, matches.size);
+        int count = Math.min(matches.size, limit);
+        for (int i = 0; i < count; i++) {
+            int entry = matches.values[i];
+            page.getEntries().add(tree.metadata(entry, file(entry, folderEntry, folder), projection));
+        }
+        if (matches.size > limit) {
+            page.setNextCursor(encode(tree.getScannedAt(), matches.values[count - 1]));
+        }
+        return page;
+    }
+
+    /**
+     * Ids of the names that may match, from the prefix range of the sorted ids or from the shortest trigram posting
+     * lists, whichever is smaller, and all ids when the query has neither
+     */
+    private IntList candidates(NameQuery query) {
+        int from = 0, to = 0;
+        String prefix = query.getPrefix();
+        if (prefix != null) {
+            from = lowerBound(prefix);
+            to = from;
+            while (to < sorted.length && dictionary.name(sorted[to]).regionMatches(true, 0, prefix, 0, prefix.length())) {
+                to++;
+            }
+        }
+
+        Postings[] lists = postings(query.getLiterals());
+        if (lists == null) {
+            return new IntList(0);
+        }
+        if (prefix != null && (lists.length == 0 || to - from <= lists[0].size)) {
+            IntList range = new IntList(to - from);
+            for (int i = from; i < to; i++) {
+                range.add(sorted[i]);
+            }
+            return range;
+        }
+        if (lists.length > 0) {
+            return intersect(lists);
+        }
+        IntList all = new IntList(dictionary.size());
+        for (int id = 0; id < dictionary.size(); id++) {
+            all.add(id);
+        }
+        return all;
+    }
+
+    /**
+     * @return the posting lists of every trigram of the literals, shortest first, none when no literal has three
+     * characters, null when a trigram does not occur so nothing matches
+     */
+    private Postings[] postings(List<String> literals) {
+        Map<Long, Postings> lists = new HashMap<>();
+        for (String literal : literals) {
+            char[] folded = fold(literal);
+            for (int i = 0; i + 3 <= folded.length; i++) {
+                long trigram = trigram(folded, i);
+                Postings postings = trigrams.get(trigram);
+                if (postings == null) {
+                    return null;
+                }
+                lists.put(trigram, postings);
+            }
+        }
+        Postings[] shortestFirst = lists.values().toArray(new Postings[0]);
+        Arrays.sort(shortestFirst, Comparator.comparingInt(postings -> postings.size));
+        return shortestFirst;
+    }
+
+    private static IntList intersect(Postings[] lists) {
+        IntList result = new IntList(lists[0].size);
+        result.addAll(lists[0].ids, lists[0].size);
+        for (int l = 1; l < lists.length && result.size > 0; l++) {
+            Postings other = lists[l];
+            int kept = 0, j = 0;
+            for (int i = 0; i < result.size; i++) {
+                int id = result.values[i];
+                while (j < other.size && other.ids[j] < id) {
+                    j++;
+                }
+                if (j < other.size && other.ids[j] == id) {
+                    result.values[kept++] = id;
+                }
+            }
+            result.size = kept;
+        }
+        return result;
+    }
+
+    private boolean isBelow(int entry, int folderEntry) {
+        if (entry <= folderEntry) {
+            return false;
+        }
+        // breadth first, so every ancestor has a lower index than its descendants
+        while (entry > folderEntry) {
+            entry = tree.parent(entry);
+        }
+        return entry == folderEntry;
+    }
+
+    private File file(int entry, int folderEntry, File folder) {
+        if (entry == folderEntry) {
+            return folder;
+        }
+        return new File(file(tree.parent(entry), folderEntry, folder), tree.name(entry));
+    }
+
+    private int lowerBound(String prefix) {
+        int low = 0, high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (String.CASE_INSENSITIVE_ORDER.compare(dictionary.name(sorted[middle]), prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void map(IndexedTree tree) {
+        NameTable names = tree.names();
+        if (dictionary.size() > 2 * names.size() + 1024) {
+            // mostly names of removed entries
+            clear();
+        }
+
+        int added = dictionary.size();
+        int[] ids = new int[names.size()];
+        for (int id = 0; id < names.size(); id++) {
+            ids[id] = dictionary.id(names.name(id));
+        }
+        for (int id = added; id < dictionary.size(); id++) {
+            index(id, dictionary.name(id));
+        }
+        sorted = merge(sorted, sort(added, dictionary.size()));
+
+        int[] starts = new int[dictionary.size() + 1];
+        for (int entry = 0; entry < tree.size(); entry++) {
+            starts[ids[tree.nameId(entry)] + 1]++;
+        }
+        for (int id = 0; id < dictionary.size(); id++) {
+            starts[id + 1] += starts[id];
+        }
+        int[] next = Arrays.copyOf(starts, dictionary.size());
+        int[] entries = new int[tree.size()];
+        for (int entry = 0; entry < tree.size(); entry++) {
+            entries[next[ids[tree.nameId(entry)]]++] = entry;
+        }
+
+        this.tree = tree;
+        this.nameStarts = starts;
+        this.nameEntries = entries;
+    }
+
+    private void clear() {
+        dictionary = new NameTable();
+        trigrams = new Trigrams();
+        sorted = new int[0];
+        nameStarts = new int[1];
+        nameEntries = new int[0];
+    }
+
+    /**
+     * Adds a new name to the posting lists of its trigrams. Ids are added in increasing order, so the lists stay
+     * sorted.
+     */
+    private void index(int id, String name) {
+        char[] folded = fold(name);
+        for (int i = 0; i + 3 <= folded.length; i++) {
+            Postings postings = trigrams.add(trigram(folded, i));
+            // a trigram occurring twice in the name
+            if (postings.size == 0 || postings.ids[postings.size - 1] != id) {
+                postings.add(id);
+            }
+        }
+    }
+
+    /**
+     * Sorts the ids of the names added since the last update, comparing case folded copies of the names
+     */
+    private int[] sort(int from, int to) {
+        SortKey[] keys = new SortKey[to - from];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new SortKey(from + i, dictionary.name(from + i));
+        }
+        Arrays.sort(keys);
+        int[] result = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            result[i] = keys[i].id;
+        }
+        return result;
+    }
+
+    private int[] merge(int[] first, int[] second) {
+        if (second.length == 0) {
+            return first;
+        }
+        int[] merged = new int[first.length + second.length];
+        int i = 0, j = 0, k = 0;
+        while (i < first.length && j < second.length) {
+            merged[k++] = ORDER.compare(dictionary.name(first[i]), dictionary.name(second[j])) <= 0 ? first[i++] : second[j++];
+        }
+        System.arraycopy(first, i, merged, k, first.length - i);
+        System.arraycopy(second, j, merged, k + first.length - i, second.length - j);
+        return merged;
+    }
+
+    private static long trigram(char[] folded, int start) {
+        return (long) folded[start] << 32 | (long) folded[start + 1] << 16 | folded[start + 2];
+    }
+
+    // the case folding of String.CASE_INSENSITIVE_ORDER, so names equal ignoring case share their trigrams
+    private static char[] fold(String text) {
+        char[] folded = text.toCharArray();
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = Character.toLowerCase(Character.toUpperCase(folded[i]));
+        }
+        return folded;
+    }
+
+    private static String encode(long scannedAt, int entry) {
+        String position = CURSOR_VERSION + scannedAt + ":" + entry;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the last entry returned by the previous page
+     */
+    private static int decode(String cursor, long scannedAt) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = position.substring(CURSOR_VERSION.length()).split(":");
+            // entries are renumbered by a rescan
+            if (position.startsWith(CURSOR_VERSION) && parts.length == 2 && Long.parseLong(parts[0]) == scannedAt) {
+                return Integer.parseInt(parts[1]);
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            // not a cursor of this index
+        }
+        throw new InvalidInputException(FileErrorCodes.INVALID_PARAMETER_VALUE, "cursor", cursor);
+    }
+
+    /**
+     * A name in the order of {@link #ORDER}
+     */
+    private static class SortKey implements Comparable<SortKey> {
+
+        private final int id;
+        private final String name;
+        private final String folded;
+
+        SortKey(int id, String name) {
+            this.id = id;
+            this.name = name;
+            this.folded = new String(fold(name));
+        }
+
+        @Override
+        public int compareTo(SortKey other) {
+            int order = folded.compareTo(other.folded);
+            return order != 0 ? order : name.compareTo(other.name);
+        }
+    }
+
+    /**
+     * Sorted ids of the names containing one trigram
+     */
+    private static class Postings {
+
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size << 1);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    /**
+     * Posting lists by trigram, open addressing on the primitive keys as every name adds one lookup per character
+     */
+    private static class Trigrams {
+
+        private long[] keys = new long[1024];
+        private Postings[] values = new Postings[1024];
+        private int size;
+
+        Postings get(long trigram) {
+            for (int slot = slot(trigram); values[slot] != null; slot = (slot + 1) & (keys.length - 1)) {
+                if (keys[slot] == trigram) {
+                    return values[slot];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the posting list of the trigram, added when it is new
+         */
+        Postings add(long trigram) {
+            int slot = slot(trigram);
+            for (; values[slot] != null; slot = (slot + 1) & (keys.length - 1)) {
+                if (keys[slot] == trigram) {
+                    return values[slot];
+                }
+            }
+            Postings postings = new Postings();
+            keys[slot] = trigram;
+            values[slot] = postings;
+            if (++size > keys.length >> 1) {
+                grow();
+            }
+            return postings;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            Postings[] oldValues = values;
+            keys = new long[oldKeys.length << 1];
+            values = new Postings[oldValues.length << 1];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    int slot = slot(oldKeys[i]);
+                    while (values[slot] != null) {
+                        slot = (slot + 1) & (keys.length - 1);
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        private int slot(long trigram) {
+            return (int) ((trigram * 0x9E3779B97F4A7C15L) >>> 32) & (keys.length - 1);
+        }
+    }
+
+    private static class IntList {
+
+        private int[] values;
+        private int size;
+
+        IntList(int capacity) {
+            this.values = new int[Math.max(capacity, 4)];
+        }
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size << 1);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(int[] other, int count) {
+            if (size + count > values.length) {
+                values = Arrays.copyOf(values, size + count);
+            }
+            System.arraycopy(other, 0, values, size, count);
+            size += count;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.filemetadata.file.index;
+
+import com.filemetadata.common.exception.InvalidInputException;
+import com.filemetadata.file.handler.FileErrorCodes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A query on the names of the indexed entries, answered by {@link NameIndex}.
+ *
+ * PREFIX   - names starting with the text.
+ * CONTAINS - names containing the text.
+ * GLOB     - names matching the glob in full: *, ?, [abc], [!abc], [a-z] and {a,b}.
+ *
+ * @author Vinod Kandula
+ */
+public class NameQuery {
+
+    public enum Kind {
+        PREFIX, CONTAINS, GLOB
+    }
+
+    private final Kind kind;
+    private final String text;
+    private final boolean ignoreCase;
+    private final Pattern pattern;
+    // text every matching name starts with, null when the query does not start with one
+    private final String prefix;
+    // texts every matching name contains
+    private final List<String> literals;
+
+    private NameQuery(Kind kind, String text, boolean ignoreCase) {
+        this.kind = kind;
+        this.text = text;
+        this.ignoreCase = ignoreCase;
+        if (kind == Kind.GLOB) {
+            List<String> literals = new ArrayList<>();
+            this.pattern = Pattern.compile(regex(text, literals),
+                    ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+            this.prefix = !literals.isEmpty() && text.startsWith(literals.get(0)) ? literals.get(0) : null;
+            this.literals = literals;
+        } else {
+            this.pattern = null;
+            this.prefix = kind == Kind.PREFIX ? text : null;
+            this.literals = Collections.singletonList(text);
+        }
+    }
+
+    /**
+     * Takes the one given query, the others are null
+     *
+     * @param prefix
+     * @param contains
+     * @param glob
+     * @param ignoreCase
+     * @return
+     * @throws InvalidInputException when none or more than one query is given, or the glob is malformed
+     */
+    public static NameQuery of(String prefix, String contains, String glob, boolean ignoreCase) {
+        int given = (isEmpty(prefix) ? 0 : 1) + (isEmpty(contains) ? 0 : 1) + (isEmpty(glob) ? 0 : 1);
+        if (given != 1) {
+            throw new InvalidInputException(FileErrorCodes.INVALID_PARAMETER_VALUE, "prefix, contains or glob", String.valueOf(given));
+        }
+        if (!isEmpty(prefix)) {
+            return new NameQuery(Kind.PREFIX, prefix, ignoreCase);
+        }
+        if (!isEmpty(contains)) {
+            return new NameQuery(Kind.CONTAINS, contains, ignoreCase);
+        }
+        try {
+            return new NameQuery(Kind.GLOB, glob, ignoreCase);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidInputException(FileErrorCodes.INVALID_PARAMETER_VALUE, "glob", glob);
+        }
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    String getPrefix() {
+        return prefix;
+    }
+
+    List<String> getLiterals() {
+        return literals;
+    }
+
+    boolean matches(String name) {
+        switch (kind) {
+            case PREFIX:
+                return name.regionMatches(ignoreCase, 0, text, 0, text.length());
+            case CONTAINS:
+                if (!ignoreCase) {
+                    return name.contains(text);
+                }
+                for (int i = 0; i + text.length() <= name.length(); i++) {
+                    if (name.regionMatches(true, i, text, 0, text.length())) {
+                        return true;
+                    }
+                }
+                return false;
+            default:
+                return pattern.matcher(name).matches();
+        }
+    }
+
+    /**
+     * Translates a glob into a regular expression, collecting the runs of literal characters outside of brackets and
+     * braces, as every matching name contains them
+     */
+    private static String regex(String glob, List<String> literals) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        boolean inGroup = false;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{' || c == '}' || c == ',' && inGroup) {
+                endLiteral(literal, literals, inGroup);
+            }
+            switch (c) {
+                case '*':
+                    regex.append(".*");
+                    break;
+                case '?':
+                    regex.append('.');
+                    break;
+                case '[':
+                    int end = glob.indexOf(']', i + 2);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("Unclosed [ in " + glob);
+                    }
+                    String set = glob.substring(i + 1, end);
+                    regex.append('[');
+                    if (set.startsWith("!")) {
+                        regex.append('^');
+                        set = set.substring(1);
+                    }
+                    regex.append(set.replace("\\", "\\\\").replace("[", "\\[").replace("&", "\\&")).append(']');
+                    i = end;
+                    break;
+                case '{':
+                    if (inGroup) {
+                        throw new IllegalArgumentException("Nested { in " + glob);
+                    }
+                    inGroup = true;
+                    regex.append("(?:");
+                    break;
+                case '}':
+                    if (!inGroup) {
+                        throw new IllegalArgumentException("Unopened } in " + glob);
+                    }
+                    inGroup = false;
+                    regex.append(')');
+                    break;
+                case ',':
+                    if (inGroup) {
+                        regex.append('|');
+                    } else {
+                        regex.append(',');
+                        literal.append(c);
+                    }
+                    break;
+                default:
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                    literal.append(c);
+            }
+        }
+        if (inGroup) {
+            throw new IllegalArgumentException("Unclosed { in " + glob);
+        }
+        endLiteral(literal, literals, false);
+        return regex.toString();
+    }
+
+    private static void endLiteral(StringBuilder literal, List<String> literals, boolean inGroup) {
+        // the alternatives of a group are not all contained in a match
+        if (literal.length() > 0 && !inGroup) {
+            literals.add(literal.toString());
+        }
+        literal.setLength(0);
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+}
@@ -0,0 +1,226 @@
+package com.filemetadata.file.index;
+
+import com.filemetadata.config.FileMetadataProperties;
+import com.filemetadata.dto.DirectoryPage;
+import com.filemetadata.file.cache.DirectoryWatcher;
+import com.filemetadata.file.cache.FileMetadataCache;
+import com.filemetadata.file.projection.Projection;
+import com.filemetadata.file.store.FileStores;
+import com.filemetadata.file.traversal.FollowLinks;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchEvent;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a persistent {@link IndexedTree} per indexed directory.
+ *
+ * A directory is indexed the first time it is requested with consistency=index and every index is written to
+ * filemetadata.index.directory, from where all of them are loaded again on startup. Requests for a directory below
+ * an indexed root are answered from the index of the root. Once an index is older than filemetadata.index.max-age
+ * it is rescanned incrementally by the next request, see {@link IndexScanner}, and so is an index holding a
+ * directory the watcher of the {@link FileMetadataCache} reported a change of.
+ *
+ * Name searches are answered from a {@link NameIndex} per root, created by the first search of the root and updated
+ * with every rescan.
+ *
+ * @author Vinod Kandula
+ */
+@Component
+@Slf4j
+public class TreeIndexService implements DirectoryWatcher.Listener {
+
+    private static final String SUFFIX = ".idx";
+
+    private final Path directory;
+    private final long maxAgeMillis;
+    private final Map<String, IndexedTree> indexes = new ConcurrentHashMap<>();
+    private final Map<String, Object> scanLocks = new ConcurrentHashMap<>();
+    private final Map<String, NameIndex> nameIndexes = new ConcurrentHashMap<>();
+    private final FileMetadataCache cache;
+    private final FileStores fileStores;
+    private final FollowLinks followLinks;
+
+    @Autowired
+    public TreeIndexService(FileMetadataProperties properties, FileMetadataCache cache, FileStores fileStores) {
+        this.directory = Paths.get(properties.getIndex().getDirectory());
+        this.maxAgeMillis = properties.getIndex().getMaxAge().toMillis();
+        this.cache = cache;
+        this.fileStores = fileStores;
+        this.followLinks = properties.getTraversal().getFollowLinks();
+    }
+
+    @PostConstruct
+    public void load() throws IOException {
+        cache.addListener(this);
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                try (InputStream in = Files.newInputStream(file)) {
+                    IndexedTree tree = IndexedTree.read(in);
+                    indexes.put(tree.getRoot(), tree);
+                } catch (IOException e) {
+                    log.warn("Ignoring unreadable index {}: {}", file, e.toString());
+                }
+            }
+        }
+        log.info("Loaded {} directory indexes in {} ms", indexes.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Finds the index holding the given directory, indexing the directory when no indexed root contains it
+     *
+     * @param folder
+     * @return an index that is not older than the max age
+     * @throws IOException
+     */
+    public IndexedTree index(File folder) throws IOException {
+        IndexedTree tree = lookup(folder);
+        if (tree != null && isOutdated(tree)) {
+            tree = rescan(tree.getRoot());
+        }
+        if (tree == null || tree.find(folder) < 0) {
+            tree = rescan(folder.getAbsolutePath());
+        }
+        return tree;
+    }
+
+    /**
+     * Finds the index holding the given directory without scanning
+     *
+     * @param folder
+     * @return the index, or null when no index holds the directory or it is older than the max age
+     */
+    public IndexedTree current(File folder) {
+        IndexedTree tree = lookup(folder);
+        return tree != null && !isOutdated(tree) && tree.find(folder) >= 0 ? tree : null;
+    }
+
+    /**
+     * Finds the entries below the given directory whose names match the query, from the index holding the directory
+     *
+     * @param folder
+     * @param query
+     * @param projection attributes of the returned entries
+     * @param cursor     next cursor of the previous page, null for the first page
+     * @param limit      maximum number of entries
+     * @return
+     * @throws IOException
+     */
+    public DirectoryPage search(File folder, NameQuery query, Projection projection, String cursor, int limit) throws IOException {
+        IndexedTree tree = index(folder);
+        return nameIndexes.computeIfAbsent(tree.getRoot(), root -> new NameIndex())
+                .search(tree, folder, query, projection, cursor, limit);
+    }
+
+    /**
+     * @param folder
+     * @return the entries of the index of the given root, or -1 when the directory is not an indexed root
+     */
+    public int indexedEntries(File folder) {
+        IndexedTree tree = indexes.get(folder.getAbsolutePath());
+        return tree != null ? tree.size() : -1;
+    }
+
+    @Override
+    public void changed(Path directory, Path child, WatchEvent.Kind<?> kind) {
+        // names only change with the mtime of their directory, so the rescan relists just the changed directories
+        IndexedTree tree = lookup(directory.toFile());
+        if (tree != null) {
+            tree.markStale();
+        }
+    }
+
+    @Override
+    public void invalidated(Path directory) {
+        changed(directory, null, null);
+    }
+
+    private boolean isOutdated(IndexedTree tree) {
+        return tree.isStale() || System.currentTimeMillis() - tree.getScannedAt() > maxAgeMillis;
+    }
+
+    private IndexedTree lookup(File folder) {
+        String path = folder.getAbsolutePath();
+        IndexedTree tree = indexes.get(path);
+        if (tree != null) {
+            return tree;
+        }
+        // the closest indexed ancestor
+        for (File parent = folder.getAbsoluteFile().getParentFile(); parent != null; parent = parent.getParentFile()) {
+            tree = indexes.get(parent.getPath());
+            if (tree != null) {
+                return tree.find(folder) >= 0 ? tree : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Rescans an indexed root, or indexes a new one, and persists the result. Concurrent rescans of the same root
+     * wait for each other and the later ones reuse the fresh index.
+     */
+    private IndexedTree rescan(String root) throws IOException {
+        synchronized (scanLocks.computeIfAbsent(root, key -> new Object())) {
+            IndexedTree previous = indexes.get(root);
+            if (previous != null && !isOutdated(previous)) {
+                return previous;
+            }
+            File folder = new File(root);
+            IndexedTree tree = IndexScanner.scan(folder, previous, fileStores.policy(folder), followLinks);
+            indexes.put(root, tree);
+            NameIndex nameIndex = nameIndexes.get(root);
+            if (nameIndex != null) {
+                nameIndex.update(tree);
+            }
+            persist(tree);
+            return tree;
+        }
+    }
+
+    private void persist(IndexedTree tree) {
+        try {
+            Files.createDirectories(directory);
+            Path file = directory.resolve(fileName(tree.getRoot()));
+            Path temporary = Files.createTempFile(directory, "index", ".tmp");
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                tree.write(out);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // still served from memory, it is only rebuilt after a restart
+            log.warn("Unable to persist the index of {}: {}", tree.getRoot(), e.toString());
+        }
+    }
+
+    private static String fileName(String root) {
+        try {
+            StringBuilder name = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(root.getBytes(StandardCharsets.UTF_8))) {
+                name.append(String.format("%02x", b));
+            }
+            return name.append(SUFFIX).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.filemetadata.file.job;
+
+/**
+ * States of a scan job.
+ *
+ * QUEUED    - waiting for a thread, also after a restart until it is resumed.
+ * RUNNING   - scanning, the result grows as entries are visited.
+ * COMPLETED - the result holds every entry and can be downloaded.
+ * FAILED    - the scan failed, see the error of the job.
+ * CANCELLED - cancelled while queued or running, the partial result is deleted.
+ *
+ * @author Vinod Kandula
+ */
+public enum JobState {
+
+    QUEUED("queued"),
+    RUNNING("running"),
+    COMPLETED("completed"),
+    FAILED("failed"),
+    CANCELLED("cancelled");
+
+    private String name;
+
+    JobState(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isFinished() {
+        return this == COMPLETED || this == FAILED || this == CANCELLED;
+    }
+}
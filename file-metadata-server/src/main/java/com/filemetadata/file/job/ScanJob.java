@@ -0,0 +1,38 @@
+package com.filemetadata.file.job;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.filemetadata.dto.DirectoryFilter;
+import lombok.Data;
+
+/**
+ * The record of a scan job, written to the jobs directory whenever its state changes and at every checkpoint.
+ * Guarded by its own monitor, as the thread running the job updates it while requests read it.
+ *
+ * @author Vinod Kandula
+ */
+@Data
+class ScanJob {
+
+    private String id;
+    private String path;
+    private String fields;
+    private DirectoryFilter filter;
+    private int priority;
+    private JobState state;
+    private long submittedAt;
+    private long startedAt;
+    private long finishedAt;
+    private long entries;
+    private long bytes;
+    // time spent running, over all runs
+    private long runningMillis;
+    // the page cursor after the last entry in the result, and the length of the result up to that entry
+    private String cursor;
+    private long resultLength;
+    private Long estimatedEntries;
+    private int resumed;
+    private String error;
+
+    @JsonIgnore
+    private volatile boolean cancelled;
+}
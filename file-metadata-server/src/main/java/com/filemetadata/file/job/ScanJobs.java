@@ -0,0 +1,546 @@
+package com.filemetadata.file.job;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.filemetadata.config.FileMetadataProperties;
+import com.filemetadata.dto.DirectoryFilter;
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.dto.ScanJobStatus;
+import com.filemetadata.file.handler.FileErrorCodes;
+import com.filemetadata.file.metrics.CountingOutputStream;
+import com.filemetadata.file.metrics.FileMetadataMetrics;
+import com.filemetadata.file.metrics.Scan;
+import com.filemetadata.file.metrics.ScanOperation;
+import com.filemetadata.file.page.DirectoryPager;
+import com.filemetadata.file.projection.MetadataField;
+import com.filemetadata.file.projection.Projection;
+import com.filemetadata.file.store.FileStores;
+import com.filemetadata.file.stream.FileMetadataStreamWriter;
+import com.filemetadata.file.stream.StreamFormat;
+import com.filemetadata.file.traversal.FollowLinks;
+import com.filemetadata.file.traversal.TraversalFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs directory scans in the background, for directories that take longer to scan than a request may take. A job
+ * writes the entries of its directory to a result file as ndjson, in the order of the pages of {@link DirectoryPager},
+ * and records at every checkpoint how far it got: the page cursor after the last entry written and the length of
+ * the result up to that entry. The records are kept in filemetadata.jobs.directory, so after a restart the jobs that
+ * were queued or running are queued again and resume from their last checkpoint, with the result cut back to the
+ * length recorded with it. They are only queued once the application is ready.
+ *
+ * At most filemetadata.jobs.max-running jobs run at a time. The others wait by priority, highest first, and in the
+ * order they were submitted within a priority.
+ *
+ * @author Vinod Kandula
+ */
+@Component
+@Slf4j
+public class ScanJobs {
+
+    private static final String RECORD_SUFFIX = ".job";
+    private static final String RESULT_SUFFIX = ".ndjson";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // entries between two updates of the progress of a running job
+    private static final int PROGRESS_INTERVAL = 1024;
+    // collected whatever the fields of the job, to count the bytes of the files
+    private static final EnumSet<MetadataField> COUNTED = EnumSet.of(MetadataField.SIZE);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path directory;
+    private final int maxQueued;
+    private final long checkpointIntervalMillis;
+    private final long retentionMillis;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, ScanJob> jobs = new ConcurrentHashMap<>();
+    // loaded unfinished jobs, queued when the application is ready
+    private final List<ScanJob> resumed = new ArrayList<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final FileStores fileStores;
+    private final FollowLinks followLinks;
+    private volatile boolean stopping;
+
+    @Autowired
+    public ScanJobs(FileMetadataProperties properties, FileStores fileStores) {
+        this(Paths.get(properties.getJobs().getDirectory()), properties.getJobs().getMaxRunning(),
+                properties.getJobs().getMaxQueued(), properties.getJobs().getCheckpointInterval(),
+                properties.getJobs().getRetention(), fileStores, properties.getTraversal().getFollowLinks());
+    }
+
+    public ScanJobs(Path directory, int maxRunning, int maxQueued, Duration checkpointInterval, Duration retention,
+                    FileStores fileStores, FollowLinks followLinks) {
+        this.directory = directory;
+        this.fileStores = fileStores;
+        this.followLinks = followLinks;
+        this.maxQueued = maxQueued;
+        this.checkpointIntervalMillis = checkpointInterval.toMillis();
+        this.retentionMillis = retention.toMillis();
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(maxRunning, maxRunning, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "filemetadata-scan-job-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Loads the records of the jobs, the unfinished ones are queued again by {@link #resume()}
+     *
+     * @throws IOException
+     */
+    @PostConstruct
+    public void load() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<ScanJob> unfinished = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + RECORD_SUFFIX)) {
+            for (Path file : files) {
+                ScanJob job;
+                try {
+                    job = objectMapper.readValue(file.toFile(), ScanJob.class);
+                } catch (IOException e) {
+                    log.warn("Ignoring unreadable scan job {}: {}", file, e.toString());
+                    continue;
+                }
+                jobs.put(job.getId(), job);
+                if (!job.getState().isFinished()) {
+                    if (job.getState() == JobState.RUNNING) {
+                        job.setResumed(job.getResumed() + 1);
+                    }
+                    job.setState(JobState.QUEUED);
+                    unfinished.add(job);
+                }
+            }
+        }
+        unfinished.sort(Comparator.comparingLong(ScanJob::getSubmittedAt));
+        synchronized (resumed) {
+            resumed.addAll(unfinished);
+        }
+        log.info("Loaded {} scan jobs, {} of them to resume", jobs.size(), unfinished.size());
+    }
+
+    /**
+     * Queues the unfinished jobs loaded on startup, once every bean is initialized
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resume() {
+        synchronized (resumed) {
+            for (ScanJob job : resumed) {
+                enqueue(job);
+            }
+            resumed.clear();
+        }
+    }
+
+    /**
+     * Queues a scan of the given directory
+     *
+     * @param folder   directory already validated with {@link com.filemetadata.file.handler.FileMetadataHandler#directory(String)}
+     * @param fields   comma separated attributes written for every entry, all of them when null
+     * @param filter
+     * @param priority jobs of a higher priority start first
+     * @return the status of the queued job
+     * @throws IOException
+     */
+    public ScanJobStatus submit(File folder, String fields, DirectoryFilter filter, int priority) throws IOException {
+        // rejects unknown fields and invalid filters before the job is queued
+        Projection.of(fields);
+        TraversalFilter.of(folder, filter);
+        purge();
+        if (executor.getQueue().size() >= maxQueued) {
+            throw new ScanJobsFullException(FileErrorCodes.TOO_MANY_SCAN_JOBS, " " + maxQueued + " jobs are queued");
+        }
+
+        ScanJob job = new ScanJob();
+        job.setId(UUID.randomUUID().toString());
+        job.setPath(folder.getPath());
+        job.setFields(fields);
+        job.setFilter(filter);
+        job.setPriority(priority);
+        job.setState(JobState.QUEUED);
+        job.setSubmittedAt(System.currentTimeMillis());
+        job.setEstimatedEntries(completedEntries(job.getPath()));
+        Files.createDirectories(directory);
+        record(job);
+        jobs.put(job.getId(), job);
+        enqueue(job);
+        return status(job);
+    }
+
+    /**
+     * @param id
+     * @return the status of the job
+     */
+    public ScanJobStatus status(String id) {
+        return status(job(id));
+    }
+
+    /**
+     * @return the status of every job kept, in the order they were submitted
+     */
+    public List<ScanJobStatus> statuses() {
+        purge();
+        List<ScanJob> kept = new ArrayList<>(jobs.values());
+        kept.sort(Comparator.comparingLong(ScanJob::getSubmittedAt));
+        List<ScanJobStatus> statuses = new ArrayList<>(kept.size());
+        for (ScanJob job : kept) {
+            statuses.add(status(job));
+        }
+        return Collections.unmodifiableList(statuses);
+    }
+
+    /**
+     * Cancels a queued or running job and deletes the job with its result, whatever its state
+     *
+     * @param id
+     * @return the last status of the job
+     */
+    public ScanJobStatus cancel(String id) {
+        ScanJob job = job(id);
+        jobs.remove(id);
+        boolean running;
+        synchronized (job) {
+            running = job.getState() == JobState.RUNNING;
+            job.setCancelled(true);
+            if (!job.getState().isFinished()) {
+                job.setState(JobState.CANCELLED);
+                job.setFinishedAt(System.currentTimeMillis());
+            }
+        }
+        if (running) {
+            // the job deletes its files once it stopped writing them
+            return status(job);
+        }
+        executor.getQueue().removeIf(task -> ((JobTask) task).job == job);
+        delete(job);
+        return status(job);
+    }
+
+    /**
+     * @param id
+     * @return the ndjson result of a completed job
+     */
+    public File result(String id) {
+        ScanJob job = job(id);
+        synchronized (job) {
+            if (job.getState() != JobState.COMPLETED) {
+                throw new ScanJobNotCompletedException(FileErrorCodes.SCAN_JOB_NOT_COMPLETED, " The job is " + job.getState().getName());
+            }
+        }
+        return directory.resolve(job.getId() + RESULT_SUFFIX).toFile();
+    }
+
+    /**
+     * @param path of the directory as submitted
+     * @return the entries of the last completed job of the directory, null when there is none
+     */
+    public Long completedEntries(String path) {
+        Long entries = null;
+        long finishedAt = 0;
+        for (ScanJob job : jobs.values()) {
+            synchronized (job) {
+                if (job.getState() == JobState.COMPLETED && job.getPath().equals(path) && job.getFinishedAt() > finishedAt) {
+                    entries = job.getEntries();
+                    finishedAt = job.getFinishedAt();
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Stops the running jobs at their next entry with a last checkpoint, they resume from there after the restart
+     *
+     * @throws InterruptedException
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        stopping = true;
+        // the queued jobs are recorded as queued already
+        executor.getQueue().clear();
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Scan jobs still running at shutdown resume from their previous checkpoint");
+        }
+    }
+
+    private ScanJob job(String id) {
+        ScanJob job = id != null ? jobs.get(id) : null;
+        if (job == null) {
+            throw new ScanJobNotFoundException(FileErrorCodes.RESOURCE_NOT_FOUND, " Scan job " + id);
+        }
+        return job;
+    }
+
+    private void enqueue(ScanJob job) {
+        executor.execute(new JobTask(job, sequence.incrementAndGet()));
+    }
+
+    private void run(ScanJob job) {
+        synchronized (job) {
+            if (job.isCancelled() || stopping) {
+                return;
+            }
+            job.setState(JobState.RUNNING);
+            if (job.getStartedAt() == 0) {
+                job.setStartedAt(System.currentTimeMillis());
+            }
+        }
+        record(job);
+
+        try {
+            if (scan(job)) {
+                synchronized (job) {
+                    job.setState(JobState.COMPLETED);
+                    job.setFinishedAt(System.currentTimeMillis());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Scan job {} of {} failed: {}", job.getId(), job.getPath(), e.toString());
+            synchronized (job) {
+                job.setState(JobState.FAILED);
+                job.setError(e.toString());
+                job.setFinishedAt(System.currentTimeMillis());
+            }
+        }
+
+        synchronized (job) {
+            // a cancel deletes the files of a job it finds finished, so the record must not be written after it
+            if (!job.isCancelled()) {
+                record(job);
+                return;
+            }
+        }
+        delete(job);
+    }
+
+    /**
+     * Scans the directory of the job from its last checkpoint on
+     *
+     * @return false when the scan was stopped by a cancel or a shutdown
+     */
+    private boolean scan(ScanJob job) throws IOException {
+        File folder = new File(job.getPath());
+        Projection projection = Projection.of(job.getFields());
+        TraversalFilter filter = TraversalFilter.of(folder, job.getFilter());
+        String cursor;
+        long resultLength, entries, bytes, runningMillis;
+        synchronized (job) {
+            cursor = job.getCursor();
+            resultLength = job.getResultLength();
+            entries = job.getEntries();
+            bytes = job.getBytes();
+            runningMillis = job.getRunningMillis();
+        }
+        long started = System.currentTimeMillis();
+        long nextCheckpoint = started + checkpointIntervalMillis;
+
+        try (Scan scan = FileMetadataMetrics.start(ScanOperation.JOB);
+             FileChannel channel = FileChannel.open(directory.resolve(job.getId() + RESULT_SUFFIX),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            fileStores.bind(folder);
+            // whatever was written after the last checkpoint is written again
+            channel.truncate(resultLength);
+            channel.position(resultLength);
+            CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+            FileMetadataStreamWriter writer = new FileMetadataStreamWriter(out, StreamFormat.NDJSON, true, projection);
+            DirectoryPager.Traversal traversal = DirectoryPager.traverse(folder, filter, projection.including(COUNTED), followLinks,
+                    cursor);
+
+            for (FileMetadata entry = traversal.next(); entry != null; entry = traversal.next()) {
+                if (job.isCancelled()) {
+                    return false;
+                }
+                writer.visitFile(entry);
+                entries++;
+                if (entry.isRegularFile()) {
+                    bytes += entry.getSize();
+                }
+                if (stopping) {
+                    progress(job, entries, bytes, runningMillis + System.currentTimeMillis() - started);
+                    checkpoint(job, writer, out, channel, traversal.cursor(), resultLength);
+                    return false;
+                }
+                if (entries % PROGRESS_INTERVAL == 0) {
+                    long now = System.currentTimeMillis();
+                    progress(job, entries, bytes, runningMillis + now - started);
+                    if (now >= nextCheckpoint) {
+                        checkpoint(job, writer, out, channel, traversal.cursor(), resultLength);
+                        nextCheckpoint = now + checkpointIntervalMillis;
+                    }
+                }
+            }
+
+            writer.close();
+            out.flush();
+            channel.force(false);
+            progress(job, entries, bytes, runningMillis + System.currentTimeMillis() - started);
+            synchronized (job) {
+                job.setCursor(null);
+                job.setResultLength(resultLength + out.getCount());
+            }
+            scan.complete();
+            return true;
+        }
+    }
+
+    private static void progress(ScanJob job, long entries, long bytes, long runningMillis) {
+        synchronized (job) {
+            job.setEntries(entries);
+            job.setBytes(bytes);
+            job.setRunningMillis(runningMillis);
+        }
+    }
+
+    /**
+     * Records the position of the job once the result is on disk up to it
+     */
+    private void checkpoint(ScanJob job, FileMetadataStreamWriter writer, CountingOutputStream out, FileChannel channel,
+                            String cursor, long resumedLength) throws IOException {
+        // counted once the generator handed over everything it buffered
+        writer.flush();
+        channel.force(false);
+        synchronized (job) {
+            job.setCursor(cursor);
+            job.setResultLength(resumedLength + out.getCount());
+        }
+        record(job);
+    }
+
+    private void record(ScanJob job) {
+        try {
+            Path temporary = Files.createTempFile(directory, "job", ".tmp");
+            synchronized (job) {
+                objectMapper.writeValue(temporary.toFile(), job);
+            }
+            Files.move(temporary, directory.resolve(job.getId() + RECORD_SUFFIX),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // still tracked in memory, a restart resumes it from its previous record
+            log.warn("Unable to record scan job {}: {}", job.getId(), e.toString());
+        }
+    }
+
+    private void delete(ScanJob job) {
+        try {
+            Files.deleteIfExists(directory.resolve(job.getId() + RECORD_SUFFIX));
+            Files.deleteIfExists(directory.resolve(job.getId() + RESULT_SUFFIX));
+        } catch (IOException e) {
+            log.warn("Unable to delete scan job {}: {}", job.getId(), e.toString());
+        }
+    }
+
+    /**
+     * Deletes the jobs finished longer than the retention ago
+     */
+    private void purge() {
+        long expired = System.currentTimeMillis() - retentionMillis;
+        for (ScanJob job : jobs.values()) {
+            boolean purged;
+            synchronized (job) {
+                purged = job.getState().isFinished() && job.getFinishedAt() < expired;
+            }
+            if (purged && jobs.remove(job.getId(), job)) {
+                delete(job);
+            }
+        }
+    }
+
+    private static ScanJobStatus status(ScanJob job) {
+        ScanJobStatus status = new ScanJobStatus();
+        synchronized (job) {
+            status.setId(job.getId());
+            status.setPath(job.getPath());
+            status.setFields(job.getFields());
+            status.setPriority(job.getPriority());
+            status.setState(job.getState().getName());
+            status.setEntries(job.getEntries());
+            status.setBytes(job.getBytes());
+            if (job.getRunningMillis() > 0) {
+                status.setEntriesPerSecond(job.getEntries() * 1000.0 / job.getRunningMillis());
+                status.setBytesPerSecond(job.getBytes() * 1000.0 / job.getRunningMillis());
+            }
+            status.setEstimatedEntries(job.getEstimatedEntries());
+            if (job.getState() == JobState.RUNNING && job.getEstimatedEntries() != null && status.getEntriesPerSecond() > 0) {
+                long remaining = Math.max(0, job.getEstimatedEntries() - job.getEntries());
+                status.setEtaSeconds(Math.round(remaining / status.getEntriesPerSecond()));
+            }
+            status.setResumed(job.getResumed());
+            status.setSubmittedAt(time(job.getSubmittedAt()));
+            status.setStartedAt(time(job.getStartedAt()));
+            status.setFinishedAt(time(job.getFinishedAt()));
+            status.setError(job.getError());
+            if (job.getState() == JobState.COMPLETED) {
+                status.setResult("/filemetadata/scans/" + job.getId() + "/result");
+            }
+        }
+        return status;
+    }
+
+    private static String time(long millis) {
+        return millis > 0 ? Instant.ofEpochMilli(millis).toString() : null;
+    }
+
+    /**
+     * A queued job, ordered by priority and then by the order it was queued in
+     */
+    private final class JobTask implements Runnable, Comparable<JobTask> {
+
+        private final ScanJob job;
+        private final int priority;
+        private final long sequence;
+
+        JobTask(ScanJob job, long sequence) {
+            this.job = job;
+            this.priority = job.getPriority();
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            ScanJobs.this.run(job);
+        }
+
+        @Override
+        public int compareTo(JobTask other) {
+            if (priority != other.priority) {
+                return Integer.compare(other.priority, priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.filemetadata.file.job;
+
+import com.filemetadata.common.exception.CommonBaseException;
+import com.filemetadata.common.exception.CommonErrorCodes;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * @author Vinod Kandula
+ */
+@ResponseStatus(code = HttpStatus.SERVICE_UNAVAILABLE)
+public class ScanJobsFullException extends CommonBaseException {
+
+    public ScanJobsFullException(CommonErrorCodes errorCodes, Object... arguments) {
+        super(errorCodes, arguments);
+    }
+}
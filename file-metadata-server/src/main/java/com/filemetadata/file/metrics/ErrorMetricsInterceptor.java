@@ -0,0 +1,35 @@
+package com.filemetadata.file.metrics;
+
+import com.filemetadata.common.exception.CommonBaseException;
+import com.filemetadata.common.exception.CommonErrorResponse;
+import com.filemetadata.common.exception.CommonExceptionInterceptor;
+import com.filemetadata.file.handler.FileErrorCodes;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.NoSuchFileException;
+
+/**
+ * Counts the error responses by their {@link FileErrorCodes} in filemetadata.errors
+ *
+ * @author Vinod Kandula
+ */
+@Component
+@Qualifier("exceptionInterceptors")
+public class ErrorMetricsInterceptor implements CommonExceptionInterceptor {
+
+    @Override
+    public void handle(CommonErrorResponse errorResponse, Exception exception) {
+        FileMetadataMetrics.error(code(exception));
+    }
+
+    private static String code(Exception exception) {
+        if (exception instanceof CommonBaseException) {
+            return ((CommonBaseException) exception).getCommonErrorCode();
+        }
+        if (exception instanceof NoSuchFileException) {
+            return FileErrorCodes.RESOURCE_NOT_FOUND.getCode();
+        }
+        return FileErrorCodes.INTERNAL_SERVER_ERROR.getCode();
+    }
+}
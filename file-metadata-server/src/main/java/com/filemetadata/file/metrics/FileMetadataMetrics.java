@@ -0,0 +1,191 @@
+package com.filemetadata.file.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Micrometer meters of the scans of {@link com.filemetadata.file.handler.FileMetadataHandler}, registered with the
+ * global registry so the static handler can record them; Spring Boot adds its Prometheus registry to it, which exports
+ * them at /actuator/prometheus.
+ *
+ * filemetadata.scan               - duration of a scan, by operation and outcome.
+ * filemetadata.scan.phase         - time of a scan spent in each {@link ScanPhase}, by operation and phase.
+ * filemetadata.scan.entries       - entries stat-ed, by operation; its rate is the entries per second.
+ * filemetadata.scans.active       - scans in flight, by operation.
+ * filemetadata.scan.coalesced     - requests that shared the scan of an identical request instead of scanning, by
+ *                                   operation.
+ * filemetadata.serialized.bytes   - size of the responses written, by operation and encoding.
+ * filemetadata.errors             - error responses, by error code.
+ *
+ * The current scan of a thread is kept in a thread local, so the handler only reads the clock while a scan is
+ * running. Tags are enums only, never paths.
+ *
+ * @author Vinod Kandula
+ */
+public final class FileMetadataMetrics {
+
+    private static final MeterRegistry REGISTRY = Metrics.globalRegistry;
+
+    private static final ThreadLocal<Scan> CURRENT = new ThreadLocal<>();
+
+    private static final Map<ScanOperation, AtomicInteger> ACTIVE = new EnumMap<>(ScanOperation.class);
+    private static final Map<ScanOperation, LongAdder> ENTRIES = new EnumMap<>(ScanOperation.class);
+
+    static {
+        for (ScanOperation operation : ScanOperation.values()) {
+            AtomicInteger active = new AtomicInteger();
+            LongAdder entries = new LongAdder();
+            ACTIVE.put(operation, active);
+            ENTRIES.put(operation, entries);
+            Gauge.builder("filemetadata.scans.active", active, AtomicInteger::get)
+                    .description("Scans in flight")
+                    .tag("operation", operation.getName())
+                    .register(REGISTRY);
+            FunctionCounter.builder("filemetadata.scan.entries", entries, LongAdder::sum)
+                    .description("Entries stat-ed by scans")
+                    .tag("operation", operation.getName())
+                    .register(REGISTRY);
+        }
+    }
+
+    private FileMetadataMetrics() {
+    }
+
+    /**
+     * Starts a scan on the calling thread, or joins the scan already running on it
+     *
+     * @param operation
+     * @return the scan to close when done
+     */
+    public static Scan start(ScanOperation operation) {
+        Scan scan = CURRENT.get();
+        if (scan != null) {
+            scan.join();
+            return scan;
+        }
+        scan = new Scan(operation, ENTRIES.get(operation));
+        ACTIVE.get(operation).incrementAndGet();
+        CURRENT.set(scan);
+        return scan;
+    }
+
+    /**
+     * Starts a scan that is not bound to the calling thread, for a traversal stepped on whichever thread asks for its
+     * next entry; every step {@link #attach(Scan) attaches} it
+     *
+     * @param operation
+     * @return the scan to close when done
+     */
+    public static Scan open(ScanOperation operation) {
+        ACTIVE.get(operation).incrementAndGet();
+        return new Scan(operation, ENTRIES.get(operation));
+    }
+
+    /**
+     * @return the scan running on the calling thread, null when there is none
+     */
+    public static Scan current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs the calling thread as part of a scan started on another one, e.g. a task of a parallel traversal
+     *
+     * @param scan
+     * @return the scan the thread was part of before, to {@link #restore(Scan)} when done
+     */
+    public static Scan attach(Scan scan) {
+        Scan previous = CURRENT.get();
+        CURRENT.set(scan);
+        return previous;
+    }
+
+    public static void restore(Scan previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Counts a request answered by the scan of an identical request
+     *
+     * @param operation
+     */
+    public static void coalesced(ScanOperation operation) {
+        Counter.builder("filemetadata.scan.coalesced")
+                .description("Requests sharing the scan of an identical request")
+                .tag("operation", operation.getName())
+                .register(REGISTRY)
+                .increment();
+    }
+
+    /**
+     * Counts an error response
+     *
+     * @param code of the {@link com.filemetadata.file.handler.FileErrorCodes}
+     */
+    public static void error(String code) {
+        Counter.builder("filemetadata.errors")
+                .description("Error responses")
+                .tag("code", code)
+                .register(REGISTRY)
+                .increment();
+    }
+
+    static void finished(Scan scan) {
+        if (CURRENT.get() == scan) {
+            CURRENT.remove();
+        }
+        ScanOperation operation = scan.getOperation();
+        ACTIVE.get(operation).decrementAndGet();
+
+        Timer.builder("filemetadata.scan")
+                .description("Duration of scans")
+                .tag("operation", operation.getName())
+                .tag("outcome", scan.isCompleted() ? "success" : "error")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(10))
+                .register(REGISTRY)
+                .record(scan.elapsed(), TimeUnit.NANOSECONDS);
+
+        for (ScanPhase phase : ScanPhase.values()) {
+            long nanos = scan.nanos(phase);
+            if (nanos > 0) {
+                Timer.builder("filemetadata.scan.phase")
+                        .description("Time of scans spent per phase")
+                        .tag("operation", operation.getName())
+                        .tag("phase", phase.getName())
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(1))
+                        .maximumExpectedValue(Duration.ofMinutes(10))
+                        .register(REGISTRY)
+                        .record(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        if (scan.getEncoding() != null) {
+            DistributionSummary.builder("filemetadata.serialized.bytes")
+                    .description("Size of the serialized responses")
+                    .baseUnit("bytes")
+                    .tag("operation", operation.getName())
+                    .tag("encoding", scan.getEncoding().name().toLowerCase())
+                    .register(REGISTRY)
+                    .record(scan.getBytes());
+        }
+    }
+}
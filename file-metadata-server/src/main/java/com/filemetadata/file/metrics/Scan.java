@@ -0,0 +1,140 @@
+package com.filemetadata.file.metrics;
+
+import com.filemetadata.file.encoding.ResponseEncoding;
+import com.filemetadata.file.store.StorePolicy;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time spent by one scan in each {@link ScanPhase}, summed over all threads taking part in it and recorded by
+ * {@link FileMetadataMetrics} when the scan is closed. Scans started while another one is running on the thread
+ * join it, so a request is measured once, however many traversals answer it.
+ *
+ * @author Vinod Kandula
+ */
+public final class Scan implements AutoCloseable {
+
+    private final ScanOperation operation;
+    private final long startTime = System.nanoTime();
+    private final LongAdder entries;
+    private final LongAdder[] phases = new LongAdder[ScanPhase.values().length];
+    // the outermost start and the starts that joined it, the scan is recorded when the last of them is closed
+    private final AtomicInteger depth = new AtomicInteger(1);
+
+    private volatile boolean completed;
+    private volatile ResponseEncoding encoding;
+    private volatile long bytes;
+    // the file store read by the scan off the pools of the stores, bound by its first operation
+    private volatile StorePolicy store;
+
+    Scan(ScanOperation operation, LongAdder entries) {
+        this.operation = operation;
+        this.entries = entries;
+        for (int phase = 0; phase < phases.length; phase++) {
+            phases[phase] = new LongAdder();
+        }
+    }
+
+    public ScanOperation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @param nanos spent listing one directory
+     */
+    public void listed(long nanos) {
+        phases[ScanPhase.LIST.ordinal()].add(nanos);
+    }
+
+    /**
+     * @param nanos spent reading the attributes of one entry, including canonicalizing it
+     */
+    public void stated(long nanos) {
+        phases[ScanPhase.STAT.ordinal()].add(nanos);
+        entries.increment();
+    }
+
+    /**
+     * @param nanos spent resolving one canonical path
+     */
+    public void canonicalized(long nanos) {
+        phases[ScanPhase.CANONICALIZE.ordinal()].add(nanos);
+    }
+
+    /**
+     * @param encoding of the response
+     * @param bytes    written
+     * @param nanos    spent encoding, 0 for a streamed response encoded while it was scanned
+     */
+    public void serialized(ResponseEncoding encoding, long bytes, long nanos) {
+        this.encoding = encoding;
+        this.bytes = bytes;
+        phases[ScanPhase.SERIALIZE.ordinal()].add(nanos);
+    }
+
+    /**
+     * Marks the scan as succeeded, a scan closed without it is recorded with the error outcome
+     */
+    public void complete() {
+        // a joined start completing does not complete the outermost one
+        if (depth.get() == 1) {
+            completed = true;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (depth.decrementAndGet() == 0) {
+            FileMetadataMetrics.finished(this);
+        }
+    }
+
+    /**
+     * @return the policy of the store the scan reads from, null before its first listing or stat
+     */
+    public StorePolicy getStore() {
+        return store;
+    }
+
+    /**
+     * Binds the store the scan reads from, unless another thread of the scan bound one first
+     *
+     * @param policy
+     * @return the policy bound
+     */
+    public synchronized StorePolicy bindStore(StorePolicy policy) {
+        if (store == null) {
+            store = policy;
+        }
+        return store;
+    }
+
+    void join() {
+        depth.incrementAndGet();
+    }
+
+    boolean isCompleted() {
+        return completed;
+    }
+
+    long elapsed() {
+        return System.nanoTime() - startTime;
+    }
+
+    /**
+     * @return nanos spent in the phase, the stat time without the canonicalize time it includes
+     */
+    long nanos(ScanPhase phase) {
+        long nanos = phases[phase.ordinal()].sum();
+        return phase == ScanPhase.STAT ? Math.max(0, nanos - phases[ScanPhase.CANONICALIZE.ordinal()].sum()) : nanos;
+    }
+
+    ResponseEncoding getEncoding() {
+        return encoding;
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,35 @@
+package com.filemetadata.file.metrics;
+
+/**
+ * Operations a scan is measured for, the operation tag of the scan metrics.
+ *
+ * DIRECTORY - a buffered directory request, whether answered from a traversal, the cache or the index.
+ * STREAM    - a streamed directory request.
+ * FLUX      - a reactive directory request, stepped as the client asks for entries.
+ * TREE      - a tree built by the serial or parallel traversal outside of a request (e.g. change feed rescans).
+ * WALK      - a visitor walk outside of a request (e.g. the files of a hash or duplicate request).
+ * INDEX     - a full or incremental scan of the directory index.
+ * JOB       - one run of an asynchronous scan job, a job resumed after a restart is measured again from there.
+ *
+ * @author Vinod Kandula
+ */
+public enum ScanOperation {
+
+    DIRECTORY("directory"),
+    STREAM("stream"),
+    FLUX("flux"),
+    TREE("tree"),
+    WALK("walk"),
+    INDEX("index"),
+    JOB("job");
+
+    private String name;
+
+    ScanOperation(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
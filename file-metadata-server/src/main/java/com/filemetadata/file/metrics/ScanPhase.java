@@ -0,0 +1,30 @@
+package com.filemetadata.file.metrics;
+
+/**
+ * Phases the time of a scan is split into, the phase tag of the scan metrics.
+ *
+ * LIST         - reading the entries of the directories.
+ * STAT         - reading the attributes of the entries, without canonicalizing.
+ * CANONICALIZE - resolving canonical paths, only done for the scanned root and symbolic links when the unix
+ *                attribute view is available.
+ * SERIALIZE    - encoding a buffered response, streamed responses are encoded while they are scanned.
+ *
+ * @author Vinod Kandula
+ */
+public enum ScanPhase {
+
+    LIST("list"),
+    STAT("stat"),
+    CANONICALIZE("canonicalize"),
+    SERIALIZE("serialize");
+
+    private String name;
+
+    ScanPhase(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
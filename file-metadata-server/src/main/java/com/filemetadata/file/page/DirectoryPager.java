@@ -0,0 +1,265 @@
+package com.filemetadata.file.page;
+
+import com.filemetadata.dto.DirectoryPage;
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.handler.FileMetadataHandler;
+import com.filemetadata.file.projection.Projection;
+import com.filemetadata.file.traversal.FollowLinks;
+import com.filemetadata.file.traversal.TraversalFilter;
+import com.filemetadata.file.traversal.VisitedDirectories;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Lists the entries below a directory page by page, depth first with the sorted children of
+ * {@link FileMetadataHandler#listChildren(File)}, so the order is stable across requests.
+ *
+ * A page resumes from its {@link PageCursor} by listing only the directories on the path to the last returned
+ * entry and binary searching the position of that entry in each of them. Fetching a page therefore costs the
+ * listings on one path plus a stat per returned entry, independent of how many pages came before. Entries added or
+ * removed between pages show up or disappear like in a single traversal that passes them later or earlier. A page
+ * only carries a next cursor when an entry left in by the filter follows it, so the last page holds the last entry.
+ *
+ * Pages only know the directories on the path to the cursor, so a directory is not listed below itself, but unlike in
+ * the other traversals a directory reached through links on different paths is listed under each of them. That keeps
+ * the entries the same whatever the page size.
+ *
+ * @author Vinod Kandula
+ */
+public final class DirectoryPager {
+
+    private DirectoryPager() {
+    }
+
+    /**
+     * Fetches one page of the entries below the given directory
+     *
+     * @param folder directory already validated with {@link FileMetadataHandler#directory(String)}
+     * @param filter
+     * @param projection attributes collected for the returned entries
+     * @param followLinks
+     * @param cursor     cursor of the previous page, null for the first page
+     * @param limit      maximum number of entries
+     * @return
+     * @throws IOException
+     */
+    public static DirectoryPage page(File folder, TraversalFilter filter, Projection projection, FollowLinks followLinks,
+                                     String cursor, int limit) throws IOException {
+        Traversal traversal = traverse(folder, filter, projection, followLinks, cursor);
+
+        DirectoryPage page = new DirectoryPage();
+        page.setPath(folder.getPath());
+        page.setLimit(limit);
+        while (page.getEntries().size() < limit) {
+            FileMetadata fileMetadata = traversal.next();
+            if (fileMetadata == null) {
+                break;
+            }
+            page.getEntries().add(fileMetadata);
+        }
+
+        if (traversal.hasNext()) {
+            page.setNextCursor(traversal.cursor());
+        }
+        return page;
+    }
+
+    /**
+     * Starts a traversal in the order of the pages, stepped one entry at a time. Its {@link Traversal#cursor()}
+     * resumes it later on, e.g. a long scan resumed after a restart.
+     *
+     * @param folder     directory already validated with {@link FileMetadataHandler#directory(String)}
+     * @param filter
+     * @param projection attributes collected for the returned entries
+     * @param followLinks
+     * @param cursor     where to resume, null to start at the first entry
+     * @return
+     * @throws IOException
+     */
+    public static Traversal traverse(File folder, TraversalFilter filter, Projection projection, FollowLinks followLinks,
+                                     String cursor) throws IOException {
+        return new Traversal(folder, filter, projection.including(filter.getFields()), followLinks, cursor);
+    }
+
+    /**
+     * Rebuilds the traversal stack just after the entry at the given position
+     */
+    private static void resume(Deque<Frame> frames, List<String> names, TraversalFilter filter, Projection projection,
+                               FollowLinks followLinks) throws IOException {
+        for (String name : names) {
+            Frame frame = frames.peek();
+            int index = Arrays.binarySearch(frame.children, new File(frame.folder, name));
+            if (index < 0) {
+                // the entry is gone, continue with the entry that took its place
+                frame.next = -index - 1;
+                return;
+            }
+            frame.next = index + 1;
+
+            File file = frame.children[index];
+            FileMetadata fileMetadata;
+            try {
+                fileMetadata = FileMetadataHandler.fileMetadata(file, frame.metadata, projection);
+            } catch (NoSuchFileException e) {
+                return;
+            }
+            if (!fileMetadata.isDirectory() || !enters(frames, followLinks, file, fileMetadata)) {
+                return;
+            }
+            // inside a directory on the path, or the last returned entry is a directory and its children come next
+            frames.push(new Frame(file, fileMetadata, filter));
+        }
+    }
+
+    /**
+     * @return false for a link that is not followed, or a directory on the path to itself
+     */
+    private static boolean enters(Deque<Frame> frames, FollowLinks followLinks, File directory, FileMetadata metadata) throws IOException {
+        if (!followLinks.follows(metadata)) {
+            return false;
+        }
+        for (Frame frame : frames) {
+            if (VisitedDirectories.isSameDirectory(frame.folder, frame.metadata, directory, metadata)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Pops the finished directories
+     *
+     * @return false when the traversal is complete
+     */
+    private static boolean advance(Deque<Frame> frames) {
+        while (!frames.isEmpty() && frames.peek().next >= frames.peek().children.length) {
+            frames.pop();
+        }
+        return !frames.isEmpty();
+    }
+
+    /**
+     * A depth first traversal holding the directories on the path to its last entry
+     */
+    public static final class Traversal {
+
+        private final File folder;
+        private final TraversalFilter filter;
+        private final Projection projection;
+        private final FollowLinks followLinks;
+        private final Deque<Frame> frames = new ArrayDeque<>();
+        // the cursor the traversal was resumed from, until an entry is returned
+        private final String start;
+        private File last;
+        // the entry visited ahead of next(), so hasNext() knows whether one is left
+        private FileMetadata ahead;
+        private File aheadFile;
+
+        private Traversal(File folder, TraversalFilter filter, Projection projection, FollowLinks followLinks, String cursor)
+                throws IOException {
+            this.folder = folder;
+            this.filter = filter;
+            this.projection = projection;
+            this.followLinks = followLinks;
+            this.start = cursor;
+            frames.push(new Frame(folder, FileMetadataHandler.fileMetadata(folder, null, projection), filter));
+            if (cursor != null) {
+                resume(frames, PageCursor.decode(cursor), filter, projection, followLinks);
+            }
+        }
+
+        /**
+         * Visits entries up to the next one left in by the filter
+         *
+         * @return the entry, null once the traversal is done
+         * @throws IOException
+         */
+        public FileMetadata next() throws IOException {
+            if (ahead == null && !lookAhead()) {
+                return null;
+            }
+            FileMetadata fileMetadata = ahead;
+            last = aheadFile;
+            ahead = null;
+            aheadFile = null;
+            return fileMetadata;
+        }
+
+        /**
+         * Visits entries up to the next one left in by the filter, which the following {@link #next()} returns
+         *
+         * @return false once no entry is left that the filter leaves in
+         * @throws IOException
+         */
+        public boolean hasNext() throws IOException {
+            return ahead != null || lookAhead();
+        }
+
+        /**
+         * @return the cursor resuming just after the last returned entry, the one resumed from before the first one
+         */
+        public String cursor() {
+            if (last == null) {
+                return start;
+            }
+            List<String> names = new ArrayList<>();
+            for (Path name : folder.toPath().relativize(last.toPath())) {
+                names.add(name.toString());
+            }
+            return PageCursor.encode(names);
+        }
+
+        private boolean lookAhead() throws IOException {
+            while (advance(frames)) {
+                Frame frame = frames.peek();
+                File file = frame.children[frame.next++];
+                FileMetadata fileMetadata;
+                try {
+                    fileMetadata = FileMetadataHandler.fileMetadata(file, frame.metadata, projection);
+                } catch (NoSuchFileException e) {
+                    // removed after its directory was listed
+                    continue;
+                }
+                if (fileMetadata.isDirectory()) {
+                    if (enters(frames, followLinks, file, fileMetadata)) {
+                        frames.push(new Frame(file, fileMetadata, filter));
+                    }
+                    if (!filter.reportsDirectories()) {
+                        continue;
+                    }
+                } else if (!filter.report(file, fileMetadata)) {
+                    continue;
+                }
+                ahead = fileMetadata;
+                aheadFile = file;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A directory on the path of the traversal, with the position of its next child
+     */
+    private static class Frame {
+
+        private final File folder;
+        private final FileMetadata metadata;
+        private final File[] children;
+        private int next;
+
+        Frame(File folder, FileMetadata metadata, TraversalFilter filter) {
+            this.folder = folder;
+            this.metadata = metadata;
+            this.children = FileMetadataHandler.listChildren(folder, filter);
+        }
+    }
+}
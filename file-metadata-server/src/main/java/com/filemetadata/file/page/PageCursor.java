@@ -0,0 +1,61 @@
+package com.filemetadata.file.page;
+
+import com.filemetadata.common.exception.InvalidInputException;
+import com.filemetadata.file.handler.FileErrorCodes;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Opaque position of a paginated listing: the path of the last returned entry relative to the listed directory.
+ * The names on that path are all the server needs to resume, so nothing is kept between pages.
+ *
+ * @author Vinod Kandula
+ */
+public final class PageCursor {
+
+    private static final String VERSION = "1:";
+
+    private PageCursor() {
+    }
+
+    /**
+     * @param names names from the listed directory down to the last returned entry
+     * @return
+     */
+    public static String encode(List<String> names) {
+        String position = VERSION + String.join("/", names);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor
+     * @return the names from the listed directory down to the last returned entry
+     * @throws InvalidInputException when the cursor was not created by {@link #encode(List)} or leaves the directory
+     */
+    public static List<String> decode(String cursor) {
+        String position;
+        try {
+            position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw invalid(cursor);
+        }
+        if (!position.startsWith(VERSION) || position.length() == VERSION.length()) {
+            throw invalid(cursor);
+        }
+        List<String> names = new ArrayList<>();
+        for (String name : position.substring(VERSION.length()).split("/", -1)) {
+            if (name.isEmpty() || name.equals(".") || name.equals("..") || name.indexOf('\\') >= 0) {
+                throw invalid(cursor);
+            }
+            names.add(name);
+        }
+        return names;
+    }
+
+    private static InvalidInputException invalid(String cursor) {
+        return new InvalidInputException(FileErrorCodes.INVALID_PARAMETER_VALUE, "cursor", cursor);
+    }
+}
@@ -0,0 +1,52 @@
+package com.filemetadata.file.projection;
+
+/**
+ * Attributes of {@link com.filemetadata.dto.FileMetadata} that can be selected with fields=, named like their JSON
+ * properties.
+ *
+ * @author Vinod Kandula
+ */
+public enum MetadataField {
+
+    NAME("name"),
+    PATH("path"),
+    SIZE("size"),
+    PARENT("parent"),
+    ABSOLUTE_PATH("absolutePath"),
+    ABSOLUTE("absolute"),
+    CANONICAL_PATH("canonicalPath"),
+    CREATION_TIME("creationTime"),
+    LAST_ACCESS_TIME("lastAccessTime"),
+    LAST_MODIFIED_TIME("lastModifiedTime"),
+    DIRECTORY("directory"),
+    FILE("file"),
+    HIDDEN("hidden"),
+    REGULAR_FILE("regularFile"),
+    SYMBOLIC_LINK("symbolicLink"),
+    CAN_READ("canRead"),
+    CAN_WRITE("canWrite"),
+    CAN_EXECUTE("canExecute");
+
+    private String property;
+
+    MetadataField(String property) {
+        this.property = property;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    /**
+     * @param property
+     * @return the field of the given JSON property, null when there is none
+     */
+    public static MetadataField of(String property) {
+        for (MetadataField field : values()) {
+            if (field.property.equalsIgnoreCase(property)) {
+                return field;
+            }
+        }
+        return null;
+    }
+}
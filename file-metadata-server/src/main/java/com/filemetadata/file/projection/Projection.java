@@ -0,0 +1,109 @@
+package com.filemetadata.file.projection;
+
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.filemetadata.common.exception.InvalidInputException;
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.handler.FileErrorCodes;
+
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The attributes requested with fields=, e.g. fields=name,path,size,directory.
+ *
+ * A projection both shapes the output, through the {@link FileMetadata#FIELDS_FILTER} Jackson filter and the stream
+ * writer, and tells the attribute collectors what they may skip: the canonical path, the permission checks and the
+ * formatting of every time that is not requested are never computed. The directory flag is always collected, the
+ * traversals need it, and children are always written.
+ *
+ * @author Vinod Kandula
+ */
+public final class Projection {
+
+    public static final Projection ALL = new Projection(EnumSet.allOf(MetadataField.class));
+
+    private final EnumSet<MetadataField> fields;
+    private final FilterProvider filters;
+
+    private Projection(EnumSet<MetadataField> fields) {
+        this.fields = fields;
+        SimpleBeanPropertyFilter filter;
+        if (fields.size() == MetadataField.values().length) {
+            filter = SimpleBeanPropertyFilter.serializeAll();
+        } else {
+            Set<String> properties = new HashSet<>();
+            for (MetadataField field : fields) {
+                properties.add(field.getProperty());
+            }
+            properties.add("children");
+            filter = SimpleBeanPropertyFilter.filterOutAllExcept(properties);
+        }
+        this.filters = new SimpleFilterProvider().addFilter(FileMetadata.FIELDS_FILTER, filter);
+    }
+
+    /**
+     * Parses the fields parameter
+     *
+     * @param fields comma separated JSON property names, null or empty for all of them
+     * @return
+     * @throws InvalidInputException for an unknown property
+     */
+    public static Projection of(String fields) {
+        if (fields == null || fields.trim().isEmpty()) {
+            return ALL;
+        }
+        EnumSet<MetadataField> selected = EnumSet.noneOf(MetadataField.class);
+        for (String property : fields.split(",")) {
+            if (property.trim().isEmpty()) {
+                continue;
+            }
+            MetadataField field = MetadataField.of(property.trim());
+            if (field == null) {
+                throw new InvalidInputException(FileErrorCodes.INVALID_PARAMETER_VALUE, "fields", fields);
+            }
+            selected.add(field);
+        }
+        return selected.isEmpty() || selected.size() == MetadataField.values().length ? ALL : new Projection(selected);
+    }
+
+    public boolean includes(MetadataField field) {
+        return fields.contains(field);
+    }
+
+    public boolean isAll() {
+        return this == ALL;
+    }
+
+    /**
+     * @param others attributes that have to be collected as well, e.g. the ones a filter reads
+     * @return a projection of these attributes and the others
+     */
+    public Projection including(Set<MetadataField> others) {
+        if (fields.containsAll(others)) {
+            return this;
+        }
+        EnumSet<MetadataField> union = EnumSet.copyOf(fields);
+        union.addAll(others);
+        return union.size() == MetadataField.values().length ? ALL : new Projection(union);
+    }
+
+    /**
+     * @return the Jackson filters writing only the requested properties of {@link FileMetadata}
+     */
+    public FilterProvider getFilters() {
+        return filters;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Projection && fields.equals(((Projection) other).fields);
+    }
+
+    @Override
+    public int hashCode() {
+        return fields.hashCode();
+    }
+}
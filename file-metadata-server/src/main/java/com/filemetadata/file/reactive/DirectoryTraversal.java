@@ -0,0 +1,130 @@
+package com.filemetadata.file.reactive;
+
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.handler.FileMetadataHandler;
+import com.filemetadata.file.metrics.FileMetadataMetrics;
+import com.filemetadata.file.metrics.Scan;
+import com.filemetadata.file.metrics.ScanOperation;
+import com.filemetadata.file.projection.Projection;
+import com.filemetadata.file.store.StorePolicy;
+import com.filemetadata.file.traversal.FollowLinks;
+import com.filemetadata.file.traversal.TraversalFilter;
+import com.filemetadata.file.traversal.VisitedDirectories;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A depth first traversal that is stepped one reported entry at a time, in the order of
+ * {@link FileMetadataHandler#walk(File, TraversalFilter, Projection, com.filemetadata.file.traversal.FileMetadataVisitor)}.
+ * Only the directories on the path to the current entry are held, each with its listed children, so a paused
+ * traversal costs the depth of the tree rather than its size.
+ *
+ * Steps may run on different threads, but never concurrently.
+ *
+ * @author Vinod Kandula
+ */
+final class DirectoryTraversal implements AutoCloseable {
+
+    private final File folder;
+    private final TraversalFilter filter;
+    private final Projection projection;
+    private final Scan scan = FileMetadataMetrics.open(ScanOperation.FLUX);
+
+    private final VisitedDirectories visited;
+    private final Deque<Directory> directories = new ArrayDeque<>();
+    private boolean started;
+
+    /**
+     * @param folder     directory already validated with {@link FileMetadataHandler#directory(String)}
+     * @param filter
+     * @param projection the attributes to collect, the ones the filter reads are collected as well
+     * @param store      policy of the store of the folder, throttling the traversal
+     * @param followLinks
+     */
+    DirectoryTraversal(File folder, TraversalFilter filter, Projection projection, StorePolicy store,
+                       FollowLinks followLinks) {
+        this.folder = folder;
+        this.filter = filter;
+        this.projection = projection.including(filter.getFields());
+        this.visited = new VisitedDirectories(followLinks);
+        scan.bindStore(store);
+    }
+
+    /**
+     * Visits entries up to the next one reported
+     *
+     * @return the entry, null once the traversal is done
+     * @throws IOException
+     */
+    FileMetadata next() throws IOException {
+        Scan previous = FileMetadataMetrics.attach(scan);
+        try {
+            FileMetadata next = step();
+            if (next == null) {
+                scan.complete();
+            }
+            return next;
+        } finally {
+            FileMetadataMetrics.restore(previous);
+        }
+    }
+
+    /**
+     * Ends the traversal, whether it is done, failed or was cancelled
+     */
+    @Override
+    public void close() {
+        directories.clear();
+        scan.close();
+    }
+
+    private FileMetadata step() throws IOException {
+        if (!started) {
+            started = true;
+            FileMetadata root = FileMetadataHandler.fileMetadata(folder, null, projection);
+            visited.enterRoot(folder, root);
+            directories.push(new Directory(folder, root));
+            if (filter.reportsDirectories()) {
+                return root;
+            }
+        }
+        while (!directories.isEmpty()) {
+            Directory directory = directories.peek();
+            if (directory.next == directory.children.length) {
+                directories.pop();
+                continue;
+            }
+            File file = directory.children[directory.next++];
+            FileMetadata child = FileMetadataHandler.fileMetadata(file, directory.metadata, projection);
+            if (child.isDirectory()) {
+                if (visited.enter(file, child)) {
+                    directories.push(new Directory(file, child));
+                }
+                if (filter.reportsDirectories()) {
+                    return child;
+                }
+            } else if (filter.report(file, child)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A directory on the path to the current entry, with the position of the next child to visit
+     */
+    private final class Directory {
+
+        private final FileMetadata metadata;
+        private final File[] children;
+        private int next;
+
+        Directory(File folder, FileMetadata metadata) {
+            this.metadata = metadata;
+            this.children = FileMetadataHandler.listChildren(folder, filter);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.filemetadata.file.reactive;
+
+import com.filemetadata.config.FileMetadataProperties;
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.projection.Projection;
+import com.filemetadata.file.store.FileStores;
+import com.filemetadata.file.traversal.FollowLinks;
+import com.filemetadata.file.traversal.TraversalFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Publishes the entries of a directory tree as a {@link Flux} that only traverses as far as its subscriber asks for.
+ * Every entry requested is one step of a {@link DirectoryTraversal}, run on a bounded elastic scheduler of its own, so
+ * blocking directory listings and stats never run on the threads of the caller. A slow subscriber slows the traversal
+ * down instead of entries piling up, and cancelling the subscription ends the traversal.
+ *
+ * @author Vinod Kandula
+ */
+@Component
+@Slf4j
+public class TraversalPublisher {
+
+    private final Scheduler scheduler;
+    private final FileStores fileStores;
+    private final FollowLinks followLinks;
+
+    @Autowired
+    public TraversalPublisher(FileMetadataProperties properties, FileStores fileStores) {
+        this(properties.getReactive().getMaxThreads(), properties.getReactive().getMaxQueued(), fileStores,
+                properties.getTraversal().getFollowLinks());
+    }
+
+    /**
+     * @param maxThreads 0 for ten per processor
+     * @param maxQueued  steps waiting for a thread before traversals are rejected
+     * @param fileStores resolving the store throttling a traversal
+     * @param followLinks
+     */
+    public TraversalPublisher(int maxThreads, int maxQueued, FileStores fileStores, FollowLinks followLinks) {
+        this.fileStores = fileStores;
+        this.followLinks = followLinks;
+        int threads = maxThreads > 0 ? maxThreads : Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE;
+        this.scheduler = Schedulers.newBoundedElastic(threads, maxQueued, "filemetadata-traversal");
+        log.info("Reactive directory traversal threads: {}", threads);
+    }
+
+    /**
+     * Publishes the Directory & Files metadata left in by the filter, directories before their children as in the
+     * ndjson stream. Entries carry no children.
+     *
+     * @param folder     directory already validated with {@link com.filemetadata.file.handler.FileMetadataHandler#directory(String)}
+     * @param filter
+     * @param projection
+     * @return a cold publisher, every subscription traverses the directory again
+     */
+    public Flux<FileMetadata> directory(File folder, TraversalFilter filter, Projection projection) {
+        return Flux.<FileMetadata, DirectoryTraversal>generate(
+                () -> new DirectoryTraversal(folder, filter, projection, fileStores.policy(folder), followLinks),
+                (traversal, sink) -> {
+                    try {
+                        FileMetadata next = traversal.next();
+                        if (next == null) {
+                            sink.complete();
+                        } else {
+                            sink.next(next);
+                        }
+                    } catch (IOException e) {
+                        sink.error(e);
+                    }
+                    return traversal;
+                },
+                DirectoryTraversal::close)
+                .subscribeOn(scheduler);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.dispose();
+    }
+}
@@ -0,0 +1,175 @@
+package com.filemetadata.file.store;
+
+import com.filemetadata.config.FileMetadataProperties;
+import com.filemetadata.file.metrics.FileMetadataMetrics;
+import com.filemetadata.file.metrics.Scan;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resolves the {@link StorePolicy} of the {@link FileStore} a path is on, from the limits configured for the name of
+ * the store, else for its type, else the defaults. The limits are fixed at startup and policies are resolved once per
+ * store.
+ *
+ * Listings and stats take a token of their store through {@link #throttle()}: on the pool of a store from the policy
+ * of its workers, elsewhere from the store bound to the {@link Scan} they are part of, see {@link #bind(File)}, so a
+ * serial traversal is throttled by the store of its root without resolving the store of every entry. Scans without a
+ * bound store are only throttled on the pools of the stores.
+ *
+ * @author Vinod Kandula
+ */
+@Component
+@Slf4j
+public class FileStores {
+
+    private final Map<FileStore, StorePolicy> policies = new ConcurrentHashMap<>();
+
+    private final FileMetadataProperties.Store defaults;
+    private final Map<String, FileMetadataProperties.Store> types;
+    private final Map<String, FileMetadataProperties.Store> names;
+    // some store has limits of its own, otherwise every path has the default policy
+    private final boolean configured;
+
+    /**
+     * Stores without limits, every path has the default policy
+     */
+    public FileStores() {
+        this(new FileMetadataProperties.Store(), Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    @Autowired
+    public FileStores(FileMetadataProperties properties) {
+        this(properties.getStores().getDefaults(), properties.getStores().getTypes(), properties.getStores().getNames());
+    }
+
+    /**
+     * @param storeDefaults limits of the stores without limits of their own
+     * @param storeTypes    limits by store type
+     * @param storeNames    limits by store name
+     */
+    public FileStores(FileMetadataProperties.Store storeDefaults, Map<String, FileMetadataProperties.Store> storeTypes,
+                      Map<String, FileMetadataProperties.Store> storeNames) {
+        this.defaults = storeDefaults;
+        this.types = new HashMap<>(storeTypes);
+        this.names = new HashMap<>(storeNames);
+        this.configured = isLimited(storeDefaults) || !storeTypes.isEmpty() || !storeNames.isEmpty();
+    }
+
+    /**
+     * @param file an existing file, or one below an existing directory
+     * @return the policy of the store of the file, the default one when it cannot be resolved
+     */
+    public StorePolicy policy(File file) {
+        if (!configured) {
+            return StorePolicy.DEFAULT;
+        }
+        File existing = file.getAbsoluteFile();
+        while (existing != null && !existing.exists()) {
+            existing = existing.getParentFile();
+        }
+        if (existing == null) {
+            return StorePolicy.DEFAULT;
+        }
+        FileStore store;
+        try {
+            store = Files.getFileStore(existing.toPath());
+        } catch (IOException | SecurityException e) {
+            return StorePolicy.DEFAULT;
+        }
+        return policies.computeIfAbsent(store, this::newPolicy);
+    }
+
+    /**
+     * Binds the store of the given root to the scan of the calling thread, unless the scan has one
+     *
+     * @param root the directory or file the scan reads
+     * @return the policy of the store the scan reads from
+     */
+    public StorePolicy bind(File root) {
+        Scan scan = FileMetadataMetrics.current();
+        if (scan == null) {
+            return policy(root);
+        }
+        StorePolicy store = scan.getStore();
+        return store != null ? store : scan.bindStore(policy(root));
+    }
+
+    /**
+     * Waits until the next listing or stat of the calling thread is due on its store
+     */
+    public static void throttle() {
+        Thread thread = Thread.currentThread();
+        if (thread instanceof StoreWorker) {
+            ((StoreWorker) thread).policy.throttle();
+            return;
+        }
+        Scan scan = FileMetadataMetrics.current();
+        StorePolicy policy = scan != null ? scan.getStore() : null;
+        if (policy != null) {
+            policy.throttle();
+        }
+    }
+
+    /**
+     * Creates the pool of a store, whose workers throttle the operations of the tasks they run by its policy
+     *
+     * @param policy
+     * @param parallelism
+     * @return
+     */
+    public static ForkJoinPool newPool(StorePolicy policy, int parallelism) {
+        AtomicInteger workers = new AtomicInteger();
+        String prefix = "filemetadata-store-" + policy.getType() + "-";
+        return new ForkJoinPool(parallelism, pool -> {
+            StoreWorker worker = new StoreWorker(pool, policy);
+            worker.setName(prefix + workers.incrementAndGet());
+            return worker;
+        }, null, false);
+    }
+
+    private StorePolicy newPolicy(FileStore store) {
+        FileMetadataProperties.Store limits = names.get(store.name());
+        if (limits == null) {
+            limits = types.get(store.type());
+        }
+        if (limits == null) {
+            limits = defaults;
+        }
+        StorePolicy policy = new StorePolicy(store.name(), store.type(), limits.getParallelism(),
+                limits.getMaxOperationsPerSecond() > 0 ? new TokenBucket(limits.getMaxOperationsPerSecond()) : null);
+        log.info("File store {} ({}): parallelism {}, operations per second {}", store.name(), store.type(),
+                limits.getParallelism() > 0 ? limits.getParallelism() : "default",
+                limits.getMaxOperationsPerSecond() > 0 ? limits.getMaxOperationsPerSecond() : "unlimited");
+        return policy;
+    }
+
+    private static boolean isLimited(FileMetadataProperties.Store store) {
+        return store.getParallelism() > 0 || store.getMaxOperationsPerSecond() > 0;
+    }
+
+    /**
+     * A worker of the pool of one store
+     */
+    private static final class StoreWorker extends ForkJoinWorkerThread {
+
+        private final StorePolicy policy;
+
+        StoreWorker(ForkJoinPool pool, StorePolicy policy) {
+            super(pool);
+            this.policy = policy;
+        }
+    }
+}
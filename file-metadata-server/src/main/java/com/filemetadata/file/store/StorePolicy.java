@@ -0,0 +1,65 @@
+package com.filemetadata.file.store;
+
+/**
+ * The parallelism and operation rate of the scans of one file store. A store with limits of its own is scanned on a
+ * pool of its own, whose worker threads take its tokens, see {@link FileStores#throttle()}.
+ *
+ * @author Vinod Kandula
+ */
+public final class StorePolicy {
+
+    /**
+     * Stores without limits of their own, and paths whose store cannot be resolved
+     */
+    public static final StorePolicy DEFAULT = new StorePolicy("default", "default", 0, null);
+
+    private final String name;
+    private final String type;
+    private final int parallelism;
+    private final TokenBucket limiter;
+
+    StorePolicy(String name, String type, int parallelism, TokenBucket limiter) {
+        this.name = name;
+        this.type = type;
+        this.parallelism = parallelism;
+        this.limiter = limiter;
+    }
+
+    /**
+     * @return name of the store, the device or remote export
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return worker threads of the store, 0 for the default parallelism
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public boolean isThrottled() {
+        return limiter != null;
+    }
+
+    /**
+     * @return true when the store is scanned on a pool of its own rather than the default one
+     */
+    public boolean isDedicated() {
+        return parallelism > 0 || limiter != null;
+    }
+
+    /**
+     * Waits for the next operation on the store to be due
+     */
+    void throttle() {
+        if (limiter != null) {
+            limiter.acquire();
+        }
+    }
+}
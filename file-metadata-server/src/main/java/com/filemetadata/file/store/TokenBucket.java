@@ -0,0 +1,56 @@
+package com.filemetadata.file.store;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Caps operations to a rate per second. Tokens refill continuously up to a tenth of a second of operations, so an idle
+ * store allows a short burst; beyond that every operation reserves the next token and waits until it is due, so the
+ * waiting operations are spread evenly over time instead of waking up together.
+ *
+ * @author Vinod Kandula
+ */
+public class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double capacity;
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * @param operationsPerSecond at least 1
+     */
+    public TokenBucket(int operationsPerSecond) {
+        if (operationsPerSecond < 1) {
+            throw new IllegalArgumentException("operationsPerSecond " + operationsPerSecond);
+        }
+        this.tokensPerNano = operationsPerSecond / 1e9;
+        this.capacity = Math.max(1, operationsPerSecond / 10.0);
+        this.tokens = capacity;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Takes a token, waiting until it is due. An interrupted thread stops waiting, with its interrupt kept.
+     */
+    public void acquire() {
+        long deadline = System.nanoTime() + reserve();
+        for (long remaining = deadline - System.nanoTime(); remaining > 0; remaining = deadline - System.nanoTime()) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    /**
+     * @return nanos until the reserved token is due, 0 when it was available
+     */
+    synchronized long reserve() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+        // a negative balance is the tokens reserved ahead by waiting operations
+        tokens -= 1;
+        return tokens >= 0 ? 0L : (long) Math.ceil(-tokens / tokensPerNano);
+    }
+}
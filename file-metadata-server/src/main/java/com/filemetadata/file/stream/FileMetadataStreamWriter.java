@@ -0,0 +1,190 @@
+package com.filemetadata.file.stream;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.projection.MetadataField;
+import com.filemetadata.file.projection.Projection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes every visited entry straight to the output stream through a Jackson {@link JsonGenerator}, so the
+ * memory needed to answer a directory request no longer grows with the size of the tree. Given the factory of a
+ * binary JSON format (Smile, CBOR) the same document is written in that format, and the ndjson entries follow each
+ * other as root values instead of lines.
+ *
+ * @author Vinod Kandula
+ */
+public class FileMetadataStreamWriter implements MetadataStreamWriter {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    // push buffered entries to the client regularly, so a long scan keeps the connection busy
+    private static final int FLUSH_INTERVAL = 1024;
+
+    private final JsonGenerator generator;
+    private final StreamFormat format;
+    private final boolean writeDirectories;
+    private final Projection projection;
+    private final boolean text;
+    private long entries;
+
+    public FileMetadataStreamWriter(OutputStream out, StreamFormat format) throws IOException {
+        this(out, format, true);
+    }
+
+    /**
+     * @param out
+     * @param format
+     * @param writeDirectories false to leave the directory lines out of ndjson, json always nests entries in their directories
+     * @throws IOException
+     */
+    public FileMetadataStreamWriter(OutputStream out, StreamFormat format, boolean writeDirectories) throws IOException {
+        this(out, format, writeDirectories, Projection.ALL);
+    }
+
+    /**
+     * @param out
+     * @param format
+     * @param writeDirectories false to leave the directory lines out of ndjson, json always nests entries in their directories
+     * @param projection       the fields written for every entry
+     * @throws IOException
+     */
+    public FileMetadataStreamWriter(OutputStream out, StreamFormat format, boolean writeDirectories, Projection projection) throws IOException {
+        this(out, JSON_FACTORY, format, writeDirectories, projection, false);
+    }
+
+    /**
+     * @param out
+     * @param factory          JSON, Smile or CBOR factory
+     * @param format
+     * @param writeDirectories false to leave the directory entries out of ndjson, json always nests entries in their directories
+     * @param projection       the fields written for every entry
+     * @param pretty           true to indent nested JSON text
+     * @throws IOException
+     */
+    public FileMetadataStreamWriter(OutputStream out, JsonFactory factory, StreamFormat format, boolean writeDirectories,
+                                    Projection projection, boolean pretty) throws IOException {
+        this.format = format;
+        this.writeDirectories = writeDirectories;
+        this.projection = projection;
+        this.text = !factory.canHandleBinaryNatively();
+        this.generator = factory.createGenerator(out, JsonEncoding.UTF8);
+        this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        if (text) {
+            this.generator.setRootValueSeparator(null);
+            if (pretty && format == StreamFormat.JSON) {
+                this.generator.useDefaultPrettyPrinter();
+            }
+        }
+    }
+
+    @Override
+    public void preVisitDirectory(FileMetadata directory) throws IOException {
+        if (format == StreamFormat.NDJSON) {
+            if (!writeDirectories) {
+                return;
+            }
+            writeLine(directory);
+        } else {
+            generator.writeStartObject();
+            writeFields(directory);
+            generator.writeArrayFieldStart("children");
+        }
+        entryWritten();
+    }
+
+    @Override
+    public void visitFile(FileMetadata file) throws IOException {
+        if (format == StreamFormat.NDJSON) {
+            writeLine(file);
+        } else {
+            generator.writeStartObject();
+            writeFields(file);
+            generator.writeArrayFieldStart("children");
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        entryWritten();
+    }
+
+    @Override
+    public void postVisitDirectory(FileMetadata directory) throws IOException {
+        if (format == StreamFormat.JSON) {
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Writes the buffered entries through to the underlying output stream and flushes it
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        generator.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+
+    private void writeLine(FileMetadata fileMetadata) throws IOException {
+        generator.writeStartObject();
+        writeFields(fileMetadata);
+        generator.writeEndObject();
+        if (text) {
+            generator.writeRaw('\n');
+        }
+    }
+
+    private void writeFields(FileMetadata fileMetadata) throws IOException {
+        if (projection.includes(MetadataField.NAME))
+            generator.writeStringField("name", fileMetadata.getName());
+        if (projection.includes(MetadataField.PATH))
+            generator.writeStringField("path", fileMetadata.getPath());
+        if (projection.includes(MetadataField.SIZE))
+            generator.writeNumberField("size", fileMetadata.getSize());
+        if (projection.includes(MetadataField.PARENT))
+            generator.writeStringField("parent", fileMetadata.getParent());
+        if (projection.includes(MetadataField.ABSOLUTE_PATH))
+            generator.writeStringField("absolutePath", fileMetadata.getAbsolutePath());
+        if (projection.includes(MetadataField.CANONICAL_PATH))
+            generator.writeStringField("canonicalPath", fileMetadata.getCanonicalPath());
+        if (projection.includes(MetadataField.CREATION_TIME))
+            generator.writeStringField("creationTime", fileMetadata.getCreationTime());
+        if (projection.includes(MetadataField.LAST_ACCESS_TIME))
+            generator.writeStringField("lastAccessTime", fileMetadata.getLastAccessTime());
+        if (projection.includes(MetadataField.LAST_MODIFIED_TIME))
+            generator.writeStringField("lastModifiedTime", fileMetadata.getLastModifiedTime());
+        if (projection.includes(MetadataField.CAN_READ))
+            generator.writeBooleanField("canRead", fileMetadata.isCanRead());
+        if (projection.includes(MetadataField.CAN_WRITE))
+            generator.writeBooleanField("canWrite", fileMetadata.isCanWrite());
+        if (projection.includes(MetadataField.CAN_EXECUTE))
+            generator.writeBooleanField("canExecute", fileMetadata.isCanExecute());
+        if (projection.includes(MetadataField.ABSOLUTE))
+            generator.writeBooleanField("absolute", fileMetadata.isAbsolute());
+        if (projection.includes(MetadataField.DIRECTORY))
+            generator.writeBooleanField("directory", fileMetadata.isDirectory());
+        if (projection.includes(MetadataField.FILE))
+            generator.writeBooleanField("file", fileMetadata.isFile());
+        if (projection.includes(MetadataField.HIDDEN))
+            generator.writeBooleanField("hidden", fileMetadata.isHidden());
+        if (projection.includes(MetadataField.REGULAR_FILE))
+            generator.writeBooleanField("regularFile", fileMetadata.isRegularFile());
+        if (projection.includes(MetadataField.SYMBOLIC_LINK))
+            generator.writeBooleanField("symbolicLink", fileMetadata.isSymbolicLink());
+    }
+
+    private void entryWritten() throws IOException {
+        // the first flush gets the root entry to the client right away
+        if (entries++ % FLUSH_INTERVAL == 0) {
+            generator.flush();
+        }
+    }
+}
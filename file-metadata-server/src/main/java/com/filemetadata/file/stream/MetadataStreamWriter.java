@@ -0,0 +1,14 @@
+package com.filemetadata.file.stream;
+
+import com.filemetadata.file.traversal.FileMetadataVisitor;
+
+import java.io.Closeable;
+
+/**
+ * Visitor writing every visited entry straight to a response in one of the response encodings. Closing it finishes
+ * the document but leaves the underlying output stream open.
+ *
+ * @author Vinod Kandula
+ */
+public interface MetadataStreamWriter extends FileMetadataVisitor, Closeable {
+}
@@ -0,0 +1,43 @@
+package com.filemetadata.file.stream;
+
+import com.filemetadata.common.exception.InvalidInputException;
+import com.filemetadata.file.handler.FileErrorCodes;
+
+/**
+ * Output formats supported when streaming a directory tree.
+ *
+ * JSON  - the same nested document as the buffered response, written entry by entry.
+ * NDJSON - one flat JSON object per line (without children), in traversal order.
+ *
+ * @author Vinod Kandula
+ */
+public enum StreamFormat {
+
+    JSON("json", "application/json"),
+    NDJSON("ndjson", "application/x-ndjson");
+
+    private String format;
+    private String mediaType;
+
+    StreamFormat(String format, String mediaType) {
+        this.format = format;
+        this.mediaType = mediaType;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public static StreamFormat of(String format) {
+        for (StreamFormat streamFormat : values()) {
+            if (streamFormat.format.equalsIgnoreCase(format)) {
+                return streamFormat;
+            }
+        }
+        throw new InvalidInputException(FileErrorCodes.INVALID_PARAMETER_VALUE, "format", format);
+    }
+}
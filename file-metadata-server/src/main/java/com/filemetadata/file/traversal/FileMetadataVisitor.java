@@ -0,0 +1,75 @@
+package com.filemetadata.file.traversal;
+
+import com.filemetadata.dto.FileMetadata;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * Callback invoked for every entry of a directory tree as soon as it is visited, so that consumers
+ * can process the tree without holding it in memory.
+ *
+ * @author Vinod Kandula
+ */
+public interface FileMetadataVisitor {
+
+    /**
+     * Invoked for a directory before any of its children are visited.
+     *
+     * @param directory
+     * @throws IOException
+     */
+    void preVisitDirectory(FileMetadata directory) throws IOException;
+
+    /**
+     * Invoked for a non-directory entry.
+     *
+     * @param file
+     * @throws IOException
+     */
+    void visitFile(FileMetadata file) throws IOException;
+
+    /**
+     * Invoked for a directory after all of its children have been visited.
+     *
+     * @param directory
+     * @throws IOException
+     */
+    void postVisitDirectory(FileMetadata directory) throws IOException;
+
+    /**
+     * Visits an already built tree in the order a traversal visits it.
+     *
+     * @param fileMetadata
+     * @throws IOException
+     */
+    default void visitTree(FileMetadata fileMetadata) throws IOException {
+        if (!fileMetadata.isDirectory()) {
+            visitFile(fileMetadata);
+            return;
+        }
+        // the directories on the path to the current entry with their remaining children, deep trees do not recurse
+        Deque<FileMetadata> directories = new ArrayDeque<>();
+        Deque<Iterator<FileMetadata>> children = new ArrayDeque<>();
+        preVisitDirectory(fileMetadata);
+        directories.push(fileMetadata);
+        children.push(fileMetadata.getChildren().iterator());
+        while (!children.isEmpty()) {
+            if (!children.peek().hasNext()) {
+                children.pop();
+                postVisitDirectory(directories.pop());
+                continue;
+            }
+            FileMetadata child = children.peek().next();
+            if (child.isDirectory()) {
+                preVisitDirectory(child);
+                directories.push(child);
+                children.push(child.getChildren().iterator());
+            } else {
+                visitFile(child);
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.filemetadata.file.traversal;
+
+import com.filemetadata.dto.FileMetadata;
+
+/**
+ * Whether traversals list the directories symbolic links point to, filemetadata.traversal.follow-links.
+ *
+ * ALWAYS - links to directories are listed like directories, each directory at most once per traversal.
+ * NEVER  - links to directories are reported, but not listed. The traversed directory itself is always listed.
+ *
+ * @author Vinod Kandula
+ */
+public enum FollowLinks {
+
+    ALWAYS("always"),
+    NEVER("never");
+
+    private String name;
+
+    FollowLinks(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param metadata of a directory
+     * @return false for a symbolic link that is not followed under this policy
+     */
+    public boolean follows(FileMetadata metadata) {
+        return this == ALWAYS || !metadata.isSymbolicLink();
+    }
+}
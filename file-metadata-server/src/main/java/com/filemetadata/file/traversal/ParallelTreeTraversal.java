@@ -0,0 +1,372 @@
+package com.filemetadata.file.traversal;
+
+import com.filemetadata.config.FileMetadataProperties;
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.handler.FileMetadataHandler;
+import com.filemetadata.file.metrics.FileMetadataMetrics;
+import com.filemetadata.file.metrics.Scan;
+import com.filemetadata.file.metrics.ScanOperation;
+import com.filemetadata.file.projection.Projection;
+import com.filemetadata.file.store.FileStores;
+import com.filemetadata.file.store.StorePolicy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Builds the Directory & Files metadata tree on a work-stealing {@link ForkJoinPool}.
+ *
+ * Sibling sub-directories are scanned concurrently and large directories have their entries stat-ed in chunks,
+ * which hides the stat latency of NVMe and network filesystems. Children are always added in the sorted order
+ * of {@link FileMetadataHandler#listChildren(File)}, so the result is identical to the serial traversal. Directories
+ * reached more than once through links are listed once, see {@link VisitedDirectories}; which of the links gets the
+ * children can differ from the serial traversal, as the tasks race for it.
+ * The tasks run as part of the {@link Scan} of the calling thread, so their times add up to the scan they serve.
+ *
+ * A directory on a file store with limits of its own, see {@link FileStores}, is scanned on a pool of that store with
+ * its parallelism, so a slow network mount and a local SSD are scanned with the parallelism that suits each. Other
+ * directories share the default pool. Mounts below the directory are scanned on the pool of the directory.
+ *
+ * @author Vinod Kandula
+ */
+@Component
+@Slf4j
+public class ParallelTreeTraversal {
+
+    // entries of a single directory stat-ed by one task before the range is split further
+    private static final int STAT_CHUNK_SIZE = 64;
+
+    private final ForkJoinPool pool;
+    private final Map<StorePolicy, ForkJoinPool> storePools = new ConcurrentHashMap<>();
+    private final FileStores fileStores;
+    private final FollowLinks followLinks;
+
+    @Autowired
+    public ParallelTreeTraversal(FileMetadataProperties properties, FileStores fileStores) {
+        this(properties.getTraversal().getParallelism(), fileStores, properties.getTraversal().getFollowLinks());
+    }
+
+    /**
+     * A traversal without limits per file store
+     *
+     * @param parallelism
+     */
+    public ParallelTreeTraversal(int parallelism) {
+        this(parallelism, new FileStores());
+    }
+
+    public ParallelTreeTraversal(int parallelism, FileStores fileStores) {
+        this(parallelism, fileStores, FollowLinks.ALWAYS);
+    }
+
+    public ParallelTreeTraversal(int parallelism, FileStores fileStores, FollowLinks followLinks) {
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.fileStores = fileStores;
+        this.followLinks = followLinks;
+        log.info("Directory traversal parallelism: {}", pool.getParallelism());
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * @param folder
+     * @return the parallelism the given directory is scanned with
+     */
+    public int getParallelism(File folder) {
+        return pool(folder).getParallelism();
+    }
+
+    /**
+     * @param folder
+     * @return the pool the given directory is scanned on
+     */
+    public ForkJoinPool pool(File folder) {
+        return pool(fileStores.policy(folder));
+    }
+
+    /**
+     * For a caller that resolved the store already, so it is not resolved again for
+     * {@link #directoryTree(ForkJoinPool, File, TraversalFilter, Projection, VisitedDirectories)}
+     *
+     * @param policy of the store of a directory, see {@link FileStores#bind(File)}
+     * @return the pool the directory is scanned on
+     */
+    public ForkJoinPool pool(StorePolicy policy) {
+        if (!policy.isDedicated()) {
+            return pool;
+        }
+        return storePools.computeIfAbsent(policy, store -> FileStores.newPool(store,
+                store.getParallelism() > 0 ? store.getParallelism() : pool.getParallelism()));
+    }
+
+    /**
+     * Builds the Directory & Files metadata tree for the given directory
+     *
+     * @param folder
+     * @return
+     * @throws IOException
+     */
+    public FileMetadata directoryTree(File folder) throws IOException {
+        return directoryTree(folder, TraversalFilter.NONE);
+    }
+
+    /**
+     * Builds the Directory & Files metadata tree for the given directory, skipping the entries and subtrees left
+     * out by the filter
+     *
+     * @param folder
+     * @param filter
+     * @return
+     * @throws IOException
+     */
+    public FileMetadata directoryTree(File folder, TraversalFilter filter) throws IOException {
+        return directoryTree(folder, filter, Projection.ALL);
+    }
+
+    /**
+     * Builds the Directory & Files metadata tree for the given directory, collecting only the attributes of the
+     * projection and the ones the filter reads
+     *
+     * @param folder
+     * @param filter
+     * @param projection
+     * @return
+     * @throws IOException
+     */
+    public FileMetadata directoryTree(File folder, TraversalFilter filter, Projection projection) throws IOException {
+        return directoryTree(folder, filter, projection, new VisitedDirectories(followLinks));
+    }
+
+    /**
+     * Builds the Directory & Files metadata tree for the given directory, entering the directories it lists in the
+     * given visited directories
+     *
+     * @param folder
+     * @param filter
+     * @param projection
+     * @param visited    of this traversal only, e.g. with a listener told of every directory before it is listed
+     * @return
+     * @throws IOException
+     */
+    public FileMetadata directoryTree(File folder, TraversalFilter filter, Projection projection,
+                                      VisitedDirectories visited) throws IOException {
+        return directoryTree(pool(folder), folder, filter, projection, visited);
+    }
+
+    /**
+     * Builds the Directory & Files metadata tree for the given directory on the given pool
+     *
+     * @param scanPool   the pool of the directory, see {@link #pool(File)}
+     * @param folder
+     * @param filter
+     * @param projection
+     * @param visited    of this traversal only
+     * @return
+     * @throws IOException
+     */
+    public FileMetadata directoryTree(ForkJoinPool scanPool, File folder, TraversalFilter filter, Projection projection,
+                                      VisitedDirectories visited) throws IOException {
+        try (Scan scan = FileMetadataMetrics.start(ScanOperation.TREE)) {
+            Projection collected = projection.including(filter.getFields());
+            FileMetadata fileMetadata = FileMetadataHandler.fileMetadata(folder, null, collected);
+            visited.enterRoot(folder, fileMetadata);
+            try {
+                scanPool.invoke(new DirectoryTask(null, scan, folder, fileMetadata, filter, collected, visited));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            scan.complete();
+            return fileMetadata;
+        }
+    }
+
+    /**
+     * Runs another traversal on the default pool, so all scans share the configured parallelism
+     *
+     * @param task
+     * @return the result of the task
+     * @throws IOException thrown by the task as {@link UncheckedIOException}
+     */
+    public <T> T invoke(ForkJoinTask<T> task) throws IOException {
+        try {
+            return pool.invoke(task);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Runs another traversal of the given directory or file on the pool of its store
+     *
+     * @param root
+     * @param task
+     * @return the result of the task
+     * @throws IOException thrown by the task as {@link UncheckedIOException}
+     */
+    public <T> T invoke(File root, ForkJoinTask<T> task) throws IOException {
+        try {
+            return pool(root).invoke(task);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Starts another traversal of the given directory or file on the pool of its store, for a caller that has work of
+     * its own to do meanwhile
+     *
+     * @param root
+     * @param task
+     * @return the task, failing with an {@link UncheckedIOException} for an IOException
+     */
+    public <T> ForkJoinTask<T> submit(File root, ForkJoinTask<T> task) {
+        return pool(root).submit(task);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+        storePools.values().forEach(ForkJoinPool::shutdownNow);
+    }
+
+    /**
+     * A task run as part of a scan started on another thread. Tasks complete into the task that forked them instead of
+     * being joined, so no thread blocks on a subtree and the stack of a worker does not grow with the depth of the tree.
+     */
+    private abstract static class ScanTask extends CountedCompleter<Void> {
+
+        protected final Scan scan;
+
+        ScanTask(CountedCompleter<?> completer, Scan scan) {
+            super(completer);
+            this.scan = scan;
+        }
+
+        @Override
+        public final void compute() {
+            Scan previous = FileMetadataMetrics.attach(scan);
+            try {
+                scan();
+            } finally {
+                FileMetadataMetrics.restore(previous);
+            }
+        }
+
+        /**
+         * Runs the task, forking its subtasks and calling {@link #tryComplete()} once it is done itself
+         */
+        protected abstract void scan();
+    }
+
+    /**
+     * Lists one directory and stats its entries, forking a task per chunk of entries and per sub-directory. Completes
+     * once its whole subtree is done, adding the children in the order they were listed.
+     */
+    private static class DirectoryTask extends ScanTask {
+
+        private final File folder;
+        private final FileMetadata folderMetadata;
+        private final TraversalFilter filter;
+        private final Projection projection;
+        private final VisitedDirectories visited;
+        private File[] fileList;
+        private FileMetadata[] children;
+
+        DirectoryTask(DirectoryTask parent, Scan scan, File folder, FileMetadata folderMetadata, TraversalFilter filter,
+                      Projection projection, VisitedDirectories visited) {
+            super(parent, scan);
+            this.folder = folder;
+            this.folderMetadata = folderMetadata;
+            this.filter = filter;
+            this.projection = projection;
+            this.visited = visited;
+        }
+
+        @Override
+        protected void scan() {
+            fileList = FileMetadataHandler.listChildren(folder, filter);
+            children = new FileMetadata[fileList.length];
+
+            for (int from = STAT_CHUNK_SIZE; from < fileList.length; from += STAT_CHUNK_SIZE) {
+                addToPendingCount(1);
+                new EntryRangeTask(this, from, Math.min(from + STAT_CHUNK_SIZE, fileList.length)).fork();
+            }
+            stat(0, Math.min(STAT_CHUNK_SIZE, fileList.length));
+            tryComplete();
+        }
+
+        /**
+         * Stats a range of entries into their slots of the children array, forking the sub-directories to list
+         */
+        void stat(int from, int to) {
+            for (int i = from; i < to; i++) {
+                FileMetadata child;
+                try {
+                    child = FileMetadataHandler.fileMetadata(fileList[i], folderMetadata, projection);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (!filter.report(fileList[i], child)) {
+                    continue;
+                }
+                children[i] = child;
+                if (child.isDirectory() && enter(fileList[i], child)) {
+                    addToPendingCount(1);
+                    new DirectoryTask(this, scan, fileList[i], child, filter, projection, visited).fork();
+                }
+            }
+        }
+
+        private boolean enter(File directory, FileMetadata metadata) {
+            try {
+                return visited.enter(directory, metadata);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void onCompletion(CountedCompleter<?> caller) {
+            for (FileMetadata child : children) {
+                // null when left out by the filter
+                if (child != null) {
+                    folderMetadata.addChild(child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stats a chunk of the entries of a large directory
+     */
+    private static class EntryRangeTask extends ScanTask {
+
+        private final DirectoryTask directory;
+        private final int from, to;
+
+        EntryRangeTask(DirectoryTask directory, int from, int to) {
+            super(directory, directory.scan);
+            this.directory = directory;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void scan() {
+            directory.stat(from, to);
+            tryComplete();
+        }
+    }
+}
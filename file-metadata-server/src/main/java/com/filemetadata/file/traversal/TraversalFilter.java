@@ -0,0 +1,300 @@
+package com.filemetadata.file.traversal;
+
+import com.filemetadata.common.exception.InvalidInputException;
+import com.filemetadata.dto.DirectoryFilter;
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.handler.FileErrorCodes;
+import com.filemetadata.file.projection.MetadataField;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * {@link DirectoryFilter} compiled for one traversed directory and applied by the traversals themselves.
+ *
+ * maxDepth, exclude and hidden=false are checked on the name of an entry before it is stat-ed, and a skipped
+ * directory is never listed. include, the size and modified time ranges and type=dir select the files that are
+ * reported; directories are always reported, as they hold the matching files in the nested outputs. Only the flat
+ * outputs leave directories out for type=file.
+ *
+ * Globs without a '/' match the name of an entry, the others its path relative to the traversed directory, where a
+ * leading "**&#47;" also matches at the top level. Compiled globs are shared by all requests.
+ *
+ * @author Vinod Kandula
+ */
+public class TraversalFilter {
+
+    public static final TraversalFilter NONE = new TraversalFilter(null);
+
+    private static final int MAX_MATCHERS = 1024;
+    private static final Map<String, PathMatcher> MATCHERS = new ConcurrentHashMap<>();
+
+    private final String root;
+    private DirectoryFilter filter;
+    private int maxDepth = Integer.MAX_VALUE;
+    private List<Glob> includes = Collections.emptyList();
+    private List<Glob> excludes = Collections.emptyList();
+    private long minSize = Long.MIN_VALUE;
+    private long maxSize = Long.MAX_VALUE;
+    private Instant modifiedAfter;
+    private Instant modifiedBefore;
+    private boolean files = true;
+    private boolean directories = true;
+    private boolean hidden = true;
+    private boolean empty = true;
+    private final Set<MetadataField> fields = EnumSet.noneOf(MetadataField.class);
+
+    private TraversalFilter(String root) {
+        this.root = root;
+    }
+
+    /**
+     * Compiles the filter parameters for the given directory
+     *
+     * @param folder traversed directory
+     * @param filter request parameters, may be null
+     * @return {@link #NONE} when no parameter is set
+     * @throws InvalidInputException for an invalid glob, time or type
+     */
+    public static TraversalFilter of(File folder, DirectoryFilter filter) {
+        if (filter == null) {
+            return NONE;
+        }
+        TraversalFilter traversalFilter = new TraversalFilter(folder.getAbsolutePath());
+        traversalFilter.filter = filter;
+        if (filter.getMaxDepth() != null) {
+            if (filter.getMaxDepth() < 0) {
+                throw new InvalidInputException(FileErrorCodes.INVALID_PARAMETER_VALUE, "maxDepth", filter.getMaxDepth());
+            }
+            traversalFilter.maxDepth = filter.getMaxDepth();
+        }
+        traversalFilter.includes = globs("include", filter.getInclude());
+        traversalFilter.excludes = globs("exclude", filter.getExclude());
+        if (filter.getMinSize() != null) {
+            traversalFilter.minSize = filter.getMinSize();
+        }
+        if (filter.getMaxSize() != null) {
+            traversalFilter.maxSize = filter.getMaxSize();
+        }
+        traversalFilter.modifiedAfter = instant("modifiedAfter", filter.getModifiedAfter());
+        traversalFilter.modifiedBefore = instant("modifiedBefore", filter.getModifiedBefore());
+        if (filter.getType() != null) {
+            if (filter.getType().equalsIgnoreCase("file")) {
+                traversalFilter.directories = false;
+            } else if (filter.getType().equalsIgnoreCase("dir")) {
+                traversalFilter.files = false;
+            } else {
+                throw new InvalidInputException(FileErrorCodes.INVALID_PARAMETER_VALUE, "type", filter.getType());
+            }
+        }
+        if (filter.getHidden() != null) {
+            traversalFilter.hidden = filter.getHidden();
+        }
+        if (filter.getMinSize() != null || filter.getMaxSize() != null) {
+            traversalFilter.fields.add(MetadataField.SIZE);
+        }
+        if (traversalFilter.modifiedAfter != null || traversalFilter.modifiedBefore != null) {
+            traversalFilter.fields.add(MetadataField.LAST_MODIFIED_TIME);
+        }
+        traversalFilter.empty = traversalFilter.maxDepth == Integer.MAX_VALUE
+                && traversalFilter.includes.isEmpty() && traversalFilter.excludes.isEmpty()
+                && filter.getMinSize() == null && filter.getMaxSize() == null
+                && traversalFilter.modifiedAfter == null && traversalFilter.modifiedBefore == null
+                && filter.getType() == null && traversalFilter.hidden;
+        return traversalFilter.empty ? NONE : traversalFilter;
+    }
+
+    /**
+     * @return the parameters the filter was compiled from, null for {@link #NONE}
+     */
+    public DirectoryFilter getDirectoryFilter() {
+        return filter;
+    }
+
+    /**
+     * @return true when every entry is visited and reported
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * @return the attributes {@link #report(File, FileMetadata)} reads, to be collected even when not requested
+     */
+    public Set<MetadataField> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return false when the flat outputs leave directories out
+     */
+    public boolean reportsDirectories() {
+        return directories;
+    }
+
+    /**
+     * Decides from its name whether an entry is visited at all, a directory that is not visited is not listed
+     *
+     * @param file entry below the traversed directory
+     * @return
+     */
+    public boolean visit(File file) {
+        if (empty) {
+            return true;
+        }
+        if (!hidden && file.getName().startsWith(".")) {
+            return false;
+        }
+        String relativePath = relativePath(file);
+        if (depth(relativePath) > maxDepth) {
+            return false;
+        }
+        return !matches(excludes, file, relativePath);
+    }
+
+    /**
+     * Decides whether the children of a visited directory are listed
+     *
+     * @param folder the traversed directory or a visited directory below it
+     * @return
+     */
+    public boolean descend(File folder) {
+        if (empty || maxDepth == Integer.MAX_VALUE) {
+            return true;
+        }
+        return depth(relativePath(folder)) < maxDepth;
+    }
+
+    /**
+     * Decides whether a visited entry is reported
+     *
+     * @param file
+     * @param fileMetadata
+     * @return
+     */
+    public boolean report(File file, FileMetadata fileMetadata) {
+        if (empty || fileMetadata.isDirectory()) {
+            return true;
+        }
+        if (!files || fileMetadata.getSize() < minSize || fileMetadata.getSize() > maxSize) {
+            return false;
+        }
+        if (modifiedAfter != null || modifiedBefore != null) {
+            Instant modified = Instant.parse(fileMetadata.getLastModifiedTime());
+            if (modifiedAfter != null && modified.isBefore(modifiedAfter)
+                    || modifiedBefore != null && modified.isAfter(modifiedBefore)) {
+                return false;
+            }
+        }
+        return includes.isEmpty() || matches(includes, file, relativePath(file));
+    }
+
+    private String relativePath(File file) {
+        String path = file.getAbsolutePath();
+        if (path.length() <= root.length()) {
+            return "";
+        }
+        return path.charAt(root.length()) == File.separatorChar
+                ? path.substring(root.length() + 1)
+                : path.substring(root.length());
+    }
+
+    private static int depth(String relativePath) {
+        if (relativePath.isEmpty()) {
+            return 0;
+        }
+        int depth = 1;
+        for (int i = 0; i < relativePath.length(); i++) {
+            if (relativePath.charAt(i) == File.separatorChar) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    private static boolean matches(List<Glob> globs, File file, String relativePath) {
+        Path name = null, path = null;
+        for (Glob glob : globs) {
+            if (glob.onName) {
+                name = name != null ? name : Paths.get(file.getName());
+                if (glob.matcher.matches(name)) {
+                    return true;
+                }
+            } else {
+                path = path != null ? path : Paths.get(relativePath);
+                if (glob.matcher.matches(path) || glob.topLevel != null && glob.topLevel.matches(path)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static List<Glob> globs(String parameter, List<String> patterns) {
+        if (patterns == null || patterns.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Glob> globs = new ArrayList<>(patterns.size());
+        for (String pattern : patterns) {
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            try {
+                globs.add(new Glob(pattern));
+            } catch (PatternSyntaxException e) {
+                throw new InvalidInputException(FileErrorCodes.INVALID_PARAMETER_VALUE, parameter, pattern);
+            }
+        }
+        return globs;
+    }
+
+    private static PathMatcher matcher(String pattern) {
+        PathMatcher matcher = MATCHERS.get(pattern);
+        if (matcher == null) {
+            if (MATCHERS.size() >= MAX_MATCHERS) {
+                MATCHERS.clear();
+            }
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            MATCHERS.put(pattern, matcher);
+        }
+        return matcher;
+    }
+
+    private static Instant instant(String parameter, String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Instant.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new InvalidInputException(FileErrorCodes.INVALID_PARAMETER_VALUE, parameter, value);
+        }
+    }
+
+    private static class Glob {
+
+        private final boolean onName;
+        private final PathMatcher matcher;
+        // "**/x" also matching x itself at the top level
+        private final PathMatcher topLevel;
+
+        Glob(String pattern) {
+            this.onName = pattern.indexOf('/') < 0;
+            this.matcher = matcher(pattern);
+            this.topLevel = pattern.startsWith("**/") ? matcher(pattern.substring(3)) : null;
+        }
+    }
+}
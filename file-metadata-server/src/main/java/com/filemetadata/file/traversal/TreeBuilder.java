@@ -0,0 +1,47 @@
+package com.filemetadata.file.traversal;
+
+import com.filemetadata.dto.FileMetadata;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Assembles the visited entries back into a Directory & Files metadata tree. Entries are copied, so visitors fed
+ * from shared (e.g. cached) metadata never have their children modified.
+ *
+ * @author Vinod Kandula
+ */
+public class TreeBuilder implements FileMetadataVisitor {
+
+    private final Deque<FileMetadata> directories = new ArrayDeque<>();
+    private FileMetadata root;
+
+    @Override
+    public void preVisitDirectory(FileMetadata directory) {
+        FileMetadata copy = new FileMetadata(directory);
+        add(copy);
+        directories.push(copy);
+    }
+
+    @Override
+    public void visitFile(FileMetadata file) {
+        add(new FileMetadata(file));
+    }
+
+    @Override
+    public void postVisitDirectory(FileMetadata directory) {
+        directories.pop();
+    }
+
+    public FileMetadata getRoot() {
+        return root;
+    }
+
+    private void add(FileMetadata fileMetadata) {
+        if (directories.isEmpty()) {
+            root = fileMetadata;
+        } else {
+            directories.peek().addChild(fileMetadata);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.filemetadata.file.traversal;
+
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.compact.FileKeySet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * The directories one traversal has listed, by their file key (device, inode). A directory reached again, through a
+ * symbolic link or a bind mount, is reported without being listed a second time, so a traversal lists every
+ * directory at most once however its links loop, and ends in time and memory bounded by the size of the tree.
+ *
+ * File keys are taken from the metadata collected by {@link com.filemetadata.file.handler.FileAttributeCollector},
+ * and only read separately for filesystems without the "unix" attribute view, where directories without a file key
+ * are told apart by their canonical path. Shared by the threads of a parallel traversal.
+ *
+ * A listener can be told of every directory right before it is listed, e.g. to watch it so changes made while it is
+ * read are not missed.
+ *
+ * @author Vinod Kandula
+ */
+public final class VisitedDirectories {
+
+    private final FollowLinks policy;
+    // called with every directory before it is listed, by the thread listing it
+    private final Consumer<File> listing;
+    private final FileKeySet keys = new FileKeySet();
+    // keys of the directories without (device, inode), created when the first one is entered
+    private Set<Object> otherKeys;
+
+    /**
+     * Follows every link, the default of filemetadata.traversal.follow-links
+     */
+    public VisitedDirectories() {
+        this(FollowLinks.ALWAYS);
+    }
+
+    public VisitedDirectories(FollowLinks policy) {
+        this(policy, null);
+    }
+
+    /**
+     * @param policy
+     * @param listing called with every directory entered, before the traversal lists it
+     */
+    public VisitedDirectories(FollowLinks policy, Consumer<File> listing) {
+        this.policy = policy;
+        this.listing = listing;
+    }
+
+    /**
+     * Tells whether two entries are the same directory, by their file keys
+     *
+     * @param directory
+     * @param metadata  of the directory
+     * @param other
+     * @param otherMetadata
+     * @return
+     * @throws IOException
+     */
+    public static boolean isSameDirectory(File directory, FileMetadata metadata, File other, FileMetadata otherMetadata)
+            throws IOException {
+        if (metadata.hasFileKey() && otherMetadata.hasFileKey()) {
+            return metadata.getInode() == otherMetadata.getInode() && metadata.getDevice() == otherMetadata.getDevice();
+        }
+        return Files.isSameFile(directory.toPath(), other.toPath());
+    }
+
+    /**
+     * Marks the traversed directory itself as listed, it is listed whether it is a link or not
+     *
+     * @param folder
+     * @param metadata
+     * @throws IOException
+     */
+    public void enterRoot(File folder, FileMetadata metadata) throws IOException {
+        add(folder, metadata);
+        if (listing != null) {
+            listing.accept(folder);
+        }
+    }
+
+    /**
+     * @param metadata of a directory
+     * @return false for a symbolic link that is not followed
+     */
+    public boolean follows(FileMetadata metadata) {
+        return policy.follows(metadata);
+    }
+
+    /**
+     * Decides whether a traversal lists the given directory, marking it as listed when it does
+     *
+     * @param directory
+     * @param metadata  of the directory
+     * @return false for a link that is not followed, or a directory listed before
+     * @throws IOException
+     */
+    public boolean enter(File directory, FileMetadata metadata) throws IOException {
+        if (!follows(metadata) || !add(directory, metadata)) {
+            return false;
+        }
+        if (listing != null) {
+            listing.accept(directory);
+        }
+        return true;
+    }
+
+    private boolean add(File directory, FileMetadata metadata) throws IOException {
+        if (metadata.hasFileKey()) {
+            synchronized (this) {
+                return keys.add(metadata.getDevice(), metadata.getInode());
+            }
+        }
+        Object key = Files.readAttributes(directory.toPath(), BasicFileAttributes.class).fileKey();
+        if (key == null) {
+            key = directory.getCanonicalPath();
+        }
+        synchronized (this) {
+            if (otherKeys == null) {
+                otherKeys = new HashSet<>();
+            }
+            return otherKeys.add(key);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.filemetadata.file.usage;
+
+import com.filemetadata.dto.DirectoryUsage;
+import com.filemetadata.file.handler.FileAttributeCollector;
+import com.filemetadata.file.store.FileStores;
+import com.filemetadata.file.traversal.ParallelTreeTraversal;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountedCompleter;
+
+/**
+ * Adds up the size, file and directory counts and newest modification time of a directory tree (du) in one post-order
+ * pass on the pool of the {@link ParallelTreeTraversal} for the file store of the directory. Sibling directories are
+ * summed concurrently and only the running totals of a directory are kept, no metadata of the entries below it. Tasks
+ * are never joined, so deep trees do not deepen the stacks of the workers.
+ *
+ * Entries are read with one lstat each and symbolic links are not followed. A file with more than one hard link is
+ * only counted with the first path it is found under, by the (device, inode) key of the file, or its
+ * {@link BasicFileAttributes#fileKey()} on filesystems without the "unix" attribute view, so the totals match the
+ * bytes stored on disk. Which of the paths that is, and so the totals of the directories below the root, depends on
+ * the order of the concurrent traversal.
+ *
+ * @author Vinod Kandula
+ */
+@Component
+public class DiskUsageCalculator {
+
+    // entries of a single directory stat-ed by one task before the range is split further
+    private static final int STAT_CHUNK_SIZE = 64;
+
+    private static final String ATTRIBUTES = "unix:mode,size,lastModifiedTime,nlink,dev,ino";
+    private static final int S_IFMT = 0170000;
+    private static final int S_IFDIR = 0040000;
+
+    private static final Comparator<DirectoryUsage> LARGEST_FIRST =
+            Comparator.comparingLong(DirectoryUsage::getSize).reversed().thenComparing(DirectoryUsage::getName);
+
+    @Autowired
+    private ParallelTreeTraversal parallelTreeTraversal;
+
+    /**
+     * @param folder
+     * @param depth  levels of sub-directories reported with their own usage, 0 for the totals of the folder only
+     * @return the usage of the folder, sub-directories ordered by size, largest first
+     * @throws IOException
+     */
+    public DirectoryUsage usage(File folder, int depth) throws IOException {
+        Path directory = folder.toPath();
+        Set<Object> hardLinks = ConcurrentHashMap.newKeySet();
+        Entry entry = Entry.read(directory, hardLinks);
+
+        Totals totals = parallelTreeTraversal.invoke(folder, new DirectoryTask(null, directory, null, depth, hardLinks));
+        totals.add(entry);
+        return totals.toUsage(folder.getName(), folder.getPath());
+    }
+
+    /**
+     * Sums one directory, forking a task per chunk of its entries and per sub-directory. Tasks complete into the
+     * directory that forked them instead of being joined, so the stack of a worker does not grow with the depth of the
+     * tree, and a directory adds its totals to its parent once its whole subtree is done.
+     */
+    private static class DirectoryTask extends CountedCompleter<Totals> {
+
+        private final DirectoryTask parent;
+        private final Path directory;
+        // null for the root, whose entry is added by the caller
+        private final Entry entry;
+        private final int depth;
+        private final Set<Object> hardLinks;
+        // guarded by itself, the chunks and sub-directories add to it concurrently
+        private final Totals totals;
+        private List<Path> entries;
+
+        DirectoryTask(DirectoryTask parent, Path directory, Entry entry, int depth, Set<Object> hardLinks) {
+            super(parent);
+            this.parent = parent;
+            this.directory = directory;
+            this.entry = entry;
+            this.depth = depth;
+            this.hardLinks = hardLinks;
+            this.totals = new Totals(depth > 0);
+        }
+
+        @Override
+        public void compute() {
+            entries = new ArrayList<>();
+            FileStores.throttle();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                stream.forEach(entries::add);
+            } catch (IOException | DirectoryIteratorException e) {
+                // unreadable directories count as empty, like a listing without children
+                entries = Collections.emptyList();
+            }
+
+            for (int from = STAT_CHUNK_SIZE; from < entries.size(); from += STAT_CHUNK_SIZE) {
+                addToPendingCount(1);
+                new EntryRangeTask(this, from, Math.min(from + STAT_CHUNK_SIZE, entries.size())).fork();
+            }
+            stat(0, Math.min(STAT_CHUNK_SIZE, entries.size()));
+            tryComplete();
+        }
+
+        /**
+         * Stats a range of entries, adding up the files and forking the sub-directories
+         */
+        void stat(int from, int to) {
+            Totals files = new Totals(false);
+            for (int i = from; i < to; i++) {
+                Entry child;
+                try {
+                    child = Entry.read(entries.get(i), hardLinks);
+                } catch (NoSuchFileException e) {
+                    // removed while the directory is summed
+                    continue;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (child.directory) {
+                    addToPendingCount(1);
+                    new DirectoryTask(this, entries.get(i), child, depth - 1, hardLinks).fork();
+                } else {
+                    files.fileCount++;
+                    files.add(child);
+                }
+            }
+            synchronized (totals) {
+                totals.addTotals(files);
+            }
+        }
+
+        @Override
+        public void onCompletion(CountedCompleter<?> caller) {
+            synchronized (totals) {
+                if (entry != null) {
+                    totals.add(entry);
+                }
+            }
+            // runs before the parent completes, as the parent waits for this task
+            if (parent != null) {
+                parent.subDirectory(this);
+            }
+        }
+
+        private void subDirectory(DirectoryTask subDirectory) {
+            Totals subTotals = subDirectory.totals;
+            synchronized (totals) {
+                if (totals.children != null) {
+                    Path path = subDirectory.directory;
+                    totals.children.add(subTotals.toUsage(path.getFileName().toString(), path.toString()));
+                }
+                totals.directoryCount++;
+                totals.addTotals(subTotals);
+            }
+        }
+
+        /**
+         * @return the totals of the directory, including its own entry unless it is the root
+         */
+        @Override
+        public Totals getRawResult() {
+            return totals;
+        }
+    }
+
+    /**
+     * Stats a chunk of the entries of a large directory
+     */
+    private static class EntryRangeTask extends CountedCompleter<Void> {
+
+        private final DirectoryTask directory;
+        private final int from, to;
+
+        EntryRangeTask(DirectoryTask directory, int from, int to) {
+            super(directory);
+            this.directory = directory;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public void compute() {
+            directory.stat(from, to);
+            tryComplete();
+        }
+    }
+
+    /**
+     * Running totals of a directory
+     */
+    private static class Totals {
+
+        private long size;
+        private long fileCount;
+        private long directoryCount;
+        private FileTime lastModifiedTime;
+        // null below the requested depth
+        private List<DirectoryUsage> children;
+
+        Totals(boolean keepChildren) {
+            this.children = keepChildren ? new ArrayList<>() : null;
+        }
+
+        void add(Entry entry) {
+            size += entry.size;
+            newest(entry.lastModifiedTime);
+        }
+
+        void add(Totals other) {
+            addTotals(other);
+            if (children != null && other.children != null) {
+                children.addAll(other.children);
+            }
+        }
+
+        void addTotals(Totals other) {
+            size += other.size;
+            fileCount += other.fileCount;
+            directoryCount += other.directoryCount;
+            newest(other.lastModifiedTime);
+        }
+
+        DirectoryUsage toUsage(String name, String path) {
+            DirectoryUsage usage = new DirectoryUsage();
+            usage.setName(name);
+            usage.setPath(path);
+            usage.setSize(size);
+            usage.setFileCount(fileCount);
+            usage.setDirectoryCount(directoryCount);
+            usage.setLastModifiedTime(lastModifiedTime != null ? lastModifiedTime.toString() : null);
+            if (children != null) {
+                children.sort(LARGEST_FIRST);
+                usage.setChildren(children);
+            }
+            return usage;
+        }
+
+        private void newest(FileTime time) {
+            if (time != null && (lastModifiedTime == null || time.compareTo(lastModifiedTime) > 0)) {
+                lastModifiedTime = time;
+            }
+        }
+    }
+
+    /**
+     * The attributes of one entry that are summed
+     */
+    private static class Entry {
+
+        private final boolean directory;
+        private final long size;
+        private final FileTime lastModifiedTime;
+
+        private Entry(boolean directory, long size, FileTime lastModifiedTime) {
+            this.directory = directory;
+            this.size = size;
+            this.lastModifiedTime = lastModifiedTime;
+        }
+
+        /**
+         * Reads an entry with a single lstat. The size of a hard linked file is 0 after its first path.
+         */
+        static Entry read(Path path, Set<Object> hardLinks) throws IOException {
+            FileStores.throttle();
+            if (!FileAttributeCollector.isSupported()) {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                long size = attributes.size();
+                // without a link count every file key is kept, a file without one cannot be told apart
+                if (!attributes.isDirectory() && attributes.fileKey() != null && !hardLinks.add(attributes.fileKey())) {
+                    size = 0;
+                }
+                return new Entry(attributes.isDirectory(), size, attributes.lastModifiedTime());
+            }
+
+            Map<String, Object> attributes = Files.readAttributes(path, ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+            boolean directory = ((Integer) attributes.get("mode") & S_IFMT) == S_IFDIR;
+            long size = (Long) attributes.get("size");
+            if (!directory && (Integer) attributes.get("nlink") > 1
+                    && !hardLinks.add(new Inode((Long) attributes.get("dev"), (Long) attributes.get("ino")))) {
+                size = 0;
+            }
+            return new Entry(directory, size, (FileTime) attributes.get("lastModifiedTime"));
+        }
+    }
+
+    private static class Inode {
+
+        private final long device;
+        private final long inode;
+
+        Inode(long device, long inode) {
+            this.device = device;
+            this.inode = inode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Inode)) {
+                return false;
+            }
+            Inode other = (Inode) o;
+            return device == other.device && inode == other.inode;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(device, inode);
+        }
+    }
+}
@@ -1,6 +1,11 @@
 package com.filemetadata.controller;
 
 import com.filemetadata.FileMetadataApplication;
+import com.filemetadata.dto.DirectoryPage;
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.admission.AdmissionControl;
+import com.filemetadata.file.admission.Bulkhead;
+import com.filemetadata.file.admission.Lane;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,15 +15,33 @@ import org.springframework.boot.web.server.LocalServerPort;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -33,6 +56,9 @@ public class FileMetadataControllerIntegrationTests {
     @Autowired
     private TestRestTemplate restTemplate;
 
+    @Autowired
+    private AdmissionControl admissionControl;
+
     @LocalServerPort
     private int port;
 
@@ -74,6 +100,540 @@ public class FileMetadataControllerIntegrationTests {
         assertTrue(response.getBody().contains(LOCAL_PATH+"/src/main/resources/data.txt"));
     }
 
+    @Test
+    public void testDirectoryMetadataStream() {
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/directory?format=json&path="+LOCAL_PATH+"/src/main/resources/",
+                HttpMethod.GET, entity, String.class);
+        System.out.println(response.getBody());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().startsWith("{"));
+        assertTrue(response.getBody().contains(LOCAL_PATH+"/src/main/resources/data.txt"));
+    }
+
+    @Test
+    public void testDirectoryMetadataNdjsonStream() {
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/directory?format=ndjson&path="+LOCAL_PATH+"/src/main/resources/",
+                HttpMethod.GET, entity, String.class);
+        System.out.println(response.getBody());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().split("\n").length > 1);
+        assertTrue(response.getBody().contains(LOCAL_PATH+"/src/main/resources/data.txt"));
+    }
+
+    @Test()
+    public void givenWrongStreamFormat_whenMatchErrorResponse_thenCorrect() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/directory?format=csv&path="+LOCAL_PATH+"/src/main/resources/",
+                HttpMethod.GET, entity, String.class);
+        System.out.println(response.getBody());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().contains("INVALID_PARAMETER_VALUE"));
+    }
+
+    @Test
+    public void testCacheStats() {
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        restTemplate.exchange(getRootUrl() + "/filemetadata/directory?path="+LOCAL_PATH+"/src/main/resources/",
+                HttpMethod.GET, entity, String.class);
+        restTemplate.exchange(getRootUrl() + "/filemetadata/directory?path="+LOCAL_PATH+"/src/main/resources/",
+                HttpMethod.GET, entity, String.class);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/cache",
+                HttpMethod.GET, entity, String.class);
+        System.out.println(response.getBody());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().contains("\"hits\""));
+        assertTrue(!response.getBody().contains("\"hits\":0"));
+    }
+
+    @Test
+    public void testDirectoryMetadataFromIndex() {
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/directory?consistency=index&path="+LOCAL_PATH+"/src/main/resources/",
+                HttpMethod.GET, entity, String.class);
+        System.out.println(response.getBody());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().contains(LOCAL_PATH+"/src/main/resources/data.txt"));
+    }
+
+    @Test()
+    public void givenWrongConsistency_whenMatchErrorResponse_thenCorrect() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/directory?consistency=eventual&path="+LOCAL_PATH+"/src/main/resources/",
+                HttpMethod.GET, entity, String.class);
+        System.out.println(response.getBody());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().contains("INVALID_PARAMETER_VALUE"));
+    }
+
+    @Test
+    public void testDirectoryMetadataPage() {
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/directory/page?limit=1&path="+LOCAL_PATH+"/src/main/resources/",
+                HttpMethod.GET, entity, String.class);
+        System.out.println(response.getBody());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().contains("\"nextCursor\":\""));
+    }
+
+    @Test
+    public void testDirectoryMetadataPagesFollowedToTheEnd() throws IOException {
+        Path folder = Files.createTempDirectory("pages");
+        try {
+            Files.createDirectories(folder.resolve("a"));
+            Files.createDirectories(folder.resolve("b"));
+            Files.createDirectories(folder.resolve("c"));
+            Files.write(folder.resolve("a").resolve("1.txt"), "1".getBytes());
+            Files.write(folder.resolve("a").resolve("2.txt"), "2".getBytes());
+            Files.write(folder.resolve("b").resolve("3.txt"), "3".getBytes());
+            // left out by the filter after the last reported entry
+            Files.write(folder.resolve("b").resolve("empty.txt"), new byte[0]);
+            Files.write(folder.resolve("z.txt"), new byte[0]);
+
+            HttpHeaders headers = new HttpHeaders();
+            HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+            String url = getRootUrl() + "/filemetadata/directory/page?type=file&minSize=1&path=" + folder;
+            DirectoryPage all = restTemplate.exchange(url + "&limit=100", HttpMethod.GET, entity, DirectoryPage.class).getBody();
+            assertNotNull(all);
+            assertEquals(3, all.getEntries().size());
+            assertNull(all.getNextCursor());
+
+            List<String> paged = new ArrayList<>();
+            int pages = 0;
+            String cursor = null;
+            do {
+                DirectoryPage page = cursor == null
+                        ? restTemplate.exchange(url + "&limit=1", HttpMethod.GET, entity, DirectoryPage.class).getBody()
+                        : restTemplate.exchange(url + "&limit=1&cursor={cursor}", HttpMethod.GET, entity, DirectoryPage.class, cursor).getBody();
+                assertNotNull(page);
+                assertFalse(page.getEntries().isEmpty());
+                for (FileMetadata entry : page.getEntries()) {
+                    paged.add(entry.getPath());
+                }
+                cursor = page.getNextCursor();
+                pages++;
+            } while (cursor != null);
+
+            List<String> listed = new ArrayList<>();
+            for (FileMetadata entry : all.getEntries()) {
+                listed.add(entry.getPath());
+            }
+            assertEquals(3, pages);
+            assertEquals(listed, paged);
+        } finally {
+            deleteTree(folder);
+        }
+    }
+
+    @Test()
+    public void givenWrongPageCursor_whenMatchErrorResponse_thenCorrect() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/directory/page?cursor=Li4&path="+LOCAL_PATH+"/src/main/resources/",
+                HttpMethod.GET, entity, String.class);
+        System.out.println(response.getBody());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().contains("INVALID_PARAMETER_VALUE"));
+    }
+
+    @Test
+    public void testDirectoryMetadataFilter() {
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/directory?include=*.txt&maxDepth=1&path="+LOCAL_PATH+"/src/main/resources/",
+                HttpMethod.GET, entity, String.class);
+        System.out.println(response.getBody());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().contains(LOCAL_PATH+"/src/main/resources/data.txt"));
+        assertTrue(!response.getBody().contains("application.properties"));
+    }
+
+    @Test()
+    public void givenWrongFilterType_whenMatchErrorResponse_thenCorrect() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/directory?type=socket&path="+LOCAL_PATH+"/src/main/resources/",
+                HttpMethod.GET, entity, String.class);
+        System.out.println(response.getBody());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().contains("INVALID_PARAMETER_VALUE"));
+    }
+
+    @Test
+    public void testDirectoryMetadataFields() {
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/directory?fields=name,path,size,directory&path="+LOCAL_PATH+"/src/main/resources/",
+                HttpMethod.GET, entity, String.class);
+        System.out.println(response.getBody());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().contains(LOCAL_PATH+"/src/main/resources/data.txt"));
+        assertTrue(!response.getBody().contains("canonicalPath"));
+    }
+
+    @Test()
+    public void givenWrongFields_whenMatchErrorResponse_thenCorrect() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/file?fields=name,owner&path="+LOCAL_PATH+"/src/main/resources/data.txt",
+                HttpMethod.GET, entity, String.class);
+        System.out.println(response.getBody());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().contains("INVALID_PARAMETER_VALUE"));
+    }
+
+    @Test
+    public void testDirectoryMetadataXml() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT, "application/xml");
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/directory?pretty=true&path="+LOCAL_PATH+"/src/main/resources/",
+                HttpMethod.GET, entity, String.class);
+        System.out.println(response.getBody());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().contains("<fileMetadata>"));
+        assertTrue(response.getBody().contains("<path>"+LOCAL_PATH+"/src/main/resources/data.txt</path>"));
+    }
+
+    @Test
+    public void testDirectoryMetadataNotModified() {
+        String url = getRootUrl() + "/filemetadata/directory?path="+LOCAL_PATH+"/src/main/resources/";
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        // the first request caches the directory, the later ones are tagged from the cached entries
+        restTemplate.exchange(url, HttpMethod.GET, entity, String.class);
+        ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, entity, String.class);
+        assertNotNull(response.getHeaders().getETag());
+
+        headers.setIfNoneMatch(response.getHeaders().getETag());
+        response = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<String>(null, headers), String.class);
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+    }
+
+    @Test
+    public void testSmallBodyNotModifiedKeepsItsETag() {
+        String url = getRootUrl() + "/filemetadata/file?path="+LOCAL_PATH+"/src/main/resources/data.txt";
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<String>(null, headers), String.class);
+        // below filemetadata.compression.min-size, sent and tagged uncompressed
+        assertFalse(response.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING));
+        String eTag = response.getHeaders().getETag();
+        assertNotNull(eTag);
+        assertFalse(eTag.endsWith("-gzip\""));
+
+        headers.setIfNoneMatch(eTag);
+        response = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<String>(null, headers), String.class);
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertEquals(eTag, response.getHeaders().getETag());
+    }
+
+    @Test()
+    public void givenWrongAccept_whenMatchErrorResponse_thenCorrect() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT, "text/csv");
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/file?path="+LOCAL_PATH+"/src/main/resources/data.txt",
+                HttpMethod.GET, entity, String.class);
+        System.out.println(response.getBody());
+        assertEquals(HttpStatus.NOT_ACCEPTABLE, response.getStatusCode());
+    }
+
+    @Test
+    public void testDirectoryUsage() {
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/directory/usage?depth=2&path="+LOCAL_PATH+"/src/main",
+                HttpMethod.GET, entity, String.class);
+        System.out.println(response.getBody());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().contains("\"fileCount\""));
+        assertTrue(response.getBody().contains(LOCAL_PATH+"/src/main/resources"));
+    }
+
+    @Test()
+    public void givenWrongDepth_whenMatchErrorResponse_thenCorrect() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/directory/usage?depth=-1&path="+LOCAL_PATH+"/src/main",
+                HttpMethod.GET, entity, String.class);
+        System.out.println(response.getBody());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().contains("INVALID_PARAMETER_VALUE"));
+    }
+
+    @Test
+    public void testFileHash() {
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/hash?algorithm=crc32c&path="+LOCAL_PATH+"/src/main/resources",
+                HttpMethod.GET, entity, String.class);
+        System.out.println(response.getBody());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().contains("\"algorithm\":\"crc32c\""));
+        assertTrue(response.getBody().contains(LOCAL_PATH+"/src/main/resources/application.properties"));
+        assertTrue(response.getBody().contains("\"throughput\""));
+    }
+
+    @Test()
+    public void givenWrongHashAlgorithm_whenMatchErrorResponse_thenCorrect() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/hash?algorithm=md4&path="+LOCAL_PATH+"/src/main/resources",
+                HttpMethod.GET, entity, String.class);
+        System.out.println(response.getBody());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().contains("INVALID_PARAMETER_VALUE"));
+    }
+
+    @Test
+    public void testDuplicates() throws IOException {
+        Path folder = Files.createTempDirectory("duplicates");
+        try {
+            Files.write(folder.resolve("a.txt"), "duplicate".getBytes());
+            Files.write(folder.resolve("b.txt"), "duplicate".getBytes());
+            Files.write(folder.resolve("c.txt"), "different".getBytes());
+
+            HttpHeaders headers = new HttpHeaders();
+            HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+            ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/duplicates?path="+folder,
+                    HttpMethod.GET, entity, String.class);
+            System.out.println(response.getBody());
+            assertNotNull(response.getBody());
+            assertEquals(1, response.getBody().split("\n").length);
+            assertTrue(response.getBody().contains("\"wastedBytes\":9"));
+            assertTrue(response.getBody().contains(folder.resolve("b.txt").toString()));
+        } finally {
+            deleteTree(folder);
+        }
+    }
+
+    @Test
+    public void testFilesMetadata() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        String paths = "{\"paths\":[\""+LOCAL_PATH+"/src/main/resources/data.txt\",\""+LOCAL_PATH+"/inexistent_file.txt\"]}";
+        HttpEntity<String> entity = new HttpEntity<String>(paths, headers);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/files?fields=name,size",
+                HttpMethod.POST, entity, String.class);
+        System.out.println(response.getBody());
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().contains("\"name\":\"data.txt\""));
+        assertTrue(response.getBody().contains("\"errorCode\":\"INVALID_FILE_PATH\""));
+    }
+
+    @Test
+    public void testSearch() {
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/search?path="+LOCAL_PATH+"/src&glob=*.properties&fields=name,path",
+                HttpMethod.GET, entity, String.class);
+        System.out.println(response.getBody());
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().contains("\"name\":\"application.properties\""));
+        assertFalse(response.getBody().contains("data.txt"));
+    }
+
+    @Test
+    public void testSearchGlobWithComma() throws IOException {
+        Path folder = Files.createTempDirectory("search");
+        try {
+            Files.write(folder.resolve("a,b.txt"), "comma".getBytes());
+            Files.write(folder.resolve("ab.txt"), "no comma".getBytes());
+
+            HttpHeaders headers = new HttpHeaders();
+            HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+            ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/search?path="+folder+"&glob=a,b.*&fields=name",
+                    HttpMethod.GET, entity, String.class);
+            System.out.println(response.getBody());
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+            assertNotNull(response.getBody());
+            assertTrue(response.getBody().contains("\"name\":\"a,b.txt\""));
+            assertFalse(response.getBody().contains("\"name\":\"ab.txt\""));
+        } finally {
+            deleteTree(folder);
+        }
+    }
+
+    @Test()
+    public void givenWrongSearchQuery_whenMatchErrorResponse_thenCorrect() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/search?path="+LOCAL_PATH+"/src&prefix=data&contains=txt",
+                HttpMethod.GET, entity, String.class);
+        System.out.println(response.getBody());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().contains("INVALID_PARAMETER_VALUE"));
+    }
+
+    @Test
+    public void testDirectoryChanges() throws IOException {
+        Path folder = Files.createTempDirectory("changes");
+        HttpURLConnection connection = (HttpURLConnection) new URL(getRootUrl() + "/filemetadata/directory/changes?fields=name,size&path="+folder).openConnection();
+        // fails the test rather than waiting for the feed timeout when the change is never sent
+        connection.setConnectTimeout(10_000);
+        connection.setReadTimeout(10_000);
+        try {
+            StringBuilder received = new StringBuilder();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                received.append(line).append('\n');
+                if (line.startsWith("event:subscribed"))
+                    Files.write(folder.resolve("created.txt"), "created".getBytes());
+                if (line.contains("created.txt"))
+                    break;
+            }
+            String events = received.toString();
+            System.out.println(events);
+            assertTrue(events.contains("event:changes"));
+            assertTrue(events.contains("\"kind\":\"create\""));
+            assertTrue(events.contains("\"name\":\"created.txt\""));
+        } finally {
+            connection.disconnect();
+            deleteTree(folder);
+        }
+    }
+
+    @Test
+    public void testPrometheusMetrics() {
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        restTemplate.exchange(getRootUrl() + "/filemetadata/directory?path="+LOCAL_PATH+"/src/main/resources/",
+                HttpMethod.GET, entity, String.class);
+        restTemplate.exchange(getRootUrl() + "/filemetadata/directory?path="+LOCAL_PATH+"/src/main/resources/inexistent_directory",
+                HttpMethod.GET, entity, String.class);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/actuator/prometheus",
+                HttpMethod.GET, entity, String.class);
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().contains("filemetadata_scan_phase_seconds_bucket"));
+        assertTrue(response.getBody().contains("phase=\"serialize\""));
+        assertTrue(response.getBody().contains("filemetadata_scan_entries_total"));
+        assertTrue(response.getBody().contains("filemetadata_scans_active"));
+        assertTrue(response.getBody().contains("code=\"INVALID_DIRECTORY_PATH\""));
+        assertFalse(response.getBody().contains("src/main/resources"));
+    }
+
+    @Test
+    public void testConcurrentIdenticalDirectoryRequests() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> bodies = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                String format = i % 2 == 0 ? "" : "&format=ndjson";
+                bodies.add(executor.submit(() -> restTemplate.getForObject(getRootUrl()
+                        + "/filemetadata/directory?fields=name,path,size&path="+LOCAL_PATH+"/src/main/resources/" + format, String.class)));
+            }
+            for (int i = 2; i < bodies.size(); i++) {
+                assertEquals(bodies.get(i % 2).get(), bodies.get(i).get());
+            }
+            assertTrue(bodies.get(0).get().contains(LOCAL_PATH+"/src/main/resources/data.txt"));
+            assertTrue(bodies.get(1).get().contains(LOCAL_PATH+"/src/main/resources/data.txt"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDirectoryFlux() {
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/directory/flux?fields=name,path&path="+LOCAL_PATH+"/src/main/resources/",
+                HttpMethod.GET, entity, String.class);
+        System.out.println(response.getBody());
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertTrue(response.getHeaders().getContentType().isCompatibleWith(MediaType.parseMediaType("application/x-ndjson")));
+        String[] lines = response.getBody().split("\n");
+        assertTrue(lines.length > 1);
+        for (String line : lines) {
+            assertTrue(line.startsWith("{\"name\":"));
+        }
+        assertTrue(response.getBody().contains(LOCAL_PATH+"/src/main/resources/data.txt"));
+        assertFalse(response.getBody().contains("size"));
+    }
+
+    @Test()
+    public void givenWrongDirectoryPath_whenMatchFluxErrorResponse_thenCorrect() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/directory/flux?path="+LOCAL_PATH+"/src/main/resources/inexistent_directory",
+                HttpMethod.GET, entity, String.class);
+        System.out.println(response.getBody());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().contains("INVALID_DIRECTORY_PATH"));
+    }
+
+    @Test
+    public void testScanJob() throws Exception {
+        ResponseEntity<Map> submitted = restTemplate.postForEntity(getRootUrl() + "/filemetadata/scans?fields=name,path&priority=5&path="+LOCAL_PATH+"/src/main/resources/",
+                null, Map.class);
+        System.out.println(submitted.getBody());
+        assertEquals(HttpStatus.ACCEPTED, submitted.getStatusCode());
+        String id = (String) submitted.getBody().get("id");
+        assertEquals("/filemetadata/scans/" + id, submitted.getHeaders().getLocation().toString());
+        assertEquals(5, submitted.getBody().get("priority"));
+
+        Map status = submitted.getBody();
+        for (int i = 0; i < 100 && !"completed".equals(status.get("state")); i++) {
+            Thread.sleep(100);
+            status = restTemplate.getForObject(getRootUrl() + "/filemetadata/scans/" + id, Map.class);
+        }
+        System.out.println(status);
+        assertEquals("completed", status.get("state"));
+        assertTrue(((Number) status.get("entries")).longValue() > 1);
+
+        ResponseEntity<String> result = restTemplate.getForEntity(getRootUrl() + status.get("result"), String.class);
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        String[] lines = result.getBody().split("\n");
+        assertEquals(((Number) status.get("entries")).longValue(), lines.length);
+        assertTrue(lines[0].startsWith("{\"name\":"));
+        assertTrue(result.getBody().contains(LOCAL_PATH+"/src/main/resources/data.txt"));
+
+        ResponseEntity<String> cancelled = restTemplate.exchange(getRootUrl() + "/filemetadata/scans/" + id,
+                HttpMethod.DELETE, null, String.class);
+        assertEquals(HttpStatus.OK, cancelled.getStatusCode());
+        ResponseEntity<String> deleted = restTemplate.getForEntity(getRootUrl() + "/filemetadata/scans/" + id, String.class);
+        assertEquals(HttpStatus.NOT_FOUND, deleted.getStatusCode());
+    }
+
+    @Test()
+    public void givenUnknownScanJob_whenMatchErrorResponse_thenCorrect() {
+        ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + "/filemetadata/scans/inexistent_job",
+                HttpMethod.DELETE, null, String.class);
+        System.out.println(response.getBody());
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        assertTrue(response.getBody().contains("RESOURCE_NOT_FOUND"));
+    }
+
+    @Test
+    public void testAdmissionReleasesPermits() throws InterruptedException {
+        // more sequential requests of one client than it may run at a time, each releases its permits when answered
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Client-Id", "admission-test");
+        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        for (int i = 0; i < 40; i++) {
+            String api = i % 2 == 0 ? "/filemetadata/file?path="+LOCAL_PATH+"/src/main/resources/data.txt"
+                    : "/filemetadata/directory?format=ndjson&path="+LOCAL_PATH+"/src/main/resources/";
+            ResponseEntity<String> response = restTemplate.exchange(getRootUrl() + api, HttpMethod.GET, entity, String.class);
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+        }
+        // the streams release their permits once their asynchronous dispatch completed, just after the last byte
+        Bulkhead scan = admissionControl.getBulkhead(Lane.SCAN);
+        for (int i = 0; i < 100 && scan.getAvailable() < scan.getMaxConcurrent(); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(scan.getMaxConcurrent(), scan.getAvailable());
+    }
+
     @Test()
     public void givenWrongFilePath_whenMatchErrorResponse_thenCorrect() throws IOException {
         HttpHeaders headers = new HttpHeaders();
@@ -118,4 +678,12 @@ public class FileMetadataControllerIntegrationTests {
         assertTrue(response.getBody().contains("path parameter is missing"));
     }
 
+    private static void deleteTree(Path folder) throws IOException {
+        try (Stream<Path> paths = Files.walk(folder)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toArray(Path[]::new)) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,149 @@
+package com.filemetadata.file.admission;
+
+import com.filemetadata.file.index.TreeIndexService;
+import com.filemetadata.file.job.ScanJobs;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.File;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Vinod Kandula
+ */
+class AdmissionControlTests {
+
+    private TreeIndexService treeIndexService;
+    private ScanJobs scanJobs;
+
+    @BeforeAll
+    static void loadErrorDescriptions() {
+        ErrorDescriptions.load();
+    }
+
+    @BeforeEach
+    void setUp() {
+        treeIndexService = mock(TreeIndexService.class);
+        scanJobs = mock(ScanJobs.class);
+        when(treeIndexService.indexedEntries(any(File.class))).thenReturn(-1);
+        when(scanJobs.completedEntries(anyString())).thenReturn(null);
+    }
+
+    @Test
+    void scan_takesPermitsByKnownEntries() {
+        when(treeIndexService.indexedEntries(new File("/indexed"))).thenReturn(250_000);
+        when(scanJobs.completedEntries("/scanned")).thenReturn(150_000L);
+        AdmissionControl admissionControl = admissionControl(8, 0, 0);
+        Bulkhead scan = admissionControl.getBulkhead(Lane.SCAN);
+
+        AdmissionControl.Admission indexed = admissionControl.admit(Lane.SCAN, null, "/indexed");
+        AdmissionControl.Admission scanned = admissionControl.admit(Lane.SCAN, null, "/scanned");
+        AdmissionControl.Admission unknown = admissionControl.admit(Lane.SCAN, null, "/unknown");
+        assertEquals(3, indexed.getPermits());
+        assertEquals(2, scanned.getPermits());
+        assertEquals(1, unknown.getPermits());
+        assertEquals(8 - 6, scan.getAvailable());
+
+        indexed.close();
+        // released once however often it is closed
+        indexed.close();
+        scanned.close();
+        unknown.close();
+        assertEquals(8, scan.getAvailable());
+    }
+
+    @Test
+    void clientBeyondMaxPerClient_isRejected() {
+        AdmissionControl admissionControl = admissionControl(8, 0, 2);
+
+        AdmissionControl.Admission first = admissionControl.admit(Lane.LOOKUP, "a", null);
+        admissionControl.admit(Lane.SCAN, "a", null);
+        assertThrows(TooManyClientRequestsException.class, () -> admissionControl.admit(Lane.LOOKUP, "a", null));
+        // other clients are not limited by it
+        admissionControl.admit(Lane.LOOKUP, "b", null);
+
+        first.close();
+        admissionControl.admit(Lane.LOOKUP, "a", null);
+        assertEquals(8 - 2, admissionControl.getBulkhead(Lane.LOOKUP).getAvailable());
+    }
+
+    @Test
+    void busyLane_releasesTheClientRequest() {
+        AdmissionControl admissionControl = admissionControl(1, 0, 2);
+
+        admissionControl.admit(Lane.LOOKUP, "a", null);
+        assertThrows(ServerBusyException.class, () -> admissionControl.admit(Lane.LOOKUP, "a", null));
+        // the rejected request does not count against the client
+        admissionControl.admit(Lane.SCAN, "a", null);
+    }
+
+    @Test
+    void rejectedRequest_carriesRetryAfter() {
+        AdmissionInterceptor interceptor = new AdmissionInterceptor(admissionControl(1, 0, 0), Lane.SCAN, null);
+        interceptor.preHandle(request("10.0.0.1", null), new MockHttpServletResponse(), null);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertThrows(ServerBusyException.class, () -> interceptor.preHandle(request("10.0.0.2", null), response, null));
+        assertEquals("1", response.getHeader(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    void asyncRequest_holdsItsPermitsUntilCompleted() {
+        AdmissionControl admissionControl = admissionControl(2, 0, 0);
+        Bulkhead scan = admissionControl.getBulkhead(Lane.SCAN);
+        AdmissionInterceptor interceptor = new AdmissionInterceptor(admissionControl, Lane.SCAN, null);
+        MockHttpServletRequest request = request("10.0.0.1", null);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        interceptor.preHandle(request, response, null);
+        // the handler started a stream, the asynchronous dispatch writing it passes the interceptor again
+        interceptor.afterConcurrentHandlingStarted(request, response, null);
+        interceptor.preHandle(request, response, null);
+        assertEquals(1, scan.getAvailable());
+
+        interceptor.afterCompletion(request, response, null, null);
+        assertEquals(2, scan.getAvailable());
+        interceptor.afterCompletion(request, response, null, null);
+        assertEquals(2, scan.getAvailable());
+    }
+
+    @Test
+    void clientHeader_isOnlyReadWhenConfigured() {
+        AdmissionControl admissionControl = admissionControl(8, 0, 1);
+        AdmissionInterceptor trusting = new AdmissionInterceptor(admissionControl, Lane.LOOKUP, "X-Client-Id");
+        trusting.preHandle(request("10.0.0.1", "a"), new MockHttpServletResponse(), null);
+        trusting.preHandle(request("10.0.0.1", "b"), new MockHttpServletResponse(), null);
+
+        // without a client header every address is one client, whatever the requests claim
+        AdmissionInterceptor addressOnly = new AdmissionInterceptor(admissionControl, Lane.LOOKUP, "");
+        addressOnly.preHandle(request("10.0.0.2", "c"), new MockHttpServletResponse(), null);
+        assertThrows(TooManyClientRequestsException.class,
+                () -> addressOnly.preHandle(request("10.0.0.2", "d"), new MockHttpServletResponse(), null));
+    }
+
+    private AdmissionControl admissionControl(int maxConcurrent, int maxQueued, int maxPerClient) {
+        return new AdmissionControl(new Bulkhead(Lane.LOOKUP, maxConcurrent, maxQueued, Duration.ZERO),
+                new Bulkhead(Lane.SCAN, maxConcurrent, maxQueued, Duration.ZERO), 100_000, maxPerClient,
+                treeIndexService, scanJobs);
+    }
+
+    private static MockHttpServletRequest request(String address, String client) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(address);
+        if (client != null) {
+            request.addHeader("X-Client-Id", client);
+        }
+        return request;
+    }
+}
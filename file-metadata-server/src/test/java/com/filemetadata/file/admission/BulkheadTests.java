@@ -0,0 +1,78 @@
+package com.filemetadata.file.admission;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Vinod Kandula
+ */
+class BulkheadTests {
+
+    @BeforeAll
+    static void loadErrorDescriptions() {
+        ErrorDescriptions.load();
+    }
+
+    @Test
+    void weightedAcquire_takesAtMostAllPermits() {
+        Bulkhead bulkhead = new Bulkhead(Lane.SCAN, 4, 0, Duration.ZERO);
+
+        assertEquals(3, bulkhead.acquire(3));
+        assertEquals(1, bulkhead.getAvailable());
+        bulkhead.release(3);
+
+        // a scan heavier than the whole bulkhead still runs, alone
+        assertEquals(4, bulkhead.acquire(10));
+        assertEquals(0, bulkhead.getAvailable());
+        bulkhead.release(4);
+        assertEquals(4, bulkhead.getAvailable());
+    }
+
+    @Test
+    void fullBulkhead_rejectsAfterMaxWait() {
+        Bulkhead bulkhead = new Bulkhead(Lane.LOOKUP, 1, 1, Duration.ofMillis(100));
+        bulkhead.acquire(1);
+
+        long start = System.nanoTime();
+        assertThrows(ServerBusyException.class, () -> bulkhead.acquire(1));
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(millis >= 100, millis + " ms");
+        assertEquals(0, bulkhead.getQueued());
+    }
+
+    @Test
+    void fullQueue_rejectsAtOnce() throws Exception {
+        Bulkhead bulkhead = new Bulkhead(Lane.SCAN, 1, 1, Duration.ofSeconds(10));
+        bulkhead.acquire(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> waiting = executor.submit(() -> bulkhead.acquire(1));
+            while (bulkhead.getQueued() == 0) {
+                Thread.sleep(1);
+            }
+
+            long start = System.nanoTime();
+            assertThrows(ServerBusyException.class, () -> bulkhead.acquire(1));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+
+            // the waiting request takes the permit released
+            bulkhead.release(1);
+            assertEquals(1, waiting.get(5, TimeUnit.SECONDS));
+            assertEquals(0, bulkhead.getQueued());
+            assertEquals(0, bulkhead.getAvailable());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
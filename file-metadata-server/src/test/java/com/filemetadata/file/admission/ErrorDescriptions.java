@@ -0,0 +1,51 @@
+package com.filemetadata.file.admission;
+
+import com.filemetadata.common.exception.CommonExceptionConfig;
+import com.filemetadata.common.exception.CommonExceptionProperty;
+import org.springframework.context.ApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Loads the error descriptions of the exceptions, which are otherwise only loaded with the application context
+ *
+ * @author Vinod Kandula
+ */
+final class ErrorDescriptions {
+
+    private static final String PREFIX = "errorCodeMap.";
+
+    private ErrorDescriptions() {
+    }
+
+    static void load() {
+        if (CommonExceptionConfig.getFusionExceptionProperty() != null) {
+            return;
+        }
+        Map<String, String> descriptions = new HashMap<>();
+        for (String resource : new String[]{"exception-common.properties", "exception.properties"}) {
+            Properties properties = new Properties();
+            try (InputStream in = ErrorDescriptions.class.getClassLoader().getResourceAsStream(resource)) {
+                properties.load(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            for (String name : properties.stringPropertyNames()) {
+                descriptions.put(name.substring(PREFIX.length()), properties.getProperty(name));
+            }
+        }
+        CommonExceptionProperty property = new CommonExceptionProperty();
+        property.setErrorCodeMap(descriptions);
+        ApplicationContext context = mock(ApplicationContext.class);
+        when(context.getBean(CommonExceptionProperty.class)).thenReturn(property);
+        new CommonExceptionConfig().setApplicationContext(context);
+    }
+}
@@ -0,0 +1,50 @@
+package com.filemetadata.file.encoding;
+
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.projection.Projection;
+import com.filemetadata.file.stream.StreamFormat;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * @author Vinod Kandula
+ */
+class XmlMetadataStreamWriterTests {
+
+    @Test
+    void legal_replacesWhatXml10CannotCarry() {
+        String name = "report.txt";
+        assertSame(name, XmlMetadataStreamWriter.legal(name));
+        assertEquals("a\uFFFDb\uFFFD", XmlMetadataStreamWriter.legal("a\u0001b\u001F"));
+        assertEquals("tab\tline\n", XmlMetadataStreamWriter.legal("tab\tline\n"));
+        // a pair is kept, a lone surrogate is not
+        assertEquals("\uD83D\uDE00", XmlMetadataStreamWriter.legal("\uD83D\uDE00"));
+        assertEquals("\uFFFDx\uFFFD", XmlMetadataStreamWriter.legal("\uD83Dx\uDE00"));
+        assertEquals("\uFFFD", XmlMetadataStreamWriter.legal("\uFFFE"));
+    }
+
+    @Test
+    void controlCharactersInNames_stillParse() throws Exception {
+        FileMetadata file = new FileMetadata();
+        file.setName("bell\u0007.txt");
+        file.setPath("/tmp/bell\u0007.txt");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XmlMetadataStreamWriter writer = new XmlMetadataStreamWriter(out, StreamFormat.NDJSON, true,
+                Projection.of("name,path"), false);
+        writer.visitFile(file);
+        writer.close();
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals("bell\uFFFD.txt", document.getElementsByTagName("name").item(0).getTextContent());
+        assertEquals("/tmp/bell\uFFFD.txt", document.getElementsByTagName("path").item(0).getTextContent());
+    }
+}
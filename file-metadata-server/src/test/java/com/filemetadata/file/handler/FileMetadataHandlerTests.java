@@ -0,0 +1,42 @@
+package com.filemetadata.file.handler;
+
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.projection.Projection;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Vinod Kandula
+ */
+class FileMetadataHandlerTests {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void readAttributes_reportsLinksLikeTheCollector() throws IOException {
+        Path directory = Files.createDirectories(root.resolve("directory"));
+        Path link = Files.createSymbolicLink(root.resolve("link"), directory);
+        Path dangling = Files.createSymbolicLink(root.resolve("dangling"), root.resolve("missing"));
+
+        FileMetadata linked = FileMetadataHandler.readAttributes(link.toFile());
+        assertTrue(linked.isSymbolicLink());
+        assertTrue(linked.isDirectory());
+        assertFalse(FileMetadataHandler.readAttributes(directory.toFile()).isSymbolicLink());
+        assertTrue(FileMetadataHandler.readAttributes(dangling.toFile()).isSymbolicLink());
+
+        if (FileAttributeCollector.isSupported()) {
+            FileMetadata collected = FileAttributeCollector.collect(link.toFile(), null, Projection.ALL);
+            assertEquals(collected.isSymbolicLink(), linked.isSymbolicLink());
+            assertEquals(collected.isDirectory(), linked.isDirectory());
+        }
+    }
+}
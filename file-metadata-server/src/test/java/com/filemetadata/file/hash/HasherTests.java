@@ -0,0 +1,82 @@
+package com.filemetadata.file.hash;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Vinod Kandula
+ */
+class HasherTests {
+
+    private static final byte[] CHECK = "123456789".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    void crc32c_knownAnswers() {
+        assertEquals("00000000", digest(new Crc32c(), new byte[0]));
+        assertEquals("e3069283", digest(new Crc32c(), CHECK));
+    }
+
+    @Test
+    void xxHash64_knownAnswers() {
+        assertEquals("ef46db3751d8e999", digest(new XxHash64(), new byte[0]));
+    }
+
+    @Test
+    void crc32c_isTheSameInAnyBuffers() {
+        byte[] bytes = bytes(1000);
+        String whole = digest(new Crc32c(), bytes);
+        assertEquals(whole, digest(new Crc32c(), bytes, 1));
+        assertEquals(whole, digest(new Crc32c(), bytes, 7));
+        assertEquals(whole, digestDirect(new Crc32c(), bytes));
+    }
+
+    @Test
+    void xxHash64_isTheSameInAnyBuffers() {
+        byte[] bytes = bytes(1000);
+        String whole = digest(new XxHash64(), bytes);
+        assertEquals(whole, digest(new XxHash64(), bytes, 1));
+        assertEquals(whole, digest(new XxHash64(), bytes, 31));
+        assertEquals(whole, digestDirect(new XxHash64(), bytes));
+    }
+
+    @Test
+    void update_leavesPositionAtLimit() {
+        ByteBuffer buffer = ByteBuffer.wrap(CHECK);
+        new XxHash64().update(buffer);
+        assertEquals(buffer.limit(), buffer.position());
+        buffer.rewind();
+        new Crc32c().update(buffer);
+        assertEquals(buffer.limit(), buffer.position());
+    }
+
+    private static String digest(Hasher hasher, byte[] bytes) {
+        hasher.update(ByteBuffer.wrap(bytes));
+        return hasher.digest();
+    }
+
+    private static String digest(Hasher hasher, byte[] bytes, int size) {
+        for (int offset = 0; offset < bytes.length; offset += size) {
+            hasher.update(ByteBuffer.wrap(bytes, offset, Math.min(size, bytes.length - offset)));
+        }
+        return hasher.digest();
+    }
+
+    private static String digestDirect(Hasher hasher, byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        hasher.update(buffer);
+        return hasher.digest();
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i * 31 + 7);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,97 @@
+package com.filemetadata.file.index;
+
+import com.filemetadata.config.FileMetadataProperties;
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.cache.FileMetadataCache;
+import com.filemetadata.file.projection.Projection;
+import com.filemetadata.file.store.FileStores;
+import com.filemetadata.file.traversal.FileMetadataVisitor;
+import com.filemetadata.file.traversal.TraversalFilter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Vinod Kandula
+ */
+class TreeIndexServiceTests {
+
+    @TempDir
+    Path root;
+
+    private Path tree;
+    private Path dir;
+    private TreeIndexService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tree = Files.createDirectories(root.resolve("tree"));
+        dir = Files.createDirectories(tree.resolve("dir"));
+        Files.write(dir.resolve("a.txt"), new byte[1]);
+
+        FileMetadataProperties properties = new FileMetadataProperties();
+        properties.getCache().setEnabled(false);
+        properties.getIndex().setDirectory(root.resolve("index").toString());
+        service = new TreeIndexService(properties, new FileMetadataCache(properties), new FileStores());
+    }
+
+    @Test
+    void entryAddedInTheTickOfTheScan_isIndexedByTheRescan() throws IOException {
+        assertEquals(Arrays.asList("a.txt"), files(service.index(dir.toFile())));
+
+        // added within the mtime tick the directory was listed in, so its mtime stays as indexed
+        FileTime listed = Files.getLastModifiedTime(dir);
+        Files.write(dir.resolve("b.txt"), new byte[1]);
+        Files.setLastModifiedTime(dir, listed);
+        service.invalidated(dir);
+
+        assertEquals(Arrays.asList("a.txt", "b.txt"), files(service.index(dir.toFile())));
+    }
+
+    @Test
+    void directoryUnchangedLongBeforeTheScan_isReused() throws IOException {
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+        Files.setLastModifiedTime(dir, old);
+        assertEquals(Arrays.asList("a.txt"), files(service.index(dir.toFile())));
+
+        // a change that keeps an old mtime is not seen, the stored children are copied
+        Files.write(dir.resolve("b.txt"), new byte[1]);
+        Files.setLastModifiedTime(dir, old);
+        service.invalidated(dir);
+
+        assertEquals(Arrays.asList("a.txt"), files(service.index(dir.toFile())));
+    }
+
+    /**
+     * @return the names of the files below the directory, as a request with consistency=index lists them
+     */
+    private List<String> files(IndexedTree index) throws IOException {
+        List<String> names = new ArrayList<>();
+        index.walk(index.find(dir.toFile()), dir.toFile(), TraversalFilter.NONE, Projection.ALL, new FileMetadataVisitor() {
+            @Override
+            public void preVisitDirectory(FileMetadata directory) {
+            }
+
+            @Override
+            public void visitFile(FileMetadata file) {
+                names.add(file.getName());
+            }
+
+            @Override
+            public void postVisitDirectory(FileMetadata directory) {
+            }
+        });
+        return names;
+    }
+}
@@ -0,0 +1,148 @@
+package com.filemetadata.file.traversal;
+
+import com.filemetadata.config.FileMetadataProperties;
+import com.filemetadata.dto.FileMetadata;
+import com.filemetadata.file.handler.FileMetadataHandler;
+import com.filemetadata.file.projection.Projection;
+import com.filemetadata.file.store.FileStores;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Vinod Kandula
+ */
+class ParallelTreeTraversalTests {
+
+    @TempDir
+    Path root;
+
+    private ParallelTreeTraversal traversal;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        traversal = new ParallelTreeTraversal(4);
+        for (int i = 0; i < 5; i++) {
+            Path dir = Files.createDirectories(root.resolve("dir" + i).resolve("nested"));
+            // more entries than a single stat chunk, so the directory is split across tasks
+            for (int j = 0; j < 150; j++) {
+                Files.write(dir.resolve("file" + j + ".txt"), new byte[j]);
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        traversal.shutdown();
+    }
+
+    @Test
+    void parallelTraversal_matchesSerialTraversalOrder() throws IOException {
+        FileMetadata serial = FileMetadataHandler.directoryTree(root.toFile());
+        FileMetadata parallel = traversal.directoryTree(root.toFile());
+
+        assertEquals(paths(serial, new ArrayList<>()), paths(parallel, new ArrayList<>()));
+        assertEquals(5 * 2 + 5 * 150 + 1, paths(parallel, new ArrayList<>()).size());
+    }
+
+    @Test
+    void symbolicLinkLoop_isListedOnce() throws IOException {
+        Files.createSymbolicLink(root.resolve("dir0").resolve("nested").resolve("loop"), root);
+        Files.createSymbolicLink(root.resolve("alias"), root.resolve("dir1"));
+
+        FileMetadata serial = FileMetadataHandler.directoryTree(root.toFile());
+        FileMetadata parallel = traversal.directoryTree(root.toFile());
+
+        // every directory is listed once, the loop is reported without children and so is dir1 or its alias
+        assertEquals(5 * 2 + 5 * 150 + 1 + 2, paths(serial, new ArrayList<>()).size());
+        assertEquals(5 * 2 + 5 * 150 + 1 + 2, paths(parallel, new ArrayList<>()).size());
+    }
+
+    @Test
+    void followLinks_isThePolicyOfEachTraversal() throws IOException {
+        Files.createSymbolicLink(root.resolve("dir0").resolve("alias"), root.resolve("dir1"));
+        ParallelTreeTraversal notFollowing = new ParallelTreeTraversal(4, new FileStores(), FollowLinks.NEVER);
+        try {
+            // dir0 with nested and its files, the alias with or without the copy of dir1
+            assertEquals(152 + 152, paths(traversal.directoryTree(root.resolve("dir0").toFile()), new ArrayList<>()).size());
+            assertEquals(152 + 1, paths(notFollowing.directoryTree(root.resolve("dir0").toFile()), new ArrayList<>()).size());
+            assertEquals(152 + 1, paths(FileMetadataHandler.directoryTree(root.resolve("dir0").toFile(), TraversalFilter.NONE,
+                    Projection.ALL, new VisitedDirectories(FollowLinks.NEVER)), new ArrayList<>()).size());
+        } finally {
+            notFollowing.shutdown();
+        }
+    }
+
+    @Test
+    void deepTree_doesNotRecurse() throws IOException {
+        Path deep = root;
+        for (int i = 0; i < 1000; i++) {
+            deep = deep.resolve("d");
+        }
+        Files.createDirectories(deep);
+
+        assertEquals(5 * 2 + 5 * 150 + 1 + 1000, paths(FileMetadataHandler.directoryTree(root.toFile()), new ArrayList<>()).size());
+        assertEquals(5 * 2 + 5 * 150 + 1 + 1000, paths(traversal.directoryTree(root.toFile()), new ArrayList<>()).size());
+    }
+
+    @Test
+    void storeLimits_scanOnTheStorePoolAtItsRate() throws IOException {
+        FileMetadataProperties.Store limits = new FileMetadataProperties.Store();
+        limits.setParallelism(2);
+        limits.setMaxOperationsPerSecond(2000);
+        FileStores fileStores = new FileStores(new FileMetadataProperties.Store(),
+                Collections.singletonMap(Files.getFileStore(root).type(), limits), Collections.emptyMap());
+        ParallelTreeTraversal limited = new ParallelTreeTraversal(4, fileStores);
+        try {
+            ForkJoinPool pool = limited.pool(root.toFile());
+            assertEquals(2, pool.getParallelism());
+            // one pool per store
+            assertSame(pool, limited.pool(fileStores.policy(root.resolve("dir0").toFile())));
+
+            long start = System.nanoTime();
+            FileMetadata parallel = limited.directoryTree(pool, root.toFile(), TraversalFilter.NONE, Projection.ALL,
+                    new VisitedDirectories());
+            long millis = (System.nanoTime() - start) / 1_000_000;
+
+            assertEquals(paths(FileMetadataHandler.directoryTree(root.toFile()), new ArrayList<>()), paths(parallel, new ArrayList<>()));
+            // 761 stats and 11 listings at 2000 per second, less the burst of a tenth of a second
+            assertTrue(millis >= 250, millis + " ms");
+            // the default traversal is not limited by the store
+            assertEquals(4, traversal.getParallelism(root.toFile()));
+        } finally {
+            limited.shutdown();
+        }
+    }
+
+    private static List<String> paths(FileMetadata fileMetadata, List<String> paths) throws IOException {
+        new FileMetadataVisitor() {
+            @Override
+            public void visitFile(FileMetadata file) {
+                paths.add(file.getPath() + ":" + file.getSize());
+            }
+
+            @Override
+            public void preVisitDirectory(FileMetadata directory) {
+                paths.add(directory.getPath() + ":" + directory.getSize());
+            }
+
+            @Override
+            public void postVisitDirectory(FileMetadata directory) {
+            }
+        }.visitTree(fileMetadata);
+        return paths;
+    }
+}
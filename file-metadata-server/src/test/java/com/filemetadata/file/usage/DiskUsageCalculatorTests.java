@@ -0,0 +1,86 @@
+package com.filemetadata.file.usage;
+
+import com.filemetadata.dto.DirectoryUsage;
+import com.filemetadata.file.traversal.ParallelTreeTraversal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Vinod Kandula
+ */
+class DiskUsageCalculatorTests {
+
+    @TempDir
+    Path root;
+
+    private ParallelTreeTraversal traversal;
+    private DiskUsageCalculator calculator;
+
+    @BeforeEach
+    void setUp() {
+        traversal = new ParallelTreeTraversal(4);
+        calculator = new DiskUsageCalculator();
+        ReflectionTestUtils.setField(calculator, "parallelTreeTraversal", traversal);
+    }
+
+    @AfterEach
+    void tearDown() {
+        traversal.shutdown();
+    }
+
+    @Test
+    void largeDirectories_addUpAcrossChunks() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            Path dir = Files.createDirectories(root.resolve("dir" + i));
+            // more entries than a single stat chunk, so the directory is split across tasks
+            for (int j = 0; j < 150; j++) {
+                Files.write(dir.resolve("file" + j + ".txt"), new byte[10]);
+            }
+        }
+
+        DirectoryUsage usage = calculator.usage(root.toFile(), 1);
+
+        assertEquals(3 * 150, usage.getFileCount());
+        assertEquals(3, usage.getDirectoryCount());
+        assertEquals(3, usage.getChildren().size());
+        for (DirectoryUsage child : usage.getChildren()) {
+            assertEquals(150, child.getFileCount());
+            assertEquals(0, child.getChildren().size());
+        }
+    }
+
+    @Test
+    void hardLinks_areCountedOnce() throws IOException {
+        Path file = Files.write(root.resolve("file.txt"), new byte[1000]);
+        Files.createLink(Files.createDirectories(root.resolve("links")).resolve("link.txt"), file);
+
+        DirectoryUsage usage = calculator.usage(root.toFile(), 0);
+
+        assertEquals(2, usage.getFileCount());
+        assertEquals(1000, usage.getSize() - Files.size(root) - Files.size(root.resolve("links")));
+    }
+
+    @Test
+    void deepTree_doesNotRecurse() throws IOException {
+        Path deep = root;
+        for (int i = 0; i < 1000; i++) {
+            deep = deep.resolve("d");
+        }
+        Files.createDirectories(deep);
+        Files.write(deep.resolve("leaf.txt"), new byte[42]);
+
+        DirectoryUsage usage = calculator.usage(root.toFile(), 0);
+
+        assertEquals(1, usage.getFileCount());
+        assertEquals(1000, usage.getDirectoryCount());
+    }
+}